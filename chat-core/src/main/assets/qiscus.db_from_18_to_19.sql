@@ -0,0 +1,5 @@
+/**
+ * migration db v18 to v19
+ */
+
+CREATE TABLE link_previews (url TEXT PRIMARY KEY, data TEXT, failed INTEGER DEFAULT 0, cached_at LONG NOT NULL);
\ No newline at end of file
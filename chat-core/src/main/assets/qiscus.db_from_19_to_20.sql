@@ -0,0 +1,5 @@
+/**
+ * migration db v19 to v20
+ */
+
+CREATE TABLE notification_messages (room_id LONG NOT NULL, comment_id LONG NOT NULL, message TEXT, room_name TEXT, room_avatar TEXT, PRIMARY KEY (room_id, comment_id));
@@ -0,0 +1,6 @@
+/**
+ * migration db v20 to v21
+ */
+
+CREATE TABLE media (unique_id TEXT PRIMARY KEY, comment_id LONG NOT NULL, room_id LONG NOT NULL, type TEXT NOT NULL, url TEXT, time LONG NOT NULL);
+CREATE INDEX media_room_type_time ON media (room_id, type, time, unique_id);
@@ -0,0 +1,5 @@
+/**
+ * migration db v21 to v22
+ */
+
+CREATE TABLE room_sync (room_id LONG PRIMARY KEY, last_comment_id LONG DEFAULT 0, metadata_synced_at LONG DEFAULT 0);
@@ -0,0 +1,5 @@
+/**
+ * migration db v22 to v23
+ */
+
+CREATE INDEX comments_room_time ON comments (room_id, time);
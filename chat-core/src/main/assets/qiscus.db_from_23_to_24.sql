@@ -0,0 +1,8 @@
+/**
+ * migration db v23 to v24
+ */
+
+ALTER TABLE files ADD COLUMN size LONG DEFAULT 0;
+ALTER TABLE files ADD COLUMN last_access LONG DEFAULT 0;
+ALTER TABLE files ADD COLUMN pinned INTEGER DEFAULT 0;
+CREATE INDEX files_pinned_last_access ON files (pinned, last_access);
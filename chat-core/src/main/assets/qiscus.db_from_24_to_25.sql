@@ -0,0 +1,4 @@
+/**
+ * migration db v24 to v25
+ * comments.user_extras is added by QiscusDbOpenHelper only where it is missing
+ */
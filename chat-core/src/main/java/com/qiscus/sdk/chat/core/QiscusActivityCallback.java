@@ -20,6 +20,7 @@ import android.app.Activity;
 import android.app.Application;
 import android.os.Bundle;
 
+import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusServiceUtil;
 
@@ -76,7 +77,7 @@ enum QiscusActivityCallback implements Application.ActivityLifecycleCallbacks {
     }
 
     private void startActivityTransitionTimer() {
-        activityTransition = QiscusAndroidUtil.runOnBackgroundThread(() -> foreground = false,
+        activityTransition = QiscusAndroidUtil.runOnBackgroundThread(() -> setForeground(false),
                 MAX_ACTIVITY_TRANSITION_TIME);
     }
 
@@ -84,6 +85,16 @@ enum QiscusActivityCallback implements Application.ActivityLifecycleCallbacks {
         if (activityTransition != null) {
             activityTransition.cancel(true);
         }
-        foreground = true;
+        setForeground(true);
+    }
+
+    private void setForeground(boolean foreground) {
+        if (QiscusActivityCallback.foreground == foreground) {
+            return;
+        }
+        QiscusActivityCallback.foreground = foreground;
+        if (QiscusCore.hasSetupUser()) {
+            QiscusPusherApi.getInstance().onForegroundChanged(foreground);
+        }
     }
 }
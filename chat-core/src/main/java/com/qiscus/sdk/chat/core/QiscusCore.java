@@ -24,22 +24,35 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 
 import androidx.annotation.RestrictTo;
+import androidx.core.os.TraceCompat;
 
 import com.google.firebase.iid.FirebaseInstanceId;
 import com.google.gson.Gson;
 import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
 import com.qiscus.sdk.chat.core.data.local.QiscusDataBaseHelper;
 import com.qiscus.sdk.chat.core.data.local.QiscusDataStore;
+import com.qiscus.sdk.chat.core.data.local.QiscusEventCache;
+import com.qiscus.sdk.chat.core.data.local.QiscusLinkPreviewCache;
+import com.qiscus.sdk.chat.core.data.local.QiscusPendingCommentIndex;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusCoreChatConfig;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.chat.core.data.remote.QiscusResendCommentHelper;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomMemberManager;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomPrefetcher;
+import com.qiscus.sdk.chat.core.data.remote.QiscusUserDirectory;
 import com.qiscus.sdk.chat.core.event.QiscusUserEvent;
 import com.qiscus.sdk.chat.core.service.QiscusNetworkCheckerJobService;
+import com.qiscus.sdk.chat.core.service.QiscusPrefetchJobService;
 import com.qiscus.sdk.chat.core.service.QiscusSyncJobService;
 import com.qiscus.sdk.chat.core.service.QiscusSyncService;
 import com.qiscus.sdk.chat.core.util.BuildVersionUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusServiceUtil;
 
 import org.greenrobot.eventbus.EventBus;
@@ -47,11 +60,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * @author Yuana andhikayuana@gmail.com
@@ -67,7 +82,9 @@ public class QiscusCore {
     private static LocalDataManager localDataManager;
     private static long heartBeat;
     private static long automaticHeartBeat;
-    private static QiscusDataStore dataStore;
+    private static volatile QiscusDataStore dataStore;
+    private static volatile Future<QiscusDataStore> dataStoreLoader;
+    private static volatile long dataStoreOpenTime;
     private static QiscusCoreChatConfig chatConfig;
     private static Handler appHandler;
     private static ScheduledThreadPoolExecutor taskExecutor;
@@ -200,6 +217,7 @@ public class QiscusCore {
     public static void initWithCustomServer(Application application, String qiscusAppId, String serverBaseUrl,
                                             String mqttBrokerUrl, boolean enableMqttLB, String baseURLLB) {
 
+        TraceCompat.beginSection("Qiscus:init");
         appInstance = application;
         appId = qiscusAppId;
 
@@ -208,9 +226,10 @@ public class QiscusCore {
         chatConfig = new QiscusCoreChatConfig();
 
         appHandler = new Handler(QiscusCore.getApps().getApplicationContext().getMainLooper());
-        taskExecutor = new ScheduledThreadPoolExecutor(5);
+        taskExecutor = QiscusExecutors.getExecutor(QiscusExecutors.Lane.IO);
         localDataManager = new LocalDataManager();
-        dataStore = new QiscusDataBaseHelper();
+        QiscusPendingCommentIndex.getInstance().setListener(QiscusResendCommentHelper::onCommentPending);
+        loadStorage(baseURLLB);
         heartBeat = 5000;
         automaticHeartBeat = 30000;
 
@@ -218,16 +237,50 @@ public class QiscusCore {
         QiscusCore.mqttBrokerUrl = mqttBrokerUrl;
         QiscusCore.baseURLLB = baseURLLB;
         enableEventReport = false;
-        localDataManager.setURLLB(baseURLLB);
 
         getAppConfig();
         configureFcmToken();
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Open and migrate the database, and load the shared preferences on background threads, so init
+     * does not touch the disk. Callers of {@link #getDataStore()} wait only if the database is not ready yet.
+     */
+    private static void loadStorage(String baseURLLB) {
+        long startTime = System.nanoTime();
+        synchronized (QiscusCore.class) {
+            dataStore = null;
+            dataStoreOpenTime = 0;
+            dataStoreLoader = QiscusExecutors.getExecutor(QiscusExecutors.Lane.IO).submit(() -> {
+                TraceCompat.beginSection("Qiscus:openDataStore");
+                try {
+                    return new QiscusDataBaseHelper();
+                } finally {
+                    TraceCompat.endSection();
+                    dataStoreOpenTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                    QiscusLogger.print("Data store ready in " + dataStoreOpenTime + " ms");
+                }
+            });
+        }
+
+        QiscusExecutors.execute(QiscusExecutors.Lane.IO, () -> {
+            TraceCompat.beginSection("Qiscus:loadPreferences");
+            try {
+                localDataManager.setURLLB(baseURLLB);
+                localDataManager.getToken();
+            } finally {
+                TraceCompat.endSection();
+            }
+        });
+        QiscusExecutors.execute(QiscusExecutors.Lane.IO, QiscusCacheManager::getInstance);
+        QiscusExecutors.execute(QiscusExecutors.Lane.IO, QiscusEventCache::getInstance);
     }
 
     private static void getAppConfig() {
         QiscusApi.getInstance()
                 .getAppConfig()
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(appConfig -> {
                     enableEventReport = appConfig.getEnableEventReport();
@@ -274,6 +327,7 @@ public class QiscusCore {
                     enableRealtime = appConfig.getEnableRealtime();
                     startSyncService();
                     startNetworkCheckerService();
+                    startPrefetchService();
                     QiscusCore.getApps().registerActivityLifecycleCallbacks(QiscusActivityCallback.INSTANCE);
 
                 }, throwable -> {
@@ -282,6 +336,7 @@ public class QiscusCore {
                     QiscusCore.setCacheMqttBrokerUrl(mqttBrokerUrl, false);
                     startSyncService();
                     startNetworkCheckerService();
+                    startPrefetchService();
                     QiscusCore.getApps().registerActivityLifecycleCallbacks(QiscusActivityCallback.INSTANCE);
                 });
 
@@ -350,6 +405,15 @@ public class QiscusCore {
         }
     }
 
+    /**
+     * start room prefetch and comment compaction job service if in lollipop or higher and there is a user to prefetch for
+     */
+    private static void startPrefetchService() {
+        if (BuildVersionUtil.isLollipopOrHigher() && hasSetupUser()) {
+            QiscusPrefetchJobService.scheduleJob(getApps());
+        }
+    }
+
     /**
      * start network checker job service if in oreo or higher
      */
@@ -588,17 +652,79 @@ public class QiscusCore {
      * @return Singleton of qiscus data store
      */
     public static QiscusDataStore getDataStore() {
+        Future<QiscusDataStore> loader = dataStoreLoader;
+        if (dataStore == null && loader != null) {
+            QiscusDataStore loadedDataStore = awaitDataStore(loader);
+            synchronized (QiscusCore.class) {
+                //Unless a store was set or init ran again while waiting
+                if (dataStore == null && dataStoreLoader == loader) {
+                    dataStore = loadedDataStore;
+                }
+                return dataStore != null ? dataStore : loadedDataStore;
+            }
+        }
         return dataStore;
     }
 
+    /**
+     * Check whether the data store can be used without waiting for the database to be opened
+     *
+     * @return true if the data store is ready
+     */
+    public static boolean isDataStoreReady() {
+        return dataStore != null || (dataStoreLoader != null && dataStoreLoader.isDone());
+    }
+
+    /**
+     * Block until the local database is opened and migrated. Local stores that use the database directly
+     * call this first, so they never race the migration of init, even when another data store was set.
+     */
+    public static void waitForDataStore() {
+        Future<QiscusDataStore> loader = dataStoreLoader;
+        if (loader != null && !loader.isDone()) {
+            awaitDataStore(loader);
+        }
+    }
+
+    /**
+     * Time taken to open and migrate the local database after init, useful to measure cold start
+     *
+     * @return open time in milliseconds, or 0 if it is not opened yet
+     */
+    public static long getDataStoreOpenTime() {
+        return dataStoreOpenTime;
+    }
+
+    private static QiscusDataStore awaitDataStore(Future<QiscusDataStore> loader) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return loader.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to open qiscus data store", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * Use this method if you want to use your own data store implementation, e.g using Realm, your own table,
-     * your own orm, etc
+     * your own orm, etc. {@link com.qiscus.sdk.chat.core.data.local.QiscusMemoryDataStore} keeps everything in memory.
      *
      * @param dataStore Your own chat datastore
      */
     public static void setDataStore(QiscusDataStore dataStore) {
-        QiscusCore.dataStore = dataStore;
+        //Same lock as the loader hand off, so a store set while the database opens is never replaced by it
+        synchronized (QiscusCore.class) {
+            QiscusCore.dataStore = dataStore;
+        }
     }
 
     /**
@@ -641,6 +767,7 @@ public class QiscusCore {
                         QiscusCore.localDataManager.saveAccountInfo(qiscusAccount);
                         configureFcmToken();
                         EventBus.getDefault().post(QiscusUserEvent.LOGIN);
+                        startPrefetchService();
                     }
                 });
     }
@@ -662,6 +789,7 @@ public class QiscusCore {
                         QiscusCore.localDataManager.saveAccountInfo(qiscusAccount);
                         configureFcmToken();
                         EventBus.getDefault().post(QiscusUserEvent.LOGIN);
+                        startPrefetchService();
                     }
                 });
     }
@@ -675,7 +803,7 @@ public class QiscusCore {
     @Deprecated
     public static void setUser(String token, SetUserListener listener) {
         setUserWithIdentityToken(token)
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(listener::onSuccess, listener::onError);
     }
@@ -688,7 +816,7 @@ public class QiscusCore {
      */
     public static void setUserWithIdentityToken(String token, SetUserListener listener) {
         setUserWithIdentityToken(token)
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(listener::onSuccess, listener::onError);
     }
@@ -741,7 +869,7 @@ public class QiscusCore {
     public static void updateUser(String name, String avatarUrl, JSONObject extras, SetUserListener listener) {
         checkUserSetup();
         updateUser(name, avatarUrl, extras)
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(listener::onSuccess, listener::onError);
     }
@@ -806,7 +934,7 @@ public class QiscusCore {
     public static void setFcmToken(String fcmToken) {
         if (hasSetupUser() && getChatConfig().isEnableFcmPushNotification()) {
             QiscusApi.getInstance().registerFcmToken(fcmToken)
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(aVoid -> {
                     }, throwable -> QiscusErrorLogger.print("SetFCMToken", throwable));
@@ -823,7 +951,7 @@ public class QiscusCore {
     public static void registerDeviceToken(String token) {
         if (hasSetupUser() && getChatConfig().isEnableFcmPushNotification()) {
             QiscusApi.getInstance().registerDeviceToken(token)
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(aVoid -> {
                     }, throwable -> QiscusErrorLogger.print("SetFCMToken", throwable));
@@ -840,7 +968,7 @@ public class QiscusCore {
     public static void removeDeviceToken(String token) {
         if (hasSetupUser()) {
             QiscusApi.getInstance().removeDeviceToken(token)
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(aVoid -> {
                     }, throwable -> QiscusErrorLogger.print("SetFCMToken", throwable));
@@ -850,7 +978,7 @@ public class QiscusCore {
     }
 
     private static void configureFcmToken() {
-        if (hasSetupUser() && getChatConfig().isEnableFcmPushNotification()) {
+        if (getChatConfig().isEnableFcmPushNotification() && hasSetupUser()) {
             String fcmToken = getFcmToken();
             if (fcmToken != null) {
                 registerDeviceToken(fcmToken);
@@ -863,7 +991,7 @@ public class QiscusCore {
                                 //Do nothing
                             }
                         })
-                        .subscribeOn(Schedulers.io())
+                        .subscribeOn(QiscusSchedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(aVoid -> {
                         }, throwable -> {
@@ -882,7 +1010,7 @@ public class QiscusCore {
     }
 
     /**
-     * Needed to run something at background thread handler
+     * Needed to run something at background thread handler, it is the io lane of {@link QiscusExecutors}
      *
      * @return ScheduledExecutorService instance
      */
@@ -900,10 +1028,17 @@ public class QiscusCore {
             if (jobScheduler != null) {
                 jobScheduler.cancelAll();
             }
+        } else if (BuildVersionUtil.isLollipopOrHigher()) {
+            QiscusPrefetchJobService.cancelJob(appInstance);
         }
+        QiscusRoomPrefetcher.getInstance().clear();
+        QiscusRoomMemberManager.getInstance().clear();
+        QiscusUserDirectory.getInstance().clear();
+        QiscusUnreadCounter.getInstance().clear();
         localDataManager.clearData();
-        dataStore.clear();
+        getDataStore().clear();
         QiscusCacheManager.getInstance().clearData();
+        QiscusLinkPreviewCache.getInstance().clear();
         EventBus.getDefault().post(QiscusUserEvent.LOGOUT);
     }
 
@@ -927,11 +1062,11 @@ public class QiscusCore {
         private final SharedPreferences sharedPreferences;
         private final Gson gson;
         private String token;
+        private boolean tokenLoaded;
 
         LocalDataManager() {
             sharedPreferences = QiscusCore.getApps().getSharedPreferences("qiscus.cfg", Context.MODE_PRIVATE);
             gson = new Gson();
-            token = isLogged() ? getAccountInfo().getToken() : null;
         }
 
         private boolean isLogged() {
@@ -968,12 +1103,21 @@ public class QiscusCore {
             return qiscusAccount;
         }
 
-        private String getToken() {
+        /**
+         * Synchronized with {@link #setToken(String)}, so loading the saved token can not overwrite the token
+         * of a login that happened meanwhile
+         */
+        private synchronized String getToken() {
+            if (!tokenLoaded) {
+                token = isLogged() ? getAccountInfo().getToken() : null;
+                tokenLoaded = true;
+            }
             return token;
         }
 
-        private void setToken(String token) {
+        private synchronized void setToken(String token) {
             this.token = token;
+            tokenLoaded = true;
         }
 
         private String getFcmToken() {
@@ -1092,7 +1236,7 @@ public class QiscusCore {
          * @param listener Listener of saving user process
          */
         public void save(SetUserListener listener) {
-            save().subscribeOn(Schedulers.io())
+            save().subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
@@ -1113,6 +1257,7 @@ public class QiscusCore {
                             QiscusCore.localDataManager.saveAccountInfo(qiscusAccount);
                             configureFcmToken();
                             EventBus.getDefault().post(QiscusUserEvent.LOGIN);
+                            startPrefetchService();
                         }
                     });
         }
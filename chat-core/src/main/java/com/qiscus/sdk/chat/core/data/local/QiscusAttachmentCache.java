@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the downloaded attachments recorded in the files table under
+ * {@link com.qiscus.sdk.chat.core.data.model.QiscusCoreChatConfig#getAttachmentCacheQuota()}.
+ * The least recently used files are deleted first, pinned files and files used in the last minutes
+ * are never deleted. Attachments that are still uploading are not recorded in the files table yet,
+ * so they are never touched.
+ */
+public enum QiscusAttachmentCache {
+    INSTANCE;
+
+    private static final String TAG = "QiscusAttachmentCache";
+    private static final long IN_USE_WINDOW = TimeUnit.MINUTES.toMillis(10);
+    private static final int DELETE_BATCH_SIZE = 200;
+
+    private final Map<Long, String> existingFiles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> pendingAccesses = new ConcurrentHashMap<>();
+    private final AtomicLong cacheSize = new AtomicLong(-1);
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+
+    public static QiscusAttachmentCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the file of the comment if it was seen to exist, without touching the file system. The entry is
+     * trusted until opening the file fails or the sweep finds it missing.
+     */
+    File getIndexedFile(long commentId) {
+        String path = existingFiles.get(commentId);
+        if (path == null) {
+            return null;
+        }
+        pendingAccesses.put(commentId, System.currentTimeMillis());
+        return new File(path);
+    }
+
+    /**
+     * Remember that the file of the comment exists
+     */
+    void onFileFound(long commentId, String path) {
+        existingFiles.put(commentId, path);
+        pendingAccesses.put(commentId, System.currentTimeMillis());
+    }
+
+    /**
+     * Forget the file of the comment when it could not be opened, e.g. it was deleted outside of the sdk,
+     * so the next lookup checks the file system again
+     */
+    public void onFileOpenFailed(long commentId) {
+        existingFiles.remove(commentId);
+    }
+
+    void onFileAdded(long commentId, String path) {
+        onFileFound(commentId, path);
+        long size = cacheSize.get();
+        if (size >= 0) {
+            cacheSize.addAndGet(new File(path).length());
+        }
+        sweepIfNeeded();
+    }
+
+    void onFileRemoved(long commentId) {
+        existingFiles.remove(commentId);
+        pendingAccesses.remove(commentId);
+        cacheSize.set(-1);
+    }
+
+    void clear() {
+        existingFiles.clear();
+        pendingAccesses.clear();
+        cacheSize.set(-1);
+    }
+
+    /**
+     * Pinned files are never deleted by the cache, for example files the user chose to keep
+     */
+    public void setPinned(long commentId, boolean pinned) {
+        ContentValues values = new ContentValues();
+        values.put(QiscusDb.FilesTable.COLUMN_PINNED, pinned ? 1 : 0);
+        QiscusDbWriter.getInstance().execute(database -> database.update(QiscusDb.FilesTable.TABLE_NAME, values,
+                QiscusDb.FilesTable.COLUMN_COMMENT_ID + " = " + commentId, null));
+    }
+
+    /**
+     * @return total size in bytes of the downloaded attachments
+     */
+    public long getCacheSize() {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT SUM(" + QiscusDb.FilesTable.COLUMN_SIZE + ") FROM "
+                + QiscusDb.FilesTable.TABLE_NAME, null);
+        try {
+            long size = cursor.moveToNext() ? cursor.getLong(0) : 0;
+            cacheSize.set(size);
+            return size;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return size in bytes of the local database, from its page count and page size
+     */
+    public long getDatabaseSize() {
+        return getPragma("page_count") * getPragma("page_size");
+    }
+
+    /**
+     * Run {@link #sweep()} on the sync lane if the cache may be over its quota
+     */
+    public void sweepIfNeeded() {
+        long quota = QiscusCore.getChatConfig().getAttachmentCacheQuota();
+        long size = cacheSize.get();
+        if (quota > 0 && (size < 0 || size > quota) && sweepScheduled.compareAndSet(false, true)) {
+            QiscusExecutors.execute(QiscusExecutors.Lane.SYNC, () -> {
+                try {
+                    sweep();
+                } finally {
+                    sweepScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Save the last access times, forget missing files, including indexed ones, and delete the least recently used files
+     * until the cache is back under 90% of its quota. Must be called on a background thread.
+     *
+     * @return number of bytes deleted
+     */
+    public long sweep() {
+        try {
+            flushAccesses();
+            forgetMissingIndexedFiles();
+            refreshUnknownSizes();
+
+            long quota = QiscusCore.getChatConfig().getAttachmentCacheQuota();
+            long size = getCacheSize();
+            if (quota <= 0 || size <= quota) {
+                return 0;
+            }
+
+            long targetSize = quota / 10 * 9;
+            long deletedBytes = 0;
+            List<Long> deletedIds = new ArrayList<>();
+            Cursor cursor = getReadableDatabase().query(QiscusDb.FilesTable.TABLE_NAME,
+                    new String[]{QiscusDb.FilesTable.COLUMN_COMMENT_ID, QiscusDb.FilesTable.COLUMN_LOCAL_PATH,
+                            QiscusDb.FilesTable.COLUMN_SIZE},
+                    QiscusDb.FilesTable.COLUMN_PINNED + " = 0 AND " + QiscusDb.FilesTable.COLUMN_LAST_ACCESS + " < "
+                            + (System.currentTimeMillis() - IN_USE_WINDOW),
+                    null, null, null, QiscusDb.FilesTable.COLUMN_LAST_ACCESS + " ASC");
+            try {
+                while (size - deletedBytes > targetSize && cursor.moveToNext()) {
+                    long commentId = cursor.getLong(0);
+                    File file = new File(cursor.getString(1));
+                    if (!file.exists() || file.delete()) {
+                        deletedBytes += cursor.getLong(2);
+                        deletedIds.add(commentId);
+                        existingFiles.remove(commentId);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            deleteRows(deletedIds);
+            cacheSize.set(size - deletedBytes);
+            QiscusLogger.print(TAG, "Deleted " + deletedIds.size() + " files, " + deletedBytes + " bytes");
+            return deletedBytes;
+        } catch (Exception e) {
+            QiscusErrorLogger.print(TAG, e);
+            return 0;
+        }
+    }
+
+    private void flushAccesses() {
+        if (pendingAccesses.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> accesses = new HashMap<>(pendingAccesses);
+        for (Map.Entry<Long, Long> access : accesses.entrySet()) {
+            pendingAccesses.remove(access.getKey(), access.getValue());
+        }
+
+        QiscusDbWriter.getInstance().execute(database -> {
+            for (Map.Entry<Long, Long> access : accesses.entrySet()) {
+                database.execSQL("UPDATE " + QiscusDb.FilesTable.TABLE_NAME
+                        + " SET " + QiscusDb.FilesTable.COLUMN_LAST_ACCESS + " = MAX("
+                        + QiscusDb.FilesTable.COLUMN_LAST_ACCESS + ", " + access.getValue() + ")"
+                        + " WHERE " + QiscusDb.FilesTable.COLUMN_COMMENT_ID + " = " + access.getKey());
+            }
+        });
+    }
+
+    /**
+     * Lookups trust the index, so files deleted outside of the sdk are only found here
+     */
+    private void forgetMissingIndexedFiles() {
+        List<Long> missingIds = new ArrayList<>();
+        for (Map.Entry<Long, String> indexedFile : existingFiles.entrySet()) {
+            if (!new File(indexedFile.getValue()).exists()) {
+                missingIds.add(indexedFile.getKey());
+            }
+        }
+        deleteRows(missingIds);
+    }
+
+    /**
+     * Files recorded before the cache existed have no size yet, missing files are forgotten
+     */
+    private void refreshUnknownSizes() {
+        Map<Long, Long> sizes = new HashMap<>();
+        List<Long> missingIds = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().query(QiscusDb.FilesTable.TABLE_NAME,
+                new String[]{QiscusDb.FilesTable.COLUMN_COMMENT_ID, QiscusDb.FilesTable.COLUMN_LOCAL_PATH},
+                QiscusDb.FilesTable.COLUMN_SIZE + " = 0", null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                File file = new File(cursor.getString(1));
+                if (file.exists()) {
+                    sizes.put(cursor.getLong(0), file.length());
+                } else {
+                    missingIds.add(cursor.getLong(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (!sizes.isEmpty()) {
+            QiscusDbWriter.getInstance().execute(database -> {
+                for (Map.Entry<Long, Long> size : sizes.entrySet()) {
+                    database.execSQL("UPDATE " + QiscusDb.FilesTable.TABLE_NAME
+                            + " SET " + QiscusDb.FilesTable.COLUMN_SIZE + " = " + size.getValue()
+                            + " WHERE " + QiscusDb.FilesTable.COLUMN_COMMENT_ID + " = " + size.getKey());
+                }
+            });
+        }
+        deleteRows(missingIds);
+    }
+
+    private void deleteRows(List<Long> commentIds) {
+        for (int i = 0; i < commentIds.size(); i += DELETE_BATCH_SIZE) {
+            List<Long> batch = commentIds.subList(i, Math.min(commentIds.size(), i + DELETE_BATCH_SIZE));
+            StringBuilder ids = new StringBuilder();
+            for (Long commentId : batch) {
+                existingFiles.remove(commentId);
+                ids.append(ids.length() == 0 ? "" : ", ").append(commentId);
+            }
+            QiscusDbWriter.getInstance().execute(database -> database.delete(QiscusDb.FilesTable.TABLE_NAME,
+                    QiscusDb.FilesTable.COLUMN_COMMENT_ID + " IN (" + ids + ")", null));
+        }
+    }
+
+    private long getPragma(String pragma) {
+        Cursor cursor = getReadableDatabase().rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private SQLiteDatabase getReadableDatabase() {
+        return QiscusDbOpenHelper.getDatabase();
+    }
+}
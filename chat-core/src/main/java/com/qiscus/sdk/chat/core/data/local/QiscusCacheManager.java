@@ -16,8 +16,12 @@
 
 package com.qiscus.sdk.chat.core.data.local;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
 import androidx.core.util.Pair;
 import android.text.TextUtils;
 
@@ -27,11 +31,14 @@ import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.data.model.QiscusCommentDraft;
 import com.qiscus.sdk.chat.core.data.model.QiscusPushNotificationMessage;
 import com.qiscus.sdk.chat.core.data.model.QiscusReplyCommentDraft;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -42,12 +49,18 @@ import java.util.List;
  */
 public enum QiscusCacheManager {
     INSTANCE;
+    private static final String LEGACY_NOTIF_KEY_PREFIX = "push_notif_message_";
+    private static final int DEFAULT_MAX_MESSAGE_NOTIF_ITEMS = 50;
+
     private final SharedPreferences sharedPreferences;
     private final Gson gson;
+    private volatile int maxMessageNotifItems = DEFAULT_MAX_MESSAGE_NOTIF_ITEMS;
 
     QiscusCacheManager() {
         sharedPreferences = QiscusCore.getApps().getSharedPreferences("qiscus.cache", Context.MODE_PRIVATE);
         gson = new Gson();
+        //Keep the constructor cheap, it is usually reached from QiscusCore init
+        QiscusExecutors.execute(QiscusExecutors.Lane.IO, this::migrateLegacyMessageNotifItems);
     }
 
     public static QiscusCacheManager getInstance() {
@@ -61,67 +74,200 @@ public enum QiscusCacheManager {
     }
 
     public boolean addMessageNotifItem(QiscusPushNotificationMessage message, long roomId) {
-        List<QiscusPushNotificationMessage> notifItems = getMessageNotifItems(roomId);
-        if (notifItems == null) {
-            notifItems = new ArrayList<>();
-        }
+        boolean[] added = new boolean[1];
+        write(database -> {
+            added[0] = database.insertWithOnConflict(QiscusDb.NotificationMessageTable.TABLE_NAME, null,
+                    QiscusDb.NotificationMessageTable.toContentValues(message, roomId),
+                    SQLiteDatabase.CONFLICT_IGNORE) != -1;
+            if (added[0]) {
+                trimMessageNotifItems(database, roomId);
+            }
+        });
+        return added[0];
+    }
+
+    /**
+     * @return all kept notification messages of the room, oldest first
+     */
+    public List<QiscusPushNotificationMessage> getMessageNotifItems(long roomId) {
+        return getLatestMessageNotifItems(roomId, maxMessageNotifItems);
+    }
+
+    /**
+     * Get the newest notification messages of the room, e.g to render the inbox style lines
+     *
+     * @param roomId room id
+     * @param limit  maximum number of messages
+     * @return the messages, oldest first
+     */
+    public List<QiscusPushNotificationMessage> getLatestMessageNotifItems(long roomId, int limit) {
+        String query = "SELECT * FROM " + QiscusDb.NotificationMessageTable.TABLE_NAME
+                + " WHERE " + QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId
+                + " ORDER BY rowid DESC LIMIT " + limit;
 
-        if (!notifItems.contains(message)) {
-            notifItems.add(message);
-            sharedPreferences.edit()
-                    .putString("push_notif_message_" + roomId, gson.toJson(notifItems))
-                    .apply();
-            return true;
+        List<QiscusPushNotificationMessage> notifItems = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = getDatabase().rawQuery(query, null);
+            while (cursor.moveToNext()) {
+                notifItems.add(QiscusDb.NotificationMessageTable.parseCursor(cursor));
+            }
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
-        return false;
+        Collections.reverse(notifItems);
+        return notifItems;
     }
 
-    public List<QiscusPushNotificationMessage> getMessageNotifItems(long roomId) {
-        String json = sharedPreferences.getString("push_notif_message_" + roomId, "");
-        return gson.fromJson(json, new TypeToken<List<QiscusPushNotificationMessage>>() {
-        }.getType());
+    public int getMessageNotifCount(long roomId) {
+        try {
+            return (int) DatabaseUtils.queryNumEntries(getDatabase(), QiscusDb.NotificationMessageTable.TABLE_NAME,
+                    QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId);
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+            return 0;
+        }
     }
 
     public boolean updateMessageNotifItem(QiscusPushNotificationMessage message, long roomId) {
-        List<QiscusPushNotificationMessage> notifItems = getMessageNotifItems(roomId);
-        if (notifItems != null) {
-            int index = notifItems.indexOf(message);
-            if (index >= 0) {
-                if (message.getMessage().equals(notifItems.get(index).getMessage())) {
-                    return false;
+        return updateMessageNotifItems(Collections.singletonList(message), roomId);
+    }
+
+    /**
+     * Update several notification messages of a room in one transaction
+     *
+     * @return true if at least one message has changed
+     */
+    public boolean updateMessageNotifItems(List<QiscusPushNotificationMessage> messages, long roomId) {
+        boolean[] updated = new boolean[1];
+        write(database -> {
+            for (QiscusPushNotificationMessage message : messages) {
+                QiscusPushNotificationMessage savedMessage = getMessageNotifItem(database, message.getCommentId(), roomId);
+                if (savedMessage == null || TextUtils.equals(message.getMessage(), savedMessage.getMessage())) {
+                    continue;
                 }
 
-                if (TextUtils.isEmpty(message.getRoomName()) && !TextUtils.isEmpty(notifItems.get(index).getRoomName())) {
-                    message.setRoomName(notifItems.get(index).getRoomName());
-                    message.setRoomAvatar(notifItems.get(index).getRoomAvatar());
+                if (TextUtils.isEmpty(message.getRoomName()) && !TextUtils.isEmpty(savedMessage.getRoomName())) {
+                    message.setRoomName(savedMessage.getRoomName());
+                    message.setRoomAvatar(savedMessage.getRoomAvatar());
                 }
 
-                notifItems.set(index, message);
-                sharedPreferences.edit()
-                        .putString("push_notif_message_" + roomId, gson.toJson(notifItems))
-                        .apply();
-                return true;
+                database.update(QiscusDb.NotificationMessageTable.TABLE_NAME,
+                        QiscusDb.NotificationMessageTable.toContentValues(message, roomId),
+                        getMessageNotifItemWhere(message.getCommentId(), roomId), null);
+                updated[0] = true;
             }
-        }
-        return false;
+        });
+        return updated[0];
     }
 
     public boolean removeMessageNotifItem(QiscusPushNotificationMessage message, long roomId) {
-        List<QiscusPushNotificationMessage> notifItems = getMessageNotifItems(roomId);
-        if (notifItems != null) {
-            boolean deleted = notifItems.remove(message);
-            sharedPreferences.edit()
-                    .putString("push_notif_message_" + roomId, gson.toJson(notifItems))
-                    .apply();
-            return deleted;
-        }
-        return false;
+        return removeMessageNotifItems(Collections.singletonList(message), roomId);
+    }
+
+    /**
+     * Remove several notification messages of a room in one transaction
+     *
+     * @return true if at least one message has been removed
+     */
+    public boolean removeMessageNotifItems(List<QiscusPushNotificationMessage> messages, long roomId) {
+        boolean[] deleted = new boolean[1];
+        write(database -> {
+            for (QiscusPushNotificationMessage message : messages) {
+                if (database.delete(QiscusDb.NotificationMessageTable.TABLE_NAME,
+                        getMessageNotifItemWhere(message.getCommentId(), roomId), null) > 0) {
+                    deleted[0] = true;
+                }
+            }
+        });
+        return deleted[0];
     }
 
     public void clearMessageNotifItems(long roomId) {
-        sharedPreferences.edit()
-                .remove("push_notif_message_" + roomId)
-                .apply();
+        write(database -> database.delete(QiscusDb.NotificationMessageTable.TABLE_NAME,
+                QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId, null));
+    }
+
+    public int getMaxMessageNotifItems() {
+        return maxMessageNotifItems;
+    }
+
+    /**
+     * Set how many notification messages are kept per room, older messages are dropped. Default is 50.
+     */
+    public QiscusCacheManager setMaxMessageNotifItems(int maxMessageNotifItems) {
+        this.maxMessageNotifItems = Math.max(1, maxMessageNotifItems);
+        return this;
+    }
+
+    private void trimMessageNotifItems(SQLiteDatabase database, long roomId) {
+        database.execSQL("DELETE FROM " + QiscusDb.NotificationMessageTable.TABLE_NAME
+                + " WHERE " + QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId
+                + " AND rowid NOT IN (SELECT rowid FROM " + QiscusDb.NotificationMessageTable.TABLE_NAME
+                + " WHERE " + QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId
+                + " ORDER BY rowid DESC LIMIT " + maxMessageNotifItems + ")");
+    }
+
+    private QiscusPushNotificationMessage getMessageNotifItem(SQLiteDatabase database, long commentId, long roomId) {
+        Cursor cursor = database.rawQuery("SELECT * FROM " + QiscusDb.NotificationMessageTable.TABLE_NAME
+                + " WHERE " + getMessageNotifItemWhere(commentId, roomId), null);
+        try {
+            return cursor.moveToNext() ? QiscusDb.NotificationMessageTable.parseCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String getMessageNotifItemWhere(long commentId, long roomId) {
+        return QiscusDb.NotificationMessageTable.COLUMN_ROOM_ID + " = " + roomId + " AND "
+                + QiscusDb.NotificationMessageTable.COLUMN_COMMENT_ID + " = " + commentId;
+    }
+
+    /**
+     * Notification messages used to be stored as json in the shared preferences, move them to the database
+     */
+    private void migrateLegacyMessageNotifItems() {
+        SharedPreferences.Editor editor = null;
+        for (String key : sharedPreferences.getAll().keySet()) {
+            if (!key.startsWith(LEGACY_NOTIF_KEY_PREFIX)) {
+                continue;
+            }
+
+            try {
+                long roomId = Long.parseLong(key.substring(LEGACY_NOTIF_KEY_PREFIX.length()));
+                List<QiscusPushNotificationMessage> notifItems = gson.fromJson(sharedPreferences.getString(key, ""),
+                        new TypeToken<List<QiscusPushNotificationMessage>>() {
+                        }.getType());
+                if (notifItems != null) {
+                    for (QiscusPushNotificationMessage notifItem : notifItems) {
+                        addMessageNotifItem(notifItem, roomId);
+                    }
+                }
+            } catch (Exception e) {
+                QiscusErrorLogger.print(e);
+            }
+
+            if (editor == null) {
+                editor = sharedPreferences.edit();
+            }
+            editor.remove(key);
+        }
+
+        if (editor != null) {
+            editor.apply();
+        }
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return QiscusDbOpenHelper.getDatabase();
+    }
+
+    private void write(QiscusDbWriter.Write write) {
+        QiscusDbWriter.getInstance().execute(write);
     }
 
     public String getLastImagePath() {
@@ -169,7 +315,90 @@ public enum QiscusCacheManager {
                 .apply();
     }
 
+    /**
+     * @return time in millis of the last local comment compaction, or 0 if never
+     */
+    public long getLastCompactionTime() {
+        return sharedPreferences.getLong("last_compaction_time", 0);
+    }
+
+    public void setLastCompactionTime(long time) {
+        sharedPreferences.edit()
+                .putLong("last_compaction_time", time)
+                .apply();
+    }
+
+    /**
+     * @return id of the newest comment of the room that is known to be in sync with the server, or 0 if unknown
+     */
+    public long getRoomSyncedCommentId(long roomId) {
+        return getRoomSyncValue(roomId, QiscusDb.RoomSyncTable.COLUMN_LAST_COMMENT_ID);
+    }
+
+    /**
+     * Move the comment watermark of the room forward, it never goes back
+     */
+    public void setRoomSyncedCommentId(long roomId, long commentId) {
+        updateRoomSyncValue(roomId, QiscusDb.RoomSyncTable.COLUMN_LAST_COMMENT_ID, commentId, true);
+    }
+
+    /**
+     * @return time in millis the room info and members were last fetched, or 0 if never
+     */
+    public long getRoomMetadataSyncedAt(long roomId) {
+        return getRoomSyncValue(roomId, QiscusDb.RoomSyncTable.COLUMN_METADATA_SYNCED_AT);
+    }
+
+    public void setRoomMetadataSyncedAt(long roomId, long syncedAt) {
+        updateRoomSyncValue(roomId, QiscusDb.RoomSyncTable.COLUMN_METADATA_SYNCED_AT, syncedAt, false);
+    }
+
+    /**
+     * Forget the sync watermarks of the room, the next room open does a full reload
+     */
+    public void clearRoomSyncWatermarks(long roomId) {
+        write(database -> database.delete(QiscusDb.RoomSyncTable.TABLE_NAME,
+                QiscusDb.RoomSyncTable.COLUMN_ROOM_ID + " = " + roomId, null));
+    }
+
+    /**
+     * Forget the sync watermarks of every room, e.g. when the user logs out
+     */
+    public void clearRoomSyncWatermarks() {
+        write(database -> database.delete(QiscusDb.RoomSyncTable.TABLE_NAME, null, null));
+    }
+
+    private long getRoomSyncValue(long roomId, String column) {
+        Cursor cursor = null;
+        try {
+            cursor = getDatabase().rawQuery("SELECT " + column + " FROM " + QiscusDb.RoomSyncTable.TABLE_NAME
+                    + " WHERE " + QiscusDb.RoomSyncTable.COLUMN_ROOM_ID + " = " + roomId, null);
+            return cursor.moveToNext() ? cursor.getLong(0) : 0;
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+            return 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private void updateRoomSyncValue(long roomId, String column, long value, boolean forwardOnly) {
+        write(database -> {
+            ContentValues values = new ContentValues();
+            values.put(QiscusDb.RoomSyncTable.COLUMN_ROOM_ID, roomId);
+            database.insertWithOnConflict(QiscusDb.RoomSyncTable.TABLE_NAME, null, values,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+            database.execSQL("UPDATE " + QiscusDb.RoomSyncTable.TABLE_NAME + " SET " + column + " = "
+                    + (forwardOnly ? "MAX(" + column + ", " + value + ")" : value)
+                    + " WHERE " + QiscusDb.RoomSyncTable.COLUMN_ROOM_ID + " = " + roomId);
+        });
+    }
+
     public void clearData() {
         sharedPreferences.edit().clear().apply();
+        write(database -> database.delete(QiscusDb.NotificationMessageTable.TABLE_NAME, null, null));
+        clearRoomSyncWatermarks();
     }
 }
@@ -19,6 +19,7 @@ package com.qiscus.sdk.chat.core.data.local;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import rx.Observable;
@@ -58,6 +59,58 @@ public interface QiscusChatRoomStore {
 
     void deleteChatRoom(long roomId);
 
+    /**
+     * Stores that do not override it read the room and update it with the new count.
+     */
+    default void updateUnreadCount(long roomId, int unreadCount) {
+        QiscusChatRoom qiscusChatRoom = getChatRoom(roomId);
+        if (qiscusChatRoom != null) {
+            qiscusChatRoom.setUnreadCount(unreadCount);
+            update(qiscusChatRoom);
+        }
+    }
+
+    /**
+     * Stores that do not override it read the room and update it with the count plus one.
+     */
+    default void incrementUnreadCount(long roomId) {
+        QiscusChatRoom qiscusChatRoom = getChatRoom(roomId);
+        if (qiscusChatRoom != null) {
+            qiscusChatRoom.setUnreadCount(qiscusChatRoom.getUnreadCount() + 1);
+            update(qiscusChatRoom);
+        }
+    }
+
+    /**
+     * Stores that do not override it read the whole room.
+     *
+     * @return unread count of the room, 0 if the room is not saved
+     */
+    default int getUnreadCount(long roomId) {
+        QiscusChatRoom qiscusChatRoom = getChatRoom(roomId);
+        return qiscusChatRoom == null ? 0 : qiscusChatRoom.getUnreadCount();
+    }
+
+    /**
+     * Stores that do not override it read every room a page at a time and add up their counts.
+     *
+     * @return sum of the unread counts of every room
+     */
+    default int getTotalUnreadCount() {
+        int pageSize = 100;
+        int total = 0;
+        int offset = 0;
+        List<QiscusChatRoom> qiscusChatRooms;
+        do {
+            qiscusChatRooms = getChatRooms(pageSize, offset);
+            for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+                total += qiscusChatRoom.getUnreadCount();
+            }
+            offset += qiscusChatRooms.size();
+        } while (qiscusChatRooms.size() == pageSize);
+        return total;
+    }
+
     void addRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId);
 
     boolean isContainsRoomMember(long roomId, String email);
@@ -68,6 +121,38 @@ public interface QiscusChatRoomStore {
 
     List<QiscusRoomMember> getRoomMembers(long roomId);
 
+    /**
+     * Page of the members of a room, for rooms too big to load every member.
+     * <p>
+     * Stores that do not override it load every member and return the page.
+     *
+     * @param roomId the room id
+     * @param limit  max number of members, negative for no limit
+     * @param offset number of members to skip
+     * @return members of the page
+     */
+    default List<QiscusRoomMember> getRoomMembers(long roomId, int limit, int offset) {
+        List<QiscusRoomMember> qiscusRoomMembers = getRoomMembers(roomId);
+        int from = Math.min(Math.max(0, offset), qiscusRoomMembers.size());
+        int to = limit < 0 ? qiscusRoomMembers.size() : (int) Math.min((long) from + limit, qiscusRoomMembers.size());
+        return new ArrayList<>(qiscusRoomMembers.subList(from, to));
+    }
+
+    default int getRoomMemberCount(long roomId) {
+        return getRoomMembers(roomId).size();
+    }
+
+    /**
+     * Add or update many members of a room at once. Only members that differ from the saved ones are written.
+     * <p>
+     * Stores that do not override it save the members one by one.
+     */
+    default void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        for (QiscusRoomMember qiscusRoomMember : qiscusRoomMembers) {
+            addOrUpdateRoomMember(roomId, qiscusRoomMember, distinctId);
+        }
+    }
+
     void deleteRoomMember(long roomId, String email);
 
     void deleteRoomMembers(long roomId);
@@ -18,6 +18,8 @@ package com.qiscus.sdk.chat.core.data.local;
 
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import rx.Observable;
@@ -51,6 +53,43 @@ public interface QiscusCommentStore {
 
     QiscusComment getCommentByBeforeId(long beforeId);
 
+    /**
+     * @return the local comments with the given unique ids, oldest first
+     */
+    default List<QiscusComment> getComments(List<String> uniqueIds) {
+        List<QiscusComment> qiscusComments = new ArrayList<>(uniqueIds.size());
+        for (String uniqueId : uniqueIds) {
+            QiscusComment qiscusComment = getComment(uniqueId);
+            if (qiscusComment != null) {
+                qiscusComments.add(qiscusComment);
+            }
+        }
+        Collections.sort(qiscusComments, (lhs, rhs) -> lhs.getTime().compareTo(rhs.getTime()));
+        return qiscusComments;
+    }
+
+    /**
+     * Save the deleted comments in one transaction and remove their downloaded files. A hard delete
+     * also links the comment after each deleted comment to the comment before it.
+     * <p>
+     * Stores that do not override it save the comments one by one.
+     */
+    default void markCommentsDeleted(List<QiscusComment> qiscusComments, boolean hardDelete) {
+        for (QiscusComment qiscusComment : qiscusComments) {
+            if (hardDelete) {
+                QiscusComment commentAfter = getCommentByBeforeId(qiscusComment.getId());
+                if (commentAfter != null) {
+                    commentAfter.setCommentBeforeId(qiscusComment.getCommentBeforeId());
+                    addOrUpdate(commentAfter);
+                }
+            }
+            addOrUpdate(qiscusComment);
+            if (this instanceof QiscusFileStore) {
+                ((QiscusFileStore) this).deleteLocalPath(qiscusComment.getId());
+            }
+        }
+    }
+
     List<QiscusComment> getComments(long roomId);
 
     List<QiscusComment> getComments(long roomId, int limit);
@@ -79,6 +118,13 @@ public interface QiscusCommentStore {
 
     List<QiscusComment> getPendingComments();
 
+    /**
+     * @return how many comments are waiting to be sent, without loading them when the store can count them
+     */
+    default int getPendingCommentCount() {
+        return getPendingComments().size();
+    }
+
     Observable<List<QiscusComment>> getObservablePendingComments();
 
     List<QiscusComment> searchComments(String query, long roomId, int limit, int offset);
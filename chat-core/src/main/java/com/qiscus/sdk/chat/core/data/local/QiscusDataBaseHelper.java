@@ -16,10 +16,13 @@
 
 package com.qiscus.sdk.chat.core.data.local;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 
+import androidx.core.util.Pair;
+
 import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
@@ -30,44 +33,48 @@ import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import rx.Emitter;
 import rx.Observable;
 
 public class QiscusDataBaseHelper implements QiscusDataStore {
+    private static final int MAX_QUERY_ARGS = 500;
 
     protected final SQLiteDatabase sqLiteReadDatabase;
     protected final SQLiteDatabase sqLiteWriteDatabase;
 
     public QiscusDataBaseHelper() {
-        QiscusDbOpenHelper qiscusDbOpenHelper = new QiscusDbOpenHelper(QiscusCore.getApps());
+        QiscusDbOpenHelper qiscusDbOpenHelper = QiscusDbOpenHelper.getInstance(QiscusCore.getApps());
         sqLiteReadDatabase = qiscusDbOpenHelper.getReadableDatabase();
         sqLiteWriteDatabase = qiscusDbOpenHelper.getWritableDatabase();
     }
 
     @Override
     public void add(QiscusChatRoom qiscusChatRoom) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.RoomTable.TABLE_NAME, null,
-                    QiscusDb.RoomTable.toContentValues(qiscusChatRoom), SQLiteDatabase.CONFLICT_ABORT);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        QiscusDbWriter.Write membersWrite = qiscusChatRoom.getMember() == null ? null
+                : getRoomMembersWrite(qiscusChatRoom.getId(), qiscusChatRoom.getMember(), qiscusChatRoom.getDistinctId(), false);
+        QiscusComment comment = qiscusChatRoom.getLastComment();
+        boolean hasLastComment = comment != null && comment.getId() > 0;
 
-        if (qiscusChatRoom.getMember() != null) {
-            for (QiscusRoomMember member : qiscusChatRoom.getMember()) {
-                addRoomMember(qiscusChatRoom.getId(), member, qiscusChatRoom.getDistinctId());
+        //The room, its members and its last comment are saved together or not at all
+        write(database -> {
+            database.insertWithOnConflict(QiscusDb.RoomTable.TABLE_NAME, null,
+                    QiscusDb.RoomTable.toContentValues(qiscusChatRoom), SQLiteDatabase.CONFLICT_ABORT);
+            if (membersWrite != null) {
+                membersWrite.write(database);
             }
-        }
-
-        QiscusComment comment = qiscusChatRoom.getLastComment();
-        if (comment != null && comment.getId() > 0) {
-            addOrUpdate(comment);
+            if (hasLastComment) {
+                writeComment(database, comment);
+            }
+        });
+        QiscusUnreadCounter.getInstance().invalidate();
+        if (hasLastComment) {
+            QiscusPendingCommentIndex.getInstance().onCommentWritten(comment);
         }
     }
 
@@ -90,26 +97,23 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         String[] args = new String[]{String.valueOf(qiscusChatRoom.getId())};
 
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.update(QiscusDb.RoomTable.TABLE_NAME, QiscusDb.RoomTable.toContentValues(qiscusChatRoom), where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        QiscusDbWriter.Write membersWrite = qiscusChatRoom.getMember() == null || qiscusChatRoom.getMember().isEmpty() ? null
+                : getRoomMembersWrite(qiscusChatRoom.getId(), qiscusChatRoom.getMember(), qiscusChatRoom.getDistinctId(), true);
+        QiscusComment comment = qiscusChatRoom.getLastComment();
+        boolean hasLastComment = comment != null && comment.getId() > 0;
 
-        if (qiscusChatRoom.getMember() != null && !qiscusChatRoom.getMember().isEmpty()) {
-            deleteRoomMembers(qiscusChatRoom.getId());
-            for (QiscusRoomMember member : qiscusChatRoom.getMember()) {
-                addRoomMember(qiscusChatRoom.getId(), member, qiscusChatRoom.getDistinctId());
+        write(database -> {
+            database.update(QiscusDb.RoomTable.TABLE_NAME, QiscusDb.RoomTable.toContentValues(qiscusChatRoom), where, args);
+            if (membersWrite != null) {
+                membersWrite.write(database);
             }
-        }
-
-        QiscusComment comment = qiscusChatRoom.getLastComment();
-        if (comment != null && comment.getId() > 0) {
-            addOrUpdate(comment);
+            if (hasLastComment) {
+                writeComment(database, comment);
+            }
+        });
+        QiscusUnreadCounter.getInstance().invalidate();
+        if (hasLastComment) {
+            QiscusPendingCommentIndex.getInstance().onCommentWritten(comment);
         }
     }
 
@@ -316,30 +320,57 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         String where = QiscusDb.RoomTable.COLUMN_ID + " =? ";
         String[] args = new String[]{String.valueOf(roomId)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.RoomTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.delete(QiscusDb.RoomTable.TABLE_NAME, where, args));
+        //A room that comes back is loaded in full
+        QiscusCacheManager.getInstance().clearRoomSyncWatermarks(roomId);
+        QiscusUnreadCounter.getInstance().invalidate();
+    }
+
+    @Override
+    public void updateUnreadCount(long roomId, int unreadCount) {
+        String where = QiscusDb.RoomTable.COLUMN_ID + " =? ";
+        String[] args = new String[]{String.valueOf(roomId)};
+        ContentValues values = new ContentValues();
+        values.put(QiscusDb.RoomTable.COLUMN_UNREAD_COUNT, unreadCount);
+
+        write(database -> database.update(QiscusDb.RoomTable.TABLE_NAME, values, where, args));
+    }
+
+    @Override
+    public void incrementUnreadCount(long roomId) {
+        String sql = "UPDATE " + QiscusDb.RoomTable.TABLE_NAME
+                + " SET " + QiscusDb.RoomTable.COLUMN_UNREAD_COUNT + " = " + QiscusDb.RoomTable.COLUMN_UNREAD_COUNT + " + 1"
+                + " WHERE " + QiscusDb.RoomTable.COLUMN_ID + " = " + roomId;
+
+        write(database -> database.execSQL(sql));
+    }
+
+    @Override
+    public int getUnreadCount(long roomId) {
+        String query = "SELECT " + QiscusDb.RoomTable.COLUMN_UNREAD_COUNT + " FROM " + QiscusDb.RoomTable.TABLE_NAME
+                + " WHERE " + QiscusDb.RoomTable.COLUMN_ID + " = ?";
+
+        Cursor cursor = sqLiteReadDatabase.rawQuery(query, new String[]{String.valueOf(roomId)});
+        int unreadCount = cursor.moveToNext() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return unreadCount;
+    }
+
+    @Override
+    public int getTotalUnreadCount() {
+        String query = "SELECT SUM(" + QiscusDb.RoomTable.COLUMN_UNREAD_COUNT + ") FROM " + QiscusDb.RoomTable.TABLE_NAME;
+
+        Cursor cursor = sqLiteReadDatabase.rawQuery(query, null);
+        int total = cursor.moveToNext() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return total;
     }
 
     @Override
     public void addRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
-        distinctId = distinctId == null ? "default" : distinctId;
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.RoomMemberTable.TABLE_NAME, null,
-                    QiscusDb.RoomMemberTable.toContentValues(roomId, distinctId, qiscusRoomMember), SQLiteDatabase.CONFLICT_ABORT);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        String roomDistinctId = distinctId == null ? "default" : distinctId;
+        write(database -> database.insertWithOnConflict(QiscusDb.RoomMemberTable.TABLE_NAME, null,
+                QiscusDb.RoomMemberTable.toContentValues(roomId, roomDistinctId, qiscusRoomMember), SQLiteDatabase.CONFLICT_ABORT));
         addOrUpdate(qiscusRoomMember);
     }
 
@@ -361,63 +392,71 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void updateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
-        distinctId = distinctId == null ? "default" : distinctId;
+        String roomDistinctId = distinctId == null ? "default" : distinctId;
         String where = QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? " + " AND "
                 + QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL + " =? ";
 
         String[] args = new String[]{ String.valueOf(roomId), String.valueOf(qiscusRoomMember.getEmail())};
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.update(QiscusDb.RoomMemberTable.TABLE_NAME,
-                    QiscusDb.RoomMemberTable.toContentValues(roomId, distinctId, qiscusRoomMember), where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.update(QiscusDb.RoomMemberTable.TABLE_NAME,
+                QiscusDb.RoomMemberTable.toContentValues(roomId, roomDistinctId, qiscusRoomMember), where, args));
 
         addOrUpdate(qiscusRoomMember);
     }
 
     @Override
     public void addOrUpdateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.RoomMemberTable.TABLE_NAME, null,
-                    QiscusDb.RoomMemberTable.toContentValues(roomId, distinctId, qiscusRoomMember), SQLiteDatabase.CONFLICT_REPLACE);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.insertWithOnConflict(QiscusDb.RoomMemberTable.TABLE_NAME, null,
+                QiscusDb.RoomMemberTable.toContentValues(roomId, distinctId, qiscusRoomMember), SQLiteDatabase.CONFLICT_REPLACE));
 
         addOrUpdate(qiscusRoomMember);
     }
 
     @Override
     public List<QiscusRoomMember> getRoomMembers(long roomId) {
-        String query = "SELECT * FROM "
-                + QiscusDb.RoomMemberTable.TABLE_NAME + " WHERE "
-                + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? ";
+        return getRoomMembers(roomId, -1, 0);
+    }
+
+    @Override
+    public List<QiscusRoomMember> getRoomMembers(long roomId, int limit, int offset) {
+        //One query joining the members table instead of looking up every member by email
+        String query = "SELECT m.*, "
+                + "rm." + QiscusDb.RoomMemberTable.COLUMN_LAST_DELIVERED + " AS " + QiscusDb.RoomMemberTable.COLUMN_LAST_DELIVERED + ", "
+                + "rm." + QiscusDb.RoomMemberTable.COLUMN_LAST_READ + " AS " + QiscusDb.RoomMemberTable.COLUMN_LAST_READ
+                + " FROM " + QiscusDb.RoomMemberTable.TABLE_NAME + " rm"
+                + " JOIN " + QiscusDb.MemberTable.TABLE_NAME + " m ON m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL
+                + " = rm." + QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL
+                + " WHERE rm." + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? "
+                + " ORDER BY rm.rowid"
+                + " LIMIT " + limit + " OFFSET " + offset;
 
         String[] args = new String[]{String.valueOf(roomId)};
 
         Cursor cursor = sqLiteReadDatabase.rawQuery(query, args);
         List<QiscusRoomMember> members = new ArrayList<>();
         while (cursor.moveToNext()) {
-            QiscusRoomMember member = getMember(QiscusDb.RoomMemberTable.getUserEmail(cursor));
-            if (member != null) {
-                member.setLastDeliveredCommentId(QiscusDb.RoomMemberTable.getLastDeliveredCommentId(cursor));
-                member.setLastReadCommentId(QiscusDb.RoomMemberTable.getLastReadCommentId(cursor));
-                members.add(member);
-            }
+            QiscusRoomMember member = QiscusDb.MemberTable.getMember(cursor);
+            member.setLastDeliveredCommentId(QiscusDb.RoomMemberTable.getLastDeliveredCommentId(cursor));
+            member.setLastReadCommentId(QiscusDb.RoomMemberTable.getLastReadCommentId(cursor));
+            members.add(member);
         }
         cursor.close();
         return members;
     }
 
+    @Override
+    public int getRoomMemberCount(long roomId) {
+        return (int) DatabaseUtils.queryNumEntries(sqLiteReadDatabase, QiscusDb.RoomMemberTable.TABLE_NAME,
+                QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? ", new String[]{String.valueOf(roomId)});
+    }
+
+    @Override
+    public void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        QiscusDbWriter.Write membersWrite = getRoomMembersWrite(roomId, qiscusRoomMembers, distinctId, false);
+        if (membersWrite != null) {
+            write(membersWrite);
+        }
+    }
+
     @Override
     public void deleteRoomMember(long roomId, String email) {
         String where = QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? "
@@ -425,44 +464,20 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{String.valueOf(roomId), email};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.RoomMemberTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.delete(QiscusDb.RoomMemberTable.TABLE_NAME, where, args));
     }
 
     @Override
     public void deleteRoomMembers(long roomId) {
         String where = QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " = " + roomId;
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.RoomMemberTable.TABLE_NAME, where, null);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.delete(QiscusDb.RoomMemberTable.TABLE_NAME, where, null));
     }
 
     @Override
     public void add(QiscusRoomMember qiscusRoomMember) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.MemberTable.TABLE_NAME, null,
-                    QiscusDb.MemberTable.toContentValues(qiscusRoomMember), SQLiteDatabase.CONFLICT_ABORT);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.insertWithOnConflict(QiscusDb.MemberTable.TABLE_NAME, null,
+                QiscusDb.MemberTable.toContentValues(qiscusRoomMember), SQLiteDatabase.CONFLICT_ABORT));
     }
 
     @Override
@@ -485,30 +500,14 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{qiscusRoomMember.getEmail()};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.update(QiscusDb.MemberTable.TABLE_NAME,
-                    QiscusDb.MemberTable.toContentValues(qiscusRoomMember), where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.update(QiscusDb.MemberTable.TABLE_NAME,
+                QiscusDb.MemberTable.toContentValues(qiscusRoomMember), where, args));
     }
 
     @Override
     public void addOrUpdate(QiscusRoomMember qiscusRoomMember) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.MemberTable.TABLE_NAME, null,
-                    QiscusDb.MemberTable.toContentValues(qiscusRoomMember), SQLiteDatabase.CONFLICT_REPLACE);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.insertWithOnConflict(QiscusDb.MemberTable.TABLE_NAME, null,
+                QiscusDb.MemberTable.toContentValues(qiscusRoomMember), SQLiteDatabase.CONFLICT_REPLACE));
     }
 
     @Override
@@ -539,29 +538,26 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void add(QiscusComment qiscusComment) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
-                    QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_ABORT);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        boolean[] inserted = new boolean[1];
+        write(database -> {
+            if (database.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
+                    QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_ABORT) != -1) {
+                indexMedia(database, qiscusComment);
+                inserted[0] = true;
+            }
+        });
+        if (inserted[0]) {
+            QiscusPendingCommentIndex.getInstance().onCommentWritten(qiscusComment);
         }
     }
 
     @Override
     public void saveLocalPath(long roomId, long commentId, String localPath) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.FilesTable.TABLE_NAME, null,
-                    QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath), SQLiteDatabase.CONFLICT_ABORT);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        boolean[] inserted = new boolean[1];
+        write(database -> inserted[0] = database.insertWithOnConflict(QiscusDb.FilesTable.TABLE_NAME, null,
+                QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath), SQLiteDatabase.CONFLICT_ABORT) != -1);
+        if (inserted[0]) {
+            QiscusAttachmentCache.getInstance().onFileAdded(commentId, localPath);
         }
     }
 
@@ -600,15 +596,16 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{qiscusComment.getUniqueId()};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.update(QiscusDb.CommentTable.TABLE_NAME,
-                    QiscusDb.CommentTable.toContentValues(qiscusComment), where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        boolean[] updated = new boolean[1];
+        write(database -> {
+            if (database.update(QiscusDb.CommentTable.TABLE_NAME,
+                    QiscusDb.CommentTable.toContentValues(qiscusComment), where, args) > 0) {
+                indexMedia(database, qiscusComment);
+                updated[0] = true;
+            }
+        });
+        if (updated[0]) {
+            QiscusPendingCommentIndex.getInstance().onCommentWritten(qiscusComment);
         }
     }
 
@@ -619,44 +616,39 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{String.valueOf(commentId)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.update(QiscusDb.FilesTable.TABLE_NAME,
-                    QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath), where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        boolean[] updated = new boolean[1];
+        write(database -> updated[0] = database.update(QiscusDb.FilesTable.TABLE_NAME,
+                QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath), where, args) > 0);
+        if (updated[0]) {
+            //The size of the replaced file is not known anymore, let the cache sum the sizes again
+            QiscusAttachmentCache.getInstance().onFileRemoved(commentId);
+            QiscusAttachmentCache.getInstance().onFileAdded(commentId, localPath);
         }
     }
 
     @Override
     public void addOrUpdate(QiscusComment qiscusComment) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
-                    QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_REPLACE);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> writeComment(database, qiscusComment));
+        QiscusPendingCommentIndex.getInstance().onCommentWritten(qiscusComment);
     }
 
     @Override
     public void addOrUpdateLocalPath(long roomId, long commentId, String localPath) {
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.insertWithOnConflict(QiscusDb.FilesTable.TABLE_NAME, null,
-                    QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath), SQLiteDatabase.CONFLICT_REPLACE);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        String where = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " =? ";
+        String[] args = new String[]{String.valueOf(commentId)};
+
+        boolean[] replaced = new boolean[1];
+        write(database -> {
+            ContentValues values = QiscusDb.FilesTable.toContentValues(roomId, commentId, localPath);
+            replaced[0] = database.update(QiscusDb.FilesTable.TABLE_NAME, values, where, args) > 0;
+            if (!replaced[0]) {
+                database.insert(QiscusDb.FilesTable.TABLE_NAME, null, values);
+            }
+        });
+        if (replaced[0]) {
+            QiscusAttachmentCache.getInstance().onFileRemoved(commentId);
         }
+        QiscusAttachmentCache.getInstance().onFileAdded(commentId, localPath);
     }
 
     @Override
@@ -664,15 +656,11 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         String where = QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " =? ";
         String[] args = new String[]{qiscusComment.getUniqueId()};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> {
+            database.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
+            database.delete(QiscusDb.MediaTable.TABLE_NAME, QiscusDb.MediaTable.COLUMN_UNIQUE_ID + " =? ", args);
+        });
+        QiscusPendingCommentIndex.getInstance().onCommentDeleted(qiscusComment.getUniqueId());
         deleteLocalPath(qiscusComment.getId());
     }
 
@@ -691,15 +679,11 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         String where = QiscusDb.CommentTable.COLUMN_ROOM_ID + " =? ";
         String[] args = new String[]{String.valueOf(roomId)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> {
+            database.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
+            database.delete(QiscusDb.MediaTable.TABLE_NAME, QiscusDb.MediaTable.COLUMN_ROOM_ID + " =? ", args);
+        });
+        QiscusPendingCommentIndex.getInstance().invalidate();
 
         return true;
     }
@@ -721,15 +705,12 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{String.valueOf(roomId), String.valueOf(timestampOffset)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> {
+            database.delete(QiscusDb.CommentTable.TABLE_NAME, where, args);
+            database.delete(QiscusDb.MediaTable.TABLE_NAME, QiscusDb.MediaTable.COLUMN_ROOM_ID + " =? " + " AND "
+                    + QiscusDb.MediaTable.COLUMN_TIME + " <=? ", args);
+        });
+        QiscusPendingCommentIndex.getInstance().invalidate();
 
         return true;
     }
@@ -745,15 +726,7 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{String.valueOf(roomId), String.valueOf(commentId)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.execSQL(sql, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.execSQL(sql, args));
     }
 
     @Override
@@ -767,19 +740,17 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
         String[] args = new String[]{String.valueOf(roomId), String.valueOf(commentId)};
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            sqLiteWriteDatabase.execSQL(sql, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
-        }
+        write(database -> database.execSQL(sql, args));
     }
 
     @Override
     public File getLocalPath(long commentId) {
+        //Files deleted outside of the sdk are dropped from the index when opening them fails or by the sweep
+        File indexedFile = QiscusAttachmentCache.getInstance().getIndexedFile(commentId);
+        if (indexedFile != null) {
+            return indexedFile;
+        }
+
         String query = "SELECT * FROM "
                 + QiscusDb.FilesTable.TABLE_NAME + " WHERE "
                 + QiscusDb.FilesTable.COLUMN_COMMENT_ID + " =? ";
@@ -791,6 +762,7 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
             File file = new File(QiscusDb.FilesTable.parseCursor(cursor));
             cursor.close();
             if (file.exists()) {
+                QiscusAttachmentCache.getInstance().onFileFound(commentId, file.getPath());
                 return file;
             }
             return null;
@@ -807,18 +779,140 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
             file.delete();
         }
 
-        sqLiteWriteDatabase.beginTransactionNonExclusive();
-        try {
-            String where = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " =? ";
-            String[] args = new String[]{String.valueOf(commentId)};
+        String where = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " =? ";
+        String[] args = new String[]{String.valueOf(commentId)};
 
-            sqLiteWriteDatabase.delete(QiscusDb.FilesTable.TABLE_NAME, where, args);
-            sqLiteWriteDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteWriteDatabase.endTransaction();
+        write(database -> database.delete(QiscusDb.FilesTable.TABLE_NAME, where, args));
+        QiscusAttachmentCache.getInstance().onFileRemoved(commentId);
+    }
+
+    @Override
+    public List<Pair<QiscusComment, File>> getOlderLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                QiscusComment.Type mediaType, int limit) {
+        return getLocalMedia(qiscusComment, roomId, mediaType, true, limit);
+    }
+
+    @Override
+    public List<Pair<QiscusComment, File>> getNewerLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                QiscusComment.Type mediaType, int limit) {
+        return getLocalMedia(qiscusComment, roomId, mediaType, false, limit);
+    }
+
+    /**
+     * Only media whose file still exists are counted, like the pages. Rows of missing files are removed.
+     */
+    @Override
+    public int getOlderLocalMediaCount(QiscusComment qiscusComment, long roomId, QiscusComment.Type mediaType) {
+        List<String> args = new ArrayList<>();
+        String query = "SELECT " + QiscusDb.FilesTable.TABLE_NAME + "." + QiscusDb.FilesTable.COLUMN_COMMENT_ID + ", "
+                + QiscusDb.FilesTable.TABLE_NAME + "." + QiscusDb.FilesTable.COLUMN_LOCAL_PATH + " FROM "
+                + getLocalMediaFrom(qiscusComment, roomId, mediaType, true, args);
+        Cursor cursor = sqLiteReadDatabase.rawQuery(query, args.toArray(new String[args.size()]));
+        int count = 0;
+        List<Long> missingFiles = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            if (new File(QiscusDb.FilesTable.parseCursor(cursor)).exists()) {
+                count++;
+            } else {
+                missingFiles.add(cursor.getLong(0));
+            }
+        }
+        cursor.close();
+        removeMissingFiles(missingFiles);
+        return count;
+    }
+
+    /**
+     * Keyset paged read of the media index, ordered by (time, unique id) so a page never skips or
+     * repeats media with the same time. Rows whose file was deleted outside of the sdk are skipped and
+     * removed, reading goes on until the page is full so a short page always means there is no more.
+     */
+    private List<Pair<QiscusComment, File>> getLocalMedia(QiscusComment anchor, long roomId,
+                                                         QiscusComment.Type mediaType, boolean older, int limit) {
+        String media = QiscusDb.MediaTable.TABLE_NAME;
+        String time = media + "." + QiscusDb.MediaTable.COLUMN_TIME;
+        String uniqueId = media + "." + QiscusDb.MediaTable.COLUMN_UNIQUE_ID;
+        String order = older ? " DESC" : " ASC";
+
+        List<String> args = new ArrayList<>();
+        StringBuilder query = new StringBuilder("SELECT " + QiscusDb.CommentTable.TABLE_NAME + ".*, "
+                + QiscusDb.FilesTable.TABLE_NAME + "." + QiscusDb.FilesTable.COLUMN_LOCAL_PATH + " FROM "
+                + getLocalMediaFrom(anchor, roomId, mediaType, older, args));
+        query.append(" ORDER BY ").append(time).append(order).append(", ").append(uniqueId).append(order);
+
+        Cursor cursor = sqLiteReadDatabase.rawQuery(query.toString(), args.toArray(new String[args.size()]));
+        List<Pair<QiscusComment, File>> qiscusMedia = new ArrayList<>();
+        List<Long> missingFiles = new ArrayList<>();
+        while (qiscusMedia.size() < limit && cursor.moveToNext()) {
+            File file = new File(QiscusDb.FilesTable.parseCursor(cursor));
+            QiscusComment comment = QiscusDb.CommentTable.parseCursor(cursor);
+            if (!file.exists()) {
+                missingFiles.add(comment.getId());
+                continue;
+            }
+            QiscusRoomMember qiscusRoomMember = getMember(comment.getSenderEmail());
+            if (qiscusRoomMember != null) {
+                comment.setSender(qiscusRoomMember.getUsername());
+                comment.setSenderAvatar(qiscusRoomMember.getAvatar());
+            }
+            qiscusMedia.add(Pair.create(comment, file));
         }
+        cursor.close();
+        removeMissingFiles(missingFiles);
+        return qiscusMedia;
+    }
+
+    /**
+     * Forget the local paths of files that were deleted outside of the sdk
+     */
+    private void removeMissingFiles(List<Long> commentIds) {
+        if (commentIds.isEmpty()) {
+            return;
+        }
+
+        String where = QiscusDb.FilesTable.COLUMN_COMMENT_ID + " IN (" + getPlaceholders(commentIds.size()) + ")";
+        String[] args = new String[commentIds.size()];
+        for (int i = 0; i < commentIds.size(); i++) {
+            args[i] = String.valueOf(commentIds.get(i));
+        }
+        write(database -> database.delete(QiscusDb.FilesTable.TABLE_NAME, where, args));
+        for (long commentId : commentIds) {
+            QiscusAttachmentCache.getInstance().onFileRemoved(commentId);
+        }
+    }
+
+    /**
+     * Tables and conditions of the media of a room before or after the anchor, shared by the page and
+     * the count so both see the same media
+     */
+    private String getLocalMediaFrom(QiscusComment anchor, long roomId, QiscusComment.Type mediaType,
+                                     boolean older, List<String> args) {
+        String media = QiscusDb.MediaTable.TABLE_NAME;
+        String comments = QiscusDb.CommentTable.TABLE_NAME;
+        String files = QiscusDb.FilesTable.TABLE_NAME;
+        String time = media + "." + QiscusDb.MediaTable.COLUMN_TIME;
+        String uniqueId = media + "." + QiscusDb.MediaTable.COLUMN_UNIQUE_ID;
+        String operator = older ? " < " : " > ";
+
+        StringBuilder from = new StringBuilder(media
+                + " INNER JOIN " + comments + " ON " + comments + "." + QiscusDb.CommentTable.COLUMN_UNIQUE_ID
+                + " = " + uniqueId
+                + " INNER JOIN " + files + " ON " + files + "." + QiscusDb.FilesTable.COLUMN_COMMENT_ID
+                + " = " + media + "." + QiscusDb.MediaTable.COLUMN_COMMENT_ID
+                + " WHERE " + media + "." + QiscusDb.MediaTable.COLUMN_ROOM_ID + " =? " + " AND "
+                + media + "." + QiscusDb.MediaTable.COLUMN_TYPE + " =? " + " AND "
+                + comments + "." + QiscusDb.CommentTable.COLUMN_HARD_DELETED + " = " + 0);
+        args.add(String.valueOf(roomId));
+        args.add(mediaType.name());
+        if (anchor != null) {
+            from.append(" AND (").append(time).append(operator).append("?")
+                    .append(" OR (").append(time).append(" = ?").append(" AND ")
+                    .append(uniqueId).append(operator).append("?))");
+            args.add(String.valueOf(anchor.getTime().getTime()));
+            args.add(String.valueOf(anchor.getTime().getTime()));
+            args.add(anchor.getUniqueId());
+        }
+        return from.toString();
     }
 
     @Override
@@ -893,6 +987,83 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         }
     }
 
+    @Override
+    public List<QiscusComment> getComments(List<String> uniqueIds) {
+        List<QiscusComment> qiscusComments = new ArrayList<>(uniqueIds.size());
+        Map<String, QiscusRoomMember> members = new HashMap<>();
+        for (int i = 0; i < uniqueIds.size(); i += MAX_QUERY_ARGS) {
+            List<String> batch = uniqueIds.subList(i, Math.min(uniqueIds.size(), i + MAX_QUERY_ARGS));
+            String query = "SELECT * FROM "
+                    + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
+                    + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " IN (" + getPlaceholders(batch.size()) + ")";
+
+            Cursor cursor = sqLiteReadDatabase.rawQuery(query, batch.toArray(new String[0]));
+            while (cursor.moveToNext()) {
+                QiscusComment qiscusComment = QiscusDb.CommentTable.parseCursor(cursor);
+                if (!members.containsKey(qiscusComment.getSenderEmail())) {
+                    members.put(qiscusComment.getSenderEmail(), getMember(qiscusComment.getSenderEmail()));
+                }
+                QiscusRoomMember qiscusRoomMember = members.get(qiscusComment.getSenderEmail());
+                if (qiscusRoomMember != null) {
+                    qiscusComment.setSender(qiscusRoomMember.getUsername());
+                    qiscusComment.setSenderAvatar(qiscusRoomMember.getAvatar());
+                }
+                qiscusComments.add(qiscusComment);
+            }
+            cursor.close();
+        }
+        Collections.sort(qiscusComments, (comment1, comment2) -> comment1.getTime().compareTo(comment2.getTime()));
+        return qiscusComments;
+    }
+
+    @Override
+    public void markCommentsDeleted(List<QiscusComment> qiscusComments, boolean hardDelete) {
+        if (qiscusComments.isEmpty()) {
+            return;
+        }
+
+        List<Pair<Long, File>> localFiles = new ArrayList<>();
+        for (QiscusComment qiscusComment : qiscusComments) {
+            File file = getLocalPath(qiscusComment.getId());
+            if (file != null) {
+                localFiles.add(Pair.create(qiscusComment.getId(), file));
+            }
+        }
+
+        write(database -> {
+            for (QiscusComment qiscusComment : qiscusComments) {
+                String[] args = new String[]{qiscusComment.getUniqueId()};
+                if (hardDelete) {
+                    //Comments are deleted oldest first, so a chain of deleted comments collapses to the oldest one
+                    database.execSQL("UPDATE " + QiscusDb.CommentTable.TABLE_NAME
+                                    + " SET " + QiscusDb.CommentTable.COLUMN_COMMENT_BEFORE_ID + " = "
+                                    + "(SELECT " + QiscusDb.CommentTable.COLUMN_COMMENT_BEFORE_ID
+                                    + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                                    + " WHERE " + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " =? )"
+                                    + " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " =? "
+                                    + " AND " + QiscusDb.CommentTable.COLUMN_COMMENT_BEFORE_ID + " =? ",
+                            new Object[]{qiscusComment.getUniqueId(), qiscusComment.getRoomId(), qiscusComment.getId()});
+                }
+
+                ContentValues values = new ContentValues();
+                values.put(QiscusDb.CommentTable.COLUMN_MESSAGE, qiscusComment.getMessage());
+                values.put(QiscusDb.CommentTable.COLUMN_TYPE, qiscusComment.getRawType());
+                values.put(QiscusDb.CommentTable.COLUMN_DELETED, 1);
+                values.put(QiscusDb.CommentTable.COLUMN_HARD_DELETED, hardDelete ? 1 : 0);
+                database.update(QiscusDb.CommentTable.TABLE_NAME, values,
+                        QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " =? ", args);
+                database.delete(QiscusDb.MediaTable.TABLE_NAME, QiscusDb.MediaTable.COLUMN_UNIQUE_ID + " =? ", args);
+                database.delete(QiscusDb.FilesTable.TABLE_NAME, QiscusDb.FilesTable.COLUMN_COMMENT_ID + " =? ",
+                        new String[]{String.valueOf(qiscusComment.getId())});
+            }
+        });
+
+        for (Pair<Long, File> localFile : localFiles) {
+            localFile.second.delete();
+            QiscusAttachmentCache.getInstance().onFileRemoved(localFile.first);
+        }
+    }
+
     @Override
     public List<QiscusComment> getComments(long roomId) {
         String query = "SELECT * FROM "
@@ -1184,6 +1355,11 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
         return qiscusComments;
     }
 
+    @Override
+    public int getPendingCommentCount() {
+        return QiscusPendingCommentIndex.getInstance().getCount();
+    }
+
     @Override
     public Observable<List<QiscusComment>> getObservablePendingComments() {
         return Observable.create(subscriber -> {
@@ -1249,21 +1425,133 @@ public class QiscusDataBaseHelper implements QiscusDataStore {
 
     @Override
     public void clear() {
-        sqLiteReadDatabase.beginTransaction();
-        try {
-            sqLiteReadDatabase.delete(QiscusDb.RoomTable.TABLE_NAME, null, null);
-            sqLiteReadDatabase.delete(QiscusDb.MemberTable.TABLE_NAME, null, null);
-            sqLiteReadDatabase.delete(QiscusDb.RoomMemberTable.TABLE_NAME, null, null);
-            sqLiteReadDatabase.delete(QiscusDb.FilesTable.TABLE_NAME, null, null);
-            sqLiteReadDatabase.delete(QiscusDb.CommentTable.TABLE_NAME, null, null);
-            sqLiteReadDatabase.setTransactionSuccessful();
-        } catch (Exception e) {
-            QiscusErrorLogger.print(e);
-        } finally {
-            sqLiteReadDatabase.endTransaction();
+        write(database -> {
+            database.delete(QiscusDb.RoomTable.TABLE_NAME, null, null);
+            database.delete(QiscusDb.MemberTable.TABLE_NAME, null, null);
+            database.delete(QiscusDb.RoomMemberTable.TABLE_NAME, null, null);
+            database.delete(QiscusDb.FilesTable.TABLE_NAME, null, null);
+            database.delete(QiscusDb.CommentTable.TABLE_NAME, null, null);
+            database.delete(QiscusDb.MediaTable.TABLE_NAME, null, null);
+        });
+        QiscusAttachmentCache.getInstance().clear();
+        QiscusPendingCommentIndex.getInstance().invalidate();
+        QiscusUnreadCounter.getInstance().invalidate();
+    }
+
+    private String getPlaceholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
         }
+        return placeholders.toString();
+    }
+
+    /**
+     * Compare the members with the saved rows and build one write of only what changed. When replacing,
+     * saved members of the room that are not in the list are removed.
+     *
+     * @return the write, or null if nothing changed
+     */
+    private QiscusDbWriter.Write getRoomMembersWrite(long roomId, List<QiscusRoomMember> qiscusRoomMembers,
+                                                     String distinctId, boolean replace) {
+        String roomDistinctId = distinctId == null ? "default" : distinctId;
+        Map<String, ContentValues> savedRoomMembers = new HashMap<>();
+        Map<String, ContentValues> savedMembers = new HashMap<>();
+        String memberEmail = "member_email";
+        String query = "SELECT rm.*, "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL + " AS " + memberEmail + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_NAME + " AS " + QiscusDb.MemberTable.COLUMN_USER_NAME + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_AVATAR + " AS " + QiscusDb.MemberTable.COLUMN_USER_AVATAR + ", "
+                + "m." + QiscusDb.MemberTable.COLUMN_USER_EXTRAS + " AS " + QiscusDb.MemberTable.COLUMN_USER_EXTRAS
+                + " FROM " + QiscusDb.RoomMemberTable.TABLE_NAME + " rm"
+                + " LEFT JOIN " + QiscusDb.MemberTable.TABLE_NAME + " m ON m." + QiscusDb.MemberTable.COLUMN_USER_EMAIL
+                + " = rm." + QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL
+                + " WHERE rm." + QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? ";
+
+        Cursor cursor = sqLiteReadDatabase.rawQuery(query, new String[]{String.valueOf(roomId)});
+        while (cursor.moveToNext()) {
+            QiscusRoomMember member = QiscusDb.MemberTable.getMember(cursor);
+            member.setLastDeliveredCommentId(QiscusDb.RoomMemberTable.getLastDeliveredCommentId(cursor));
+            member.setLastReadCommentId(QiscusDb.RoomMemberTable.getLastReadCommentId(cursor));
+            String savedDistinctId = cursor.getString(cursor.getColumnIndexOrThrow(QiscusDb.RoomMemberTable.COLUMN_DISTINCT_ID));
+            savedRoomMembers.put(member.getEmail(), QiscusDb.RoomMemberTable.toContentValues(roomId, savedDistinctId, member));
+            if (!cursor.isNull(cursor.getColumnIndexOrThrow(memberEmail))) {
+                savedMembers.put(member.getEmail(), QiscusDb.MemberTable.toContentValues(member));
+            }
+        }
+        cursor.close();
+
+        List<ContentValues> roomMemberRows = new ArrayList<>();
+        List<ContentValues> memberRows = new ArrayList<>();
+        Set<String> emails = new HashSet<>();
+        for (QiscusRoomMember member : qiscusRoomMembers) {
+            emails.add(member.getEmail());
+            ContentValues roomMemberValues = QiscusDb.RoomMemberTable.toContentValues(roomId, roomDistinctId, member);
+            if (!roomMemberValues.equals(savedRoomMembers.get(member.getEmail()))) {
+                roomMemberRows.add(roomMemberValues);
+            }
+            ContentValues memberValues = QiscusDb.MemberTable.toContentValues(member);
+            if (!memberValues.equals(savedMembers.get(member.getEmail()))) {
+                memberRows.add(memberValues);
+            }
+        }
+
+        List<String> removedEmails = new ArrayList<>();
+        if (replace) {
+            for (String email : savedRoomMembers.keySet()) {
+                if (!emails.contains(email)) {
+                    removedEmails.add(email);
+                }
+            }
+        }
+
+        if (roomMemberRows.isEmpty() && memberRows.isEmpty() && removedEmails.isEmpty()) {
+            return null;
+        }
+
+        String where = QiscusDb.RoomMemberTable.COLUMN_ROOM_ID + " =? "
+                + " AND " + QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL + " =? ";
+        return database -> {
+            for (ContentValues values : roomMemberRows) {
+                database.insertWithOnConflict(QiscusDb.RoomMemberTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            for (ContentValues values : memberRows) {
+                database.insertWithOnConflict(QiscusDb.MemberTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            for (String email : removedEmails) {
+                database.delete(QiscusDb.RoomMemberTable.TABLE_NAME, where, new String[]{String.valueOf(roomId), email});
+            }
+        };
+    }
+
+    /**
+     * Run the write on the db write lane, it is committed together with the other queued writes
+     */
+    private void write(QiscusDbWriter.Write write) {
+        QiscusDbWriter.getInstance().execute(write);
     }
 
+    private void writeComment(SQLiteDatabase database, QiscusComment qiscusComment) {
+        database.insertWithOnConflict(QiscusDb.CommentTable.TABLE_NAME, null,
+                QiscusDb.CommentTable.toContentValues(qiscusComment), SQLiteDatabase.CONFLICT_REPLACE);
+        indexMedia(database, qiscusComment);
+    }
+
+    /**
+     * Keep the media index in sync with the comment, must be called inside the write of the comment
+     */
+    private void indexMedia(SQLiteDatabase database, QiscusComment qiscusComment) {
+        QiscusComment.Type mediaType = QiscusDb.MediaTable.getMediaType(qiscusComment);
+        if (mediaType == null) {
+            database.delete(QiscusDb.MediaTable.TABLE_NAME, QiscusDb.MediaTable.COLUMN_UNIQUE_ID + " =? ",
+                    new String[]{qiscusComment.getUniqueId()});
+        } else {
+            database.insertWithOnConflict(QiscusDb.MediaTable.TABLE_NAME, null,
+                    QiscusDb.MediaTable.toContentValues(qiscusComment, mediaType), SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+
     private void sortRooms(List<QiscusChatRoom> qiscusChatRooms) {
         Collections.sort(qiscusChatRooms, (room1, room2) -> {
             if (room1.getLastComment() != null && room2.getLastComment() != null) {
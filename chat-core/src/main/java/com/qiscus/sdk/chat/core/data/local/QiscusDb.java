@@ -21,16 +21,18 @@ import android.database.Cursor;
 
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusPushNotificationMessage;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.Date;
 
 final class QiscusDb {
     static final String DATABASE_NAME = "qiscus.db";
-    static final int DATABASE_VERSION = 18;
+    static final int DATABASE_VERSION = 25;
 
     abstract static class RoomTable {
         static final String TABLE_NAME = "rooms";
@@ -219,10 +221,14 @@ final class QiscusDb {
                         COLUMN_HARD_DELETED + " INTEGER DEFAULT 0," +
                         COLUMN_TYPE + " TEXT," +
                         COLUMN_PAYLOAD + " TEXT, " +
-                        COLUMN_EXTRAS + " TEXT " +
+                        COLUMN_EXTRAS + " TEXT, " +
                         COLUMN_USER_EXTRAS + " TEXT " +
                         " ); ";
 
+        static final String CREATE_INDEX =
+                "CREATE INDEX comments_room_time ON " + TABLE_NAME + " (" +
+                        COLUMN_ROOM_ID + ", " + COLUMN_TIME + "); ";
+
         static ContentValues toContentValues(QiscusComment qiscusComment) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_ID, qiscusComment.getId());
@@ -284,19 +290,31 @@ final class QiscusDb {
         static final String COLUMN_COMMENT_ID = "comment_id";
         static final String COLUMN_ROOM_ID = "room_id";
         static final String COLUMN_LOCAL_PATH = "local_path";
+        static final String COLUMN_SIZE = "size";
+        static final String COLUMN_LAST_ACCESS = "last_access";
+        static final String COLUMN_PINNED = "pinned";
 
         static final String CREATE =
                 "CREATE TABLE " + TABLE_NAME + " (" +
                         COLUMN_COMMENT_ID + " LONG PRIMARY KEY," +
                         COLUMN_ROOM_ID + " LONG NOT NULL," +
-                        COLUMN_LOCAL_PATH + " TEXT NOT NULL" +
+                        COLUMN_LOCAL_PATH + " TEXT NOT NULL," +
+                        COLUMN_SIZE + " LONG DEFAULT 0," +
+                        COLUMN_LAST_ACCESS + " LONG DEFAULT 0," +
+                        COLUMN_PINNED + " INTEGER DEFAULT 0" +
                         " ); ";
 
+        static final String CREATE_INDEX =
+                "CREATE INDEX files_pinned_last_access ON " + TABLE_NAME + " (" +
+                        COLUMN_PINNED + ", " + COLUMN_LAST_ACCESS + "); ";
+
         static ContentValues toContentValues(long roomId, long commentId, String localPath) {
             ContentValues values = new ContentValues();
             values.put(COLUMN_ROOM_ID, roomId);
             values.put(COLUMN_COMMENT_ID, commentId);
             values.put(COLUMN_LOCAL_PATH, localPath);
+            values.put(COLUMN_SIZE, new File(localPath).length());
+            values.put(COLUMN_LAST_ACCESS, System.currentTimeMillis());
             return values;
         }
 
@@ -304,4 +322,153 @@ final class QiscusDb {
             return cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCAL_PATH));
         }
     }
+
+    abstract static class LinkPreviewTable {
+        static final String TABLE_NAME = "link_previews";
+        static final String COLUMN_URL = "url";
+        static final String COLUMN_DATA = "data";
+        static final String COLUMN_FAILED = "failed";
+        static final String COLUMN_CACHED_AT = "cached_at";
+
+        static final String CREATE =
+                "CREATE TABLE " + TABLE_NAME + " (" +
+                        COLUMN_URL + " TEXT PRIMARY KEY," +
+                        COLUMN_DATA + " TEXT," +
+                        COLUMN_FAILED + " INTEGER DEFAULT 0," +
+                        COLUMN_CACHED_AT + " LONG NOT NULL" +
+                        " ); ";
+
+        static ContentValues toContentValues(String url, String data, boolean failed, long cachedAt) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_URL, url);
+            values.put(COLUMN_DATA, data);
+            values.put(COLUMN_FAILED, failed ? 1 : 0);
+            values.put(COLUMN_CACHED_AT, cachedAt);
+            return values;
+        }
+
+        static String getData(Cursor cursor) {
+            return cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_DATA));
+        }
+
+        static boolean isFailed(Cursor cursor) {
+            return cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_FAILED)) == 1;
+        }
+
+        static long getCachedAt(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CACHED_AT));
+        }
+    }
+
+    abstract static class NotificationMessageTable {
+        static final String TABLE_NAME = "notification_messages";
+        static final String COLUMN_ROOM_ID = "room_id";
+        static final String COLUMN_COMMENT_ID = "comment_id";
+        static final String COLUMN_MESSAGE = "message";
+        static final String COLUMN_ROOM_NAME = "room_name";
+        static final String COLUMN_ROOM_AVATAR = "room_avatar";
+
+        static final String CREATE =
+                "CREATE TABLE " + TABLE_NAME + " (" +
+                        COLUMN_ROOM_ID + " LONG NOT NULL," +
+                        COLUMN_COMMENT_ID + " LONG NOT NULL," +
+                        COLUMN_MESSAGE + " TEXT," +
+                        COLUMN_ROOM_NAME + " TEXT," +
+                        COLUMN_ROOM_AVATAR + " TEXT," +
+                        " PRIMARY KEY (" + COLUMN_ROOM_ID + ", " + COLUMN_COMMENT_ID + ")" +
+                        " ); ";
+
+        static ContentValues toContentValues(QiscusPushNotificationMessage message, long roomId) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_ROOM_ID, roomId);
+            values.put(COLUMN_COMMENT_ID, message.getCommentId());
+            values.put(COLUMN_MESSAGE, message.getMessage());
+            values.put(COLUMN_ROOM_NAME, message.getRoomName());
+            values.put(COLUMN_ROOM_AVATAR, message.getRoomAvatar());
+            return values;
+        }
+
+        static QiscusPushNotificationMessage parseCursor(Cursor cursor) {
+            QiscusPushNotificationMessage message = new QiscusPushNotificationMessage(
+                    cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_COMMENT_ID)),
+                    cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_MESSAGE)));
+            message.setRoomName(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROOM_NAME)));
+            message.setRoomAvatar(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ROOM_AVATAR)));
+            return message;
+        }
+    }
+
+    abstract static class MediaTable {
+        static final String TABLE_NAME = "media";
+        static final String COLUMN_UNIQUE_ID = "unique_id";
+        static final String COLUMN_COMMENT_ID = "comment_id";
+        static final String COLUMN_ROOM_ID = "room_id";
+        static final String COLUMN_TYPE = "type";
+        static final String COLUMN_URL = "url";
+        static final String COLUMN_TIME = "time";
+
+        static final String CREATE =
+                "CREATE TABLE " + TABLE_NAME + " (" +
+                        COLUMN_UNIQUE_ID + " TEXT PRIMARY KEY," +
+                        COLUMN_COMMENT_ID + " LONG NOT NULL," +
+                        COLUMN_ROOM_ID + " LONG NOT NULL," +
+                        COLUMN_TYPE + " TEXT NOT NULL," +
+                        COLUMN_URL + " TEXT," +
+                        COLUMN_TIME + " LONG NOT NULL" +
+                        " ); ";
+
+        static final String CREATE_INDEX =
+                "CREATE INDEX media_room_type_time ON " + TABLE_NAME + " (" +
+                        COLUMN_ROOM_ID + ", " + COLUMN_TYPE + ", " + COLUMN_TIME + ", " + COLUMN_UNIQUE_ID +
+                        "); ";
+
+        /**
+         * @return media type of the comment, or null if the comment is not an attachment
+         */
+        static QiscusComment.Type getMediaType(QiscusComment qiscusComment) {
+            if (qiscusComment.getMessage() == null || qiscusComment.isDeleted() || !qiscusComment.isAttachment()) {
+                return null;
+            } else if (qiscusComment.isImage()) {
+                return QiscusComment.Type.IMAGE;
+            } else if (qiscusComment.isVideo()) {
+                return QiscusComment.Type.VIDEO;
+            } else if (qiscusComment.isAudio()) {
+                return QiscusComment.Type.AUDIO;
+            }
+            return QiscusComment.Type.FILE;
+        }
+
+        static ContentValues toContentValues(QiscusComment qiscusComment, QiscusComment.Type mediaType) {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_UNIQUE_ID, qiscusComment.getUniqueId());
+            values.put(COLUMN_COMMENT_ID, qiscusComment.getId());
+            values.put(COLUMN_ROOM_ID, qiscusComment.getRoomId());
+            values.put(COLUMN_TYPE, mediaType.name());
+            values.put(COLUMN_URL, qiscusComment.getAttachmentUri().toString());
+            values.put(COLUMN_TIME, qiscusComment.getTime().getTime());
+            return values;
+        }
+    }
+
+    abstract static class RoomSyncTable {
+        static final String TABLE_NAME = "room_sync";
+        static final String COLUMN_ROOM_ID = "room_id";
+        static final String COLUMN_LAST_COMMENT_ID = "last_comment_id";
+        static final String COLUMN_METADATA_SYNCED_AT = "metadata_synced_at";
+
+        static final String CREATE =
+                "CREATE TABLE " + TABLE_NAME + " (" +
+                        COLUMN_ROOM_ID + " LONG PRIMARY KEY," +
+                        COLUMN_LAST_COMMENT_ID + " LONG DEFAULT 0," +
+                        COLUMN_METADATA_SYNCED_AT + " LONG DEFAULT 0" +
+                        " ); ";
+
+        static long getLastCommentId(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_COMMENT_ID));
+        }
+
+        static long getMetadataSyncedAt(Cursor cursor) {
+            return cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_METADATA_SYNCED_AT));
+        }
+    }
 }
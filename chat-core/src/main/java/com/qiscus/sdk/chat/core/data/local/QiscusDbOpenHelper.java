@@ -18,11 +18,16 @@ package com.qiscus.sdk.chat.core.data.local;
 
 import android.content.Context;
 import android.content.res.AssetManager;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.text.TextUtils;
 import android.util.Log;
 
+import androidx.core.os.TraceCompat;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
 
 import java.io.BufferedReader;
@@ -32,6 +37,8 @@ import java.io.InputStreamReader;
 
 class QiscusDbOpenHelper extends SQLiteOpenHelper {
 
+    private static QiscusDbOpenHelper instance;
+
     private Context context;
 
     QiscusDbOpenHelper(Context context) {
@@ -39,18 +46,48 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
         this.context = context;
     }
 
+    /**
+     * All local stores share one helper, so the database is opened and migrated only once. A new helper
+     * is created only when Qiscus is initialized again with another application, e.g. in tests.
+     */
+    static synchronized QiscusDbOpenHelper getInstance(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        if (instance == null || instance.context != applicationContext) {
+            instance = new QiscusDbOpenHelper(applicationContext);
+        }
+        return instance;
+    }
+
+    /**
+     * The database of the local stores, once {@link QiscusCore} has opened and migrated it. Stores must get
+     * the database here instead of from {@link #getInstance(Context)}.
+     */
+    static SQLiteDatabase getDatabase() {
+        QiscusCore.waitForDataStore();
+        return getInstance(QiscusCore.getApps()).getWritableDatabase();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
+        TraceCompat.beginSection("Qiscus:createDatabase");
         db.beginTransaction();
         try {
             db.execSQL(QiscusDb.RoomTable.CREATE);
             db.execSQL(QiscusDb.MemberTable.CREATE);
             db.execSQL(QiscusDb.RoomMemberTable.CREATE);
             db.execSQL(QiscusDb.CommentTable.CREATE);
+            db.execSQL(QiscusDb.CommentTable.CREATE_INDEX);
             db.execSQL(QiscusDb.FilesTable.CREATE);
+            db.execSQL(QiscusDb.FilesTable.CREATE_INDEX);
+            db.execSQL(QiscusDb.LinkPreviewTable.CREATE);
+            db.execSQL(QiscusDb.NotificationMessageTable.CREATE);
+            db.execSQL(QiscusDb.MediaTable.CREATE);
+            db.execSQL(QiscusDb.MediaTable.CREATE_INDEX);
+            db.execSQL(QiscusDb.RoomSyncTable.CREATE);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
+            TraceCompat.endSection();
         }
     }
 
@@ -76,6 +113,7 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
          * format filename : qiscus.db_from_{oldVersion}_to_{newVersion}.sql
          * example : qiscus.db_from_14_to_15.sql
          */
+        TraceCompat.beginSection("Qiscus:migrateDatabase");
         try {
             for (int i = oldVersion; i < newVersion; i++) {
                 String migrationName = String.format("qiscus.db_from_%d_to_%d.sql", i, (i + 1));
@@ -83,9 +121,72 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
                 readAndExecSQL(db, context, migrationName);
             }
 
+            //Comments are parsed while indexing the media, so their columns must be complete first
+            if (oldVersion < 25) {
+                addColumnIfMissing(db, QiscusDb.CommentTable.TABLE_NAME, QiscusDb.CommentTable.COLUMN_USER_EXTRAS);
+            }
+
+            if (oldVersion < 21) {
+                indexExistingMedia(db);
+            }
+
         } catch (Exception e) {
             QiscusLogger.print("Exception running upgrade scripts : " + e.getMessage());
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Media index was added in version 21, fill it with the attachments that are already stored.
+     * The media type is resolved from the file extension, so it can not be done by the sql script.
+     */
+    private void indexExistingMedia(SQLiteDatabase db) {
+        String query = "SELECT * FROM " + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
+                + QiscusDb.CommentTable.COLUMN_HARD_DELETED + " = 0 AND ("
+                + QiscusDb.CommentTable.COLUMN_MESSAGE + " LIKE '%[file]%' OR "
+                + QiscusDb.CommentTable.COLUMN_TYPE + " = 'file_attachment')";
+
+        db.beginTransaction();
+        Cursor cursor = db.rawQuery(query, null);
+        try {
+            while (cursor.moveToNext()) {
+                try {
+                    QiscusComment qiscusComment = QiscusDb.CommentTable.parseCursor(cursor);
+                    QiscusComment.Type mediaType = QiscusDb.MediaTable.getMediaType(qiscusComment);
+                    if (mediaType != null) {
+                        db.insertWithOnConflict(QiscusDb.MediaTable.TABLE_NAME, null,
+                                QiscusDb.MediaTable.toContentValues(qiscusComment, mediaType),
+                                SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                } catch (Exception e) {
+                    QiscusLogger.print("Failed indexing media : " + e.getMessage());
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            cursor.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Databases created from scratch before version 25 missed the user extras column of comments, so every
+     * comment insert failed there. Upgraded databases got it from the v18 script, so it can not be added
+     * by a sql script.
+     */
+    private void addColumnIfMissing(SQLiteDatabase db, String tableName, String columnName) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                if (columnName.equals(cursor.getString(cursor.getColumnIndexOrThrow("name")))) {
+                    return;
+                }
+            }
+        } finally {
+            cursor.close();
         }
+        db.execSQL("ALTER TABLE " + tableName + " ADD COLUMN " + columnName + " TEXT");
     }
 
     private void readAndExecSQL(SQLiteDatabase db, Context context, String migrationName) {
@@ -143,6 +244,10 @@ class QiscusDbOpenHelper extends SQLiteOpenHelper {
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.RoomMemberTable.TABLE_NAME);
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.CommentTable.TABLE_NAME);
             db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.FilesTable.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.LinkPreviewTable.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.NotificationMessageTable.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.MediaTable.TABLE_NAME);
+            db.execSQL("DROP TABLE IF EXISTS " + QiscusDb.RoomSyncTable.TABLE_NAME);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serializes local database writes on the db write lane. Writes that are queued at the same time
+ * are committed together in one transaction, and callers wait until their write is committed so
+ * they can read it right after.
+ */
+enum QiscusDbWriter {
+    INSTANCE;
+
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final String SAVEPOINT = "qiscus_write";
+
+    private final ConcurrentLinkedQueue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    static QiscusDbWriter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Run the write and wait until it is committed. A write must not open its own transaction. Every
+     * write runs in its own savepoint, a failing write is logged and rolled back entirely without
+     * affecting the other writes of the batch.
+     *
+     * @param write the write
+     */
+    void execute(Write write) {
+        if (QiscusExecutors.isOnLane(QiscusExecutors.Lane.DB_WRITE)) {
+            commit(getDatabase(), singleBatch(new PendingWrite(write)));
+            return;
+        }
+
+        PendingWrite pendingWrite = new PendingWrite(write);
+        queue.add(pendingWrite);
+        scheduleDrain();
+        pendingWrite.await();
+    }
+
+    /**
+     * @return average number of writes committed per transaction
+     */
+    float getAverageBatchSize() {
+        long commits = commitCount.get();
+        return commits == 0 ? 0 : (float) writeCount.get() / commits;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            QiscusExecutors.execute(QiscusExecutors.Lane.DB_WRITE, this::drain);
+        }
+    }
+
+    private void drain() {
+        SQLiteDatabase database = getDatabase();
+        while (true) {
+            List<PendingWrite> batch = new ArrayList<>();
+            PendingWrite pendingWrite;
+            while (batch.size() < MAX_BATCH_SIZE && (pendingWrite = queue.poll()) != null) {
+                batch.add(pendingWrite);
+            }
+
+            if (batch.isEmpty()) {
+                draining.set(false);
+                //Something may have been queued after the last poll but before we stopped draining
+                if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            commit(database, batch);
+        }
+    }
+
+    private void commit(SQLiteDatabase database, List<PendingWrite> batch) {
+        database.beginTransactionNonExclusive();
+        try {
+            for (PendingWrite pendingWrite : batch) {
+                database.execSQL("SAVEPOINT " + SAVEPOINT);
+                try {
+                    pendingWrite.write.write(database);
+                } catch (Exception e) {
+                    QiscusErrorLogger.print(e);
+                    //Older platforms take any statement starting with ROLLBACK for the end of the transaction
+                    database.execSQL(";ROLLBACK TO " + SAVEPOINT);
+                }
+                database.execSQL("RELEASE " + SAVEPOINT);
+            }
+            database.setTransactionSuccessful();
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            database.endTransaction();
+            commitCount.incrementAndGet();
+            writeCount.addAndGet(batch.size());
+            for (PendingWrite pendingWrite : batch) {
+                pendingWrite.done.countDown();
+            }
+        }
+    }
+
+    private List<PendingWrite> singleBatch(PendingWrite pendingWrite) {
+        List<PendingWrite> batch = new ArrayList<>(1);
+        batch.add(pendingWrite);
+        return batch;
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return QiscusDbOpenHelper.getDatabase();
+    }
+
+    interface Write {
+        void write(SQLiteDatabase database);
+    }
+
+    private static final class PendingWrite {
+        private final Write write;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private PendingWrite(Write write) {
+            this.write = write;
+        }
+
+        private void await() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -16,7 +16,13 @@
 
 package com.qiscus.sdk.chat.core.data.local;
 
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created on : November 07, 2016
@@ -36,4 +42,79 @@ public interface QiscusFileStore {
     File getLocalPath(long commentId);
 
     void deleteLocalPath(long commentId);
+
+    /**
+     * Downloaded media of the room older than the given comment, newest first
+     *
+     * @param qiscusComment anchor comment, or null to start from the newest media
+     * @param roomId        room id
+     * @param mediaType     one of {@link QiscusComment.Type#IMAGE}, VIDEO, AUDIO or FILE
+     * @param limit         maximum number of media
+     * @return media with their local files
+     */
+    default List<Pair<QiscusComment, File>> getOlderLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                 QiscusComment.Type mediaType, int limit) {
+        List<Pair<QiscusComment, File>> media = new ArrayList<>();
+        if (!(this instanceof QiscusCommentStore)) {
+            return media;
+        }
+
+        //Stores without a media index scan the comments of the room, newest first
+        for (QiscusComment comment : ((QiscusCommentStore) this).getComments(roomId)) {
+            if (media.size() >= limit) {
+                break;
+            }
+            boolean older = qiscusComment == null || comment.getTime().before(qiscusComment.getTime())
+                    || (comment.getTime().equals(qiscusComment.getTime())
+                    && comment.getUniqueId().compareTo(qiscusComment.getUniqueId()) < 0);
+            File file = older && comment.getType() == mediaType ? getLocalPath(comment.getId()) : null;
+            if (file != null) {
+                media.add(Pair.create(comment, file));
+            }
+        }
+        return media;
+    }
+
+    /**
+     * Downloaded media of the room newer than the given comment, oldest first
+     *
+     * @param qiscusComment anchor comment, or null to start from the oldest media
+     * @param roomId        room id
+     * @param mediaType     one of {@link QiscusComment.Type#IMAGE}, VIDEO, AUDIO or FILE
+     * @param limit         maximum number of media
+     * @return media with their local files
+     */
+    default List<Pair<QiscusComment, File>> getNewerLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                 QiscusComment.Type mediaType, int limit) {
+        List<Pair<QiscusComment, File>> media = new ArrayList<>();
+        if (!(this instanceof QiscusCommentStore)) {
+            return media;
+        }
+
+        List<QiscusComment> comments = ((QiscusCommentStore) this).getComments(roomId);
+        for (int i = comments.size() - 1; i >= 0 && media.size() < limit; i--) {
+            QiscusComment comment = comments.get(i);
+            boolean newer = qiscusComment == null || comment.getTime().after(qiscusComment.getTime())
+                    || (comment.getTime().equals(qiscusComment.getTime())
+                    && comment.getUniqueId().compareTo(qiscusComment.getUniqueId()) > 0);
+            File file = newer && comment.getType() == mediaType ? getLocalPath(comment.getId()) : null;
+            if (file != null) {
+                media.add(Pair.create(comment, file));
+            }
+        }
+        return media;
+    }
+
+    /**
+     * Number of downloaded media of the room older than the given comment, e.g. to show the position of
+     * a media among every media of the room while only a page of them is loaded
+     *
+     * @param qiscusComment anchor comment, or null to count every media of the room
+     * @param roomId        room id
+     * @param mediaType     one of {@link QiscusComment.Type#IMAGE}, VIDEO, AUDIO or FILE
+     * @return number of media
+     */
+    default int getOlderLocalMediaCount(QiscusComment qiscusComment, long roomId, QiscusComment.Type mediaType) {
+        return getOlderLocalMediaThan(qiscusComment, roomId, mediaType, Integer.MAX_VALUE).size();
+    }
 }
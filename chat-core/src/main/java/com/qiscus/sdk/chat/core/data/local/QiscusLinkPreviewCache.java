@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.schinizer.rxunfurl.model.PreviewData;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two level cache of scraped link previews. Recently used previews are kept in memory, and every
+ * result, including failed scrapes, is persisted in qiscus.db so reopening a room does not hit the
+ * network again until the entry expires.
+ */
+public enum QiscusLinkPreviewCache {
+    INSTANCE;
+
+    private static final int MEMORY_CACHE_SIZE = 128;
+    private static final long DEFAULT_TTL = 7 * 24 * 60 * 60 * 1000L;
+    private static final long DEFAULT_FAILURE_TTL = 30 * 60 * 1000L;
+
+    private final LruCache<String, Entry> memoryCache;
+    private final Gson gson;
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong failureHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile long failureTtl = DEFAULT_FAILURE_TTL;
+
+    QiscusLinkPreviewCache() {
+        memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+        gson = new Gson();
+    }
+
+    public static QiscusLinkPreviewCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Look up the cached preview of an url, first from memory and then from disk.
+     *
+     * @param url the url
+     * @return cached entry, or null if the url has never been scraped or the entry has expired
+     */
+    @Nullable
+    public Entry get(String url) {
+        long now = System.currentTimeMillis();
+        Entry entry = memoryCache.get(url);
+        if (entry != null) {
+            if (!isExpired(entry, now)) {
+                countHit(entry, memoryHitCount);
+                return entry;
+            }
+            memoryCache.remove(url);
+        }
+
+        entry = readFromDisk(url);
+        if (entry != null && !isExpired(entry, now)) {
+            memoryCache.put(url, entry);
+            countHit(entry, diskHitCount);
+            return entry;
+        }
+
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void put(String url, PreviewData previewData) {
+        Entry entry = new Entry(previewData, System.currentTimeMillis());
+        memoryCache.put(url, entry);
+        writeToDisk(url, gson.toJson(previewData), false, entry.cachedAt);
+    }
+
+    /**
+     * Remember that scraping the url failed, so it will not be retried until the failure ttl passes
+     *
+     * @param url the url
+     */
+    public void putFailure(String url) {
+        Entry entry = new Entry(null, System.currentTimeMillis());
+        memoryCache.put(url, entry);
+        writeToDisk(url, null, true, entry.cachedAt);
+    }
+
+    public void remove(String url) {
+        memoryCache.remove(url);
+        QiscusDbWriter.getInstance().execute(database -> database.delete(QiscusDb.LinkPreviewTable.TABLE_NAME,
+                QiscusDb.LinkPreviewTable.COLUMN_URL + " =? ", new String[]{url}));
+    }
+
+    public void clear() {
+        memoryCache.evictAll();
+        QiscusDbWriter.getInstance().execute(database -> database.delete(QiscusDb.LinkPreviewTable.TABLE_NAME, null, null));
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public QiscusLinkPreviewCache setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public long getFailureTtl() {
+        return failureTtl;
+    }
+
+    public QiscusLinkPreviewCache setFailureTtl(long failureTtl) {
+        this.failureTtl = failureTtl;
+        return this;
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHitCount.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHitCount.get();
+    }
+
+    /**
+     * @return how many lookups were answered by a cached failure
+     */
+    public long getFailureHitCount() {
+        return failureHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return ratio of lookups answered without scraping, between 0 and 1
+     */
+    public float getHitRate() {
+        long hits = memoryHitCount.get() + diskHitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    public void resetStatistics() {
+        memoryHitCount.set(0);
+        diskHitCount.set(0);
+        failureHitCount.set(0);
+        missCount.set(0);
+    }
+
+    private void countHit(Entry entry, AtomicLong levelCounter) {
+        levelCounter.incrementAndGet();
+        if (entry.isFailure()) {
+            failureHitCount.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.cachedAt > (entry.isFailure() ? failureTtl : ttl);
+    }
+
+    @Nullable
+    private Entry readFromDisk(String url) {
+        String query = "SELECT * FROM "
+                + QiscusDb.LinkPreviewTable.TABLE_NAME + " WHERE "
+                + QiscusDb.LinkPreviewTable.COLUMN_URL + " =? ";
+
+        Cursor cursor = null;
+        try {
+            cursor = getDatabase().rawQuery(query, new String[]{url});
+            if (!cursor.moveToNext()) {
+                return null;
+            }
+
+            long cachedAt = QiscusDb.LinkPreviewTable.getCachedAt(cursor);
+            if (QiscusDb.LinkPreviewTable.isFailed(cursor)) {
+                return new Entry(null, cachedAt);
+            }
+            PreviewData previewData = gson.fromJson(QiscusDb.LinkPreviewTable.getData(cursor), PreviewData.class);
+            return previewData == null ? null : new Entry(previewData, cachedAt);
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    private void writeToDisk(String url, String data, boolean failed, long cachedAt) {
+        QiscusDbWriter.getInstance().execute(database -> database.insertWithOnConflict(
+                QiscusDb.LinkPreviewTable.TABLE_NAME, null,
+                QiscusDb.LinkPreviewTable.toContentValues(url, data, failed, cachedAt),
+                SQLiteDatabase.CONFLICT_REPLACE));
+    }
+
+    private SQLiteDatabase getDatabase() {
+        return QiscusDbOpenHelper.getDatabase();
+    }
+
+    public static final class Entry {
+        private final PreviewData previewData;
+        private final long cachedAt;
+
+        private Entry(PreviewData previewData, long cachedAt) {
+            this.previewData = previewData;
+            this.cachedAt = cachedAt;
+        }
+
+        /**
+         * @return the preview, or null if this entry records a failed scrape
+         */
+        @Nullable
+        public PreviewData getPreviewData() {
+            return previewData;
+        }
+
+        public boolean isFailure() {
+            return previewData == null;
+        }
+
+        public long getCachedAt() {
+            return cachedAt;
+        }
+    }
+}
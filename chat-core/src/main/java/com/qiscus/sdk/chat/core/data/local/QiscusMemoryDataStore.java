@@ -0,0 +1,1140 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import rx.Emitter;
+import rx.Observable;
+
+/**
+ * Data store kept in memory, for sessions that should not leave anything on the device or that do not
+ * want to pay for SQLite. Comments of each room are kept in a skip list ordered by time and unique id,
+ * with hash indexes on unique id, id and before id. Reads never block, writes are serialized.
+ * <p>
+ * When created with a backing store, every write is also applied to it in the background on the db
+ * write lane, in order, so the data survives the process without slowing down the callers.
+ * <p>
+ * Use it with {@link QiscusCore#setDataStore(QiscusDataStore)}.
+ */
+public class QiscusMemoryDataStore implements QiscusDataStore {
+    private static final String DEFAULT_DISTINCT_ID = "default";
+
+    private final QiscusDataStore backingStore;
+    private final Object writeLock = new Object();
+
+    private final Map<Long, QiscusChatRoom> rooms = new ConcurrentHashMap<>();
+    private final Map<String, Long> roomIdsByUniqueId = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, RoomMember>> roomMembers = new ConcurrentHashMap<>();
+    private final Map<String, QiscusRoomMember> members = new ConcurrentHashMap<>();
+    private final Map<Long, ConcurrentSkipListMap<CommentKey, QiscusComment>> roomComments = new ConcurrentHashMap<>();
+    private final Map<String, QiscusComment> commentsByUniqueId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, String> uniqueIdsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, String> uniqueIdsByBeforeId = new ConcurrentHashMap<>();
+    private final Map<String, QiscusComment> pendingComments = new ConcurrentHashMap<>();
+    private final Map<Long, LocalFile> localFiles = new ConcurrentHashMap<>();
+    private long lastMemberOrder;
+
+    public QiscusMemoryDataStore() {
+        this(null);
+    }
+
+    /**
+     * @param backingStore store that receives every write in the background, or null to keep the data
+     *                     in memory only
+     */
+    public QiscusMemoryDataStore(QiscusDataStore backingStore) {
+        this.backingStore = backingStore;
+    }
+
+    @Override
+    public void add(QiscusChatRoom qiscusChatRoom) {
+        synchronized (writeLock) {
+            if (!rooms.containsKey(qiscusChatRoom.getId())) {
+                putRoom(qiscusChatRoom);
+            }
+            writeBehind(store -> store.add(copy(qiscusChatRoom, QiscusChatRoom.CREATOR)));
+        }
+
+        addMembersAndLastComment(qiscusChatRoom, false);
+    }
+
+    @Override
+    public boolean isContains(QiscusChatRoom qiscusChatRoom) {
+        return rooms.containsKey(qiscusChatRoom.getId());
+    }
+
+    @Override
+    public void update(QiscusChatRoom qiscusChatRoom) {
+        synchronized (writeLock) {
+            if (rooms.containsKey(qiscusChatRoom.getId())) {
+                putRoom(qiscusChatRoom);
+            }
+            writeBehind(store -> store.update(copy(qiscusChatRoom, QiscusChatRoom.CREATOR)));
+        }
+
+        addMembersAndLastComment(qiscusChatRoom, true);
+    }
+
+    @Override
+    public void addOrUpdate(QiscusChatRoom qiscusChatRoom) {
+        if (!isContains(qiscusChatRoom)) {
+            add(qiscusChatRoom);
+        } else {
+            update(qiscusChatRoom);
+        }
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(long roomId) {
+        QiscusChatRoom qiscusChatRoom = rooms.get(roomId);
+        return qiscusChatRoom == null ? null : toResult(qiscusChatRoom);
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(String email) {
+        QiscusAccount account = QiscusCore.getQiscusAccount();
+        QiscusChatRoom room = getChatRoom(email, account.getEmail() + " " + email);
+        if (room == null) {
+            room = getChatRoom(email, email + " " + account.getEmail());
+        }
+        return room;
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoom(String email, String distinctId) {
+        for (Map.Entry<Long, Map<String, RoomMember>> entry : roomMembers.entrySet()) {
+            RoomMember roomMember = entry.getValue().get(email);
+            if (roomMember == null || !distinctId.equals(roomMember.distinctId)) {
+                continue;
+            }
+            QiscusChatRoom qiscusChatRoom = rooms.get(entry.getKey());
+            if (qiscusChatRoom != null && !qiscusChatRoom.isGroup()) {
+                return toResult(qiscusChatRoom);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public QiscusChatRoom getChatRoomWithUniqueId(String uniqueId) {
+        Long roomId = roomIdsByUniqueId.get(uniqueId);
+        return roomId == null ? null : getChatRoom(roomId);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(int limit) {
+        return getChatRooms(limit, -1);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(int limit, int offset) {
+        List<QiscusChatRoom> qiscusChatRooms = new ArrayList<>(rooms.size());
+        for (QiscusChatRoom qiscusChatRoom : rooms.values()) {
+            qiscusChatRooms.add(toResult(qiscusChatRoom));
+        }
+        sortRooms(qiscusChatRooms);
+        return page(qiscusChatRooms, limit, offset);
+    }
+
+    @Override
+    public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit) {
+        return getObservableChatRooms(limit, -1);
+    }
+
+    @Override
+    public Observable<List<QiscusChatRoom>> getObservableChatRooms(int limit, int offset) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getChatRooms(limit, offset));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public List<QiscusChatRoom> getChatRooms(List<Long> roomIds, List<String> uniqueIds) {
+        List<QiscusChatRoom> qiscusChatRooms = new ArrayList<>();
+        for (QiscusChatRoom qiscusChatRoom : rooms.values()) {
+            if (roomIds.contains(qiscusChatRoom.getId()) || uniqueIds.contains(qiscusChatRoom.getUniqueId())) {
+                qiscusChatRooms.add(toResult(qiscusChatRoom));
+            }
+        }
+        sortRooms(qiscusChatRooms);
+        return qiscusChatRooms;
+    }
+
+    @Override
+    public void deleteChatRoom(long roomId) {
+        synchronized (writeLock) {
+            QiscusChatRoom qiscusChatRoom = rooms.remove(roomId);
+            if (qiscusChatRoom != null && qiscusChatRoom.getUniqueId() != null) {
+                roomIdsByUniqueId.remove(qiscusChatRoom.getUniqueId());
+            }
+            writeBehind(store -> store.deleteChatRoom(roomId));
+        }
+        QiscusUnreadCounter.getInstance().invalidate();
+    }
+
+    @Override
+    public void updateUnreadCount(long roomId, int unreadCount) {
+        synchronized (writeLock) {
+            QiscusChatRoom qiscusChatRoom = rooms.get(roomId);
+            if (qiscusChatRoom != null) {
+                QiscusChatRoom room = copy(qiscusChatRoom, QiscusChatRoom.CREATOR);
+                room.setUnreadCount(unreadCount);
+                rooms.put(roomId, room);
+            }
+            writeBehind(store -> store.updateUnreadCount(roomId, unreadCount));
+        }
+    }
+
+    @Override
+    public void incrementUnreadCount(long roomId) {
+        synchronized (writeLock) {
+            QiscusChatRoom qiscusChatRoom = rooms.get(roomId);
+            if (qiscusChatRoom != null) {
+                QiscusChatRoom room = copy(qiscusChatRoom, QiscusChatRoom.CREATOR);
+                room.setUnreadCount(room.getUnreadCount() + 1);
+                rooms.put(roomId, room);
+            }
+            writeBehind(store -> store.incrementUnreadCount(roomId));
+        }
+    }
+
+    @Override
+    public int getUnreadCount(long roomId) {
+        QiscusChatRoom qiscusChatRoom = rooms.get(roomId);
+        return qiscusChatRoom == null ? 0 : qiscusChatRoom.getUnreadCount();
+    }
+
+    @Override
+    public int getTotalUnreadCount() {
+        int total = 0;
+        for (QiscusChatRoom qiscusChatRoom : rooms.values()) {
+            total += qiscusChatRoom.getUnreadCount();
+        }
+        return total;
+    }
+
+    @Override
+    public void addRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        String roomDistinctId = distinctId == null ? DEFAULT_DISTINCT_ID : distinctId;
+        synchronized (writeLock) {
+            Map<String, RoomMember> membersOfRoom = getMembersOfRoom(roomId);
+            if (!membersOfRoom.containsKey(qiscusRoomMember.getEmail())) {
+                putRoomMember(membersOfRoom, roomDistinctId, qiscusRoomMember);
+            }
+            QiscusRoomMember member = putMember(qiscusRoomMember);
+            writeBehind(store -> store.addRoomMember(roomId, copy(member, QiscusRoomMember.CREATOR), distinctId));
+        }
+    }
+
+    @Override
+    public boolean isContainsRoomMember(long roomId, String email) {
+        Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+        return membersOfRoom != null && membersOfRoom.containsKey(email);
+    }
+
+    @Override
+    public void updateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        String roomDistinctId = distinctId == null ? DEFAULT_DISTINCT_ID : distinctId;
+        synchronized (writeLock) {
+            Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+            if (membersOfRoom != null && membersOfRoom.containsKey(qiscusRoomMember.getEmail())) {
+                putRoomMember(membersOfRoom, roomDistinctId, qiscusRoomMember);
+            }
+            QiscusRoomMember member = putMember(qiscusRoomMember);
+            writeBehind(store -> store.updateRoomMember(roomId, copy(member, QiscusRoomMember.CREATOR), distinctId));
+        }
+    }
+
+    @Override
+    public void addOrUpdateRoomMember(long roomId, QiscusRoomMember qiscusRoomMember, String distinctId) {
+        synchronized (writeLock) {
+            putRoomMember(getMembersOfRoom(roomId), distinctId, qiscusRoomMember);
+            QiscusRoomMember member = putMember(qiscusRoomMember);
+            writeBehind(store -> store.addOrUpdateRoomMember(roomId, copy(member, QiscusRoomMember.CREATOR), distinctId));
+        }
+    }
+
+    @Override
+    public List<QiscusRoomMember> getRoomMembers(long roomId) {
+        List<QiscusRoomMember> qiscusRoomMembers = new ArrayList<>();
+        Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+        if (membersOfRoom == null) {
+            return qiscusRoomMembers;
+        }
+        List<Map.Entry<String, RoomMember>> entries = new ArrayList<>(membersOfRoom.entrySet());
+        //Members are returned in the order they were added, like the rows of the sqlite store
+        Collections.sort(entries, (entry1, entry2) -> Long.compare(entry1.getValue().order, entry2.getValue().order));
+        for (Map.Entry<String, RoomMember> entry : entries) {
+            QiscusRoomMember member = getMember(entry.getKey());
+            if (member != null) {
+                member.setLastDeliveredCommentId(entry.getValue().lastDeliveredCommentId);
+                member.setLastReadCommentId(entry.getValue().lastReadCommentId);
+                qiscusRoomMembers.add(member);
+            }
+        }
+        return qiscusRoomMembers;
+    }
+
+    @Override
+    public List<QiscusRoomMember> getRoomMembers(long roomId, int limit, int offset) {
+        return page(getRoomMembers(roomId), limit, offset);
+    }
+
+    @Override
+    public int getRoomMemberCount(long roomId) {
+        Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+        return membersOfRoom == null ? 0 : membersOfRoom.size();
+    }
+
+    @Override
+    public void addOrUpdateRoomMembers(long roomId, List<QiscusRoomMember> qiscusRoomMembers, String distinctId) {
+        String roomDistinctId = distinctId == null ? DEFAULT_DISTINCT_ID : distinctId;
+        List<QiscusRoomMember> copies = new ArrayList<>(qiscusRoomMembers.size());
+        synchronized (writeLock) {
+            Map<String, RoomMember> membersOfRoom = getMembersOfRoom(roomId);
+            for (QiscusRoomMember qiscusRoomMember : qiscusRoomMembers) {
+                putRoomMember(membersOfRoom, roomDistinctId, qiscusRoomMember);
+                copies.add(putMember(qiscusRoomMember));
+            }
+            writeBehind(store -> store.addOrUpdateRoomMembers(roomId, copies, distinctId));
+        }
+    }
+
+    @Override
+    public void deleteRoomMember(long roomId, String email) {
+        synchronized (writeLock) {
+            Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+            if (membersOfRoom != null) {
+                membersOfRoom.remove(email);
+            }
+            writeBehind(store -> store.deleteRoomMember(roomId, email));
+        }
+    }
+
+    @Override
+    public void deleteRoomMembers(long roomId) {
+        synchronized (writeLock) {
+            roomMembers.remove(roomId);
+            writeBehind(store -> store.deleteRoomMembers(roomId));
+        }
+    }
+
+    @Override
+    public void add(QiscusRoomMember qiscusRoomMember) {
+        QiscusRoomMember member = copy(qiscusRoomMember, QiscusRoomMember.CREATOR);
+        synchronized (writeLock) {
+            if (members.containsKey(member.getEmail())) {
+                return;
+            }
+            members.put(member.getEmail(), member);
+            writeBehind(store -> store.add(copy(member, QiscusRoomMember.CREATOR)));
+        }
+    }
+
+    @Override
+    public boolean isContains(QiscusRoomMember qiscusRoomMember) {
+        return members.containsKey(qiscusRoomMember.getEmail());
+    }
+
+    @Override
+    public void update(QiscusRoomMember qiscusRoomMember) {
+        QiscusRoomMember member = copy(qiscusRoomMember, QiscusRoomMember.CREATOR);
+        synchronized (writeLock) {
+            if (!members.containsKey(member.getEmail())) {
+                return;
+            }
+            members.put(member.getEmail(), member);
+            writeBehind(store -> store.update(copy(member, QiscusRoomMember.CREATOR)));
+        }
+    }
+
+    @Override
+    public void addOrUpdate(QiscusRoomMember qiscusRoomMember) {
+        synchronized (writeLock) {
+            QiscusRoomMember member = putMember(qiscusRoomMember);
+            writeBehind(store -> store.addOrUpdate(copy(member, QiscusRoomMember.CREATOR)));
+        }
+    }
+
+    @Override
+    public QiscusRoomMember getMember(String email) {
+        QiscusRoomMember member = email == null ? null : members.get(email);
+        return member == null ? null : copy(member, QiscusRoomMember.CREATOR);
+    }
+
+    @Override
+    public void add(QiscusComment qiscusComment) {
+        synchronized (writeLock) {
+            if (commentsByUniqueId.containsKey(qiscusComment.getUniqueId())) {
+                return;
+            }
+            putComment(qiscusComment);
+            QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+            writeBehind(store -> store.add(comment));
+        }
+    }
+
+    @Override
+    public boolean isContains(QiscusComment qiscusComment) {
+        return commentsByUniqueId.containsKey(qiscusComment.getUniqueId());
+    }
+
+    @Override
+    public void update(QiscusComment qiscusComment) {
+        synchronized (writeLock) {
+            if (!commentsByUniqueId.containsKey(qiscusComment.getUniqueId())) {
+                return;
+            }
+            putComment(qiscusComment);
+            QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+            writeBehind(store -> store.update(comment));
+        }
+    }
+
+    @Override
+    public void addOrUpdate(QiscusComment qiscusComment) {
+        synchronized (writeLock) {
+            putComment(qiscusComment);
+            QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+            writeBehind(store -> store.addOrUpdate(comment));
+        }
+    }
+
+    @Override
+    public void delete(QiscusComment qiscusComment) {
+        synchronized (writeLock) {
+            removeComment(qiscusComment.getUniqueId());
+            QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+            writeBehind(store -> store.delete(comment));
+        }
+        removeLocalFile(qiscusComment.getId());
+    }
+
+    @Override
+    public boolean deleteCommentsByRoomId(long roomId) {
+        return deleteComments(roomId, Long.MAX_VALUE, store -> store.deleteCommentsByRoomId(roomId));
+    }
+
+    @Override
+    public boolean deleteCommentsByRoomId(long roomId, long timestampOffset) {
+        return deleteComments(roomId, timestampOffset, store -> store.deleteCommentsByRoomId(roomId, timestampOffset));
+    }
+
+    @Override
+    public void updateLastDeliveredComment(long roomId, long commentId) {
+        updateState(roomId, commentId, QiscusComment.STATE_DELIVERED,
+                store -> store.updateLastDeliveredComment(roomId, commentId));
+    }
+
+    @Override
+    public void updateLastReadComment(long roomId, long commentId) {
+        updateState(roomId, commentId, QiscusComment.STATE_READ,
+                store -> store.updateLastReadComment(roomId, commentId));
+    }
+
+    @Override
+    public QiscusComment getComment(String uniqueId) {
+        QiscusComment qiscusComment = uniqueId == null ? null : commentsByUniqueId.get(uniqueId);
+        return qiscusComment == null ? null : toResult(qiscusComment);
+    }
+
+    @Override
+    public QiscusComment getCommentByBeforeId(long beforeId) {
+        String uniqueId = uniqueIdsByBeforeId.get(beforeId);
+        return uniqueId == null ? null : getComment(uniqueId);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(List<String> uniqueIds) {
+        List<QiscusComment> qiscusComments = new ArrayList<>(uniqueIds.size());
+        for (String uniqueId : uniqueIds) {
+            QiscusComment qiscusComment = getComment(uniqueId);
+            if (qiscusComment != null) {
+                qiscusComments.add(qiscusComment);
+            }
+        }
+        Collections.sort(qiscusComments, (comment1, comment2) -> comment1.getTime().compareTo(comment2.getTime()));
+        return qiscusComments;
+    }
+
+    @Override
+    public void markCommentsDeleted(List<QiscusComment> qiscusComments, boolean hardDelete) {
+        if (qiscusComments.isEmpty()) {
+            return;
+        }
+
+        synchronized (writeLock) {
+            for (QiscusComment qiscusComment : qiscusComments) {
+                QiscusComment saved = commentsByUniqueId.get(qiscusComment.getUniqueId());
+                if (saved == null) {
+                    continue;
+                }
+                if (hardDelete) {
+                    //Comments are deleted oldest first, so a chain of deleted comments collapses to the oldest one
+                    String nextUniqueId = uniqueIdsByBeforeId.get(qiscusComment.getId());
+                    QiscusComment next = nextUniqueId == null ? null : commentsByUniqueId.get(nextUniqueId);
+                    if (next != null && next.getRoomId() == saved.getRoomId()) {
+                        QiscusComment relinked = copy(next, QiscusComment.CREATOR);
+                        relinked.setCommentBeforeId(saved.getCommentBeforeId());
+                        putComment(relinked);
+                    }
+                }
+
+                QiscusComment deleted = copy(saved, QiscusComment.CREATOR);
+                deleted.setMessage(qiscusComment.getMessage());
+                deleted.setRawType(qiscusComment.getRawType());
+                deleted.setDeleted(true);
+                deleted.setHardDeleted(hardDelete);
+                putComment(deleted);
+            }
+            List<QiscusComment> comments = new ArrayList<>(qiscusComments);
+            writeBehind(store -> store.markCommentsDeleted(comments, hardDelete));
+        }
+
+        for (QiscusComment qiscusComment : qiscusComments) {
+            removeLocalFile(qiscusComment.getId());
+        }
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId) {
+        return getComments(roomId, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId, int limit) {
+        return getComments(roomId, Long.MAX_VALUE, limit);
+    }
+
+    @Override
+    public List<QiscusComment> getComments(long roomId, long timestampOffset) {
+        return getComments(roomId, timestampOffset, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableComments(long roomId) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getComments(roomId));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableComments(long roomId, int limit) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getComments(roomId, limit));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public List<QiscusComment> getOlderCommentsThan(QiscusComment qiscusComment, long roomId, int limit) {
+        return getComments(roomId, qiscusComment.getTime().getTime(), limit);
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableOlderCommentsThan(QiscusComment qiscusComment, long roomId, int limit) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getOlderCommentsThan(qiscusComment, roomId, limit));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public List<QiscusComment> getCommentsAfter(QiscusComment qiscusComment, long roomId) {
+        List<QiscusComment> qiscusComments = new ArrayList<>();
+        String uniqueId = uniqueIdsById.get(qiscusComment.getId());
+        QiscusComment savedComment = uniqueId == null ? null : commentsByUniqueId.get(uniqueId);
+        if (savedComment == null) {
+            return qiscusComments;
+        }
+
+        long time = savedComment.getTime().getTime();
+        for (QiscusComment comment : getCommentsOfRoom(roomId).descendingMap().values()) {
+            if ((comment.getTime().getTime() >= time || comment.getId() == -1) && !comment.isHardDeleted()) {
+                qiscusComments.add(toResult(comment));
+            }
+        }
+        return qiscusComments;
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservableCommentsAfter(QiscusComment qiscusComment, long roomId) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getCommentsAfter(qiscusComment, roomId));
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public QiscusComment getLatestComment() {
+        QiscusComment latestComment = null;
+        for (ConcurrentSkipListMap<CommentKey, QiscusComment> comments : roomComments.values()) {
+            for (QiscusComment comment : comments.descendingMap().values()) {
+                if (comment.getId() != -1 && !comment.isHardDeleted()) {
+                    if (latestComment == null || comment.getTime().after(latestComment.getTime())) {
+                        latestComment = comment;
+                    }
+                    break;
+                }
+            }
+        }
+        return latestComment == null ? null : toResult(latestComment);
+    }
+
+    @Override
+    public QiscusComment getLatestComment(long roomId) {
+        for (QiscusComment comment : getCommentsOfRoom(roomId).descendingMap().values()) {
+            if (!comment.isHardDeleted()) {
+                return toResult(comment);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public QiscusComment getLatestDeliveredComment(long roomId) {
+        return getLatestCommentWithState(roomId, QiscusComment.STATE_DELIVERED);
+    }
+
+    @Override
+    public QiscusComment getLatestReadComment(long roomId) {
+        return getLatestCommentWithState(roomId, QiscusComment.STATE_READ);
+    }
+
+    @Override
+    public List<QiscusComment> getPendingComments() {
+        List<QiscusComment> qiscusComments = new ArrayList<>(pendingComments.size());
+        for (QiscusComment comment : pendingComments.values()) {
+            qiscusComments.add(toResult(comment));
+        }
+        Collections.sort(qiscusComments, (comment1, comment2) -> comment1.getTime().compareTo(comment2.getTime()));
+        return qiscusComments;
+    }
+
+    @Override
+    public int getPendingCommentCount() {
+        return pendingComments.size();
+    }
+
+    @Override
+    public Observable<List<QiscusComment>> getObservablePendingComments() {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(getPendingComments());
+            subscriber.onCompleted();
+        }, Emitter.BackpressureMode.BUFFER);
+    }
+
+    @Override
+    public List<QiscusComment> searchComments(String query, long roomId, int limit, int offset) {
+        List<QiscusComment> qiscusComments = new ArrayList<>();
+        String keyword = query.toLowerCase(Locale.US);
+        for (QiscusComment comment : getCommentsOfRoom(roomId).descendingMap().values()) {
+            if (matches(comment, keyword)) {
+                qiscusComments.add(comment);
+            }
+        }
+        return toResults(page(qiscusComments, limit, offset));
+    }
+
+    @Override
+    public List<QiscusComment> searchComments(String query, int limit, int offset) {
+        List<QiscusComment> qiscusComments = new ArrayList<>();
+        String keyword = query.toLowerCase(Locale.US);
+        for (QiscusComment comment : commentsByUniqueId.values()) {
+            if (matches(comment, keyword)) {
+                qiscusComments.add(comment);
+            }
+        }
+        Collections.sort(qiscusComments, (comment1, comment2) -> comment2.getTime().compareTo(comment1.getTime()));
+        return toResults(page(qiscusComments, limit, offset));
+    }
+
+    @Override
+    public void saveLocalPath(long roomId, long commentId, String localPath) {
+        synchronized (writeLock) {
+            if (localFiles.containsKey(commentId)) {
+                return;
+            }
+            localFiles.put(commentId, new LocalFile(roomId, localPath));
+            writeBehind(store -> store.saveLocalPath(roomId, commentId, localPath));
+        }
+    }
+
+    @Override
+    public boolean isContainsFileOfComment(long commentId) {
+        return localFiles.containsKey(commentId);
+    }
+
+    @Override
+    public void updateLocalPath(long roomId, long commentId, String localPath) {
+        synchronized (writeLock) {
+            if (!localFiles.containsKey(commentId)) {
+                return;
+            }
+            localFiles.put(commentId, new LocalFile(roomId, localPath));
+            writeBehind(store -> store.updateLocalPath(roomId, commentId, localPath));
+        }
+    }
+
+    @Override
+    public void addOrUpdateLocalPath(long roomId, long commentId, String localPath) {
+        synchronized (writeLock) {
+            localFiles.put(commentId, new LocalFile(roomId, localPath));
+            writeBehind(store -> store.addOrUpdateLocalPath(roomId, commentId, localPath));
+        }
+    }
+
+    @Override
+    public File getLocalPath(long commentId) {
+        LocalFile localFile = localFiles.get(commentId);
+        if (localFile == null) {
+            return null;
+        }
+        File file = new File(localFile.path);
+        return file.exists() ? file : null;
+    }
+
+    @Override
+    public void deleteLocalPath(long commentId) {
+        synchronized (writeLock) {
+            removeLocalFile(commentId);
+            writeBehind(store -> store.deleteLocalPath(commentId));
+        }
+    }
+
+    @Override
+    public List<Pair<QiscusComment, File>> getOlderLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                QiscusComment.Type mediaType, int limit) {
+        NavigableMap<CommentKey, QiscusComment> comments = getCommentsOfRoom(roomId);
+        if (qiscusComment != null) {
+            comments = comments.headMap(new CommentKey(qiscusComment), false);
+        }
+        return getLocalMedia(comments.descendingMap(), mediaType, limit);
+    }
+
+    @Override
+    public List<Pair<QiscusComment, File>> getNewerLocalMediaThan(QiscusComment qiscusComment, long roomId,
+                                                                QiscusComment.Type mediaType, int limit) {
+        NavigableMap<CommentKey, QiscusComment> comments = getCommentsOfRoom(roomId);
+        if (qiscusComment != null) {
+            comments = comments.tailMap(new CommentKey(qiscusComment), false);
+        }
+        return getLocalMedia(comments, mediaType, limit);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (writeLock) {
+            rooms.clear();
+            roomIdsByUniqueId.clear();
+            roomMembers.clear();
+            members.clear();
+            roomComments.clear();
+            commentsByUniqueId.clear();
+            uniqueIdsById.clear();
+            uniqueIdsByBeforeId.clear();
+            pendingComments.clear();
+            localFiles.clear();
+            writeBehind(QiscusDataStore::clear);
+        }
+        QiscusUnreadCounter.getInstance().invalidate();
+    }
+
+    private void putRoom(QiscusChatRoom qiscusChatRoom) {
+        QiscusChatRoom room = copy(qiscusChatRoom, QiscusChatRoom.CREATOR);
+        room.setMember(null);
+        room.setLastComment(null);
+        QiscusChatRoom oldRoom = rooms.put(room.getId(), room);
+        if (oldRoom != null && oldRoom.getUniqueId() != null) {
+            roomIdsByUniqueId.remove(oldRoom.getUniqueId());
+        }
+        if (room.getUniqueId() != null) {
+            roomIdsByUniqueId.put(room.getUniqueId(), room.getId());
+        }
+        QiscusUnreadCounter.getInstance().invalidate();
+    }
+
+    /**
+     * Members and last comment are written by the store methods, so their write behind is done there
+     */
+    private void addMembersAndLastComment(QiscusChatRoom qiscusChatRoom, boolean replaceMembers) {
+        List<QiscusRoomMember> qiscusRoomMembers = qiscusChatRoom.getMember();
+        if (qiscusRoomMembers != null && !(replaceMembers && qiscusRoomMembers.isEmpty())) {
+            if (replaceMembers) {
+                roomMembers.remove(qiscusChatRoom.getId());
+            }
+            for (QiscusRoomMember member : qiscusRoomMembers) {
+                synchronized (writeLock) {
+                    Map<String, RoomMember> membersOfRoom = getMembersOfRoom(qiscusChatRoom.getId());
+                    if (!membersOfRoom.containsKey(member.getEmail())) {
+                        String distinctId = qiscusChatRoom.getDistinctId();
+                        putRoomMember(membersOfRoom, distinctId == null ? DEFAULT_DISTINCT_ID : distinctId, member);
+                    }
+                    putMember(member);
+                }
+            }
+        }
+
+        QiscusComment comment = qiscusChatRoom.getLastComment();
+        if (comment != null && comment.getId() > 0) {
+            synchronized (writeLock) {
+                putComment(comment);
+            }
+        }
+    }
+
+    private Map<String, RoomMember> getMembersOfRoom(long roomId) {
+        Map<String, RoomMember> membersOfRoom = roomMembers.get(roomId);
+        if (membersOfRoom == null) {
+            membersOfRoom = new ConcurrentHashMap<>();
+            roomMembers.put(roomId, membersOfRoom);
+        }
+        return membersOfRoom;
+    }
+
+    /**
+     * Must be called holding the write lock, an updated member keeps its place
+     */
+    private void putRoomMember(Map<String, RoomMember> membersOfRoom, String distinctId,
+                               QiscusRoomMember qiscusRoomMember) {
+        RoomMember oldRoomMember = membersOfRoom.get(qiscusRoomMember.getEmail());
+        long order = oldRoomMember == null ? ++lastMemberOrder : oldRoomMember.order;
+        membersOfRoom.put(qiscusRoomMember.getEmail(), new RoomMember(distinctId, qiscusRoomMember, order));
+    }
+
+    private QiscusRoomMember putMember(QiscusRoomMember qiscusRoomMember) {
+        QiscusRoomMember member = copy(qiscusRoomMember, QiscusRoomMember.CREATOR);
+        members.put(member.getEmail(), member);
+        return member;
+    }
+
+    /**
+     * Store a copy of the comment and update every index, must be called with the write lock held
+     */
+    private void putComment(QiscusComment qiscusComment) {
+        QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+        removeComment(comment.getUniqueId());
+
+        getCommentsOfRoom(comment.getRoomId()).put(new CommentKey(comment), comment);
+        commentsByUniqueId.put(comment.getUniqueId(), comment);
+        if (comment.getId() != -1) {
+            uniqueIdsById.put(comment.getId(), comment.getUniqueId());
+        }
+        uniqueIdsByBeforeId.put(comment.getCommentBeforeId(), comment.getUniqueId());
+        if (comment.getState() == QiscusComment.STATE_PENDING
+                && pendingComments.put(comment.getUniqueId(), comment) == null) {
+            QiscusPendingCommentIndex.getInstance().notifyCommentPending();
+        }
+    }
+
+    /**
+     * Must be called with the write lock held
+     */
+    private QiscusComment removeComment(String uniqueId) {
+        QiscusComment comment = commentsByUniqueId.remove(uniqueId);
+        if (comment == null) {
+            return null;
+        }
+
+        getCommentsOfRoom(comment.getRoomId()).remove(new CommentKey(comment));
+        uniqueIdsById.remove(comment.getId(), uniqueId);
+        uniqueIdsByBeforeId.remove(comment.getCommentBeforeId(), uniqueId);
+        pendingComments.remove(uniqueId);
+        return comment;
+    }
+
+    private ConcurrentSkipListMap<CommentKey, QiscusComment> getCommentsOfRoom(long roomId) {
+        ConcurrentSkipListMap<CommentKey, QiscusComment> comments = roomComments.get(roomId);
+        if (comments == null) {
+            synchronized (roomComments) {
+                comments = roomComments.get(roomId);
+                if (comments == null) {
+                    comments = new ConcurrentSkipListMap<>();
+                    roomComments.put(roomId, comments);
+                }
+            }
+        }
+        return comments;
+    }
+
+    private boolean deleteComments(long roomId, long timestampOffset, Write write) {
+        List<QiscusComment> deleted = new ArrayList<>();
+        synchronized (writeLock) {
+            for (QiscusComment comment : getCommentsOfRoom(roomId).values()) {
+                if (comment.getTime().getTime() <= timestampOffset) {
+                    deleted.add(comment);
+                }
+            }
+            for (QiscusComment comment : deleted) {
+                removeComment(comment.getUniqueId());
+            }
+            if (!deleted.isEmpty()) {
+                writeBehind(write);
+            }
+        }
+
+        if (deleted.isEmpty()) {
+            return false;
+        }
+
+        for (QiscusComment comment : deleted) {
+            removeLocalFile(comment.getId());
+        }
+        return true;
+    }
+
+    private void updateState(long roomId, long commentId, int state, Write write) {
+        synchronized (writeLock) {
+            List<QiscusComment> updated = new ArrayList<>();
+            for (QiscusComment comment : getCommentsOfRoom(roomId).values()) {
+                if (comment.getId() != -1 && comment.getId() <= commentId && comment.getState() < state) {
+                    QiscusComment copy = copy(comment, QiscusComment.CREATOR);
+                    copy.setState(state);
+                    updated.add(copy);
+                }
+            }
+            for (QiscusComment comment : updated) {
+                putComment(comment);
+            }
+            writeBehind(write);
+        }
+    }
+
+    private List<QiscusComment> getComments(long roomId, long timestampOffset, int limit) {
+        List<QiscusComment> qiscusComments = new ArrayList<>();
+        for (QiscusComment comment : getCommentsOfRoom(roomId).descendingMap().values()) {
+            if (qiscusComments.size() >= limit) {
+                break;
+            }
+            if (comment.getTime().getTime() <= timestampOffset && !comment.isHardDeleted()) {
+                qiscusComments.add(toResult(comment));
+            }
+        }
+        return qiscusComments;
+    }
+
+    private QiscusComment getLatestCommentWithState(long roomId, int state) {
+        for (QiscusComment comment : getCommentsOfRoom(roomId).descendingMap().values()) {
+            if (comment.getId() != -1 && comment.getState() == state) {
+                return toResult(comment);
+            }
+        }
+        return null;
+    }
+
+    private List<Pair<QiscusComment, File>> getLocalMedia(Map<CommentKey, QiscusComment> comments,
+                                                         QiscusComment.Type mediaType, int limit) {
+        List<Pair<QiscusComment, File>> qiscusMedia = new ArrayList<>();
+        for (QiscusComment comment : comments.values()) {
+            if (qiscusMedia.size() >= limit) {
+                break;
+            }
+            if (comment.isHardDeleted() || QiscusDb.MediaTable.getMediaType(comment) != mediaType) {
+                continue;
+            }
+            File file = getLocalPath(comment.getId());
+            if (file != null) {
+                qiscusMedia.add(Pair.create(toResult(comment), file));
+            }
+        }
+        return qiscusMedia;
+    }
+
+    private void removeLocalFile(long commentId) {
+        File file = getLocalPath(commentId);
+        if (file != null) {
+            file.delete();
+        }
+        localFiles.remove(commentId);
+    }
+
+    private boolean matches(QiscusComment comment, String keyword) {
+        return !comment.isHardDeleted() && comment.getMessage() != null
+                && comment.getMessage().toLowerCase(Locale.US).contains(keyword);
+    }
+
+    private QiscusChatRoom toResult(QiscusChatRoom qiscusChatRoom) {
+        QiscusChatRoom room = copy(qiscusChatRoom, QiscusChatRoom.CREATOR);
+        room.setMember(getRoomMembers(room.getId()));
+        QiscusComment latestComment = getLatestComment(room.getId());
+        if (latestComment != null) {
+            room.setLastComment(latestComment);
+        }
+        return room;
+    }
+
+    /**
+     * Copy of the stored comment with the current name and avatar of the sender
+     */
+    private QiscusComment toResult(QiscusComment qiscusComment) {
+        QiscusComment comment = copy(qiscusComment, QiscusComment.CREATOR);
+        QiscusRoomMember member = comment.getSenderEmail() == null ? null : members.get(comment.getSenderEmail());
+        if (member != null) {
+            comment.setSender(member.getUsername());
+            comment.setSenderAvatar(member.getAvatar());
+        }
+        return comment;
+    }
+
+    private List<QiscusComment> toResults(List<QiscusComment> qiscusComments) {
+        List<QiscusComment> results = new ArrayList<>(qiscusComments.size());
+        for (QiscusComment comment : qiscusComments) {
+            results.add(toResult(comment));
+        }
+        return results;
+    }
+
+    private void sortRooms(List<QiscusChatRoom> qiscusChatRooms) {
+        Collections.sort(qiscusChatRooms, (room1, room2) -> {
+            if (room1.getLastComment() != null && room2.getLastComment() != null) {
+                return room2.getLastComment().getTime().compareTo(room1.getLastComment().getTime());
+            } else if (room1.getLastComment() == null && room2.getLastComment() != null) {
+                return 1;
+            } else if (room1.getLastComment() != null && room2.getLastComment() == null) {
+                return -1;
+            }
+            return 0;
+        });
+    }
+
+    /**
+     * Same paging as sqlite, a negative limit means no limit and a negative offset means no offset
+     */
+    private <T> List<T> page(List<T> items, int limit, int offset) {
+        int from = Math.min(Math.max(0, offset), items.size());
+        int to = limit < 0 ? items.size() : (int) Math.min((long) from + limit, items.size());
+        return new ArrayList<>(items.subList(from, to));
+    }
+
+    /**
+     * Must be called holding the write lock, right after the change is applied in memory. The db write
+     * lane is a single thread, so the backing store gets the writes in the order they were applied here.
+     */
+    private void writeBehind(Write write) {
+        if (backingStore == null) {
+            return;
+        }
+        QiscusExecutors.execute(QiscusExecutors.Lane.DB_WRITE, () -> {
+            try {
+                write.run(backingStore);
+            } catch (Exception e) {
+                QiscusErrorLogger.print(e);
+            }
+        });
+    }
+
+    /**
+     * Stored objects are never handed out, callers get copies they are free to change
+     */
+    private static <T extends Parcelable> T copy(T value, Parcelable.Creator<T> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            value.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return creator.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private interface Write {
+        void run(QiscusDataStore store);
+    }
+
+    /**
+     * Orders comments by time then unique id, the same keyset the sqlite store pages with
+     */
+    private static final class CommentKey implements Comparable<CommentKey> {
+        private static final Comparator<String> UNIQUE_ID_ORDER = (uniqueId1, uniqueId2) ->
+                uniqueId1 == null ? (uniqueId2 == null ? 0 : -1) : (uniqueId2 == null ? 1 : uniqueId1.compareTo(uniqueId2));
+
+        private final long time;
+        private final String uniqueId;
+
+        private CommentKey(QiscusComment qiscusComment) {
+            time = qiscusComment.getTime() == null ? 0 : qiscusComment.getTime().getTime();
+            uniqueId = qiscusComment.getUniqueId();
+        }
+
+        @Override
+        public int compareTo(CommentKey other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return UNIQUE_ID_ORDER.compare(uniqueId, other.uniqueId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CommentKey && compareTo((CommentKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (time ^ (time >>> 32)) * 31 + (uniqueId == null ? 0 : uniqueId.hashCode());
+        }
+    }
+
+    private static final class RoomMember {
+        private final String distinctId;
+        private final long lastDeliveredCommentId;
+        private final long lastReadCommentId;
+        private final long order;
+
+        private RoomMember(String distinctId, QiscusRoomMember qiscusRoomMember, long order) {
+            this.distinctId = distinctId;
+            lastDeliveredCommentId = qiscusRoomMember.getLastDeliveredCommentId();
+            lastReadCommentId = qiscusRoomMember.getLastReadCommentId();
+            this.order = order;
+        }
+    }
+
+    private static final class LocalFile {
+        private final long roomId;
+        private final String path;
+
+        private LocalFile(long roomId, String path) {
+            this.roomId = roomId;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.database.Cursor;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unique ids of the comments waiting to be sent, so the pending count is known without querying the
+ * comments table. It is loaded from the database once, then kept in sync by every comment write.
+ */
+public enum QiscusPendingCommentIndex {
+    INSTANCE;
+
+    private final Set<String> pendingIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean loaded;
+    private volatile Listener listener;
+
+    public static QiscusPendingCommentIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The listener is called when a comment becomes pending, for example to schedule a resend
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getCount() {
+        load();
+        return pendingIds.size();
+    }
+
+    void onCommentWritten(QiscusComment qiscusComment) {
+        load();
+        if (qiscusComment.getState() != QiscusComment.STATE_PENDING) {
+            pendingIds.remove(qiscusComment.getUniqueId());
+        } else if (pendingIds.add(qiscusComment.getUniqueId()) && listener != null) {
+            listener.onCommentPending();
+        }
+    }
+
+    /**
+     * For stores that keep their own pending comments, see {@link QiscusMemoryDataStore}
+     */
+    void notifyCommentPending() {
+        if (listener != null) {
+            listener.onCommentPending();
+        }
+    }
+
+    void onCommentDeleted(String uniqueId) {
+        pendingIds.remove(uniqueId);
+    }
+
+    /**
+     * Load the index again on next use, after comments were deleted in bulk
+     */
+    void invalidate() {
+        loaded = false;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            pendingIds.clear();
+            Cursor cursor = QiscusDbOpenHelper.getDatabase()
+                    .rawQuery("SELECT " + QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " FROM "
+                            + QiscusDb.CommentTable.TABLE_NAME + " WHERE "
+                            + QiscusDb.CommentTable.COLUMN_STATE + " = " + QiscusComment.STATE_PENDING, null);
+            try {
+                while (cursor.moveToNext()) {
+                    pendingIds.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+            loaded = true;
+        }
+    }
+
+    public interface Listener {
+        void onCommentPending();
+    }
+}
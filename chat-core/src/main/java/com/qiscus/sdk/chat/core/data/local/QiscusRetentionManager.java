@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusRetentionConfig;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.core.os.TraceCompat;
+
+/**
+ * Prunes the local comments beyond the limits of {@link QiscusRetentionConfig}. Comments are deleted
+ * oldest first in small batches on the db write lane, so the other writes are not blocked for long.
+ * Rooms that lost comments forget their sync watermarks, the next open reloads them from the server.
+ */
+public enum QiscusRetentionManager {
+    INSTANCE;
+
+    private static final String TAG = "QiscusRetentionManager";
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    public static QiscusRetentionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Compact if it is enabled and the configured interval has elapsed since the last compaction.
+     * Must be called on a background thread.
+     *
+     * @return number of comments deleted
+     */
+    public long compactIfDue() {
+        QiscusRetentionConfig config = QiscusCore.getChatConfig().getRetentionConfig();
+        if (!config.isEnable() || !QiscusCore.hasSetupUser()
+                || System.currentTimeMillis() - QiscusCacheManager.getInstance().getLastCompactionTime() < config.getInterval()) {
+            return 0;
+        }
+        return compact();
+    }
+
+    /**
+     * Apply the retention limits now. Must be called on a background thread.
+     *
+     * @return number of comments deleted
+     */
+    public long compact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        TraceCompat.beginSection("Qiscus:compactComments");
+        try {
+            QiscusRetentionConfig config = QiscusCore.getChatConfig().getRetentionConfig();
+            long now = System.currentTimeMillis();
+            long reclaimedRows = 0;
+
+            if (config.getMaxAge() > 0) {
+                reclaimedRows += deleteOlderThan(0, now - config.getMaxAge(), config.getBatchSize());
+            }
+
+            if (config.getMaxCommentsPerRoom() > 0) {
+                for (long roomId : getRoomsWithMoreThan(config.getMaxCommentsPerRoom())) {
+                    long cutoffTime = getCutoffTime(roomId, config.getMaxCommentsPerRoom());
+                    reclaimedRows += deleteOlderThan(roomId, cutoffTime, config.getBatchSize());
+                }
+            }
+
+            if (config.getMaxComments() > 0) {
+                long cutoffTime = getCutoffTime(0, config.getMaxComments());
+                reclaimedRows += deleteOlderThan(0, cutoffTime, config.getBatchSize());
+            }
+
+            if (reclaimedRows > 0) {
+                optimize();
+            }
+
+            QiscusCacheManager.getInstance().setLastCompactionTime(now);
+            long databaseSize = getDatabaseSize();
+            QiscusLogger.print(TAG, "Compacted " + reclaimedRows + " comments, database size " + databaseSize);
+            if (config.getRetentionListener() != null) {
+                config.getRetentionListener().onCompacted(reclaimedRows, databaseSize);
+            }
+            return reclaimedRows;
+        } catch (Exception e) {
+            QiscusErrorLogger.print(TAG, e);
+            return 0;
+        } finally {
+            TraceCompat.endSection();
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * @return size in bytes of the local database and its write ahead log
+     */
+    public long getDatabaseSize() {
+        File database = QiscusCore.getApps().getDatabasePath(QiscusDb.DATABASE_NAME);
+        return database.length() + new File(database.getPath() + "-wal").length();
+    }
+
+    private List<Long> getRoomsWithMoreThan(int maxComments) {
+        List<Long> roomIds = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + QiscusDb.CommentTable.COLUMN_ROOM_ID
+                + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                + " GROUP BY " + QiscusDb.CommentTable.COLUMN_ROOM_ID
+                + " HAVING COUNT(*) > " + maxComments, null);
+        try {
+            while (cursor.moveToNext()) {
+                roomIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return roomIds;
+    }
+
+    /**
+     * @return time of the newest comment that is still kept, or 0 if there are not more comments than the limit
+     */
+    private long getCutoffTime(long roomId, int maxComments) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT " + QiscusDb.CommentTable.COLUMN_TIME
+                + " FROM " + QiscusDb.CommentTable.TABLE_NAME
+                + (roomId > 0 ? " WHERE " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId : "")
+                + " ORDER BY " + QiscusDb.CommentTable.COLUMN_TIME + " DESC"
+                + " LIMIT 1 OFFSET " + (maxComments - 1), null);
+        try {
+            return cursor.moveToNext() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long deleteOlderThan(long roomId, long cutoffTime, int batchSize) {
+        if (cutoffTime <= 0) {
+            return 0;
+        }
+
+        String where = QiscusDb.CommentTable.COLUMN_TIME + " < " + cutoffTime
+                + " AND " + QiscusDb.CommentTable.COLUMN_STATE + " >= " + QiscusComment.STATE_ON_QISCUS
+                + (roomId > 0 ? " AND " + QiscusDb.CommentTable.COLUMN_ROOM_ID + " = " + roomId : "")
+                //Keep the last comment of the room, the room list shows it
+                + " AND " + QiscusDb.CommentTable.COLUMN_TIME + " < (SELECT MAX(c." + QiscusDb.CommentTable.COLUMN_TIME
+                + ") FROM " + QiscusDb.CommentTable.TABLE_NAME + " c WHERE c." + QiscusDb.CommentTable.COLUMN_ROOM_ID
+                + " = " + QiscusDb.CommentTable.TABLE_NAME + "." + QiscusDb.CommentTable.COLUMN_ROOM_ID + ")";
+
+        long deletedRows = 0;
+        int[] batchDeleted = new int[1];
+        do {
+            batchDeleted[0] = 0;
+            QiscusDbWriter.getInstance().execute(database -> batchDeleted[0] = deleteBatch(database, where, batchSize));
+            deletedRows += batchDeleted[0];
+        } while (batchDeleted[0] == batchSize);
+        return deletedRows;
+    }
+
+    private int deleteBatch(SQLiteDatabase database, String where, int batchSize) {
+        List<String> uniqueIds = new ArrayList<>(batchSize);
+        Set<Long> roomIds = new HashSet<>();
+        Cursor cursor = database.query(QiscusDb.CommentTable.TABLE_NAME,
+                new String[]{QiscusDb.CommentTable.COLUMN_UNIQUE_ID, QiscusDb.CommentTable.COLUMN_ROOM_ID},
+                where, null, null, null, QiscusDb.CommentTable.COLUMN_TIME + " ASC", String.valueOf(batchSize));
+        try {
+            while (cursor.moveToNext()) {
+                uniqueIds.add(cursor.getString(0));
+                roomIds.add(cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (uniqueIds.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < uniqueIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        String[] args = uniqueIds.toArray(new String[0]);
+        database.delete(QiscusDb.MediaTable.TABLE_NAME,
+                QiscusDb.MediaTable.COLUMN_UNIQUE_ID + " IN (" + placeholders + ")", args);
+        database.delete(QiscusDb.CommentTable.TABLE_NAME,
+                QiscusDb.CommentTable.COLUMN_UNIQUE_ID + " IN (" + placeholders + ")", args);
+        for (long roomId : roomIds) {
+            database.delete(QiscusDb.RoomSyncTable.TABLE_NAME, QiscusDb.RoomSyncTable.COLUMN_ROOM_ID + " = " + roomId, null);
+        }
+        return uniqueIds.size();
+    }
+
+    /**
+     * Let sqlite refresh the statistics of the indexes that changed a lot
+     */
+    private void optimize() {
+        QiscusDbWriter.getInstance().execute(database -> {
+            Cursor cursor = database.rawQuery("PRAGMA optimize", null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        });
+    }
+
+    private SQLiteDatabase getReadableDatabase() {
+        return QiscusDbOpenHelper.getDatabase();
+    }
+}
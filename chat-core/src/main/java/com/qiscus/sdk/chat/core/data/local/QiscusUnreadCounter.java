@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.util.LruCache;
+
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unread counts maintained on the device, so a badge does not need a request after every comment. The
+ * count of a room is incremented when a comment from someone else arrives while the room is not open,
+ * and reset when the room is read. This is the only place that changes the counts of saved rooms. The
+ * total of every room is kept in memory, it is summed from the rooms once and then updated with every
+ * change, so reading it is free. It is only summed again after rooms from the server were saved.
+ * <p>
+ * The server stays the source of truth: rooms from the server overwrite the local counts, and the total
+ * is compared with the server total from time to time, see {@link #reconcile(long)}. When they differ the
+ * rooms have to be fetched again, the total is only correct until the rooms are summed again.
+ */
+public enum QiscusUnreadCounter {
+    INSTANCE;
+
+    private static final int COUNTED_CACHE_SIZE = 512;
+    private static final long RECONCILE_INTERVAL = 5 * 60 * 1000L;
+
+    private final LruCache<String, Boolean> countedComments = new LruCache<>(COUNTED_CACHE_SIZE);
+    private final AtomicLong reconcileCount = new AtomicLong();
+    private final AtomicLong conflictCount = new AtomicLong();
+    private volatile int total = -1;
+    private volatile long lastDrift;
+    private volatile long lastReconcileTime;
+    private volatile Listener listener;
+
+    public static QiscusUnreadCounter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The listener is called when the total changes, e.g. to update a badge
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return unread comments of every room
+     */
+    public int getTotalUnreadCount() {
+        int currentTotal = total;
+        if (currentTotal < 0) {
+            synchronized (this) {
+                if (total < 0) {
+                    total = QiscusCore.getDataStore().getTotalUnreadCount();
+                }
+                currentTotal = total;
+            }
+        }
+        return currentTotal;
+    }
+
+    /**
+     * Count a new comment. Comments sent by the current user, comments counted before and comments of
+     * the room that is open are ignored.
+     */
+    public void onCommentReceived(QiscusComment qiscusComment) {
+        if (qiscusComment.isMyComment() || qiscusComment.getUniqueId() == null) {
+            return;
+        }
+
+        Pair<Boolean, Long> lastChatActivity = QiscusCacheManager.getInstance().getLastChatActivity();
+        if (lastChatActivity.first && lastChatActivity.second == qiscusComment.getRoomId()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (countedComments.get(qiscusComment.getUniqueId()) != null) {
+                return;
+            }
+            countedComments.put(qiscusComment.getUniqueId(), true);
+            QiscusCore.getDataStore().incrementUnreadCount(qiscusComment.getRoomId());
+            if (total >= 0) {
+                total++;
+            }
+        }
+        notifyListener();
+    }
+
+    /**
+     * Reset the count of a room after the current user read it
+     */
+    public void onRoomRead(long roomId) {
+        synchronized (this) {
+            int unreadCount = QiscusCore.getDataStore().getUnreadCount(roomId);
+            if (unreadCount == 0) {
+                return;
+            }
+
+            QiscusCore.getDataStore().updateUnreadCount(roomId, 0);
+            if (total >= 0) {
+                total = Math.max(0, total - unreadCount);
+            }
+        }
+        notifyListener();
+    }
+
+    /**
+     * Compare the local total with the total of the server. The server total wins, a difference is
+     * counted as a conflict. The saved rooms still have the wrong counts then, fetch them again and call
+     * {@link #onRoomsRefreshed()}.
+     *
+     * @param serverTotal total unread count from the server
+     * @return true if the local total was different from the server
+     */
+    public boolean reconcile(long serverTotal) {
+        long drift = serverTotal - getTotalUnreadCount();
+        reconcileCount.incrementAndGet();
+        lastReconcileTime = System.currentTimeMillis();
+        lastDrift = drift;
+        if (drift == 0) {
+            return false;
+        }
+
+        conflictCount.incrementAndGet();
+        total = (int) serverTotal;
+        notifyListener();
+        return true;
+    }
+
+    /**
+     * Sum the rooms again after their counts were fetched from the server
+     */
+    public void onRoomsRefreshed() {
+        total = -1;
+        notifyListener();
+    }
+
+    public boolean isReconcileDue() {
+        return System.currentTimeMillis() - lastReconcileTime > RECONCILE_INTERVAL;
+    }
+
+    public long getReconcileCount() {
+        return reconcileCount.get();
+    }
+
+    /**
+     * @return number of reconciles where the local total was different from the server
+     */
+    public long getConflictCount() {
+        return conflictCount.get();
+    }
+
+    /**
+     * @return server total minus local total at the last reconcile
+     */
+    public long getLastDrift() {
+        return lastDrift;
+    }
+
+    public void clear() {
+        synchronized (this) {
+            countedComments.evictAll();
+            total = -1;
+            lastReconcileTime = 0;
+        }
+    }
+
+    /**
+     * Sum the rooms again on next use, after rooms were written with counts from the server
+     */
+    void invalidate() {
+        total = -1;
+    }
+
+    private void notifyListener() {
+        Listener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onTotalUnreadCountChanged(getTotalUnreadCount());
+        }
+    }
+
+    public interface Listener {
+        void onTotalUnreadCountChanged(int total);
+    }
+}
@@ -25,10 +25,12 @@ import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 
 import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.local.QiscusAttachmentCache;
 import com.qiscus.sdk.chat.core.data.remote.QiscusUrlScraper;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
 import com.qiscus.sdk.chat.core.util.QiscusRawDataExtractor;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 import com.schinizer.rxunfurl.model.PreviewData;
 
@@ -44,7 +46,6 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : August 18, 2016
@@ -608,7 +609,7 @@ public class QiscusComment implements Parcelable {
                 QiscusUrlScraper.getInstance()
                         .generatePreviewData(urls.get(0))
                         .doOnNext(previewData -> previewData.setUrl(urls.get(0)))
-                        .subscribeOn(Schedulers.io())
+                        .subscribeOn(QiscusSchedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(previewData -> {
                             this.previewData = previewData;
@@ -734,6 +735,7 @@ public class QiscusComment implements Parcelable {
                     });
                 } catch (IOException e) {
                     e.printStackTrace();
+                    QiscusAttachmentCache.getInstance().onFileOpenFailed(id);
                 }
             }
         }
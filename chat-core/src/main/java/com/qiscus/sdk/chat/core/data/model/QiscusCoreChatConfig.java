@@ -10,6 +10,9 @@ public class QiscusCoreChatConfig {
     private boolean enableFcmPushNotification = false;
     private QiscusCommentSendingInterceptor qiscusCommentSendingInterceptor = qiscusComment -> qiscusComment;
     private QiscusImageCompressionConfig qiscusImageCompressionConfig = new QiscusImageCompressionConfig();
+    private QiscusPrefetchConfig prefetchConfig = new QiscusPrefetchConfig();
+    private QiscusRetentionConfig retentionConfig = new QiscusRetentionConfig();
+    private long attachmentCacheQuota = 200 * 1024 * 1024L;
     private NotificationListener notificationListener;
     private DeleteCommentListener deleteCommentListener;
 
@@ -41,6 +44,37 @@ public class QiscusCoreChatConfig {
         return this;
     }
 
+    public QiscusPrefetchConfig getPrefetchConfig() {
+        return prefetchConfig;
+    }
+
+    public QiscusCoreChatConfig setPrefetchConfig(QiscusPrefetchConfig prefetchConfig) {
+        this.prefetchConfig = prefetchConfig;
+        return this;
+    }
+
+    public QiscusRetentionConfig getRetentionConfig() {
+        return retentionConfig;
+    }
+
+    public QiscusCoreChatConfig setRetentionConfig(QiscusRetentionConfig retentionConfig) {
+        this.retentionConfig = retentionConfig;
+        return this;
+    }
+
+    public long getAttachmentCacheQuota() {
+        return attachmentCacheQuota;
+    }
+
+    /**
+     * Set how many bytes of downloaded attachments are kept, the least recently used are deleted
+     * beyond it. 0 means no limit. Default is 200 MB.
+     */
+    public QiscusCoreChatConfig setAttachmentCacheQuota(long attachmentCacheQuota) {
+        this.attachmentCacheQuota = Math.max(0, attachmentCacheQuota);
+        return this;
+    }
+
     public NotificationListener getNotificationListener() {
         return notificationListener;
     }
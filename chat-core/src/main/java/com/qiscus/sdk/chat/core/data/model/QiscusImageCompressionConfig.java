@@ -16,6 +16,8 @@
 
 package com.qiscus.sdk.chat.core.data.model;
 
+import android.graphics.Bitmap;
+
 /**
  * Created on : March 01, 2017
  * Author     : zetbaitsu
@@ -26,6 +28,7 @@ public class QiscusImageCompressionConfig {
     private float maxHeight = 900.0f;
     private float maxWidth = 1440.0f;
     private int quality = 80;
+    private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
 
     public QiscusImageCompressionConfig() {
 
@@ -63,4 +66,19 @@ public class QiscusImageCompressionConfig {
         this.quality = quality;
         return this;
     }
+
+    public Bitmap.CompressFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Set the output format of compressed images, JPEG or WEBP. Default is JPEG.
+     *
+     * @param format the format
+     * @return this config
+     */
+    public QiscusImageCompressionConfig setFormat(Bitmap.CompressFormat format) {
+        this.format = format;
+        return this;
+    }
 }
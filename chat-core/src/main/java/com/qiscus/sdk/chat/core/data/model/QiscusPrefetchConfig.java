@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.model;
+
+/**
+ * Budgets of the inbox prefetch. The top rooms of the inbox are warmed while the device is idle
+ * and on an unmetered network, so opening them does not wait for the network.
+ */
+public class QiscusPrefetchConfig {
+    private boolean enable = true;
+    private int maxRooms = 5;
+    private int maxRows = 500;
+    private long maxBytes = 2 * 1024 * 1024;
+    private int maxMediaPerRoom = 3;
+    private long interval = 30 * 60 * 1000L;
+    private MediaPrefetcher mediaPrefetcher;
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public QiscusPrefetchConfig setEnable(boolean enable) {
+        this.enable = enable;
+        return this;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    /**
+     * Set how many rooms from the top of the inbox are prefetched, rooms with unread messages come first. Default is 5.
+     */
+    public QiscusPrefetchConfig setMaxRooms(int maxRooms) {
+        this.maxRooms = Math.max(0, maxRooms);
+        return this;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Set how many rows (rooms, members and comments) one prefetch may write to the local database. Default is 500.
+     */
+    public QiscusPrefetchConfig setMaxRows(int maxRows) {
+        this.maxRows = Math.max(0, maxRows);
+        return this;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Set how many bytes of media thumbnails one prefetch may download. Default is 2 MB.
+     */
+    public QiscusPrefetchConfig setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        return this;
+    }
+
+    public int getMaxMediaPerRoom() {
+        return maxMediaPerRoom;
+    }
+
+    public QiscusPrefetchConfig setMaxMediaPerRoom(int maxMediaPerRoom) {
+        this.maxMediaPerRoom = Math.max(0, maxMediaPerRoom);
+        return this;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the minimum time in millis between two prefetches. Default is 30 minutes.
+     */
+    public QiscusPrefetchConfig setInterval(long interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    public MediaPrefetcher getMediaPrefetcher() {
+        return mediaPrefetcher;
+    }
+
+    /**
+     * Set how media thumbnails are prefetched, without it only comments and members are prefetched
+     */
+    public QiscusPrefetchConfig setMediaPrefetcher(MediaPrefetcher mediaPrefetcher) {
+        this.mediaPrefetcher = mediaPrefetcher;
+        return this;
+    }
+
+    public interface MediaPrefetcher {
+        /**
+         * Download the thumbnail of the media comment into the image cache, called on a background thread
+         *
+         * @param qiscusComment media comment
+         * @return number of bytes downloaded, 0 if nothing was downloaded
+         */
+        long prefetch(QiscusComment qiscusComment);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.model;
+
+/**
+ * Limits of the local comment history. Comments beyond the limits are pruned in small batches while
+ * the device is idle, they can still be loaded again from the server. Pending, sending and failed
+ * comments and the last comment of every room are always kept. Disabled unless enabled with
+ * {@link #setEnable(boolean)}.
+ */
+public class QiscusRetentionConfig {
+    private boolean enable = false;
+    private int maxCommentsPerRoom = 1000;
+    private int maxComments = 20000;
+    private long maxAge = 0;
+    private int batchSize = 200;
+    private long interval = 24 * 60 * 60 * 1000L;
+    private RetentionListener retentionListener;
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    /**
+     * Set whether the local comments are pruned, so history kept offline is never lost unless the app asks
+     * for it. Default is false.
+     */
+    public QiscusRetentionConfig setEnable(boolean enable) {
+        this.enable = enable;
+        return this;
+    }
+
+    public int getMaxCommentsPerRoom() {
+        return maxCommentsPerRoom;
+    }
+
+    /**
+     * Set how many comments are kept locally for each room, 0 means no limit. Default is 1000.
+     */
+    public QiscusRetentionConfig setMaxCommentsPerRoom(int maxCommentsPerRoom) {
+        this.maxCommentsPerRoom = Math.max(0, maxCommentsPerRoom);
+        return this;
+    }
+
+    public int getMaxComments() {
+        return maxComments;
+    }
+
+    /**
+     * Set how many comments are kept locally for all rooms together, 0 means no limit. Default is 20000.
+     */
+    public QiscusRetentionConfig setMaxComments(int maxComments) {
+        this.maxComments = Math.max(0, maxComments);
+        return this;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Set the maximum age in millis of a local comment, 0 means no limit. Default is 0.
+     */
+    public QiscusRetentionConfig setMaxAge(long maxAge) {
+        this.maxAge = Math.max(0, maxAge);
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set how many comments are deleted in one write, the other writes can run between the batches.
+     * Default is 200, at most 500.
+     */
+    public QiscusRetentionConfig setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, Math.min(500, batchSize));
+        return this;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the minimum time in millis between two compactions. Default is 1 day.
+     */
+    public QiscusRetentionConfig setInterval(long interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    public RetentionListener getRetentionListener() {
+        return retentionListener;
+    }
+
+    public QiscusRetentionConfig setRetentionListener(RetentionListener retentionListener) {
+        this.retentionListener = retentionListener;
+        return this;
+    }
+
+    public interface RetentionListener {
+        /**
+         * Called on a background thread after each compaction
+         *
+         * @param reclaimedRows number of comments deleted
+         * @param databaseSize  size in bytes of the local database files
+         */
+        void onCompacted(long reclaimedRows, long databaseSize);
+    }
+}
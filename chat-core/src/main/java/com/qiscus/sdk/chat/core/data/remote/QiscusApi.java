@@ -27,6 +27,7 @@ import com.google.gson.JsonObject;
 import com.qiscus.sdk.chat.core.BuildConfig;
 import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.R;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QUserPresence;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusAppConfig;
@@ -44,6 +45,7 @@ import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
 import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
 import com.qiscus.sdk.chat.core.util.QiscusHashMapUtil;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 
 import org.greenrobot.eventbus.EventBus;
@@ -58,8 +60,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.ConnectionSpec;
@@ -90,7 +94,6 @@ import rx.Emitter;
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.exceptions.OnErrorThrowable;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : August 18, 2016
@@ -100,6 +103,7 @@ import rx.schedulers.Schedulers;
  */
 public enum QiscusApi {
     INSTANCE;
+    private static final int UNREAD_ROOM_PAGE_SIZE = 100;
     private OkHttpClient httpClient;
     private Api api;
     private String baseUrl;
@@ -532,7 +536,7 @@ public enum QiscusApi {
                         .doOnError(throwable -> {
                             subscriber.onError(throwable);
                         })
-                        .subscribeOn(Schedulers.io())
+                        .subscribeOn(QiscusSchedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(commentSend -> {
                             subscriber.onNext(commentSend);
@@ -907,7 +911,55 @@ public enum QiscusApi {
         return api.getTotalUnreadCount()
                 .map(JsonElement::getAsJsonObject)
                 .map(jsonResponse -> jsonResponse.get("results").getAsJsonObject())
-                .map(jsonResults -> jsonResults.get("total_unread_count").getAsLong());
+                .map(jsonResults -> jsonResults.get("total_unread_count").getAsLong())
+                .doOnNext(total -> {
+                    if (QiscusUnreadCounter.getInstance().reconcile(total)) {
+                        refreshUnreadCounts();
+                    }
+                });
+    }
+
+    /**
+     * Fetch every room again after the unread total was different from the server, so the saved counts
+     * match the server and the total stays right when it is summed from the rooms again. Saved rooms the
+     * server does not return anymore are set to read.
+     */
+    private void refreshUnreadCounts() {
+        Observable.fromCallable(this::getUnreadRoomIds)
+                .flatMap(unreadRoomIds -> Observable.range(1, Integer.MAX_VALUE)
+                        .concatMap(page -> getAllChatRooms(false, false, true, page, UNREAD_ROOM_PAGE_SIZE))
+                        .takeUntil(qiscusChatRooms -> qiscusChatRooms.size() < UNREAD_ROOM_PAGE_SIZE)
+                        .doOnNext(qiscusChatRooms -> {
+                            for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+                                QiscusCore.getDataStore().addOrUpdate(qiscusChatRoom);
+                                unreadRoomIds.remove(qiscusChatRoom.getId());
+                            }
+                        })
+                        .ignoreElements()
+                        .doOnCompleted(() -> {
+                            for (long roomId : unreadRoomIds) {
+                                QiscusCore.getDataStore().updateUnreadCount(roomId, 0);
+                            }
+                        }))
+                .subscribeOn(QiscusSchedulers.io())
+                .subscribe(qiscusChatRooms -> {
+                }, QiscusErrorLogger::print, QiscusUnreadCounter.getInstance()::onRoomsRefreshed);
+    }
+
+    private Set<Long> getUnreadRoomIds() {
+        Set<Long> unreadRoomIds = new HashSet<>();
+        int offset = 0;
+        List<QiscusChatRoom> qiscusChatRooms;
+        do {
+            qiscusChatRooms = QiscusCore.getDataStore().getChatRooms(UNREAD_ROOM_PAGE_SIZE, offset);
+            for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+                if (qiscusChatRoom.getUnreadCount() > 0) {
+                    unreadRoomIds.add(qiscusChatRoom.getId());
+                }
+            }
+            offset += qiscusChatRooms.size();
+        } while (qiscusChatRooms.size() == UNREAD_ROOM_PAGE_SIZE);
+        return unreadRoomIds;
     }
 
     @Deprecated
@@ -1119,6 +1171,9 @@ public enum QiscusApi {
                 .toList();
     }
 
+    /**
+     * Every call is a request, for search as you type use {@link QiscusUserDirectory}
+     */
     public Observable<List<QiscusAccount>> getUsers(String searchUsername, long page, long limit) {
         return api.getUserList(page, limit, "username asc", searchUsername)
                 .map(JsonElement::getAsJsonObject)
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the set of topics the client wants to be subscribed to, so all of them can be restored in one
+ * call after every connect, and decides when to retry a connection. Retries back off exponentially with
+ * jitter, and the broker is rotated after {@link #FAILURES_BEFORE_ROTATE} failed attempts in a row.
+ * It also measures the connect time, the time to the first message and how often the connection flaps.
+ */
+final class QiscusConnectionSupervisor {
+    private static final long BASE_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_BACKOFF_EXPONENT = 6;
+    private static final int FAILURES_BEFORE_ROTATE = 3;
+    private static final long FLAP_WINDOW = TimeUnit.MINUTES.toMillis(1);
+
+    private final Set<String> desiredTopics = new LinkedHashSet<>();
+    private final Random random = new Random();
+    private int retryAttempt;
+    private int brokerFailures;
+    private long connectStartedAt;
+    private long connectedAt;
+    private boolean waitingFirstMessage;
+    private long lastConnectTime = -1;
+    private long lastTimeToFirstMessage = -1;
+    private int flapCount;
+
+    /**
+     * @return the topics which were not desired yet
+     */
+    synchronized String[] add(String... topics) {
+        List<String> added = new ArrayList<>(topics.length);
+        for (String topic : topics) {
+            if (desiredTopics.add(topic)) {
+                added.add(topic);
+            }
+        }
+        return added.toArray(new String[added.size()]);
+    }
+
+    /**
+     * @return the topics which were desired before
+     */
+    synchronized String[] remove(String... topics) {
+        List<String> removed = new ArrayList<>(topics.length);
+        for (String topic : topics) {
+            if (desiredTopics.remove(topic)) {
+                removed.add(topic);
+            }
+        }
+        return removed.toArray(new String[removed.size()]);
+    }
+
+    /**
+     * @return all desired topics together with the extra topics, to be subscribed in one call
+     */
+    synchronized String[] getDesiredTopics(String[] extraTopics) {
+        List<String> topics = new ArrayList<>(desiredTopics.size() + extraTopics.length);
+        topics.addAll(desiredTopics);
+        Collections.addAll(topics, extraTopics);
+        return topics.toArray(new String[topics.size()]);
+    }
+
+    synchronized void clear() {
+        desiredTopics.clear();
+    }
+
+    synchronized void onConnecting() {
+        connectStartedAt = System.currentTimeMillis();
+    }
+
+    synchronized void onConnected() {
+        long now = System.currentTimeMillis();
+        if (connectStartedAt > 0) {
+            lastConnectTime = now - connectStartedAt;
+            connectStartedAt = 0;
+        }
+        connectedAt = now;
+        waitingFirstMessage = true;
+        retryAttempt = 0;
+        brokerFailures = 0;
+    }
+
+    synchronized void onMessageArrived() {
+        if (waitingFirstMessage) {
+            lastTimeToFirstMessage = System.currentTimeMillis() - connectedAt;
+            waitingFirstMessage = false;
+        }
+    }
+
+    /**
+     * @return the delay in ms before reconnecting
+     */
+    synchronized long onConnectionLost() {
+        if (connectedAt > 0 && System.currentTimeMillis() - connectedAt < FLAP_WINDOW) {
+            flapCount++;
+        }
+        connectedAt = 0;
+        waitingFirstMessage = false;
+        return nextRetryDelay();
+    }
+
+    /**
+     * @return the delay in ms before trying to connect again
+     */
+    synchronized long onConnectFailed() {
+        connectStartedAt = 0;
+        brokerFailures++;
+        return nextRetryDelay();
+    }
+
+    /**
+     * @return true if the current broker failed often enough that another one should be requested
+     */
+    synchronized boolean shouldRotateBroker() {
+        return brokerFailures > 0 && brokerFailures % FAILURES_BEFORE_ROTATE == 0;
+    }
+
+    synchronized long getLastConnectTime() {
+        return lastConnectTime;
+    }
+
+    synchronized long getLastTimeToFirstMessage() {
+        return lastTimeToFirstMessage;
+    }
+
+    synchronized int getFlapCount() {
+        return flapCount;
+    }
+
+    private long nextRetryDelay() {
+        long ceiling = Math.min(MAX_RETRY_DELAY,
+                BASE_RETRY_DELAY << Math.min(retryAttempt, MAX_BACKOFF_EXPONENT));
+        retryAttempt++;
+        long half = ceiling / 2;
+        return half + (long) (random.nextDouble() * half);
+    }
+}
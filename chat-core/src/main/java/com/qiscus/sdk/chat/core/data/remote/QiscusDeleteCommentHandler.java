@@ -23,15 +23,20 @@ import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 import com.qiscus.sdk.chat.core.event.QiscusCommentDeletedEvent;
+import com.qiscus.sdk.chat.core.event.QiscusCommentsDeletedEvent;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 
 import org.greenrobot.eventbus.EventBus;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : February 08, 2018
@@ -46,90 +51,70 @@ public final class QiscusDeleteCommentHandler {
     }
 
     public static void handle(DeletedCommentsData deletedCommentsData) {
-        if (deletedCommentsData.isHardDelete()) {
-            handleHardDelete(deletedCommentsData);
-        } else {
-            handleSoftDelete(deletedCommentsData);
-        }
-    }
-
-    private static void handleSoftDelete(DeletedCommentsData deletedCommentsData) {
-        Observable.from(deletedCommentsData.getDeletedComments())
-                .map(deletedComment -> {
-                    QiscusComment qiscusComment = QiscusCore.getDataStore().getComment(deletedComment.getCommentUniqueId());
-                    if (qiscusComment != null) {
-                        qiscusComment.setMessage("This message has been deleted.");
-                        qiscusComment.setRawType("text");
-                        qiscusComment.setDeleted(true);
-
-                        setRoomData(qiscusComment);
-                    }
-                    return qiscusComment;
-                })
-                .filter(qiscusComment -> qiscusComment != null)
-                .doOnNext(qiscusComment -> {
-                    QiscusCore.getDataStore().addOrUpdate(qiscusComment);
-                    QiscusCore.getDataStore().deleteLocalPath(qiscusComment.getId());
-
-                    EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment));
-                })
-                .toList()
+        boolean hardDelete = deletedCommentsData.isHardDelete();
+        Observable.fromCallable(() -> applyDeletedComments(deletedCommentsData.getDeletedComments(), hardDelete))
                 .doOnNext(qiscusComments -> {
                     if (QiscusCore.getChatConfig().getDeleteCommentListener() != null) {
                         QiscusCore.getChatConfig().getDeleteCommentListener()
                                 .onHandleDeletedCommentNotification(QiscusCore.getApps(),
-                                        qiscusComments, false);
+                                        qiscusComments, hardDelete);
                     }
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(comments -> {
                 }, QiscusErrorLogger::print);
     }
 
-    private static void handleHardDelete(DeletedCommentsData deletedCommentsData) {
-        Observable.from(deletedCommentsData.getDeletedComments())
-                .map(deletedComment -> {
-                    QiscusComment qiscusComment = QiscusCore.getDataStore().getComment(deletedComment.getCommentUniqueId());
-                    if (qiscusComment != null) {
-                        qiscusComment.setMessage("This message has been deleted.");
-                        qiscusComment.setRawType("text");
-                        qiscusComment.setDeleted(true);
-                        qiscusComment.setHardDeleted(true);
-                        setRoomData(qiscusComment);
-                    }
+    /**
+     * Load all deleted comments with one query, save them in one transaction and post one event per room
+     */
+    private static List<QiscusComment> applyDeletedComments(List<DeletedCommentsData.DeletedComment> deletedComments,
+                                                            boolean hardDelete) {
+        List<String> uniqueIds = new ArrayList<>(deletedComments.size());
+        for (DeletedCommentsData.DeletedComment deletedComment : deletedComments) {
+            uniqueIds.add(deletedComment.getCommentUniqueId());
+        }
 
-                    return qiscusComment;
-                })
-                .filter(qiscusComment -> qiscusComment != null)
-                .doOnNext(qiscusComment -> {
-                    // Update chaining id and before id
-                    QiscusComment commentAfter = QiscusCore.getDataStore().getCommentByBeforeId(qiscusComment.getId());
-                    if (commentAfter != null) {
-                        commentAfter.setCommentBeforeId(qiscusComment.getCommentBeforeId());
-                        QiscusCore.getDataStore().addOrUpdate(commentAfter);
-                    }
+        List<QiscusComment> qiscusComments = QiscusCore.getDataStore().getComments(uniqueIds);
+        if (qiscusComments.isEmpty()) {
+            return qiscusComments;
+        }
 
-                    QiscusCore.getDataStore().addOrUpdate(qiscusComment);
-                    QiscusCore.getDataStore().deleteLocalPath(qiscusComment.getId());
-                    EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment, true));
-                })
-                .toList()
-                .doOnNext(qiscusComments -> {
-                    if (QiscusCore.getChatConfig().getDeleteCommentListener() != null) {
-                        QiscusCore.getChatConfig().getDeleteCommentListener()
-                                .onHandleDeletedCommentNotification(QiscusCore.getApps(),
-                                        qiscusComments, true);
-                    }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(comments -> {
-                }, QiscusErrorLogger::print);
+        Map<Long, QiscusChatRoom> chatRooms = new HashMap<>();
+        Map<Long, List<QiscusComment>> roomComments = new LinkedHashMap<>();
+        for (QiscusComment qiscusComment : qiscusComments) {
+            qiscusComment.setMessage("This message has been deleted.");
+            qiscusComment.setRawType("text");
+            qiscusComment.setDeleted(true);
+            qiscusComment.setHardDeleted(hardDelete);
+            setRoomData(qiscusComment, chatRooms);
+
+            List<QiscusComment> comments = roomComments.get(qiscusComment.getRoomId());
+            if (comments == null) {
+                comments = new ArrayList<>();
+                roomComments.put(qiscusComment.getRoomId(), comments);
+            }
+            comments.add(qiscusComment);
+        }
+
+        QiscusCore.getDataStore().markCommentsDeleted(qiscusComments, hardDelete);
+
+        for (Map.Entry<Long, List<QiscusComment>> entry : roomComments.entrySet()) {
+            EventBus.getDefault().post(new QiscusCommentsDeletedEvent(entry.getKey(), entry.getValue(), hardDelete));
+        }
+        for (QiscusComment qiscusComment : qiscusComments) {
+            EventBus.getDefault().post(new QiscusCommentDeletedEvent(qiscusComment, hardDelete));
+        }
+        return qiscusComments;
     }
 
-    private static void setRoomData(QiscusComment qiscusComment) {
-        QiscusChatRoom chatRoom = QiscusCore.getDataStore().getChatRoom(qiscusComment.getRoomId());
+    private static void setRoomData(QiscusComment qiscusComment, Map<Long, QiscusChatRoom> chatRooms) {
+        if (!chatRooms.containsKey(qiscusComment.getRoomId())) {
+            chatRooms.put(qiscusComment.getRoomId(), QiscusCore.getDataStore().getChatRoom(qiscusComment.getRoomId()));
+        }
+
+        QiscusChatRoom chatRoom = chatRooms.get(qiscusComment.getRoomId());
         if (chatRoom != null) {
             qiscusComment.setRoomName(chatRoom.getName());
             qiscusComment.setRoomAvatar(chatRoom.getAvatarUrl());
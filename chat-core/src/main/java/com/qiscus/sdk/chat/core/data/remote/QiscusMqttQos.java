@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+/**
+ * QoS of each MQTT topic. Typing and presence are replaced by the next update anyway, so they are sent
+ * at most once. Comments, receipts and events are sent at least once, and handled idempotently.
+ */
+final class QiscusMqttQos {
+    static final int AT_MOST_ONCE = 0;
+    static final int AT_LEAST_ONCE = 1;
+
+    private QiscusMqttQos() {
+    }
+
+    static int forTopic(String topic) {
+        if (topic.endsWith("/t") || topic.endsWith("/s")) {
+            return AT_MOST_ONCE;
+        }
+        return AT_LEAST_ONCE;
+    }
+
+    static int[] forTopics(String[] topics) {
+        int[] qos = new int[topics.length];
+        for (int i = 0; i < topics.length; i++) {
+            qos[i] = forTopic(topics[i]);
+        }
+        return qos;
+    }
+}
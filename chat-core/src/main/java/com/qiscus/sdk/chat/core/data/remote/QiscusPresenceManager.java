@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.event.QiscusUserStatusEvent;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how many screens listen to the presence of each user. The topic of a user is subscribed by the
+ * first listener and unsubscribed a while after the last one leaves, so screens that come and go do not
+ * churn subscriptions. Changes are sent together in one multi topic call, and at most
+ * {@link #MAX_TOPICS} users are subscribed, the least recently used are dropped first.
+ */
+final class QiscusPresenceManager {
+    private static final int MAX_TOPICS = 100;
+    private static final int MAX_CACHED_STATUSES = 500;
+    private static final long BATCH_DELAY = 100;
+    private static final long LINGER = TimeUnit.SECONDS.toMillis(30);
+
+    private final TopicsAction subscribeAction;
+    private final TopicsAction unsubscribeAction;
+    private final LinkedHashMap<String, Presence> presences = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> pendingSubscribes = new HashSet<>();
+    private final Set<String> pendingUnsubscribes = new HashSet<>();
+    private final Map<String, QiscusUserStatusEvent> lastStatuses =
+            new LinkedHashMap<String, QiscusUserStatusEvent>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, QiscusUserStatusEvent> eldest) {
+                    return size() > MAX_CACHED_STATUSES;
+                }
+            };
+    private ScheduledFuture<?> scheduledFlush;
+
+    QiscusPresenceManager(TopicsAction subscribeAction, TopicsAction unsubscribeAction) {
+        this.subscribeAction = subscribeAction;
+        this.unsubscribeAction = unsubscribeAction;
+    }
+
+    static String getTopic(String userId) {
+        return "u/" + userId + "/s";
+    }
+
+    synchronized void acquire(String userId) {
+        Presence presence = presences.get(userId);
+        if (presence == null) {
+            presence = new Presence();
+            presences.put(userId, presence);
+            if (!pendingUnsubscribes.remove(userId)) {
+                pendingSubscribes.add(userId);
+            }
+            trimToMaxTopics();
+        }
+        presence.refCount++;
+        scheduleFlush(BATCH_DELAY);
+    }
+
+    synchronized void release(String userId) {
+        Presence presence = presences.get(userId);
+        if (presence == null || presence.refCount == 0) {
+            return;
+        }
+
+        presence.refCount--;
+        if (presence.refCount == 0) {
+            presence.releasedAt = System.currentTimeMillis();
+            scheduleFlush(LINGER);
+        }
+    }
+
+    synchronized void onStatus(QiscusUserStatusEvent event) {
+        lastStatuses.put(event.getUser(), event);
+    }
+
+    /**
+     * @return the last status received for the user, or null if none was received yet
+     */
+    synchronized QiscusUserStatusEvent getLastStatus(String userId) {
+        return lastStatuses.get(userId);
+    }
+
+    /**
+     * @return all active topics, to be subscribed again after the connection was restored
+     */
+    synchronized String[] getActiveTopics() {
+        pendingSubscribes.clear();
+        return toTopics(presences.keySet());
+    }
+
+    private void trimToMaxTopics() {
+        while (presences.size() > MAX_TOPICS) {
+            String evicted = null;
+            for (Map.Entry<String, Presence> entry : presences.entrySet()) {
+                if (entry.getValue().refCount == 0) {
+                    evicted = entry.getKey();
+                    break;
+                }
+            }
+            if (evicted == null) {
+                evicted = presences.keySet().iterator().next();
+            }
+            remove(evicted);
+        }
+    }
+
+    private void remove(String userId) {
+        presences.remove(userId);
+        if (!pendingSubscribes.remove(userId)) {
+            pendingUnsubscribes.add(userId);
+        }
+    }
+
+    private void scheduleFlush(long delay) {
+        //A lingering flush is brought forward, new subscribes should not wait for it
+        if (scheduledFlush != null && !scheduledFlush.isDone()
+                && scheduledFlush.getDelay(TimeUnit.MILLISECONDS) > delay) {
+            scheduledFlush.cancel(false);
+        }
+        if (scheduledFlush == null || scheduledFlush.isDone()) {
+            scheduledFlush = QiscusAndroidUtil.runOnBackgroundThread(this::flush, delay);
+        }
+    }
+
+    private void flush() {
+        String[] subscribes;
+        String[] unsubscribes;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            boolean lingering = false;
+            Iterator<Map.Entry<String, Presence>> iterator = presences.entrySet().iterator();
+            List<String> expired = new ArrayList<>();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Presence> entry = iterator.next();
+                if (entry.getValue().refCount == 0) {
+                    if (now - entry.getValue().releasedAt >= LINGER) {
+                        expired.add(entry.getKey());
+                    } else {
+                        lingering = true;
+                    }
+                }
+            }
+            for (String userId : expired) {
+                remove(userId);
+            }
+
+            subscribes = toTopics(pendingSubscribes);
+            unsubscribes = toTopics(pendingUnsubscribes);
+            pendingSubscribes.clear();
+            pendingUnsubscribes.clear();
+
+            scheduledFlush = null;
+            if (lingering) {
+                scheduleFlush(LINGER);
+            }
+        }
+
+        if (unsubscribes.length > 0) {
+            unsubscribeAction.run(unsubscribes);
+        }
+        if (subscribes.length > 0) {
+            subscribeAction.run(subscribes);
+        }
+    }
+
+    private String[] toTopics(Set<String> userIds) {
+        String[] topics = new String[userIds.size()];
+        int i = 0;
+        for (String userId : userIds) {
+            topics[i++] = getTopic(userId);
+        }
+        return topics;
+    }
+
+    interface TopicsAction {
+        void run(String[] topics);
+    }
+
+    private static final class Presence {
+        private int refCount;
+        private long releasedAt;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.qiscus.sdk.chat.core.data.remote;
 
+import android.content.Context;
 import android.provider.Settings;
 
 import androidx.annotation.Nullable;
@@ -26,6 +27,7 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.data.local.QiscusEventCache;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
@@ -33,11 +35,14 @@ import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 import com.qiscus.sdk.chat.core.event.QiscusChatRoomEvent;
 import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
 import com.qiscus.sdk.chat.core.event.QiscusMqttStatusEvent;
+import com.qiscus.sdk.chat.core.event.QiscusRoomEventDispatcher;
 import com.qiscus.sdk.chat.core.event.QiscusUserEvent;
 import com.qiscus.sdk.chat.core.event.QiscusUserStatusEvent;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 
 import org.eclipse.paho.android.service.MqttAndroidClient;
@@ -48,33 +53,36 @@ import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
-import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener {
 
     INSTANCE;
     private static final String TAG = QiscusPusherApi.class.getSimpleName();
-    private static final long RETRY_PERIOD = 4000;
+    private static final String PERSISTENCE_DIRECTORY = "qiscus_mqtt";
+    private static final int MAX_RECENT_COMMENTS = 200;
+    private static final long PRESENCE_KEEP_ALIVE = TimeUnit.MINUTES.toMillis(2);
 
     private static Gson gson;
-    private static long reconnectCounter;
 
     static {
         gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss").create();
@@ -83,22 +91,22 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     private String clientId;
     private MqttAndroidClient mqttAndroidClient;
     private QiscusAccount qiscusAccount;
-    private Runnable fallBackListenRoom;
-    private Runnable fallBackListenUserStatus;
-    private Runnable fallbackListenEvent;
     private ScheduledFuture<?> scheduledConnect;
-    private ScheduledFuture<?> scheduledListenComment;
-    private ScheduledFuture<?> scheduledListenNotification;
-    private ScheduledFuture<?> scheduledListenRoom;
-    private ScheduledFuture<?> scheduledListenUserStatus;
-    private ScheduledFuture<?> scheduledListenEvent;
+    private ScheduledFuture<?> scheduledRestoreSubscriptions;
     private boolean connecting;
     private boolean reporting = true;
     private Runnable fallbackConnect = this::restartConnection;
-    private Runnable fallBackListenNotification = this::listenNotification;
     private ScheduledFuture<?> scheduledUserStatus;
-    private Runnable fallBackListenComment = this::listenComment;
-    private int setOfflineCounter;
+    private final QiscusTypingPublisher typingPublisher = new QiscusTypingPublisher(this::publishTypingState);
+    private final QiscusPresenceManager presenceManager =
+            new QiscusPresenceManager(this::subscribeTopics, this::unsubscribeTopics);
+    private final QiscusConnectionSupervisor supervisor = new QiscusConnectionSupervisor();
+    private final Map<String, Integer> recentComments = new LinkedHashMap<String, Integer>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_RECENT_COMMENTS;
+        }
+    };
 
     QiscusPusherApi() {
         QiscusLogger.print("QiscusPusherApi", "Creating...");
@@ -129,6 +137,10 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             return;
         }
 
+        if (savedComment == null) {
+            QiscusUnreadCounter.getInstance().onCommentReceived(qiscusComment);
+        }
+
         if (!qiscusComment.isMyComment()) {
             QiscusPusherApi.getInstance().markAsDelivered(qiscusComment.getRoomId(), qiscusComment.getId());
         }
@@ -224,7 +236,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                         .setEvent(QiscusChatRoomEvent.Event.DELIVERED)
                         .setCommentId(commentId)
                         .setCommentUniqueId(commentUniqueID);
-                EventBus.getDefault().post(event);
+                QiscusRoomEventDispatcher.getInstance().post(event);
             }
         } else if (jsonObject.optString("action_topic").equals("read")) {
             JSONObject payload = jsonObject.optJSONObject("payload");
@@ -243,7 +255,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                         .setEvent(QiscusChatRoomEvent.Event.READ)
                         .setCommentId(commentId)
                         .setCommentUniqueId(commentUniqueID);
-                EventBus.getDefault().post(event);
+                QiscusRoomEventDispatcher.getInstance().post(event);
             }
         }
     }
@@ -312,20 +324,32 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         return jsonToComment(gson.fromJson(json, JsonObject.class));
     }
 
+    /**
+     * The session is kept on the broker while the same user is logged in, so the client id only changes
+     * with the user. Without a user a unique id is used.
+     */
+    private String getSessionClientId() {
+        if (QiscusCore.hasSetupUser()) {
+            return clientId + Integer.toHexString(QiscusCore.getQiscusAccount().getEmail().hashCode());
+        }
+        return clientId + System.currentTimeMillis() / 1000;
+    }
+
     private void buildClient() {
-        Long epochTimeLong = System.currentTimeMillis() / 1000;
-        String epochTime = epochTimeLong.toString();
+        String sessionClientId = getSessionClientId();
 
         mqttAndroidClient = null;
 
         try {
-            mqttAndroidClient = new MqttAndroidClient(QiscusCore.getApps().getApplicationContext(),
-                    QiscusCore.getMqttBrokerUrl(), clientId + epochTime, new MemoryPersistence());
+            Context context = QiscusCore.getApps().getApplicationContext();
+            mqttAndroidClient = new MqttAndroidClient(context, QiscusCore.getMqttBrokerUrl(), sessionClientId,
+                    new MqttDefaultFilePersistence(new File(context.getFilesDir(), PERSISTENCE_DIRECTORY)
+                            .getAbsolutePath()));
             mqttAndroidClient.setCallback(this);
             mqttAndroidClient.setTraceEnabled(false);
         } catch (NullPointerException n) {
             mqttAndroidClient = new MqttAndroidClient(QiscusCore.getApps().getApplicationContext(),
-                    QiscusCore.getMqttBrokerUrl(), clientId + epochTime);
+                    QiscusCore.getMqttBrokerUrl(), sessionClientId);
             mqttAndroidClient.setCallback(this);
             mqttAndroidClient.setTraceEnabled(false);
         }
@@ -334,13 +358,15 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     /**
      * If isEnableMqttLB = true, MQTT broker url is from own MQTT_LB and save to shared pref
+     *
+     * @param rotate ask for another node even if the current one never connected
      */
-    private void getMqttBrokerUrlFromLB() {
+    private void getMqttBrokerUrlFromLB(boolean rotate) {
         QiscusLogger.print(TAG, "isEnableMqttLB : " + QiscusCore.isEnableMqttLB());
         QiscusLogger.print(TAG, "urlLB : " + QiscusCore.getBaseURLLB());
 
         boolean isValid = QiscusCore.isEnableMqttLB() &&
-                QiscusCore.willGetNewNodeMqttBrokerUrl() &&
+                (rotate || QiscusCore.willGetNewNodeMqttBrokerUrl()) &&
                 QiscusAndroidUtil.isNetworkAvailable();
 
         if (isValid) {
@@ -349,7 +375,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                     .map(s -> String.format("ssl://%s:1885", s))
                     .doOnNext(node -> QiscusCore.setCacheMqttBrokerUrl(node, false))
                     .map(node -> QiscusCore.getMqttBrokerUrl())
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(mqttBaseUrl -> {
                                 QiscusLogger.print(TAG, "New MQTT Broker URL = " + mqttBaseUrl);
@@ -363,7 +389,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         if (QiscusCore.hasSetupUser() && reporting == true && QiscusCore.getEnableEventReport() == true) {
             QiscusApi.getInstance()
                     .eventReport(moduleName, event, message)
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(aVoid -> {
                         reporting = false;
@@ -375,12 +401,22 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         if (QiscusCore.hasSetupUser() && !connecting && QiscusAndroidUtil.isNetworkAvailable() && QiscusCore.getEnableRealtime()) {
             connecting = true;
             qiscusAccount = QiscusCore.getQiscusAccount();
+            if (mqttAndroidClient == null || !getSessionClientId().equals(mqttAndroidClient.getClientId())) {
+                try {
+                    mqttAndroidClient.close();
+                } catch (NullPointerException | IllegalArgumentException e) {
+                    //Do nothing
+                }
+                buildClient();
+            }
+            supervisor.add(qiscusAccount.getToken() + "/c", qiscusAccount.getToken() + "/n");
+            supervisor.onConnecting();
             MqttConnectOptions mqttConnectOptions = new MqttConnectOptions();
             mqttConnectOptions.setAutomaticReconnect(false);
             mqttConnectOptions.setCleanSession(false);
             mqttConnectOptions.setWill("u/" + qiscusAccount.getEmail()
                     + "/s", ("0:" + Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis())
-                    .getBytes(), 2, true);
+                    .getBytes(), QiscusMqttQos.forTopic("u/" + qiscusAccount.getEmail() + "/s"), true);
             EventBus.getDefault().post(QiscusMqttStatusEvent.RECONNETING);
             try {
                 mqttAndroidClient.connect(mqttConnectOptions, null, this);
@@ -443,7 +479,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             return;
         }
 
-        getMqttBrokerUrlFromLB();
+        getMqttBrokerUrlFromLB(false);
         QiscusLogger.print("QiscusPusherApi", "Restart connection...");
         try {
             connecting = false;
@@ -466,24 +502,9 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             scheduledConnect.cancel(true);
             scheduledConnect = null;
         }
-        if (scheduledListenComment != null) {
-            scheduledListenComment.cancel(true);
-            scheduledListenComment = null;
-        }
-        if (scheduledListenNotification != null) {
-            scheduledListenNotification.cancel(true);
-            scheduledListenNotification = null;
-        }
-        if (scheduledListenRoom != null) {
-            scheduledListenRoom.cancel(true);
-            scheduledListenRoom = null;
-        }
-        if (scheduledListenUserStatus != null) {
-            scheduledListenUserStatus.cancel(true);
-        }
-        if (scheduledListenEvent != null) {
-            scheduledListenEvent.cancel(true);
-            scheduledListenEvent = null;
+        if (scheduledRestoreSubscriptions != null) {
+            scheduledRestoreSubscriptions.cancel(true);
+            scheduledRestoreSubscriptions = null;
         }
     }
 
@@ -506,84 +527,53 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         stopUserStatus();
     }
 
-    private void listenComment() {
-        QiscusLogger.print(TAG, "Listening comment...");
+    /**
+     * Subscribe every desired topic and presence in one call, used after each connect
+     */
+    private void restoreSubscriptions() {
+        String[] topics = supervisor.getDesiredTopics(presenceManager.getActiveTopics());
+        QiscusLogger.print(TAG, "Restoring " + topics.length + " subscriptions...");
         try {
-            mqttAndroidClient.subscribe(qiscusAccount.getToken() + "/c", 2);
+            mqttAndroidClient.subscribe(topics, QiscusMqttQos.forTopics(topics));
         } catch (MqttException e) {
-            try {
-                eventReport("MQTT", "FAILED_LISTEN_COMMENT", e.toString());
-            } catch (NullPointerException d) {
-                //ignored
-            } catch (Exception d) {
-                //ignored
-            }
+            eventReport("MQTT", "FAILED_RESTORE_SUBSCRIPTIONS", e.toString());
             disconnect();
             restartConnection();
         } catch (NullPointerException | IllegalArgumentException e) {
-            try {
-                eventReport("MQTT", "FAILED_LISTEN_COMMENT", e.toString());
-            } catch (NullPointerException d) {
-                //ignored
-            } catch (Exception d) {
-                //ignored
-            }
-            QiscusErrorLogger.print(TAG, "Failure listen comment, try again in " + RETRY_PERIOD + " ms");
+            eventReport("MQTT", "FAILED_RESTORE_SUBSCRIPTIONS", e.toString());
+            QiscusErrorLogger.print(TAG, "Failure restore subscriptions, try again later");
             connect();
-            scheduledListenComment = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenComment, RETRY_PERIOD);
+            scheduledRestoreSubscriptions = QiscusAndroidUtil.runOnBackgroundThread(this::restoreSubscriptions,
+                    supervisor.onConnectFailed());
         }
     }
 
-    private void listenNotification() {
-        QiscusLogger.print(TAG, "Listening notification...");
-        try {
-            mqttAndroidClient.subscribe(qiscusAccount.getToken() + "/n", 2);
-        } catch (MqttException e) {
-            try {
-                eventReport("MQTT", "FAILED_LISTEN_NOTIFICATION", e.toString());
-            } catch (NullPointerException d) {
-                //ignored
-            } catch (Exception d) {
-                //ignored
-            }
-        } catch (NullPointerException | IllegalArgumentException e) {
-            try {
-                eventReport("MQTT", "FAILED_LISTEN_NOTIFICATION", e.toString());
-            } catch (NullPointerException d) {
-                //ignored
-            } catch (Exception d) {
-                //ignored
-            }
-            QiscusErrorLogger.print(TAG, "Failure listen notification, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenNotification = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenNotification, RETRY_PERIOD);
+    /**
+     * Add the topics to the desired subscriptions, they are subscribed now if connected or else once the
+     * connection is restored
+     */
+    private void subscribeDesiredTopics(String... topics) {
+        String[] added = supervisor.add(topics);
+        if (added.length == 0) {
+            return;
+        }
+        if (isConnected()) {
+            subscribeTopics(added);
+        } else {
+            checkAndConnect();
         }
     }
 
-    @Deprecated
-    public void listenRoom(QiscusChatRoom qiscusChatRoom) {
-        if (!QiscusCore.getEnableRealtime()) {
-            return;
+    private void unsubscribeDesiredTopics(String... topics) {
+        String[] removed = supervisor.remove(topics);
+        if (removed.length > 0) {
+            unsubscribeTopics(removed);
         }
-        QiscusLogger.print(TAG, "Listening room...");
-        fallBackListenRoom = () -> listenRoom(qiscusChatRoom);
-        try {
-            long roomId = qiscusChatRoom.getId();
-            if (!qiscusChatRoom.isChannel()) {
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/t", 2);
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/d", 2);
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/r", 2);
+    }
 
-            } else {
-                mqttAndroidClient.subscribe(QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c", 2);
-            }
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            QiscusErrorLogger.print(TAG, "Failure listen room, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenRoom = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenRoom, RETRY_PERIOD);
-        }
+    @Deprecated
+    public void listenRoom(QiscusChatRoom qiscusChatRoom) {
+        subscribeChatRoom(qiscusChatRoom);
     }
 
     public void subscribeChatRoom(QiscusChatRoom qiscusChatRoom) {
@@ -591,113 +581,68 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             return;
         }
         QiscusLogger.print(TAG, "Listening room...");
-        fallBackListenRoom = () -> subscribeChatRoom(qiscusChatRoom);
-        try {
-            long roomId = qiscusChatRoom.getId();
-            if (!qiscusChatRoom.isChannel()) {
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/t", 2);
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/d", 2);
-                mqttAndroidClient.subscribe("r/" + roomId + "/+/+/r", 2);
-
-            } else {
-                mqttAndroidClient.subscribe(QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c", 2);
-
-            }
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            QiscusErrorLogger.print(TAG, "Failure listen room, try again in " + RETRY_PERIOD + " ms");
-            connect();
-            scheduledListenRoom = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenRoom, RETRY_PERIOD);
+        long roomId = qiscusChatRoom.getId();
+        if (!qiscusChatRoom.isChannel()) {
+            subscribeDesiredTopics("r/" + roomId + "/+/+/t", "r/" + roomId + "/+/+/d", "r/" + roomId + "/+/+/r");
+        } else {
+            subscribeDesiredTopics(QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c");
         }
     }
 
     @Deprecated
     public void unListenRoom(QiscusChatRoom qiscusChatRoom) {
-        try {
-            long roomId = qiscusChatRoom.getId();
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/t");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/d");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/r");
-            mqttAndroidClient.unsubscribe(QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
-        if (scheduledListenRoom != null) {
-            scheduledListenRoom.cancel(true);
-            scheduledListenRoom = null;
-        }
-        fallBackListenRoom = null;
+        unsubsribeChatRoom(qiscusChatRoom);
     }
 
-
     public void unsubsribeChatRoom(QiscusChatRoom qiscusChatRoom) {
-        try {
-            long roomId = qiscusChatRoom.getId();
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/t");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/d");
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/+/+/r");
-            mqttAndroidClient.unsubscribe(QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
-        if (scheduledListenRoom != null) {
-            scheduledListenRoom.cancel(true);
-            scheduledListenRoom = null;
-        }
-        fallBackListenRoom = null;
+        long roomId = qiscusChatRoom.getId();
+        unsubscribeDesiredTopics("r/" + roomId + "/+/+/t", "r/" + roomId + "/+/+/d", "r/" + roomId + "/+/+/r",
+                QiscusCore.getAppId() + "/" + qiscusChatRoom.getUniqueId() + "/c");
     }
 
     @Deprecated
     public void listenUserStatus(String user) {
-        fallBackListenUserStatus = () -> listenUserStatus(user);
-        try {
-            mqttAndroidClient.subscribe("u/" + user + "/s", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            connect();
-            scheduledListenUserStatus = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenUserStatus, RETRY_PERIOD);
-        }
+        subscribeUserOnlinePresence(user);
     }
 
+    /**
+     * Listen to the online status of the user, every call must be paired with
+     * {@link #unsubscribeUserOnlinePresence(String)}. The user stays subscribed while anyone listens.
+     */
     public void subscribeUserOnlinePresence(String userId) {
-        fallBackListenUserStatus = () -> subscribeUserOnlinePresence(userId);
-        try {
-            mqttAndroidClient.subscribe("u/" + userId + "/s", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            connect();
-            scheduledListenUserStatus = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenUserStatus, RETRY_PERIOD);
-        }
+        presenceManager.acquire(userId);
     }
 
     @Deprecated
     public void unListenUserStatus(String user) {
+        unsubscribeUserOnlinePresence(user);
+    }
+
+    public void unsubscribeUserOnlinePresence(String userId) {
+        presenceManager.release(userId);
+    }
+
+    /**
+     * @return the last online status received for the user, or null if none was received yet
+     */
+    public QiscusUserStatusEvent getLastKnownUserStatus(String userId) {
+        return presenceManager.getLastStatus(userId);
+    }
+
+    private void subscribeTopics(String[] topics) {
         try {
-            mqttAndroidClient.unsubscribe("u/" + user + "/s");
+            mqttAndroidClient.subscribe(topics, QiscusMqttQos.forTopics(topics));
         } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
+            //Subscribed again when connected
         }
-        if (scheduledListenUserStatus != null) {
-            scheduledListenUserStatus.cancel(true);
-            scheduledListenUserStatus = null;
-        }
-        fallBackListenUserStatus = null;
     }
 
-    public void unsubscribeUserOnlinePresence(String userId) {
+    private void unsubscribeTopics(String[] topics) {
         try {
-            mqttAndroidClient.unsubscribe("u/" + userId + "/s");
+            mqttAndroidClient.unsubscribe(topics);
         } catch (MqttException | NullPointerException | IllegalArgumentException e) {
             //Do nothing
         }
-        if (scheduledListenUserStatus != null) {
-            scheduledListenUserStatus.cancel(true);
-            scheduledListenUserStatus = null;
-        }
-        fallBackListenUserStatus = null;
     }
 
     @Deprecated
@@ -709,7 +654,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                 try {
                     MqttMessage message = new MqttMessage();
                     message.setPayload(online ? "1".getBytes() : "0".getBytes());
-                    message.setQos(1);
+                    message.setQos(QiscusMqttQos.AT_MOST_ONCE);
                     message.setRetained(true);
                     mqttAndroidClient.publish("u/" + qiscusAccount.getEmail() + "/s", message);
                 } catch (MqttException | NullPointerException | IllegalArgumentException e) {
@@ -732,7 +677,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                 try {
                     MqttMessage message = new MqttMessage();
                     message.setPayload(isOnline ? "1".getBytes() : "0".getBytes());
-                    message.setQos(1);
+                    message.setQos(QiscusMqttQos.AT_MOST_ONCE);
                     message.setRetained(true);
                     mqttAndroidClient.publish("u/" + qiscusAccount.getEmail() + "/s", message);
                 } catch (MqttException | NullPointerException | IllegalArgumentException e) {
@@ -749,22 +694,23 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     @Deprecated
     public void setUserTyping(long roomId, boolean typing) {
-        checkAndConnect();
-        try {
-            MqttMessage message = new MqttMessage();
-            message.setPayload((typing ? "1" : "0").getBytes());
-            mqttAndroidClient.publish("r/" + roomId + "/" + roomId + "/"
-                    + qiscusAccount.getEmail() + "/t", message);
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
+        publishTyping(roomId, typing);
     }
 
+    /**
+     * Tell the room members whether the user is typing. It can be called on every keystroke, only the
+     * changes and a periodic keep alive are published, and "stopped" is sent after a few idle seconds.
+     */
     public void publishTyping(long roomId, boolean isTyping) {
+        typingPublisher.setTyping(roomId, isTyping);
+    }
+
+    private void publishTypingState(long roomId, boolean isTyping) {
         checkAndConnect();
         try {
             MqttMessage message = new MqttMessage();
             message.setPayload((isTyping ? "1" : "0").getBytes());
+            message.setQos(QiscusMqttQos.AT_MOST_ONCE);
             mqttAndroidClient.publish("r/" + roomId + "/" + roomId + "/"
                     + qiscusAccount.getEmail() + "/t", message);
         } catch (MqttException | NullPointerException | IllegalArgumentException e) {
@@ -777,7 +723,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         Observable.fromCallable(() -> QiscusCore.getDataStore().getChatRoom(roomId))
                 .filter(room -> room != null)
                 .flatMap(room -> QiscusApi.getInstance().updateCommentStatus(roomId, commentId, 0))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(aVoid -> {
                 }, QiscusErrorLogger::print);
@@ -789,7 +735,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                 .filter(room -> room != null)
                 .filter(room -> !room.isChannel())
                 .flatMap(room -> QiscusApi.getInstance().updateCommentStatus(roomId, 0, commentId))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(aVoid -> {
                 }, QiscusErrorLogger::print);
@@ -798,19 +744,34 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     public void markAsRead(long roomId, long commentId) {
         Observable.fromCallable(() -> QiscusCore.getDataStore().getChatRoom(roomId))
                 .filter(room -> room != null)
+                .doOnNext(room -> QiscusUnreadCounter.getInstance().onRoomRead(roomId))
                 .flatMap(room -> QiscusApi.getInstance().updateCommentStatus(roomId, commentId, 0))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(aVoid -> {
                 }, QiscusErrorLogger::print);
     }
 
+    /**
+     * Comments may have been missed while disconnected, compare the local unread total with the server
+     */
+    private void reconcileUnreadCount() {
+        if (!QiscusUnreadCounter.getInstance().isReconcileDue()) {
+            return;
+        }
+
+        QiscusApi.getInstance().getTotalUnreadCount()
+                .subscribeOn(QiscusSchedulers.io())
+                .subscribe(total -> {
+                }, QiscusErrorLogger::print);
+    }
+
     public void markAsDelivered(long roomId, long commentId) {
         Observable.fromCallable(() -> QiscusCore.getDataStore().getChatRoom(roomId))
                 .filter(room -> room != null)
                 .filter(room -> !room.isChannel())
                 .flatMap(room -> QiscusApi.getInstance().updateCommentStatus(roomId, 0, commentId))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(aVoid -> {
                 }, QiscusErrorLogger::print);
@@ -851,56 +812,21 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     @Deprecated
     public void listenEvent(long roomId) {
-        QiscusLogger.print(TAG, "Listening event...");
-        fallbackListenEvent = () -> listenEvent(roomId);
-        try {
-            mqttAndroidClient.subscribe("r/" + roomId + "/" + roomId + "/e", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            connect();
-            scheduledListenEvent = QiscusAndroidUtil.runOnBackgroundThread(fallbackListenEvent, RETRY_PERIOD);
-        }
+        subsribeCustomEvent(roomId);
     }
 
     public void subsribeCustomEvent(long roomId) {
         QiscusLogger.print(TAG, "Listening event...");
-        fallbackListenEvent = () -> subsribeCustomEvent(roomId);
-        try {
-            mqttAndroidClient.subscribe("r/" + roomId + "/" + roomId + "/e", 2);
-        } catch (MqttException e) {
-            //Do nothing
-        } catch (NullPointerException | IllegalArgumentException e) {
-            connect();
-            scheduledListenEvent = QiscusAndroidUtil.runOnBackgroundThread(fallbackListenEvent, RETRY_PERIOD);
-        }
+        subscribeDesiredTopics("r/" + roomId + "/" + roomId + "/e");
     }
 
     @Deprecated
     public void unlistenEvent(long roomId) {
-        try {
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/" + roomId + "/e");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
-        if (scheduledListenEvent != null) {
-            scheduledListenEvent.cancel(true);
-            scheduledListenEvent = null;
-        }
-        fallbackListenEvent = null;
+        unsubsribeCustomEvent(roomId);
     }
 
     public void unsubsribeCustomEvent(long roomId) {
-        try {
-            mqttAndroidClient.unsubscribe("r/" + roomId + "/" + roomId + "/e");
-        } catch (MqttException | NullPointerException | IllegalArgumentException e) {
-            //Do nothing
-        }
-        if (scheduledListenEvent != null) {
-            scheduledListenEvent.cancel(true);
-            scheduledListenEvent = null;
-        }
-        fallbackListenEvent = null;
+        unsubscribeDesiredTopics("r/" + roomId + "/" + roomId + "/e");
     }
 
     private void checkAndConnect() {
@@ -917,12 +843,10 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     @Override
     public void connectionLost(Throwable cause) {
-        if (reconnectCounter == 0) {
-            getMqttBrokerUrlFromLB();
-        }
+        long retryDelay = supervisor.onConnectionLost();
+        getMqttBrokerUrlFromLB(false);
 
         EventBus.getDefault().post(QiscusMqttStatusEvent.DISCONNECTED);
-        reconnectCounter++;
         if (cause != null) {
             try {
                 eventReport("MQTT", "CONNECTION_LOST", cause.toString());
@@ -933,17 +857,18 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             }
         } else {
             eventReport("MQTT", "CONNECTION_LOST",
-                    "Lost connection, will try reconnect in " + RETRY_PERIOD + " ms");
+                    "Lost connection, will try reconnect in " + retryDelay + " ms");
         }
 
         QiscusErrorLogger.print(TAG, "Lost connection, will try reconnect in "
-                + RETRY_PERIOD + " ms");
+                + retryDelay + " ms");
         connecting = false;
-        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(fallbackConnect, RETRY_PERIOD);
+        scheduleConnect(retryDelay);
     }
 
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception {
+        supervisor.onMessageArrived();
         try {
             handleMessage(topic, new String(message.getPayload()));
         } catch (Exception ignored) {
@@ -961,7 +886,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         } else if (topic.equals(qiscusAccount.getToken() + "/c")
                 || (topic.startsWith(QiscusCore.getAppId()) && topic.endsWith("/c"))) {
             QiscusComment qiscusComment = jsonToComment(message);
-            if (qiscusComment == null) {
+            if (qiscusComment == null || isRedelivered(qiscusComment, message)) {
                 return;
             }
             handleReceivedComment(qiscusComment);
@@ -973,7 +898,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                         .setUser(data[3])
                         .setEvent(QiscusChatRoomEvent.Event.TYPING)
                         .setTyping("1".equals(message));
-                EventBus.getDefault().post(event);
+                QiscusRoomEventDispatcher.getInstance().post(event);
             }
         } else if (topic.startsWith("r/") && topic.endsWith("/d")) {
             String[] data = topic.split("/");
@@ -985,7 +910,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                         .setEvent(QiscusChatRoomEvent.Event.DELIVERED)
                         .setCommentId(Long.parseLong(payload[0]))
                         .setCommentUniqueId(payload[1]);
-                EventBus.getDefault().post(event);
+                QiscusRoomEventDispatcher.getInstance().post(event);
             }
         } else if (topic.startsWith("r/") && topic.endsWith("/r")) {
             String[] data = topic.split("/");
@@ -997,7 +922,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                         .setEvent(QiscusChatRoomEvent.Event.READ)
                         .setCommentId(Long.parseLong(payload[0]))
                         .setCommentUniqueId(payload[1]);
-                EventBus.getDefault().post(event);
+                QiscusRoomEventDispatcher.getInstance().post(event);
             }
         } else if (topic.startsWith("u/") && topic.endsWith("/s")) {
             String[] data = topic.split("/");
@@ -1007,6 +932,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                 calendar.setTimeInMillis(Long.parseLong(status[1].substring(0, 13)));
                 QiscusUserStatusEvent event = new QiscusUserStatusEvent(data[1], "1".equals(status[0]),
                         calendar.getTime());
+                presenceManager.onStatus(event);
                 EventBus.getDefault().post(event);
             }
         } else if (topic.startsWith("r/") && topic.endsWith("/e")) {
@@ -1020,7 +946,7 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
                             .setUser(eventPayload.getString("sender"))
                             .setEvent(QiscusChatRoomEvent.Event.CUSTOM)
                             .setEventData(eventPayload.getJSONObject("data"));
-                    EventBus.getDefault().post(event);
+                    QiscusRoomEventDispatcher.getInstance().post(event);
                 }
             } catch (JSONException e) {
                 QiscusErrorLogger.print(e);
@@ -1028,6 +954,16 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         }
     }
 
+    /**
+     * Comments are delivered at least once, so the same payload may arrive again after a reconnect
+     */
+    private boolean isRedelivered(QiscusComment qiscusComment, String message) {
+        Integer payloadHash = message.hashCode();
+        synchronized (recentComments) {
+            return payloadHash.equals(recentComments.put(qiscusComment.getUniqueId(), payloadHash));
+        }
+    }
+
     private JSONObject parseEventData(String message) {
         try {
             return new JSONObject(message);
@@ -1045,7 +981,6 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
     public void connectComplete(boolean reconnect, String serverUri) {
         if (!isConnected()) {
             connecting = false;
-            reconnectCounter = 0;
             restartConnection();
         } else {
             // if connected, update flag to true
@@ -1057,23 +992,21 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             }
 
             QiscusLogger.print(TAG, "Connected..." + mqttAndroidClient.getClientId() + " " + QiscusCore.getMqttBrokerUrl());
+            supervisor.onConnected();
             EventBus.getDefault().post(QiscusMqttStatusEvent.CONNECTED);
             reporting = true;
             try {
                 connecting = false;
-                reconnectCounter = 0;
-                listenComment();
-                listenNotification();
-                if (fallBackListenRoom != null) {
-                    scheduledListenRoom = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenRoom);
-                }
-                if (fallBackListenUserStatus != null) {
-                    scheduledListenUserStatus = QiscusAndroidUtil.runOnBackgroundThread(fallBackListenUserStatus);
-                }
+                restoreSubscriptions();
                 if (scheduledConnect != null) {
                     scheduledConnect.cancel(true);
                     scheduledConnect = null;
                 }
+                publishOnlinePresence(QiscusCore.isOnForeground());
+                if (QiscusCore.isOnForeground()) {
+                    QiscusResendCommentHelper.tryResendPendingComment();
+                }
+                reconcileUnreadCount();
                 scheduleUserStatus();
             } catch (NullPointerException e) {
                 //ignored
@@ -1101,9 +1034,8 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
 
     @Override
     public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
-        if (reconnectCounter == 0) {
-            getMqttBrokerUrlFromLB();
-        }
+        long retryDelay = supervisor.onConnectFailed();
+        getMqttBrokerUrlFromLB(supervisor.shouldRotateBroker());
 
         EventBus.getDefault().post(QiscusMqttStatusEvent.DISCONNECTED);
         if (exception != null) {
@@ -1116,13 +1048,40 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
             }
         } else {
             eventReport("MQTT", "FAILURE_TO_CONNECT", "Failure to connect, try again in "
-                    + RETRY_PERIOD + " ms");
+                    + retryDelay + " ms");
         }
 
-        reconnectCounter++;
-        QiscusErrorLogger.print(TAG, "Failure to connect, try again in " + RETRY_PERIOD + " ms");
+        QiscusErrorLogger.print(TAG, "Failure to connect, try again in " + retryDelay + " ms");
         connecting = false;
-        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(fallbackConnect, RETRY_PERIOD);
+        scheduleConnect(retryDelay);
+    }
+
+    private void scheduleConnect(long delay) {
+        if (scheduledConnect != null) {
+            scheduledConnect.cancel(false);
+        }
+        scheduledConnect = QiscusAndroidUtil.runOnBackgroundThread(fallbackConnect, delay);
+    }
+
+    /**
+     * @return how long the last successful connect took in ms, or -1 if never connected
+     */
+    public long getLastConnectTime() {
+        return supervisor.getLastConnectTime();
+    }
+
+    /**
+     * @return how long after the last connect the first message arrived in ms, or -1 if none arrived yet
+     */
+    public long getLastTimeToFirstMessage() {
+        return supervisor.getLastTimeToFirstMessage();
+    }
+
+    /**
+     * @return how many times the connection was lost shortly after it was made
+     */
+    public int getConnectionFlapCount() {
+        return supervisor.getFlapCount();
     }
 
     @Subscribe
@@ -1130,32 +1089,46 @@ public enum QiscusPusherApi implements MqttCallbackExtended, IMqttActionListener
         switch (userEvent) {
             case LOGOUT:
                 disconnect();
+                supervisor.clear();
                 break;
         }
     }
 
+    /**
+     * Presence is published when the app goes to foreground or background and after each connect, this
+     * only keeps the online status fresh while the app stays on foreground.
+     */
     private void scheduleUserStatus() {
-        scheduledUserStatus = QiscusCore.getTaskExecutor()
+        stopUserStatus();
+        scheduledUserStatus = QiscusExecutors.getExecutor(QiscusExecutors.Lane.SYNC)
                 .scheduleWithFixedDelay(() -> {
-                    if (QiscusCore.hasSetupUser()) {
-                        if (QiscusCore.isOnForeground()) {
-                            QiscusResendCommentHelper.tryResendPendingComment();
-                        }
-                        if (isConnected()) {
-                            if (QiscusCore.isOnForeground()) {
-                                setOfflineCounter = 0;
-                                publishOnlinePresence(true);
-                            } else {
-                                if (setOfflineCounter <= 2) {
-                                    publishOnlinePresence(false);
-                                    setOfflineCounter++;
-                                }
-                            }
-                        }
-                    } else {
+                    QiscusWakeupMetrics.record();
+                    if (!QiscusCore.hasSetupUser()) {
                         stopUserStatus();
+                    } else if (isConnected() && QiscusCore.isOnForeground()) {
+                        publishOnlinePresence(true);
                     }
-                }, 0, 10, TimeUnit.SECONDS);
+                }, PRESENCE_KEEP_ALIVE, PRESENCE_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public void onForegroundChanged(boolean foreground) {
+        QiscusAndroidUtil.runOnBackgroundThread(() -> {
+            QiscusWakeupMetrics.record();
+            if (isConnected()) {
+                publishOnlinePresence(foreground);
+            }
+            if (foreground) {
+                QiscusResendCommentHelper.tryResendPendingComment();
+            }
+        });
+    }
+
+    /**
+     * @return how many background wakeups per hour were avoided compared to polling every 10 seconds
+     */
+    public double getWakeupsSavedPerHour() {
+        return QiscusWakeupMetrics.getSavedPerHour();
     }
 
     private void stopUserStatus() {
@@ -20,7 +20,9 @@ import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
 import com.qiscus.sdk.chat.core.event.QiscusCommentResendEvent;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 
 import org.greenrobot.eventbus.EventBus;
 import org.json.JSONException;
@@ -31,12 +33,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import retrofit2.HttpException;
 import rx.Observable;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : August 22, 2017
@@ -46,10 +49,32 @@ import rx.schedulers.Schedulers;
  */
 public final class QiscusResendCommentHelper {
 
+    private static final long RESEND_DELAY = TimeUnit.SECONDS.toMillis(10);
+
     private static final Map<String, Subscription> pendingTask = new ConcurrentHashMap<>();
     private static final Set<String> processingComment = new ConcurrentSkipListSet<>();
+    private static final AtomicBoolean resendScheduled = new AtomicBoolean();
+
+    /**
+     * Schedule a resend after a comment became pending, while the app is on foreground and online.
+     * Otherwise it is resent when the app comes to foreground or the network is back.
+     */
+    public static void onCommentPending() {
+        if (QiscusCore.isOnForeground() && QiscusAndroidUtil.isNetworkAvailable()
+                && resendScheduled.compareAndSet(false, true)) {
+            QiscusAndroidUtil.runOnBackgroundThread(() -> {
+                resendScheduled.set(false);
+                tryResendPendingComment();
+            }, RESEND_DELAY);
+        }
+    }
 
     public static void tryResendPendingComment() {
+        if (QiscusCore.getDataStore().getPendingCommentCount() == 0) {
+            return;
+        }
+
+        QiscusWakeupMetrics.record();
         QiscusCore.getDataStore()
                 .getObservablePendingComments()
                 .flatMap(Observable::from)
@@ -65,7 +90,7 @@ public final class QiscusResendCommentHelper {
                         resendComment(qiscusComment);
                     }
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(commentSend -> {
                 }, QiscusErrorLogger::print);
@@ -99,7 +124,7 @@ public final class QiscusResendCommentHelper {
         Subscription subscription = QiscusApi.getInstance().sendMessage(qiscusComment)
                 .doOnNext(QiscusResendCommentHelper::commentSuccess)
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(commentSend -> {
                     tryResendPendingComment(); //Process next pending comments
@@ -145,7 +170,7 @@ public final class QiscusResendCommentHelper {
                     commentSuccess(commentSend);
                 })
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(commentSend ->
                                 EventBus.getDefault().post(new QiscusCommentReceivedEvent(commentSend)),
@@ -165,7 +190,7 @@ public final class QiscusResendCommentHelper {
                     commentSuccess(commentSend);
                 })
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(commentSend ->
                                 EventBus.getDefault().post(new QiscusCommentReceivedEvent(commentSend)),
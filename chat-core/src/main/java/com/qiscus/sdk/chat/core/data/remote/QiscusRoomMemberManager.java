@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import rx.Observable;
+import rx.android.schedulers.AndroidSchedulers;
+
+/**
+ * Members of big rooms without keeping all of them in memory. Members are fetched from the server page by
+ * page and saved with only the changed rows written, counts come from the server total or a count query,
+ * and the members a page of comments needs are resolved in the background before it is bound.
+ */
+public enum QiscusRoomMemberManager {
+    INSTANCE;
+
+    private static final int MEMBER_CACHE_SIZE = 256;
+
+    private final LruCache<String, QiscusRoomMember> memberCache = new LruCache<>(MEMBER_CACHE_SIZE);
+    private final Map<Long, Integer> memberCounts = new ConcurrentHashMap<>();
+
+    public static QiscusRoomMemberManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Load a page of members from the server and save it. When the server can not be reached the saved
+     * members of the page are returned instead.
+     *
+     * @param qiscusChatRoom the room
+     * @param page           page to load, starting from 1
+     * @param limit          number of members per page
+     * @return members of the page
+     */
+    public Observable<List<QiscusRoomMember>> getMembers(QiscusChatRoom qiscusChatRoom, int page, int limit) {
+        long roomId = qiscusChatRoom.getId();
+        return QiscusApi.getInstance()
+                .getParticipants(qiscusChatRoom.getUniqueId(), page, limit, null,
+                        (currentPage, perPage, total) -> memberCounts.put(roomId, total))
+                .doOnNext(members -> {
+                    QiscusCore.getDataStore().addOrUpdateRoomMembers(roomId, members, qiscusChatRoom.getDistinctId());
+                    for (QiscusRoomMember member : members) {
+                        memberCache.put(member.getEmail(), member);
+                    }
+                })
+                .onErrorResumeNext(throwable -> {
+                    QiscusErrorLogger.print(throwable);
+                    return Observable.fromCallable(() ->
+                            QiscusCore.getDataStore().getRoomMembers(roomId, limit, (page - 1) * limit));
+                });
+    }
+
+    /**
+     * @param roomId the room id
+     * @return total members reported by the server, or the number of saved members if no page was loaded yet
+     */
+    public int getMemberCount(long roomId) {
+        Integer total = memberCounts.get(roomId);
+        return total != null ? total : QiscusCore.getDataStore().getRoomMemberCount(roomId);
+    }
+
+    /**
+     * @param email email of the member
+     * @return the member, or null if it is not saved
+     */
+    @Nullable
+    public QiscusRoomMember getMember(String email) {
+        if (email == null) {
+            return null;
+        }
+
+        QiscusRoomMember member = memberCache.get(email);
+        if (member == null) {
+            member = QiscusCore.getDataStore().getMember(email);
+            if (member != null) {
+                memberCache.put(email, member);
+            }
+        }
+        return member;
+    }
+
+    /**
+     * Map for renderers that look members up by email, like mentions. Lookups never read the database, they
+     * are filled by {@link #prefetchMembers(Map, List, Runnable)} when comments are loaded and fall back to
+     * the members cached in memory.
+     *
+     * @return an empty map to fill with {@link #prefetchMembers(Map, List, Runnable)}
+     */
+    public Map<String, QiscusRoomMember> newMemberMap() {
+        return new MemberMap();
+    }
+
+    /**
+     * Resolve the senders and mentioned users of the comments that are not in the map yet in the background,
+     * then put them in the map on the main thread, so binding the comments does not read the database.
+     *
+     * @param memberMap  map from {@link #newMemberMap()}
+     * @param comments   the loaded comments
+     * @param onResolved run on the main thread when new members were put in the map, to bind them again
+     */
+    public void prefetchMembers(Map<String, QiscusRoomMember> memberMap, List<? extends QiscusComment> comments,
+                                Runnable onResolved) {
+        Set<String> emails = new HashSet<>();
+        for (QiscusComment comment : comments) {
+            addEmail(memberMap, emails, comment.getSenderEmail());
+            String message = comment.getMessage();
+            int start = message == null ? -1 : message.indexOf("@[");
+            while (start >= 0) {
+                int end = message.indexOf(']', start + 2);
+                if (end < 0) {
+                    break;
+                }
+                addEmail(memberMap, emails, message.substring(start + 2, end));
+                start = message.indexOf("@[", end + 1);
+            }
+        }
+        if (emails.isEmpty()) {
+            return;
+        }
+
+        Observable.fromCallable(() -> {
+            Map<String, QiscusRoomMember> members = new HashMap<>();
+            for (String email : emails) {
+                members.put(email, getMember(email));
+            }
+            return members;
+        })
+                .subscribeOn(QiscusSchedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(members -> {
+                    boolean resolved = false;
+                    for (Map.Entry<String, QiscusRoomMember> entry : members.entrySet()) {
+                        //Misses are kept too, so a sender that is not saved is looked up once
+                        memberMap.put(entry.getKey(), entry.getValue());
+                        resolved |= entry.getValue() != null;
+                    }
+                    if (resolved && onResolved != null) {
+                        onResolved.run();
+                    }
+                }, QiscusErrorLogger::print);
+    }
+
+    public void onMemberChanged(QiscusRoomMember member) {
+        if (member.getEmail() != null) {
+            memberCache.remove(member.getEmail());
+        }
+    }
+
+    public void clear() {
+        memberCache.evictAll();
+        memberCounts.clear();
+    }
+
+    private void addEmail(Map<String, QiscusRoomMember> memberMap, Set<String> emails, String email) {
+        if (email != null && !memberMap.containsKey(email)) {
+            emails.add(email);
+        }
+    }
+
+    private static class MemberMap extends HashMap<String, QiscusRoomMember> {
+        @Override
+        public QiscusRoomMember get(Object key) {
+            QiscusRoomMember member = super.get(key);
+            if (member == null && key instanceof String && !containsKey(key)) {
+                //Not prefetched yet, only members cached in memory are used here, it is called while binding
+                member = INSTANCE.memberCache.get((String) key);
+            }
+            return member;
+        }
+    }
+}
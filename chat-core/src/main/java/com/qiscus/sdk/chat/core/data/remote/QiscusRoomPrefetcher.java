@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusPrefetchConfig;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+
+/**
+ * Warms the latest comments, the members and the first media thumbnails of the top inbox rooms,
+ * so opening them renders from the local store right away. Rooms with unread messages come first,
+ * then the inbox order. It is run by {@link com.qiscus.sdk.chat.core.service.QiscusPrefetchJobService}
+ * when the device is idle and on an unmetered network. Thumbnails are downloaded on the io lane.
+ * <p>
+ * The prefetched rooms and the hit and miss counts are saved, so a room prefetched by the job and opened
+ * after the process was restarted still counts as a hit.
+ */
+public enum QiscusRoomPrefetcher {
+    INSTANCE;
+
+    private static final String TAG = "QiscusRoomPrefetcher";
+    private static final int PAGE_SIZE = 20;
+
+    private final SharedPreferences sharedPreferences;
+    private final Map<Long, Long> prefetchedRooms = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong prefetchedRoomCount = new AtomicLong();
+    private final AtomicLong prefetchedRowCount = new AtomicLong();
+    private final AtomicLong prefetchedByteCount = new AtomicLong();
+    private volatile long lastPrefetchTime;
+
+    QiscusRoomPrefetcher() {
+        sharedPreferences = QiscusCore.getApps().getSharedPreferences("qiscus.prefetch", Context.MODE_PRIVATE);
+        for (String roomId : sharedPreferences.getStringSet("prefetched_rooms", new HashSet<>())) {
+            prefetchedRooms.put(Long.parseLong(roomId), 0L);
+        }
+        hitCount.set(sharedPreferences.getLong("hit_count", 0));
+        missCount.set(sharedPreferences.getLong("miss_count", 0));
+    }
+
+    public static QiscusRoomPrefetcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Prefetch the top rooms within the budgets of {@link QiscusPrefetchConfig}. It runs on the
+     * subscribing thread and does nothing if the last prefetch is more recent than the configured interval.
+     *
+     * @return number of rooms warmed
+     */
+    public Observable<Integer> prefetch() {
+        QiscusPrefetchConfig config = QiscusCore.getChatConfig().getPrefetchConfig();
+        if (!config.isEnable() || config.getMaxRooms() == 0 || !QiscusCore.hasSetupUser()
+                || System.currentTimeMillis() - lastPrefetchTime < config.getInterval()) {
+            return Observable.just(0);
+        }
+
+        lastPrefetchTime = System.currentTimeMillis();
+        Budget budget = new Budget();
+        return QiscusApi.getInstance().getAllChatRooms(true, false, false, 1, config.getMaxRooms() * 2)
+                .map(rooms -> rankRooms(rooms, config.getMaxRooms()))
+                .flatMap(Observable::from)
+                .concatMap(room -> prefetchRoom(room, config, budget))
+                .filter(warmed -> warmed)
+                .count()
+                .doOnNext(count -> QiscusLogger.print(TAG, "Prefetched " + count + " rooms, "
+                        + budget.rows + " rows, " + budget.bytes + " bytes"));
+    }
+
+    /**
+     * Must be called when a room is opened, it counts whether the room was already prefetched
+     */
+    public void onRoomOpened(long roomId) {
+        if (prefetchedRooms.remove(roomId) != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        save();
+    }
+
+    /**
+     * @return share of opened rooms that were prefetched, between 0 and 1
+     */
+    public float getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getPrefetchedRoomCount() {
+        return prefetchedRoomCount.get();
+    }
+
+    public long getPrefetchedRowCount() {
+        return prefetchedRowCount.get();
+    }
+
+    public long getPrefetchedByteCount() {
+        return prefetchedByteCount.get();
+    }
+
+    public void clear() {
+        prefetchedRooms.clear();
+        hitCount.set(0);
+        missCount.set(0);
+        prefetchedRoomCount.set(0);
+        prefetchedRowCount.set(0);
+        prefetchedByteCount.set(0);
+        lastPrefetchTime = 0;
+        sharedPreferences.edit().clear().apply();
+    }
+
+    private void save() {
+        Set<String> roomIds = new HashSet<>();
+        for (Long roomId : prefetchedRooms.keySet()) {
+            roomIds.add(String.valueOf(roomId));
+        }
+        sharedPreferences.edit()
+                .putStringSet("prefetched_rooms", roomIds)
+                .putLong("hit_count", hitCount.get())
+                .putLong("miss_count", missCount.get())
+                .apply();
+    }
+
+    private List<QiscusChatRoom> rankRooms(List<QiscusChatRoom> rooms, int maxRooms) {
+        List<QiscusChatRoom> rankedRooms = new ArrayList<>(maxRooms);
+        for (QiscusChatRoom room : rooms) {
+            if (room.getUnreadCount() > 0 && rankedRooms.size() < maxRooms) {
+                rankedRooms.add(room);
+            }
+        }
+        for (QiscusChatRoom room : rooms) {
+            if (room.getUnreadCount() <= 0 && rankedRooms.size() < maxRooms) {
+                rankedRooms.add(room);
+            }
+        }
+        return rankedRooms;
+    }
+
+    private Observable<Boolean> prefetchRoom(QiscusChatRoom room, QiscusPrefetchConfig config, Budget budget) {
+        if (budget.rows >= config.getMaxRows()) {
+            return Observable.empty();
+        }
+
+        QiscusComment lastComment = room.getLastComment();
+        long syncedCommentId = QiscusCacheManager.getInstance().getRoomSyncedCommentId(room.getId());
+        if (lastComment == null || lastComment.getId() <= 0 || syncedCommentId >= lastComment.getId()) {
+            //Nothing new since the room was last synced
+            return Observable.just(false);
+        }
+
+        return QiscusApi.getInstance().getPreviousMessagesById(room.getId(), PAGE_SIZE)
+                .toList()
+                .flatMap(comments -> {
+                    QiscusCore.getDataStore().addOrUpdate(room);
+                    long lastCommentId = 0;
+                    for (QiscusComment qiscusComment : comments) {
+                        QiscusCore.getDataStore().addOrUpdate(qiscusComment);
+                        lastCommentId = Math.max(lastCommentId, qiscusComment.getId());
+                    }
+                    QiscusCacheManager.getInstance().setRoomSyncedCommentId(room.getId(), lastCommentId);
+                    QiscusCacheManager.getInstance().setRoomMetadataSyncedAt(room.getId(), System.currentTimeMillis());
+
+                    int rows = 1 + (room.getMember() == null ? 0 : room.getMember().size()) + comments.size();
+                    budget.rows += rows;
+                    prefetchedRowCount.addAndGet(rows);
+
+                    //Thumbnail downloads block, keep them off the single thread sync lane
+                    return Observable.fromCallable(() -> {
+                        prefetchMedia(comments, config, budget);
+                        prefetchedRooms.put(room.getId(), System.currentTimeMillis());
+                        prefetchedRoomCount.incrementAndGet();
+                        save();
+                        return true;
+                    }).subscribeOn(QiscusSchedulers.io());
+                })
+                .onErrorReturn(throwable -> {
+                    QiscusErrorLogger.print(TAG, throwable);
+                    return false;
+                });
+    }
+
+    private void prefetchMedia(List<QiscusComment> comments, QiscusPrefetchConfig config, Budget budget) {
+        QiscusPrefetchConfig.MediaPrefetcher mediaPrefetcher = config.getMediaPrefetcher();
+        if (mediaPrefetcher == null) {
+            return;
+        }
+
+        int count = 0;
+        for (QiscusComment qiscusComment : comments) {
+            if (count >= config.getMaxMediaPerRoom() || budget.bytes >= config.getMaxBytes()) {
+                return;
+            }
+            if (qiscusComment.isImage()) {
+                try {
+                    long bytes = mediaPrefetcher.prefetch(qiscusComment);
+                    budget.bytes += bytes;
+                    prefetchedByteCount.addAndGet(bytes);
+                    count++;
+                } catch (Exception e) {
+                    QiscusErrorLogger.print(TAG, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * What one prefetch has used so far
+     */
+    private static final class Budget {
+        private int rows;
+        private long bytes;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns the typing calls of the ui, usually one per keystroke, into state changes. "Typing" is published
+ * when the user starts typing and then at most once per keep alive interval, "stopped" is published once
+ * when the user stops or has not typed for a while.
+ */
+final class QiscusTypingPublisher {
+    static final long KEEP_ALIVE_INTERVAL = TimeUnit.SECONDS.toMillis(4);
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private final Publisher publisher;
+    private final Map<Long, TypingState> typingRooms = new HashMap<>();
+
+    QiscusTypingPublisher(Publisher publisher) {
+        this.publisher = publisher;
+    }
+
+    synchronized void setTyping(long roomId, boolean typing) {
+        if (typing) {
+            onTyping(roomId);
+        } else {
+            onStopped(roomId);
+        }
+    }
+
+    private void onTyping(long roomId) {
+        long now = System.currentTimeMillis();
+        TypingState typingState = typingRooms.get(roomId);
+        if (typingState == null) {
+            typingState = new TypingState();
+            typingRooms.put(roomId, typingState);
+        }
+
+        if (now - typingState.lastPublishTime >= KEEP_ALIVE_INTERVAL) {
+            typingState.lastPublishTime = now;
+            publisher.publish(roomId, true);
+        }
+
+        if (typingState.idleTask != null) {
+            typingState.idleTask.cancel(false);
+        }
+        typingState.idleTask = QiscusAndroidUtil.runOnBackgroundThread(() -> setTyping(roomId, false), IDLE_TIMEOUT);
+    }
+
+    private void onStopped(long roomId) {
+        TypingState typingState = typingRooms.remove(roomId);
+        if (typingState == null) {
+            return;
+        }
+
+        if (typingState.idleTask != null) {
+            typingState.idleTask.cancel(false);
+        }
+        publisher.publish(roomId, false);
+    }
+
+    interface Publisher {
+        void publish(long roomId, boolean typing);
+    }
+
+    private static final class TypingState {
+        private long lastPublishTime;
+        private ScheduledFuture<?> idleTask;
+    }
+}
@@ -16,11 +16,17 @@
 
 package com.qiscus.sdk.chat.core.data.remote;
 
+import com.qiscus.sdk.chat.core.data.local.QiscusLinkPreviewCache;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.schinizer.rxunfurl.RxUnfurl;
 import com.schinizer.rxunfurl.model.PreviewData;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import rx.Observable;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : December 09, 2016
@@ -32,18 +38,59 @@ public enum QiscusUrlScraper {
     INSTANCE;
 
     private final RxUnfurl rxUnfurl;
+    private final Map<String, Observable<PreviewData>> inFlightRequests;
 
     QiscusUrlScraper() {
         rxUnfurl = new RxUnfurl.Builder()
-                .scheduler(Schedulers.io())
+                .scheduler(QiscusSchedulers.io())
                 .build();
+        inFlightRequests = new ConcurrentHashMap<>();
     }
 
     public static QiscusUrlScraper getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Generate preview of the url. Cached previews are returned without touching the network, and
+     * concurrent requests of the same url share one scrape.
+     *
+     * @param url the url
+     * @return observable of preview data, emits error if the url can not be scraped
+     */
     public Observable<PreviewData> generatePreviewData(String url) {
-        return rxUnfurl.generatePreview(url);
+        return Observable.defer(() -> {
+            QiscusLinkPreviewCache.Entry cached = QiscusLinkPreviewCache.getInstance().get(url);
+            if (cached != null) {
+                return cached.isFailure()
+                        ? Observable.error(new IOException("Can not generate preview of " + url))
+                        : Observable.just(cached.getPreviewData());
+            }
+            return getOrCreateScrape(url);
+        });
+    }
+
+    private Observable<PreviewData> getOrCreateScrape(String url) {
+        Observable<PreviewData> scrape = inFlightRequests.get(url);
+        if (scrape != null) {
+            return scrape;
+        }
+
+        Observable<PreviewData> newScrape = rxUnfurl.generatePreview(url)
+                .doOnNext(previewData -> {
+                    previewData.setUrl(url);
+                    QiscusLinkPreviewCache.getInstance().put(url, previewData);
+                })
+                .doOnError(throwable -> {
+                    // Being offline says nothing about the url itself, so don't remember it
+                    if (QiscusAndroidUtil.isNetworkAvailable()) {
+                        QiscusLinkPreviewCache.getInstance().putFailure(url);
+                    }
+                })
+                .doOnTerminate(() -> inFlightRequests.remove(url))
+                .cache();
+
+        scrape = inFlightRequests.putIfAbsent(url, newScrape);
+        return scrape != null ? scrape : newScrape;
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import android.util.LruCache;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+import rx.functions.Action1;
+
+/**
+ * User search on top of {@link QiscusApi#getUsers(String, long, long)} for search as you type screens.
+ * Pages are cached by query for a while, a longer query is answered locally when the page of a shorter
+ * one already had every match, and only the latest query of a stream is kept, stale requests are
+ * unsubscribed.
+ */
+public enum QiscusUserDirectory {
+    INSTANCE;
+
+    private static final int CACHE_SIZE = 64;
+    private static final long DEFAULT_TTL = 60 * 1000L;
+    private static final long DEFAULT_DEBOUNCE = 300;
+
+    private final LruCache<String, Page> cache = new LruCache<>(CACHE_SIZE);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong responseCount = new AtomicLong();
+    private final AtomicLong requestTime = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong refinedCount = new AtomicLong();
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile long debounce = DEFAULT_DEBOUNCE;
+
+    public static QiscusUserDirectory getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Search users for every query emitted, e.g. the text changes of a search box. Queries are debounced
+     * and a new query cancels the request of the previous one. A failing query is logged and answered
+     * with no users.
+     *
+     * @param queries the queries
+     * @param limit   number of users per query
+     * @return users of the latest query
+     */
+    public Observable<List<QiscusAccount>> search(Observable<String> queries, long limit) {
+        return search(queries, limit, QiscusErrorLogger::print);
+    }
+
+    /**
+     * Same as {@link #search(Observable, long)}, with the errors of the failing queries passed to onError.
+     * The stream goes on with the next query.
+     *
+     * @param queries the queries
+     * @param limit   number of users per query
+     * @param onError called on a background thread with the error of a failing query
+     * @return users of the latest query, an empty list for a failing one
+     */
+    public Observable<List<QiscusAccount>> search(Observable<String> queries, long limit,
+                                                  Action1<Throwable> onError) {
+        return queries.debounce(debounce, TimeUnit.MILLISECONDS)
+                .distinctUntilChanged()
+                .switchMap(query -> getUsers(query, 0, limit)
+                        .doOnError(onError)
+                        .onErrorResumeNext(throwable -> Observable.just(new ArrayList<>())));
+    }
+
+    /**
+     * Same as {@link QiscusApi#getUsers(String, long, long)}, answered from the cache when possible
+     */
+    public Observable<List<QiscusAccount>> getUsers(String query, long page, long limit) {
+        return Observable.defer(() -> {
+            String keyword = query == null ? "" : query;
+            List<QiscusAccount> users = getCachedUsers(keyword, page, limit);
+            if (users != null) {
+                return Observable.just(users);
+            }
+
+            long startTime = System.currentTimeMillis();
+            //The api call blocks the thread it is subscribed on, run it apart so a newer query can cancel it
+            return QiscusApi.getInstance().getUsers(keyword, page, limit)
+                    .subscribeOn(QiscusSchedulers.io())
+                    .doOnSubscribe(requestCount::incrementAndGet)
+                    .doOnNext(result -> {
+                        responseCount.incrementAndGet();
+                        requestTime.addAndGet(System.currentTimeMillis() - startTime);
+                        cache.put(getKey(keyword, page, limit), new Page(result, result.size() < limit));
+                    })
+                    .map(ArrayList::new);
+        });
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public QiscusUserDirectory setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public long getDebounce() {
+        return debounce;
+    }
+
+    public QiscusUserDirectory setDebounce(long debounce) {
+        this.debounce = debounce;
+        return this;
+    }
+
+    /**
+     * @return number of searches sent to the server, including the ones cancelled by a newer query
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * @return number of queries answered by filtering the page of a shorter query
+     */
+    public long getRefinedCount() {
+        return refinedCount.get();
+    }
+
+    /**
+     * @return average time of a network search in milliseconds
+     */
+    public long getAverageLatency() {
+        long responses = responseCount.get();
+        return responses == 0 ? 0 : requestTime.get() / responses;
+    }
+
+    public void resetStatistics() {
+        requestCount.set(0);
+        responseCount.set(0);
+        requestTime.set(0);
+        cacheHitCount.set(0);
+        refinedCount.set(0);
+    }
+
+    private List<QiscusAccount> getCachedUsers(String query, long page, long limit) {
+        long now = System.currentTimeMillis();
+        Page cached = getPage(getKey(query, page, limit), now);
+        if (cached != null) {
+            cacheHitCount.incrementAndGet();
+            return new ArrayList<>(cached.users);
+        }
+
+        //Only a first page that had fewer users than the limit holds every match of its query
+        if (page > 1) {
+            return null;
+        }
+        String keyword = query.toLowerCase(Locale.US);
+        for (int length = query.length() - 1; length >= 0; length--) {
+            cached = getPage(getKey(query.substring(0, length), page, limit), now);
+            if (cached == null) {
+                continue;
+            }
+            if (!cached.complete) {
+                return null;
+            }
+
+            List<QiscusAccount> users = new ArrayList<>();
+            for (QiscusAccount user : cached.users) {
+                if (matches(user, keyword)) {
+                    users.add(user);
+                }
+            }
+            cache.put(getKey(query, page, limit), new Page(users, true, cached.cachedAt));
+            refinedCount.incrementAndGet();
+            return new ArrayList<>(users);
+        }
+        return null;
+    }
+
+    private Page getPage(String key, long now) {
+        Page cached = cache.get(key);
+        if (cached != null && now - cached.cachedAt > ttl) {
+            cache.remove(key);
+            return null;
+        }
+        return cached;
+    }
+
+    private boolean matches(QiscusAccount user, String keyword) {
+        //Accounts the api could not parse are null
+        if (user == null) {
+            return false;
+        }
+        return (user.getUsername() != null && user.getUsername().toLowerCase(Locale.US).contains(keyword))
+                || (user.getEmail() != null && user.getEmail().toLowerCase(Locale.US).contains(keyword));
+    }
+
+    private String getKey(String query, long page, long limit) {
+        return page + ":" + limit + ":" + query;
+    }
+
+    private static class Page {
+        private final List<QiscusAccount> users;
+        private final boolean complete;
+        private final long cachedAt;
+
+        private Page(List<QiscusAccount> users, boolean complete) {
+            this(users, complete, System.currentTimeMillis());
+        }
+
+        private Page(List<QiscusAccount> users, boolean complete, long cachedAt) {
+            this.users = users;
+            this.complete = complete;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the background wakeups for presence and resend, compared to the fixed 10 seconds polling
+ * they replaced.
+ */
+final class QiscusWakeupMetrics {
+    private static final long POLLING_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private static final AtomicLong wakeups = new AtomicLong();
+    private static final long startedAt = System.currentTimeMillis();
+
+    private QiscusWakeupMetrics() {
+    }
+
+    static void record() {
+        wakeups.incrementAndGet();
+    }
+
+    static long getWakeups() {
+        return wakeups.get();
+    }
+
+    static double getSavedPerHour() {
+        long elapsed = System.currentTimeMillis() - startedAt;
+        if (elapsed < POLLING_INTERVAL) {
+            return 0;
+        }
+        double hours = elapsed / (double) TimeUnit.HOURS.toMillis(1);
+        return (elapsed / POLLING_INTERVAL - wakeups.get()) / hours;
+    }
+}
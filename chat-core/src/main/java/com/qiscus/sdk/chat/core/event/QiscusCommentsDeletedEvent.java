@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.event;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+
+import java.util.List;
+
+/**
+ * Every comment of a room deleted by one delete notification, posted once per room so a chat screen can
+ * apply them in one pass. A {@link QiscusCommentDeletedEvent} is still posted for each comment.
+ */
+public class QiscusCommentsDeletedEvent {
+    private long roomId;
+    private List<QiscusComment> qiscusComments;
+    private boolean hardDelete;
+
+    public QiscusCommentsDeletedEvent(long roomId, List<QiscusComment> qiscusComments, boolean hardDelete) {
+        this.roomId = roomId;
+        this.qiscusComments = qiscusComments;
+        this.hardDelete = hardDelete;
+    }
+
+    public long getRoomId() {
+        return roomId;
+    }
+
+    public List<QiscusComment> getQiscusComments() {
+        return qiscusComments;
+    }
+
+    public boolean isHardDelete() {
+        return hardDelete;
+    }
+}
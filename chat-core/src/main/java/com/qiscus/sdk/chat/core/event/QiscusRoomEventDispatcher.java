@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.event;
+
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers {@link QiscusChatRoomEvent} only to the listeners of the event room, on the thread each
+ * listener asked for. Events are still posted to {@link EventBus} when something subscribes to them there.
+ */
+public enum QiscusRoomEventDispatcher {
+    INSTANCE;
+
+    private static final String TAG = "QiscusRoomEventDispatcher";
+
+    private final ConcurrentHashMap<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong postedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    public static QiscusRoomEventDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    public void register(long roomId, Listener listener, DeliveryThread deliveryThread) {
+        List<Subscriber> roomSubscribers = subscribers.get(roomId);
+        if (roomSubscribers == null) {
+            List<Subscriber> newSubscribers = new CopyOnWriteArrayList<>();
+            roomSubscribers = subscribers.putIfAbsent(roomId, newSubscribers);
+            if (roomSubscribers == null) {
+                roomSubscribers = newSubscribers;
+            }
+        }
+        roomSubscribers.add(new Subscriber(listener, deliveryThread));
+    }
+
+    public void unregister(long roomId, Listener listener) {
+        List<Subscriber> roomSubscribers = subscribers.get(roomId);
+        if (roomSubscribers == null) {
+            return;
+        }
+
+        for (Subscriber subscriber : roomSubscribers) {
+            if (subscriber.listener == listener) {
+                roomSubscribers.remove(subscriber);
+            }
+        }
+        //An empty list left here is reused by the next register of the room
+    }
+
+    public void post(QiscusChatRoomEvent event) {
+        postedCount.incrementAndGet();
+        List<Subscriber> roomSubscribers = subscribers.get(event.getRoomId());
+        if (roomSubscribers != null) {
+            for (Subscriber subscriber : roomSubscribers) {
+                deliver(subscriber, event);
+            }
+        }
+
+        if (EventBus.getDefault().hasSubscriberForEvent(QiscusChatRoomEvent.class)) {
+            EventBus.getDefault().post(event);
+        }
+    }
+
+    /**
+     * @return number of events posted since the process started
+     */
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    /**
+     * @return number of deliveries to room listeners since the process started
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    private void deliver(Subscriber subscriber, QiscusChatRoomEvent event) {
+        deliveredCount.incrementAndGet();
+        switch (subscriber.deliveryThread) {
+            case MAIN:
+                QiscusAndroidUtil.runOnUIThread(() -> notify(subscriber, event));
+                break;
+            case BACKGROUND:
+                QiscusAndroidUtil.runOnBackgroundThread(() -> notify(subscriber, event));
+                break;
+            default:
+                notify(subscriber, event);
+                break;
+        }
+    }
+
+    private void notify(Subscriber subscriber, QiscusChatRoomEvent event) {
+        try {
+            subscriber.listener.onChatRoomEvent(event);
+        } catch (Exception e) {
+            QiscusErrorLogger.print(TAG, e);
+        }
+    }
+
+    public enum DeliveryThread {
+        /**
+         * The thread that posts the event, usually the mqtt thread
+         */
+        POSTING,
+        MAIN,
+        BACKGROUND
+    }
+
+    public interface Listener {
+        void onChatRoomEvent(QiscusChatRoomEvent event);
+    }
+
+    private static final class Subscriber {
+        private final Listener listener;
+        private final DeliveryThread deliveryThread;
+
+        private Subscriber(Listener listener, DeliveryThread deliveryThread) {
+            this.listener = listener;
+            this.deliveryThread = deliveryThread;
+        }
+    }
+}
@@ -1,21 +1,27 @@
 package com.qiscus.sdk.chat.core.presenter;
 
 import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomMemberManager;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomPrefetcher;
 import com.qiscus.sdk.chat.core.event.QiscusChatRoomEvent;
+import com.qiscus.sdk.chat.core.event.QiscusRoomEventDispatcher;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusRawDataExtractor;
 
-import org.greenrobot.eventbus.EventBus;
-import org.greenrobot.eventbus.Subscribe;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -25,21 +31,25 @@ import java.util.concurrent.TimeUnit;
  * ChatRoom Event Handler Class
  **/
 public class QiscusChatRoomEventHandler {
+    private static final long TYPING_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
 
     private QiscusAccount qiscusAccount;
     private StateListener listener;
     private QiscusChatRoom qiscusChatRoom;
     private Runnable listenChatRoomTask;
     private HashMap<String, QiscusRoomMember> memberState;
+    private QiscusRoomEventDispatcher.Listener roomEventListener;
+    private final Map<String, ScheduledFuture<?>> typingUsers = new HashMap<>();
 
     public QiscusChatRoomEventHandler(QiscusChatRoom qiscusChatRoom, StateListener listener) {
         this.listener = listener;
         this.qiscusAccount = QiscusCore.getQiscusAccount();
         setChatRoom(qiscusChatRoom);
+        QiscusRoomPrefetcher.getInstance().onRoomOpened(qiscusChatRoom.getId());
 
-        if (!EventBus.getDefault().isRegistered(this)) {
-            EventBus.getDefault().register(this);
-        }
+        this.roomEventListener = this::handleEvent;
+        QiscusRoomEventDispatcher.getInstance().register(qiscusChatRoom.getId(), roomEventListener,
+                QiscusRoomEventDispatcher.DeliveryThread.BACKGROUND);
 
         this.listenChatRoomTask = this::listenChatRoomEvent;
 
@@ -47,24 +57,26 @@ public class QiscusChatRoomEventHandler {
     }
 
     public void setChatRoom(QiscusChatRoom qiscusChatRoom) {
+        if (roomEventListener != null && this.qiscusChatRoom.getId() != qiscusChatRoom.getId()) {
+            QiscusRoomEventDispatcher.getInstance().unregister(this.qiscusChatRoom.getId(), roomEventListener);
+            QiscusRoomEventDispatcher.getInstance().register(qiscusChatRoom.getId(), roomEventListener,
+                    QiscusRoomEventDispatcher.DeliveryThread.BACKGROUND);
+        }
         this.qiscusChatRoom = qiscusChatRoom;
-        setMemberState();
+        memberState = null;
     }
 
-    private void setMemberState() {
+    /**
+     * Built on the first member event instead of on every room update, big rooms have thousands of members
+     */
+    private Map<String, QiscusRoomMember> getMemberState() {
         if (memberState == null) {
             memberState = new HashMap<>();
-        } else {
-            memberState.clear();
-        }
-
-        if (qiscusChatRoom.getMember().isEmpty()) {
-            return;
-        }
-
-        for (QiscusRoomMember member : qiscusChatRoom.getMember()) {
-            memberState.put(member.getEmail(), member);
+            for (QiscusRoomMember member : qiscusChatRoom.getMember()) {
+                memberState.put(member.getEmail(), member);
+            }
         }
+        return memberState;
     }
 
     private void listenChatRoomEvent() {
@@ -74,19 +86,29 @@ public class QiscusChatRoomEventHandler {
     public void detach() {
         QiscusAndroidUtil.cancelRunOnUIThread(listenChatRoomTask);
         QiscusPusherApi.getInstance().unsubsribeChatRoom(qiscusChatRoom);
-        EventBus.getDefault().unregister(this);
+        QiscusRoomEventDispatcher.getInstance().unregister(qiscusChatRoom.getId(), roomEventListener);
+        synchronized (typingUsers) {
+            for (ScheduledFuture<?> expiryTask : typingUsers.values()) {
+                expiryTask.cancel(false);
+            }
+            typingUsers.clear();
+        }
     }
 
-    @Subscribe
-    public void onChatRoomEvent(QiscusChatRoomEvent event) {
-        QiscusAndroidUtil.runOnBackgroundThread(() -> handleEvent(event));
+    /**
+     * @return emails of the members that are typing now
+     */
+    public List<String> getTypingUsers() {
+        synchronized (typingUsers) {
+            return new ArrayList<>(typingUsers.keySet());
+        }
     }
 
     private void handleEvent(QiscusChatRoomEvent event) {
         if (event.getRoomId() == qiscusChatRoom.getId()) {
             switch (event.getEvent()) {
                 case TYPING:
-                    listener.onUserTypng(event.getUser(), event.isTyping());
+                    handleTyping(event.getUser(), event.isTyping());
                     break;
                 case DELIVERED:
                     long lastDeliveredCommentId = event.getCommentId();
@@ -102,6 +124,37 @@ public class QiscusChatRoomEventHandler {
         }
     }
 
+    /**
+     * Typing packets arrive repeatedly while someone types, the listener only hears when a member starts
+     * or stops typing. A member that stops sending keep alives is treated as stopped after a timeout.
+     */
+    private void handleTyping(String user, boolean typing) {
+        boolean changed;
+        synchronized (typingUsers) {
+            ScheduledFuture<?> expiryTask = typingUsers.remove(user);
+            if (expiryTask != null) {
+                expiryTask.cancel(false);
+            }
+            changed = typing != (expiryTask != null);
+            if (typing) {
+                typingUsers.put(user, QiscusAndroidUtil.runOnBackgroundThread(() -> expireTyping(user), TYPING_TIMEOUT));
+            }
+        }
+
+        if (changed) {
+            listener.onUserTypng(user, typing);
+        }
+    }
+
+    private void expireTyping(String user) {
+        synchronized (typingUsers) {
+            if (typingUsers.remove(user) == null) {
+                return;
+            }
+        }
+        listener.onUserTypng(user, false);
+    }
+
     public void onGotComment(QiscusComment qiscusComment) {
         if (!qiscusComment.getSender().equals(qiscusAccount.getEmail())) {
             // handle room event such s invite user, kick user
@@ -114,6 +167,7 @@ public class QiscusChatRoomEventHandler {
                 if ( room.getLastComment().getState() == QiscusComment.STATE_ON_QISCUS ||
                         room.getLastComment().getState() == QiscusComment.STATE_DELIVERED ) {
                     QiscusCore.getDataStore().updateLastReadComment(qiscusChatRoom.getId(), qiscusComment.getId());
+                    QiscusUnreadCounter.getInstance().onRoomRead(qiscusChatRoom.getId());
                     listener.onChangeLastRead(qiscusComment.getId());
                 }
             }
@@ -155,8 +209,9 @@ public class QiscusChatRoomEventHandler {
     }
 
     private void handleMemberAdded(QiscusRoomMember member) {
-        if (!memberState.containsKey(member.getEmail())) {
+        if (!getMemberState().containsKey(member.getEmail())) {
             memberState.put(member.getEmail(), member);
+            QiscusRoomMemberManager.getInstance().onMemberChanged(member);
 
             listener.onChatRoomMemberAdded(member);
             QiscusAndroidUtil.runOnBackgroundThread(() ->
@@ -165,7 +220,7 @@ public class QiscusChatRoomEventHandler {
     }
 
     private void handleMemberRemoved(QiscusRoomMember member) {
-        if (memberState.remove(member.getEmail()) != null) {
+        if (getMemberState().remove(member.getEmail()) != null) {
 
             listener.onChatRoomMemberRemoved(member);
             QiscusAndroidUtil.runOnBackgroundThread(() ->
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.presenter;
+
+import androidx.annotation.MainThread;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Room list ordered by the time of the last message, kept up to date in memory instead of reloading and
+ * sorting every room when a comment arrives. A new comment only moves its room, with a binary search to
+ * find the old and new positions, and the listener hears the positional changes so an adapter can
+ * animate them. Unread counts shown here are only in memory, the saved counts are kept by
+ * {@link com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter}.
+ * <p>
+ * Must be used from the main thread. Call {@link #attach()} to start listening to new comments and
+ * {@link #detach()} when the list is not shown anymore.
+ */
+@MainThread
+public class QiscusRoomListModel {
+    private static final Comparator<Entry> ORDER = (entry1, entry2) -> {
+        if (entry1.time != entry2.time) {
+            return entry1.time > entry2.time ? -1 : 1;
+        }
+        return QiscusAndroidUtil.compare(entry2.room.getId(), entry1.room.getId());
+    };
+
+    private final Listener listener;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<Long, Entry> entriesById = new HashMap<>();
+
+    public QiscusRoomListModel(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void attach() {
+        if (!EventBus.getDefault().isRegistered(this)) {
+            EventBus.getDefault().register(this);
+        }
+    }
+
+    public void detach() {
+        EventBus.getDefault().unregister(this);
+    }
+
+    /**
+     * Replace every room, e.g. with the result of {@link com.qiscus.sdk.chat.core.data.local.QiscusChatRoomStore#getChatRooms(int)}.
+     * The listener is not called, the whole list should be shown again.
+     */
+    public void setRooms(List<QiscusChatRoom> qiscusChatRooms) {
+        entries.clear();
+        entriesById.clear();
+        for (QiscusChatRoom qiscusChatRoom : qiscusChatRooms) {
+            if (!entriesById.containsKey(qiscusChatRoom.getId())) {
+                Entry entry = new Entry(qiscusChatRoom);
+                entriesById.put(qiscusChatRoom.getId(), entry);
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, ORDER);
+    }
+
+    /**
+     * Insert a room or update the one with the same id, moving it if its last comment changed
+     */
+    public void addOrUpdate(QiscusChatRoom qiscusChatRoom) {
+        Entry oldEntry = entriesById.get(qiscusChatRoom.getId());
+        if (oldEntry == null) {
+            Entry entry = new Entry(qiscusChatRoom);
+            int position = insertionPoint(entry);
+            entries.add(position, entry);
+            entriesById.put(qiscusChatRoom.getId(), entry);
+            listener.onRoomInserted(position, qiscusChatRoom);
+            return;
+        }
+
+        reposition(oldEntry, new Entry(qiscusChatRoom));
+    }
+
+    public void remove(long roomId) {
+        Entry entry = entriesById.remove(roomId);
+        if (entry != null) {
+            int position = indexOf(entry);
+            entries.remove(position);
+            listener.onRoomRemoved(position);
+        }
+    }
+
+    public QiscusChatRoom get(int position) {
+        return entries.get(position).room;
+    }
+
+    /**
+     * @return position of the room, or -1 if it is not in the list
+     */
+    public int indexOf(long roomId) {
+        Entry entry = entriesById.get(roomId);
+        return entry == null ? -1 : indexOf(entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Clear the unread count of a room, e.g. when it is opened
+     */
+    public void markAsRead(long roomId) {
+        Entry entry = entriesById.get(roomId);
+        if (entry != null && entry.room.getUnreadCount() != 0) {
+            entry.room.setUnreadCount(0);
+            listener.onRoomChanged(indexOf(entry), entry.room);
+        }
+    }
+
+    @Subscribe
+    public void onCommentReceivedEvent(QiscusCommentReceivedEvent event) {
+        QiscusComment qiscusComment = event.getQiscusComment();
+        Entry entry = entriesById.get(qiscusComment.getRoomId());
+        if (entry == null) {
+            loadRoom(qiscusComment);
+            return;
+        }
+
+        QiscusComment lastComment = entry.room.getLastComment();
+        boolean sameComment = lastComment != null && lastComment.getUniqueId() != null
+                && lastComment.getUniqueId().equals(qiscusComment.getUniqueId());
+        if (!sameComment && lastComment != null && lastComment.getTime() != null
+                && qiscusComment.getTime().before(lastComment.getTime())) {
+            return;
+        }
+
+        entry.room.setLastComment(qiscusComment);
+        if (!sameComment && !qiscusComment.isMyComment()) {
+            entry.room.setUnreadCount(entry.room.getUnreadCount() + 1);
+        }
+        reposition(entry, new Entry(entry.room));
+    }
+
+    private void reposition(Entry oldEntry, Entry newEntry) {
+        int fromPosition = indexOf(oldEntry);
+        entriesById.put(newEntry.room.getId(), newEntry);
+        if (ORDER.compare(oldEntry, newEntry) == 0) {
+            entries.set(fromPosition, newEntry);
+            listener.onRoomChanged(fromPosition, newEntry.room);
+            return;
+        }
+
+        entries.remove(fromPosition);
+        int toPosition = insertionPoint(newEntry);
+        entries.add(toPosition, newEntry);
+        if (fromPosition != toPosition) {
+            listener.onRoomMoved(fromPosition, toPosition);
+        }
+        listener.onRoomChanged(toPosition, newEntry.room);
+    }
+
+    private int indexOf(Entry entry) {
+        return Collections.binarySearch(entries, entry, ORDER);
+    }
+
+    private int insertionPoint(Entry entry) {
+        int position = Collections.binarySearch(entries, entry, ORDER);
+        return position < 0 ? -position - 1 : position;
+    }
+
+    private void loadRoom(QiscusComment qiscusComment) {
+        QiscusAndroidUtil.runOnBackgroundThread(() -> {
+            QiscusChatRoom qiscusChatRoom = QiscusCore.getDataStore().getChatRoom(qiscusComment.getRoomId());
+            if (qiscusChatRoom != null) {
+                QiscusComment lastComment = qiscusChatRoom.getLastComment();
+                if (lastComment == null || lastComment.getTime().before(qiscusComment.getTime())) {
+                    qiscusChatRoom.setLastComment(qiscusComment);
+                }
+                QiscusAndroidUtil.runOnUIThread(() -> addOrUpdate(qiscusChatRoom));
+            }
+        });
+    }
+
+    /**
+     * Sort key of a room, taken when the room is put in the list so it does not change while the room is
+     * in the sorted list
+     */
+    private static class Entry {
+        private final QiscusChatRoom room;
+        private final long time;
+
+        private Entry(QiscusChatRoom room) {
+            this.room = room;
+            QiscusComment lastComment = room.getLastComment();
+            time = lastComment == null || lastComment.getTime() == null ? Long.MIN_VALUE : lastComment.getTime().getTime();
+        }
+    }
+
+    public interface Listener {
+        void onRoomInserted(int position, QiscusChatRoom qiscusChatRoom);
+
+        void onRoomMoved(int fromPosition, int toPosition);
+
+        void onRoomChanged(int position, QiscusChatRoom qiscusChatRoom);
+
+        void onRoomRemoved(int position);
+    }
+}
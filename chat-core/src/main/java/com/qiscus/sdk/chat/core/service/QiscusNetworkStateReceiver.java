@@ -46,7 +46,7 @@ public class QiscusNetworkStateReceiver extends BroadcastReceiver {
     }
 
     private boolean needResend(boolean isConnected) {
-        return isConnected && QiscusCore.hasSetupUser() && QiscusCore.getDataStore().getPendingComments().size() > 0;
+        return isConnected && QiscusCore.hasSetupUser() && QiscusCore.getDataStore().getPendingCommentCount() > 0;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.service;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.local.QiscusAttachmentCache;
+import com.qiscus.sdk.chat.core.data.local.QiscusRetentionManager;
+import com.qiscus.sdk.chat.core.data.model.QiscusPrefetchConfig;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomPrefetcher;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
+
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.RequiresApi;
+import rx.Subscription;
+
+/**
+ * Periodically runs {@link QiscusRoomPrefetcher}, {@link QiscusRetentionManager} and
+ * {@link QiscusAttachmentCache} while the device is idle and on an unmetered network.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class QiscusPrefetchJobService extends JobService {
+
+    private static final String TAG = QiscusPrefetchJobService.class.getSimpleName();
+    private static final int STATIC_JOB_ID = 300;
+    private static final long MIN_INTERVAL = TimeUnit.MINUTES.toMillis(15);
+
+    private Subscription subscription;
+
+    public static void scheduleJob(Context context) {
+        QiscusPrefetchConfig config = QiscusCore.getChatConfig().getPrefetchConfig();
+        if (!config.isEnable() && !QiscusCore.getChatConfig().getRetentionConfig().isEnable()) {
+            cancelJob(context);
+            return;
+        }
+
+        QiscusLogger.print(TAG, "scheduleJob: ");
+        ComponentName componentName = new ComponentName(context, QiscusPrefetchJobService.class);
+        JobInfo jobInfo = new JobInfo.Builder(STATIC_JOB_ID, componentName)
+                .setPeriodic(Math.max(config.getInterval(), MIN_INTERVAL))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresDeviceIdle(true)
+                .setPersisted(true)
+                .build();
+
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            jobScheduler.schedule(jobInfo);
+        }
+    }
+
+    public static void cancelJob(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (jobScheduler != null) {
+            jobScheduler.cancel(STATIC_JOB_ID);
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        QiscusLogger.print(TAG, "onStartJob: ");
+        if (!QiscusCore.hasSetupUser()) {
+            return false;
+        }
+
+        subscription = QiscusRoomPrefetcher.getInstance().prefetch()
+                .doOnNext(count -> {
+                    QiscusRetentionManager.getInstance().compactIfDue();
+                    QiscusAttachmentCache.getInstance().sweep();
+                })
+                .subscribeOn(QiscusSchedulers.sync())
+                .subscribe(count -> jobFinished(params, false), throwable -> {
+                    QiscusErrorLogger.print(TAG, throwable);
+                    jobFinished(params, false);
+                });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        QiscusLogger.print(TAG, "onStopJob: ");
+        if (subscription != null) {
+            subscription.unsubscribe();
+        }
+        return true;
+    }
+}
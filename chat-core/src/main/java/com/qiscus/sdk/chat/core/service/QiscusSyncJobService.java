@@ -30,16 +30,16 @@ import com.qiscus.sdk.chat.core.event.QiscusSyncEvent;
 import com.qiscus.sdk.chat.core.event.QiscusUserEvent;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import androidx.annotation.RequiresApi;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : November 23, 2018
@@ -51,19 +51,16 @@ import rx.schedulers.Schedulers;
 public class QiscusSyncJobService extends JobService {
 
     private static final String TAG = QiscusSyncJobService.class.getSimpleName();
-    private Timer timer;
+    private ScheduledFuture<?> scheduledSync;
 
     public void syncJob(Context context) {
         QiscusLogger.print(TAG, "syncJob...");
 
         stopSync();
 
-        timer = new Timer();
-        timer.schedule(new TimerTask() {
-            public void run() {
-                // time ran out.
-                newSchedule(context);
-            }
+        scheduledSync = QiscusExecutors.schedule(QiscusExecutors.Lane.SYNC, () -> {
+            // time ran out.
+            newSchedule(context);
         }, QiscusCore.getHeartBeat());
     }
 
@@ -108,7 +105,7 @@ public class QiscusSyncJobService extends JobService {
 
     private void syncEvents() {
         QiscusApi.getInstance().synchronizeEvent(QiscusEventCache.getInstance().getLastEventId())
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.sync())
                 .subscribe(events -> {
                 }, QiscusErrorLogger::print);
     }
@@ -123,7 +120,7 @@ public class QiscusSyncJobService extends JobService {
                     EventBus.getDefault().post((QiscusSyncEvent.COMPLETED));
                     QiscusLogger.print("Sync completed...");
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.sync())
                 .subscribe(QiscusPusherApi::handleReceivedComment, throwable -> {
                     QiscusErrorLogger.print(throwable);
                     EventBus.getDefault().post(QiscusSyncEvent.FAILED);
@@ -132,8 +129,8 @@ public class QiscusSyncJobService extends JobService {
     }
 
     private void stopSync() {
-        if (timer != null) {
-            timer.cancel();
+        if (scheduledSync != null) {
+            scheduledSync.cancel(false);
         }
     }
 
@@ -43,16 +43,16 @@ import com.qiscus.sdk.chat.core.event.QiscusSyncEvent;
 import com.qiscus.sdk.chat.core.event.QiscusUserEvent;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
 import androidx.annotation.Nullable;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : June 29, 2016
@@ -63,7 +63,7 @@ import rx.schedulers.Schedulers;
 public class QiscusSyncService extends Service {
     private static final String TAG = QiscusSyncService.class.getSimpleName();
 
-    private Timer timer;
+    private ScheduledFuture<?> scheduledSync;
 
     @Override
     public void onCreate() {
@@ -93,27 +93,24 @@ public class QiscusSyncService extends Service {
         long period = QiscusCore.getHeartBeat();
         stopSync();
 
-        timer = new Timer();
-        timer.schedule(new TimerTask() {
-            public void run() {
-                // time ran out.
-                if (QiscusCore.hasSetupUser() && !QiscusPusherApi.getInstance().isConnected()) {
-                    QiscusAndroidUtil.runOnUIThread(() -> QiscusPusherApi.getInstance().restartConnection());
-                    if (QiscusCore.isOnForeground()) {
-                        syncComments();
-                        syncEvents();
-                    }
+        scheduledSync = QiscusExecutors.schedule(QiscusExecutors.Lane.SYNC, () -> {
+            // time ran out.
+            if (QiscusCore.hasSetupUser() && !QiscusPusherApi.getInstance().isConnected()) {
+                QiscusAndroidUtil.runOnUIThread(() -> QiscusPusherApi.getInstance().restartConnection());
+                if (QiscusCore.isOnForeground()) {
+                    syncComments();
+                    syncEvents();
                 }
-
-                scheduleSync();
             }
+
+            scheduleSync();
         }, period);
 
     }
 
     private void syncEvents() {
         QiscusApi.getInstance().synchronizeEvent(QiscusEventCache.getInstance().getLastEventId())
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.sync())
                 .subscribe(events -> {
                 }, QiscusErrorLogger::print);
     }
@@ -128,7 +125,7 @@ public class QiscusSyncService extends Service {
                     EventBus.getDefault().post((QiscusSyncEvent.COMPLETED));
                     QiscusLogger.print("Sync completed...");
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.sync())
                 .subscribe(QiscusPusherApi::handleReceivedComment, throwable -> {
                     QiscusErrorLogger.print(throwable);
                     EventBus.getDefault().post(QiscusSyncEvent.FAILED);
@@ -137,8 +134,8 @@ public class QiscusSyncService extends Service {
     }
 
     private void stopSync() {
-        if (timer != null) {
-            timer.cancel();
+        if (scheduledSync != null) {
+            scheduledSync.cancel(false);
         }
     }
 
@@ -33,6 +33,10 @@ public final class BuildVersionUtil {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
     }
 
+    public static boolean isLollipopOrHigher() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
     public static boolean isAtLeastNMR1() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N_MR1;
     }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.util;
+
+import android.os.Process;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Central place for every background work of the sdk. Work is split into named lanes, each lane
+ * has its own bounded pool of threads so one kind of work can not starve the others.
+ */
+public final class QiscusExecutors {
+
+    private static final ThreadLocal<Lane> currentLane = new ThreadLocal<>();
+    private static final Map<Lane, LaneExecutor> executors = new EnumMap<>(Lane.class);
+
+    private QiscusExecutors() {
+    }
+
+    public static LaneExecutor getExecutor(Lane lane) {
+        synchronized (executors) {
+            LaneExecutor executor = executors.get(lane);
+            if (executor == null) {
+                executor = new LaneExecutor(lane);
+                executors.put(lane, executor);
+            }
+            return executor;
+        }
+    }
+
+    public static void execute(Lane lane, Runnable runnable) {
+        getExecutor(lane).execute(runnable);
+    }
+
+    public static ScheduledFuture<?> schedule(Lane lane, Runnable runnable, long delay) {
+        return getExecutor(lane).schedule(runnable, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the current thread belongs to the lane
+     */
+    public static boolean isOnLane(Lane lane) {
+        return currentLane.get() == lane;
+    }
+
+    public static int getQueueDepth(Lane lane) {
+        return getExecutor(lane).getQueue().size();
+    }
+
+    /**
+     * @return average time in milliseconds a task waits in the lane before it starts running
+     */
+    public static long getAverageWaitTime(Lane lane) {
+        return getExecutor(lane).getAverageWaitTime();
+    }
+
+    /**
+     * @return average time in milliseconds a task of the lane takes to run
+     */
+    public static long getAverageRunTime(Lane lane) {
+        return getExecutor(lane).getAverageRunTime();
+    }
+
+    public static long getCompletedCount(Lane lane) {
+        return getExecutor(lane).completedCount.get();
+    }
+
+    public static void resetMetrics() {
+        for (Lane lane : Lane.values()) {
+            getExecutor(lane).resetMetrics();
+        }
+    }
+
+    public enum Lane {
+        /**
+         * Single thread, all local database writes are serialized here
+         */
+        DB_WRITE("qiscus-db-write", 1, Process.THREAD_PRIORITY_DEFAULT),
+        /**
+         * Network and disk reads
+         */
+        IO("qiscus-io", Math.max(4, Math.min(cpuCount() * 2, 16)), Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Cpu bound work like image transcoding and parsing
+         */
+        CPU("qiscus-cpu", Math.max(1, cpuCount()), Process.THREAD_PRIORITY_BACKGROUND),
+        /**
+         * Periodic synchronization, it never competes with user initiated work
+         */
+        SYNC("qiscus-sync", 1, Process.THREAD_PRIORITY_LOWEST);
+
+        private final String threadName;
+        private final int poolSize;
+        private final int threadPriority;
+
+        Lane(String threadName, int poolSize, int threadPriority) {
+            this.threadName = threadName;
+            this.poolSize = poolSize;
+            this.threadPriority = threadPriority;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        /**
+         * Read here instead of from a field of {@link QiscusExecutors}, so initializing the lanes does not
+         * initialize QiscusExecutors, whose executor map needs the lanes to be initialized first
+         */
+        private static int cpuCount() {
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * Executor of a lane, it measures how long its tasks wait and run
+     */
+    public static final class LaneExecutor extends ScheduledThreadPoolExecutor {
+        private static final long PERIODIC = Long.MIN_VALUE;
+
+        private final AtomicLong completedCount = new AtomicLong();
+        private final AtomicLong totalWaitTime = new AtomicLong();
+        private final AtomicLong totalRunTime = new AtomicLong();
+
+        private LaneExecutor(Lane lane) {
+            super(lane.poolSize, new LaneThreadFactory(lane));
+            setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return super.schedule(new MeteredRunnable(command, delayedStartTime(delay, unit)), delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            long expectedStartTime = delayedStartTime(delay, unit);
+            return super.schedule(() -> {
+                long startTime = System.nanoTime();
+                try {
+                    return callable.call();
+                } finally {
+                    record(expectedStartTime, startTime);
+                }
+            }, delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return super.scheduleAtFixedRate(new MeteredRunnable(command, PERIODIC), initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            return super.scheduleWithFixedDelay(new MeteredRunnable(command, PERIODIC), initialDelay, delay, unit);
+        }
+
+        public long getAverageWaitTime() {
+            long count = completedCount.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitTime.get() / count);
+        }
+
+        public long getAverageRunTime() {
+            long count = completedCount.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalRunTime.get() / count);
+        }
+
+        private void resetMetrics() {
+            completedCount.set(0);
+            totalWaitTime.set(0);
+            totalRunTime.set(0);
+        }
+
+        private long delayedStartTime(long delay, TimeUnit unit) {
+            return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        }
+
+        private void record(long expectedStartTime, long startTime) {
+            completedCount.incrementAndGet();
+            totalWaitTime.addAndGet(Math.max(0, startTime - expectedStartTime));
+            totalRunTime.addAndGet(System.nanoTime() - startTime);
+        }
+
+        private final class MeteredRunnable implements Runnable {
+            private final Runnable runnable;
+            private final long expectedStartTime;
+
+            private MeteredRunnable(Runnable runnable, long expectedStartTime) {
+                this.runnable = runnable;
+                this.expectedStartTime = expectedStartTime;
+            }
+
+            @Override
+            public void run() {
+                long startTime = System.nanoTime();
+                try {
+                    runnable.run();
+                } finally {
+                    //Periodic tasks only measure their run time
+                    record(expectedStartTime == PERIODIC ? startTime : expectedStartTime, startTime);
+                }
+            }
+        }
+    }
+
+    private static final class LaneThreadFactory implements ThreadFactory {
+        private final Lane lane;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        private LaneThreadFactory(Lane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(lane.threadPriority);
+                currentLane.set(lane);
+                runnable.run();
+            }, lane.threadName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * RxJava schedulers backed by the lanes of {@link QiscusExecutors}
+ */
+public final class QiscusSchedulers {
+
+    private static final Map<QiscusExecutors.Lane, Scheduler> schedulers = new EnumMap<>(QiscusExecutors.Lane.class);
+
+    private QiscusSchedulers() {
+    }
+
+    public static Scheduler from(QiscusExecutors.Lane lane) {
+        synchronized (schedulers) {
+            Scheduler scheduler = schedulers.get(lane);
+            if (scheduler == null) {
+                scheduler = Schedulers.from(QiscusExecutors.getExecutor(lane));
+                schedulers.put(lane, scheduler);
+            }
+            return scheduler;
+        }
+    }
+
+    public static Scheduler io() {
+        return from(QiscusExecutors.Lane.IO);
+    }
+
+    public static Scheduler cpu() {
+        return from(QiscusExecutors.Lane.CPU);
+    }
+
+    public static Scheduler dbWrite() {
+        return from(QiscusExecutors.Lane.DB_WRITE);
+    }
+
+    public static Scheduler sync() {
+        return from(QiscusExecutors.Lane.SYNC);
+    }
+}
@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
+import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.chat.core.util.QiscusFirebaseMessagingUtil;
+import com.google.firebase.messaging.RemoteMessage;
+
+import org.eclipse.paho.android.service.MqttService;
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * In memory Qiscus backend for tests, served by a {@link QiscusTestServer} and a {@link QiscusTestBroker}.
+ * It answers the endpoints the SDK uses to log in, load a room, sync, post comments, upload files, sync
+ * events and search users, and pushes comments, typing, receipts and deletes to the logged in user through
+ * the broker like the real server does.
+ */
+public class QiscusTestBackend {
+    public static final String USER_EMAIL = "user@qiscus.com";
+    public static final String OTHER_EMAIL = "other@qiscus.com";
+    private static final String USER_TOKEN = "user-token";
+    private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    private final QiscusTestServer server;
+    private final QiscusTestBroker broker;
+    private final Map<Long, JsonObject> rooms = new LinkedHashMap<>();
+    private final Map<Long, Long> lastCommentIds = new HashMap<>();
+    private final List<JsonObject> comments = new ArrayList<>();
+    private final List<JsonObject> events = new ArrayList<>();
+    private final List<JsonObject> users = new ArrayList<>();
+    private final Map<String, Long> sentTimes = new ConcurrentHashMap<>();
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor();
+    private long lastRoomId;
+    private long lastCommentId;
+    private long lastEventId;
+    private volatile long userListDelay;
+    private volatile int userListErrorCode;
+
+    public QiscusTestBackend(QiscusTestServer server, QiscusTestBroker broker) {
+        this.server = server;
+        this.broker = broker;
+        server.on("/api/v2/mobile/config", request -> ok(config()))
+                .on("/api/v2/mobile/login_or_register", request -> ok(user()))
+                .on("/api/v2/mobile/get_room_by_id", this::getRoom)
+                .on("/api/v2/mobile/user_rooms", this::getRooms)
+                .on("/api/v2/mobile/total_unread_count", this::getTotalUnreadCount)
+                .on("/api/v2/mobile/post_comment", this::postComment)
+                .on("/api/v2/mobile/sync", this::sync)
+                .on("/api/v2/mobile/upload", this::upload)
+                .on("/api/v2/mobile/sync_event", this::syncEvent)
+                .on("/api/v2/mobile/get_user_list", this::getUserList)
+                .on("/api/v2/mobile/update_comment_status", request -> ok(new JsonObject()));
+    }
+
+    /**
+     * Log in and connect the SDK to the broker, waiting until it is connected and subscribed to its comments
+     */
+    public QiscusAccount login() {
+        QiscusAccount qiscusAccount = QiscusCore.setUser(USER_EMAIL, "password").save().toBlocking().first();
+
+        //The paho client binds its service, which Robolectric has to be told about
+        MqttService mqttService = Robolectric.setupService(MqttService.class);
+        shadowOf(RuntimeEnvironment.application).setComponentNameAndServiceForBindService(
+                new ComponentName(RuntimeEnvironment.application, MqttService.class),
+                mqttService.onBind(new Intent()));
+        QiscusPusherApi.getInstance().restartConnection();
+        if (!await(() -> QiscusPusherApi.getInstance().isConnected()
+                && broker.getPacketCount(QiscusTestBroker.SUBACK) > 0, CONNECT_TIMEOUT)) {
+            throw new IllegalStateException("Could not connect to " + broker.getUri());
+        }
+        return qiscusAccount;
+    }
+
+    public void shutdown() {
+        replayExecutor.shutdownNow();
+    }
+
+    public synchronized long createRoom() {
+        long roomId = ++lastRoomId;
+        JsonObject room = new JsonObject();
+        room.addProperty("id", roomId);
+        room.addProperty("chat_type", "group");
+        room.addProperty("room_name", "Room " + roomId);
+        room.addProperty("unique_id", "room-" + roomId);
+        room.addProperty("options", "{}");
+        room.addProperty("avatar_url", "http://localhost/avatar.png");
+        room.addProperty("unread_count", 0);
+        room.addProperty("room_total_participants", 2);
+        JsonArray participants = new JsonArray();
+        participants.add(member(USER_EMAIL));
+        participants.add(member(OTHER_EMAIL));
+        room.add("participants", participants);
+        rooms.put(roomId, room);
+        return roomId;
+    }
+
+    /**
+     * Set the unread count the server has for a room
+     */
+    public synchronized void setUnreadCount(long roomId, int unreadCount) {
+        rooms.get(roomId).addProperty("unread_count", unreadCount);
+    }
+
+    /**
+     * Add a user the user list answers with, when the query is in its username or email
+     */
+    public synchronized void addUser(String email, String username) {
+        JsonObject user = member(email);
+        user.addProperty("username", username);
+        users.add(user);
+    }
+
+    /**
+     * Delay the answers of the user list, e.g. so a newer search cancels the request
+     */
+    public void setUserListDelay(long delay) {
+        userListDelay = delay;
+    }
+
+    /**
+     * Answer the user list with this error code, 0 to answer normally
+     */
+    public void setUserListErrorCode(int errorCode) {
+        userListErrorCode = errorCode;
+    }
+
+    /**
+     * Add a comment of the other user to the history of a room, without pushing it
+     */
+    public synchronized JsonObject addComment(long roomId, String message) {
+        JsonObject comment = new JsonObject();
+        long commentId = ++lastCommentId;
+        Long commentBeforeId = lastCommentIds.put(roomId, commentId);
+        comment.addProperty("id", commentId);
+        comment.addProperty("room_id", roomId);
+        comment.addProperty("comment_before_id", commentBeforeId == null ? 0 : commentBeforeId);
+        comment.addProperty("unique_temp_id", "comment-" + commentId);
+        comment.addProperty("unique_id", "comment-" + commentId);
+        comment.addProperty("message", message);
+        comment.addProperty("type", "text");
+        comment.add("payload", new JsonObject());
+        comment.addProperty("username", "Other");
+        comment.addProperty("email", OTHER_EMAIL);
+        comment.addProperty("user_avatar", "http://localhost/avatar.png");
+        comment.addProperty("user_avatar_url", "http://localhost/avatar.png");
+        comment.addProperty("status", "sent");
+        comment.addProperty("unix_nano_timestamp", System.currentTimeMillis() * 1000000L);
+        comment.addProperty("room_name", "Room " + roomId);
+        comment.addProperty("chat_type", "group");
+        comments.add(comment);
+        return comment;
+    }
+
+    /**
+     * Add a comment of the other user and push it to the logged in user
+     */
+    public JsonObject sendComment(long roomId, String message) {
+        JsonObject comment = addComment(roomId, message);
+        sentTimes.put(comment.get("unique_temp_id").getAsString(), System.nanoTime());
+        broker.publish(USER_TOKEN + "/c", comment.toString(), 1);
+        return comment;
+    }
+
+    /**
+     * Push a comment that was added before to the logged in user over MQTT
+     */
+    public void deliverOverMqtt(JsonObject comment) {
+        broker.publish(USER_TOKEN + "/c", comment.toString(), 1);
+    }
+
+    /**
+     * Hand a comment to the SDK as a push message from FCM
+     */
+    public void deliverOverFcm(JsonObject comment) {
+        QiscusFirebaseMessagingUtil.handleMessageReceived(new RemoteMessage.Builder(USER_TOKEN)
+                .addData("qiscus_sdk", "post_comment")
+                .addData("payload", comment.toString())
+                .build());
+    }
+
+    /**
+     * Sync every comment of the history and hand them to the SDK, like the sync service does
+     */
+    public void deliverBySync() {
+        QiscusApi.getInstance().synchronize(0).toBlocking().forEach(QiscusPusherApi::handleReceivedComment);
+    }
+
+    public void sendTyping(long roomId, boolean typing) {
+        broker.publish("r/" + roomId + "/" + roomId + "/" + OTHER_EMAIL + "/t", typing ? "1" : "0", 0);
+    }
+
+    public void sendRead(long roomId, long commentId, String uniqueId) {
+        broker.publish("r/" + roomId + "/" + roomId + "/" + OTHER_EMAIL + "/r", commentId + ":" + uniqueId, 1);
+    }
+
+    public void deleteComment(long roomId, String uniqueId, boolean hardDelete) {
+        JsonObject deletedMessages = new JsonObject();
+        deletedMessages.addProperty("room_id", String.valueOf(roomId));
+        JsonArray uniqueIds = new JsonArray();
+        uniqueIds.add(uniqueId);
+        deletedMessages.add("message_unique_ids", uniqueIds);
+        JsonArray deleted = new JsonArray();
+        deleted.add(deletedMessages);
+
+        JsonObject data = new JsonObject();
+        data.addProperty("is_hard_delete", hardDelete);
+        data.add("deleted_messages", deleted);
+        JsonObject actor = new JsonObject();
+        actor.addProperty("email", OTHER_EMAIL);
+        actor.addProperty("name", "Other");
+        JsonObject payload = new JsonObject();
+        payload.add("actor", actor);
+        payload.add("data", data);
+
+        JsonObject event = new JsonObject();
+        synchronized (this) {
+            event.addProperty("id", ++lastEventId);
+            events.add(event);
+        }
+        event.addProperty("action_topic", "delete_message");
+        event.add("payload", payload);
+        broker.publish(USER_TOKEN + "/n", event.toString(), 1);
+    }
+
+    /**
+     * @return when the comment was pushed, in {@link System#nanoTime()}, or null if it was not pushed
+     */
+    public Long getSentTime(String uniqueId) {
+        return sentTimes.get(uniqueId);
+    }
+
+    public synchronized int getCommentCount() {
+        return comments.size();
+    }
+
+    /**
+     * Push the planned traffic to the given rooms from a background thread, at most the given number of
+     * events per second. Receipts mark the last comment of the replay as read, deletes remove the oldest one.
+     *
+     * @return the replay, done when every event was pushed
+     */
+    public Future<?> replay(long[] roomIds, List<Event> plan, int eventsPerSecond) {
+        return replayExecutor.submit(() -> {
+            long interval = TimeUnit.SECONDS.toNanos(1) / eventsPerSecond;
+            long nextTime = System.nanoTime();
+            List<JsonObject> sent = new ArrayList<>();
+            for (Event event : plan) {
+                long delay = nextTime - System.nanoTime();
+                if (delay > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                nextTime += interval;
+
+                long roomId = roomIds[event.roomIndex];
+                switch (event.type) {
+                    case COMMENT:
+                        sent.add(sendComment(roomId, "Message " + System.nanoTime()));
+                        break;
+                    case TYPING:
+                        sendTyping(roomId, true);
+                        break;
+                    case RECEIPT:
+                        if (!sent.isEmpty()) {
+                            JsonObject comment = sent.get(sent.size() - 1);
+                            sendRead(comment.get("room_id").getAsLong(), comment.get("id").getAsLong(),
+                                    comment.get("unique_temp_id").getAsString());
+                        }
+                        break;
+                    case DELETE:
+                        if (!sent.isEmpty()) {
+                            JsonObject comment = sent.remove(0);
+                            deleteComment(comment.get("room_id").getAsLong(),
+                                    comment.get("unique_temp_id").getAsString(), false);
+                        }
+                        break;
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the main looper until the condition holds, since the SDK delivers its callbacks on the main thread
+     *
+     * @return whether the condition holds
+     */
+    public static boolean await(BooleanSupplier condition, long timeout) {
+        return awaitCondition(condition, timeout);
+    }
+
+    /**
+     * Wait until the background tasks of the SDK that are due have run, tasks scheduled later are ignored
+     */
+    public static boolean awaitBackgroundTasks(long timeout) {
+        ScheduledThreadPoolExecutor executor = QiscusCore.getTaskExecutor();
+        return await(() -> {
+            if (executor.getActiveCount() > 0) {
+                return false;
+            }
+            for (Runnable task : executor.getQueue()) {
+                if (((Delayed) task).getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }, timeout);
+    }
+
+    private static boolean awaitCondition(BooleanSupplier condition, long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            ShadowLooper.runUiThreadTasks();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized MockResponse getRooms(RecordedRequest request) {
+        int page = Integer.parseInt(request.getRequestUrl().queryParameter("page"));
+        int limit = Integer.parseInt(request.getRequestUrl().queryParameter("limit"));
+        List<JsonObject> allRooms = new ArrayList<>(rooms.values());
+        JsonArray roomsInfo = new JsonArray();
+        for (int i = (page - 1) * limit; i < Math.min(page * limit, allRooms.size()); i++) {
+            JsonObject room = allRooms.get(i);
+            for (int j = comments.size() - 1; j >= 0; j--) {
+                if (comments.get(j).get("room_id").getAsLong() == room.get("id").getAsLong()) {
+                    room.add("last_comment", comments.get(j));
+                    break;
+                }
+            }
+            roomsInfo.add(room);
+        }
+        JsonObject results = new JsonObject();
+        results.add("rooms_info", roomsInfo);
+        return ok(results);
+    }
+
+    private synchronized MockResponse getTotalUnreadCount(RecordedRequest request) {
+        long total = 0;
+        for (JsonObject room : rooms.values()) {
+            total += room.get("unread_count").getAsLong();
+        }
+        JsonObject results = new JsonObject();
+        results.addProperty("total_unread_count", total);
+        return ok(results);
+    }
+
+    private MockResponse getRoom(RecordedRequest request) {
+        long roomId = Long.parseLong(request.getRequestUrl().queryParameter("id"));
+        JsonObject results = new JsonObject();
+        synchronized (this) {
+            JsonObject room = rooms.get(roomId);
+            if (room == null) {
+                return new MockResponse().setResponseCode(404);
+            }
+            results.add("room", room);
+            JsonArray roomComments = new JsonArray();
+            for (int i = comments.size() - 1; i >= 0 && roomComments.size() < 20; i--) {
+                if (comments.get(i).get("room_id").getAsLong() == roomId) {
+                    roomComments.add(comments.get(i));
+                }
+            }
+            results.add("comments", roomComments);
+        }
+        return ok(results);
+    }
+
+    private MockResponse postComment(RecordedRequest request) {
+        JsonObject body = new JsonParser().parse(request.getBody().readUtf8()).getAsJsonObject();
+        long roomId = Long.parseLong(body.get("topic_id").getAsString());
+        JsonObject comment = addComment(roomId, body.get("comment").getAsString());
+        comment.addProperty("unique_temp_id", body.get("unique_temp_id").getAsString());
+        comment.addProperty("unique_id", body.get("unique_temp_id").getAsString());
+        comment.addProperty("email", USER_EMAIL);
+        comment.addProperty("username", "User");
+
+        JsonObject results = new JsonObject();
+        results.add("comment", comment);
+        return ok(results);
+    }
+
+    private MockResponse sync(RecordedRequest request) {
+        long lastReceivedId = Long.parseLong(request.getRequestUrl().queryParameter("last_received_comment_id"));
+        JsonArray newComments = new JsonArray();
+        synchronized (this) {
+            for (JsonObject comment : comments) {
+                if (comment.get("id").getAsLong() > lastReceivedId) {
+                    newComments.add(comment);
+                }
+            }
+        }
+        JsonObject meta = new JsonObject();
+        meta.addProperty("last_received_comment_id", lastCommentId);
+        JsonObject results = new JsonObject();
+        results.add("comments", newComments);
+        results.add("meta", meta);
+        return ok(results);
+    }
+
+    private MockResponse getUserList(RecordedRequest request) {
+        if (userListErrorCode != 0) {
+            return new MockResponse().setResponseCode(userListErrorCode);
+        }
+
+        int page = Integer.parseInt(request.getRequestUrl().queryParameter("page"));
+        int limit = Integer.parseInt(request.getRequestUrl().queryParameter("limit"));
+        String query = request.getRequestUrl().queryParameter("query").toLowerCase(Locale.US);
+        List<JsonObject> matches = new ArrayList<>();
+        synchronized (this) {
+            for (JsonObject user : users) {
+                if (user.get("username").getAsString().toLowerCase(Locale.US).contains(query)
+                        || user.get("email").getAsString().toLowerCase(Locale.US).contains(query)) {
+                    matches.add(user);
+                }
+            }
+        }
+        JsonArray pageUsers = new JsonArray();
+        for (int i = Math.max(page - 1, 0) * limit; i < Math.min(Math.max(page, 1) * limit, matches.size()); i++) {
+            pageUsers.add(matches.get(i));
+        }
+        JsonObject results = new JsonObject();
+        results.add("users", pageUsers);
+        return ok(results).setBodyDelay(userListDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private MockResponse upload(RecordedRequest request) {
+        JsonObject file = new JsonObject();
+        file.addProperty("url", server.url("/files/" + System.nanoTime()));
+        JsonObject results = new JsonObject();
+        results.add("file", file);
+        return ok(results);
+    }
+
+    private synchronized MockResponse syncEvent(RecordedRequest request) {
+        long startEventId = Long.parseLong(request.getRequestUrl().queryParameter("start_event_id"));
+        JsonArray newEvents = new JsonArray();
+        for (JsonObject event : events) {
+            if (event.get("id").getAsLong() > startEventId) {
+                newEvents.add(event);
+            }
+        }
+        JsonObject response = new JsonObject();
+        response.add("events", newEvents);
+        return new MockResponse().setBody(response.toString());
+    }
+
+    private JsonObject config() {
+        JsonObject config = new JsonObject();
+        config.addProperty("base_url", "");
+        config.addProperty("broker_lb_url", "");
+        config.addProperty("broker_url", "");
+        config.addProperty("enable_realtime", true);
+        config.addProperty("enable_event_report", false);
+        return config;
+    }
+
+    private JsonObject user() {
+        JsonObject user = member(USER_EMAIL);
+        user.addProperty("id", 1);
+        user.addProperty("token", USER_TOKEN);
+        JsonObject results = new JsonObject();
+        results.add("user", user);
+        return results;
+    }
+
+    private JsonObject member(String email) {
+        JsonObject member = new JsonObject();
+        member.addProperty("email", email);
+        member.addProperty("username", email.substring(0, email.indexOf('@')));
+        member.addProperty("avatar_url", "http://localhost/avatar.png");
+        return member;
+    }
+
+    private MockResponse ok(JsonObject results) {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", 200);
+        response.add("results", results);
+        return new MockResponse().setBody(response.toString());
+    }
+
+    /**
+     * Share of each kind of traffic, in percent
+     */
+    public static final class TrafficMix {
+        private final int comments;
+        private final int typing;
+        private final int receipts;
+
+        public TrafficMix(int comments, int typing, int receipts, int deletes) {
+            if (comments + typing + receipts + deletes != 100) {
+                throw new IllegalArgumentException("The shares must add up to 100");
+            }
+            this.comments = comments;
+            this.typing = typing;
+            this.receipts = receipts;
+        }
+
+        /**
+         * Build the events to replay to the given number of rooms, the same for the same seed
+         */
+        public List<Event> plan(int events, int roomCount, long seed) {
+            Random random = new Random(seed);
+            List<Event> plan = new ArrayList<>(events);
+            for (int i = 0; i < events; i++) {
+                int share = random.nextInt(100);
+                EventType type;
+                if (share < comments) {
+                    type = EventType.COMMENT;
+                } else if (share < comments + typing) {
+                    type = EventType.TYPING;
+                } else if (share < comments + typing + receipts) {
+                    type = EventType.RECEIPT;
+                } else {
+                    type = EventType.DELETE;
+                }
+                plan.add(new Event(type, random.nextInt(roomCount)));
+            }
+            return plan;
+        }
+    }
+
+    public enum EventType {
+        COMMENT, TYPING, RECEIPT, DELETE
+    }
+
+    public static final class Event {
+        private final EventType type;
+        private final int roomIndex;
+
+        private Event(EventType type, int roomIndex) {
+            this.type = type;
+            this.roomIndex = roomIndex;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.MqttMessageBuilders;
+import io.netty.handler.codec.mqtt.MqttQoS;
+
+/**
+ * Local MQTT broker for tests. Clients connect to {@link #getUri()}, a proxy in front of the broker that
+ * counts every MQTT packet going through it by packet type, in both directions.
+ */
+public class QiscusTestBroker {
+    public static final int CONNECT = 1;
+    public static final int PUBLISH = 3;
+    public static final int PUBACK = 4;
+    public static final int PUBREC = 5;
+    public static final int PUBREL = 6;
+    public static final int PUBCOMP = 7;
+    public static final int SUBSCRIBE = 8;
+    public static final int SUBACK = 9;
+    public static final int PINGREQ = 12;
+    public static final int PINGRESP = 13;
+
+    private static final String CLIENT_ID = "qiscus-test-broker";
+
+    private final Server broker = new Server();
+    private final AtomicIntegerArray packetCounts = new AtomicIntegerArray(16);
+    private final ExecutorService proxyExecutor = Executors.newCachedThreadPool();
+    private ServerSocket proxySocket;
+    private int brokerPort;
+
+    public void start() throws IOException {
+        brokerPort = freePort();
+        Properties properties = new Properties();
+        properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, "127.0.0.1");
+        properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, String.valueOf(brokerPort));
+        properties.setProperty(BrokerConstants.WEB_SOCKET_PORT_PROPERTY_NAME, BrokerConstants.DISABLED_PORT_BIND);
+        properties.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        properties.setProperty(BrokerConstants.IMMEDIATE_BUFFER_FLUSH_PROPERTY_NAME, "true");
+        broker.startServer(new MemoryConfig(properties));
+
+        proxySocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        proxyExecutor.execute(this::acceptClients);
+    }
+
+    public void shutdown() throws IOException {
+        proxySocket.close();
+        proxyExecutor.shutdownNow();
+        broker.stopServer();
+    }
+
+    public String getUri() {
+        return "tcp://127.0.0.1:" + proxySocket.getLocalPort();
+    }
+
+    /**
+     * Publish a message from the broker itself, e.g. a comment sent by another user
+     */
+    public void publish(String topic, String payload, int qos) {
+        broker.internalPublish(MqttMessageBuilders.publish()
+                .topicName(topic)
+                .qos(MqttQoS.valueOf(qos))
+                .retained(false)
+                .payload(Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8))
+                .build(), CLIENT_ID);
+    }
+
+    public int getPacketCount(int packetType) {
+        return packetCounts.get(packetType);
+    }
+
+    /**
+     * @return every packet counted, without keep alive pings
+     */
+    public int getPacketCount() {
+        int count = 0;
+        for (int i = 0; i < packetCounts.length(); i++) {
+            if (i != PINGREQ && i != PINGRESP) {
+                count += packetCounts.get(i);
+            }
+        }
+        return count;
+    }
+
+    public void resetPacketCounts() {
+        for (int i = 0; i < packetCounts.length(); i++) {
+            packetCounts.set(i, 0);
+        }
+    }
+
+    private void acceptClients() {
+        while (!proxySocket.isClosed()) {
+            try {
+                Socket client = proxySocket.accept();
+                Socket upstream = new Socket("127.0.0.1", brokerPort);
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                proxyExecutor.execute(() -> forward(client, upstream));
+                proxyExecutor.execute(() -> forward(upstream, client));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copy the packets read from one socket to the other one packet at a time, so each can be counted
+     */
+    private void forward(Socket from, Socket to) {
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = new BufferedOutputStream(to.getOutputStream());
+            byte[] buffer = new byte[8192];
+            int header;
+            while ((header = in.read()) != -1) {
+                out.write(header);
+                int remainingLength = 0;
+                int multiplier = 1;
+                int digit;
+                do {
+                    digit = in.read();
+                    if (digit == -1) {
+                        return;
+                    }
+                    out.write(digit);
+                    remainingLength += (digit & 127) * multiplier;
+                    multiplier *= 128;
+                } while ((digit & 128) != 0);
+
+                while (remainingLength > 0) {
+                    int read = in.read(buffer, 0, Math.min(buffer.length, remainingLength));
+                    if (read == -1) {
+                        return;
+                    }
+                    out.write(buffer, 0, read);
+                    remainingLength -= read;
+                }
+                out.flush();
+                packetCounts.incrementAndGet((header >> 4) & 0x0F);
+            }
+        } catch (IOException ignored) {
+            //One side closed the connection
+        } finally {
+            close(from);
+            close(to);
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            //Already closed
+        }
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
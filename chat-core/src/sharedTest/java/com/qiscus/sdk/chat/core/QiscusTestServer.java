@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core;
+
+import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in of the Qiscus server for tests. Paths answer with the handler registered for them,
+ * unknown paths answer 404, and requests are counted by path.
+ */
+public class QiscusTestServer {
+    public static final String APP_ID = "qiscus-test";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Start the server and init Qiscus against it
+     */
+    public void start() throws IOException {
+        start("tcp://127.0.0.1:1883");
+    }
+
+    /**
+     * Start the server and init Qiscus against it and the given MQTT broker, e.g. a {@link QiscusTestBroker}
+     */
+    public void start(String mqttBrokerUrl) throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return QiscusTestServer.this.dispatch(request);
+            }
+        });
+        server.start();
+        QiscusCore.initWithCustomServer(RuntimeEnvironment.application, APP_ID, url("/"),
+                mqttBrokerUrl, null);
+        //The api is created once per process, point it to this server
+        QiscusApi.getInstance().reInitiateInstance();
+    }
+
+    public void shutdown() throws IOException {
+        server.shutdown();
+    }
+
+    public String url(String path) {
+        return server.url(path).toString();
+    }
+
+    public QiscusTestServer on(String path, Handler handler) {
+        handlers.put(path, handler);
+        return this;
+    }
+
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    private MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        String path = request.getRequestUrl().encodedPath();
+        AtomicInteger count = requestCounts.get(path);
+        if (count == null) {
+            requestCounts.putIfAbsent(path, new AtomicInteger());
+            count = requestCounts.get(path);
+        }
+        count.incrementAndGet();
+
+        Handler handler = handlers.get(path);
+        return handler == null ? new MockResponse().setResponseCode(404) : handler.handle(request);
+    }
+
+    public interface Handler {
+        MockResponse handle(RecordedRequest request) throws InterruptedException;
+    }
+}
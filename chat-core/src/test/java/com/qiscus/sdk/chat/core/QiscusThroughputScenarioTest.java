@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core;
+
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
+import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End to end scenarios against {@link QiscusTestBackend} for 1, 100 and 1,000 rooms. Each scenario syncs
+ * the history of every room, then replays a mix of comments, typing, receipts and deletes while one room
+ * is open. It prints the sync throughput, the latency from a comment being pushed to it reaching the main
+ * thread, and how much the database and the heap grew.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QiscusThroughputScenarioTest {
+    private static final int HISTORY_PER_ROOM = 5;
+    private static final int REPLAYED_EVENTS = 300;
+    private static final int EVENTS_PER_SECOND = 100;
+    private static final QiscusTestBackend.TrafficMix MIX = new QiscusTestBackend.TrafficMix(50, 30, 15, 5);
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusTestBroker broker = new QiscusTestBroker();
+    private final Set<String> received = Collections.synchronizedSet(new HashSet<>());
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private QiscusTestBackend backend;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+        backend = new QiscusTestBackend(server, broker);
+        server.start(broker.getUri());
+        //Save received comments like the chat module does
+        QiscusCore.getChatConfig().setNotificationListener((context, qiscusComment) ->
+                QiscusCore.getDataStore().addOrUpdate(qiscusComment));
+        QiscusCore.getDataStore().clear();
+        backend.login();
+        EventBus.getDefault().register(this);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        EventBus.getDefault().unregister(this);
+        QiscusCore.clearUser();
+        backend.shutdown();
+        server.shutdown();
+        broker.shutdown();
+    }
+
+    @Test
+    public void oneRoom() throws Exception {
+        run(1);
+    }
+
+    @Test
+    public void hundredRooms() throws Exception {
+        run(100);
+    }
+
+    @Test
+    public void thousandRooms() throws Exception {
+        run(1000);
+    }
+
+    private void run(int roomCount) throws Exception {
+        long[] roomIds = new long[roomCount];
+        for (int i = 0; i < roomCount; i++) {
+            roomIds[i] = backend.createRoom();
+            for (int j = 0; j < HISTORY_PER_ROOM; j++) {
+                backend.addComment(roomIds[i], "History " + j);
+            }
+        }
+
+        //Open the first room like a chat screen does
+        Pair<QiscusChatRoom, List<QiscusComment>> openedRoom = QiscusApi.getInstance()
+                .getChatRoomWithMessages(roomIds[0]).toBlocking().first();
+        QiscusCore.getDataStore().addOrUpdate(openedRoom.first);
+        QiscusPusherApi.getInstance().subscribeChatRoom(openedRoom.first);
+
+        awaitWrites();
+        long databaseSize = getDatabaseSize();
+        long usedHeap = getUsedHeap();
+
+        int history = backend.getCommentCount();
+        long syncStartTime = System.nanoTime();
+        QiscusApi.getInstance().synchronize(0)
+                .subscribe(QiscusPusherApi::handleReceivedComment, QiscusErrorLogger::print);
+        assertTrue("Synced comments did not arrive", QiscusTestBackend.await(() -> received.size() >= history, TIMEOUT));
+        long syncTime = System.nanoTime() - syncStartTime;
+
+        List<QiscusTestBackend.Event> plan = MIX.plan(REPLAYED_EVENTS, roomCount, roomCount);
+        int pushedComments = 0;
+        for (QiscusTestBackend.Event event : plan) {
+            if (event.getType() == QiscusTestBackend.EventType.COMMENT) {
+                pushedComments++;
+            }
+        }
+        int expectedComments = pushedComments;
+        Future<?> replay = backend.replay(roomIds, plan, EVENTS_PER_SECOND);
+        assertTrue("Pushed comments did not arrive", QiscusTestBackend.await(() -> replay.isDone()
+                && latencies.size() >= expectedComments, TIMEOUT));
+        replay.get();
+
+        awaitWrites();
+        long databaseGrowth = getDatabaseSize() - databaseSize;
+        long heapGrowth = getUsedHeap() - usedHeap;
+
+        assertEquals(history + pushedComments, received.size());
+        assertTrue(databaseGrowth > 0);
+
+        List<Long> sortedLatencies = new ArrayList<>(latencies);
+        Collections.sort(sortedLatencies);
+        long totalLatency = 0;
+        for (long latency : sortedLatencies) {
+            totalLatency += latency;
+        }
+        System.out.println(roomCount + " rooms: synced " + history + " comments in "
+                + TimeUnit.NANOSECONDS.toMillis(syncTime) + " ms ("
+                + history * TimeUnit.SECONDS.toNanos(1) / syncTime + " comments/s), "
+                + pushedComments + " of " + REPLAYED_EVENTS + " replayed events were comments, latency "
+                + TimeUnit.NANOSECONDS.toMicros(totalLatency / pushedComments) + " us on average and "
+                + TimeUnit.NANOSECONDS.toMicros(sortedLatencies.get(pushedComments * 95 / 100)) + " us at p95, "
+                + "database grew by " + databaseGrowth / 1024 + " KB, heap by " + heapGrowth / 1024 + " KB");
+    }
+
+    @Subscribe
+    public void onCommentReceivedEvent(QiscusCommentReceivedEvent event) {
+        String uniqueId = event.getQiscusComment().getUniqueId();
+        if (received.add(uniqueId)) {
+            Long sentTime = backend.getSentTime(uniqueId);
+            if (sentTime != null) {
+                latencies.add(System.nanoTime() - sentTime);
+            }
+        }
+    }
+
+    /**
+     * Writes are committed in groups on their own lane, a task that ran there means every write before it did
+     */
+    private void awaitWrites() throws Exception {
+        QiscusExecutors.getExecutor(QiscusExecutors.Lane.DB_WRITE).submit(() -> {
+        }).get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private long getDatabaseSize() {
+        File database = RuntimeEnvironment.application.getDatabasePath("qiscus.db");
+        return database.length() + new File(database.getPath() + "-wal").length()
+                + new File(database.getPath() + "-journal").length();
+    }
+
+    private long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusDataBaseHelperTest extends QiscusDataStoreContractTest {
+
+    @Override
+    protected QiscusDataStore createStore() {
+        return new QiscusDataBaseHelper();
+    }
+
+    @Test
+    public void failingWriteIsRolledBackWithoutTheOtherWritesOfItsBatch() throws Exception {
+        QiscusDbWriter writer = QiscusDbWriter.getInstance();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            //Hold the write lane so the next writes are queued and committed in one batch
+            executor.submit(() -> writer.execute(database -> {
+                blocked.countDown();
+                awaitQuietly(released);
+            }));
+            blocked.await();
+            Future<?> failingWrite = executor.submit(() -> writer.execute(database -> {
+                database.insert(QiscusDb.RoomTable.TABLE_NAME, null, QiscusDb.RoomTable.toContentValues(room(ROOM_ID, "Room")));
+                throw new IllegalStateException("Second statement failed");
+            }));
+            Future<?> otherWrite = executor.submit(() -> writer.execute(database ->
+                    database.insert(QiscusDb.RoomTable.TABLE_NAME, null,
+                            QiscusDb.RoomTable.toContentValues(room(OTHER_ROOM_ID, "Other room")))));
+            Thread.sleep(100);
+            released.countDown();
+            failingWrite.get();
+            otherWrite.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNull(store.getChatRoom(ROOM_ID));
+        assertNotNull(store.getChatRoom(OTHER_ROOM_ID));
+    }
+
+    @Test
+    public void indexedFilesAreTrustedUntilOpeningFailsOrTheSweep() throws Exception {
+        store.add(comment(ROOM_ID, 1, 1000));
+        store.add(comment(ROOM_ID, 2, 2000));
+        File file = temporaryFolder.newFile("image.jpg");
+        File otherFile = temporaryFolder.newFile("other.jpg");
+        store.saveLocalPath(ROOM_ID, 1, file.getPath());
+        store.saveLocalPath(ROOM_ID, 2, otherFile.getPath());
+        assertEquals(file, store.getLocalPath(1));
+        assertEquals(otherFile, store.getLocalPath(2));
+
+        //Deleted outside of the sdk, lookups do not notice
+        assertTrue(file.delete());
+        assertTrue(otherFile.delete());
+        assertEquals(file, store.getLocalPath(1));
+        assertEquals(otherFile, store.getLocalPath(2));
+
+        QiscusAttachmentCache.getInstance().onFileOpenFailed(1);
+        assertNull(store.getLocalPath(1));
+
+        QiscusAttachmentCache.getInstance().sweep();
+        assertNull(store.getLocalPath(2));
+        assertFalse(store.isContainsFileOfComment(2));
+    }
+
+    @Test
+    public void syncWatermarksAreForgottenWithTheirRoomAndOnLogout() {
+        QiscusCacheManager cacheManager = QiscusCacheManager.getInstance();
+        store.add(room(ROOM_ID, "Room"));
+        cacheManager.setRoomSyncedCommentId(ROOM_ID, 10);
+        cacheManager.setRoomSyncedCommentId(OTHER_ROOM_ID, 20);
+
+        store.deleteChatRoom(ROOM_ID);
+        assertEquals(0, cacheManager.getRoomSyncedCommentId(ROOM_ID));
+        assertEquals(20, cacheManager.getRoomSyncedCommentId(OTHER_ROOM_ID));
+
+        cacheManager.clearData();
+        assertEquals(0, cacheManager.getRoomSyncedCommentId(OTHER_ROOM_ID));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
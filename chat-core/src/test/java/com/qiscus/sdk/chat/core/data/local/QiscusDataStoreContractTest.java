@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behavior every {@link QiscusDataStore} must have, so stores can replace each other. Subclasses run it
+ * against one store each.
+ */
+public abstract class QiscusDataStoreContractTest {
+    protected static final long ROOM_ID = 1;
+    protected static final long OTHER_ROOM_ID = 2;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    protected final QiscusTestServer server = new QiscusTestServer();
+    protected QiscusDataStore store;
+
+    protected abstract QiscusDataStore createStore();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        store = createStore();
+        store.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.clear();
+        server.shutdown();
+    }
+
+    @Test
+    public void roomIsFoundByIdAndUniqueIdAndUpdated() {
+        store.add(room(ROOM_ID, "Room"));
+
+        assertTrue(store.isContains(room(ROOM_ID, "Room")));
+        assertFalse(store.isContains(room(OTHER_ROOM_ID, "Room")));
+        assertEquals("Room", store.getChatRoom(ROOM_ID).getName());
+        assertEquals(ROOM_ID, store.getChatRoomWithUniqueId("room-" + ROOM_ID).getId());
+        assertNull(store.getChatRoomWithUniqueId("room-" + OTHER_ROOM_ID));
+
+        store.addOrUpdate(room(ROOM_ID, "Renamed"));
+        assertEquals("Renamed", store.getChatRoom(ROOM_ID).getName());
+
+        store.deleteChatRoom(ROOM_ID);
+        assertNull(store.getChatRoom(ROOM_ID));
+    }
+
+    @Test
+    public void roomIsReturnedWithItsMembersAndLastComment() {
+        QiscusChatRoom room = room(ROOM_ID, "Room");
+        room.setMember(Arrays.asList(member("a@qiscus.com"), member("b@qiscus.com")));
+        room.setLastComment(comment(ROOM_ID, 10, 1000));
+        store.add(room);
+
+        QiscusChatRoom savedRoom = store.getChatRoom(ROOM_ID);
+        assertEquals(2, savedRoom.getMember().size());
+        assertEquals(10, savedRoom.getLastComment().getId());
+        assertEquals("b@qiscus.com", store.getMember("b@qiscus.com").getEmail());
+    }
+
+    @Test
+    public void roomsAreOrderedByTheirLatestComment() {
+        for (long roomId = 1; roomId <= 3; roomId++) {
+            store.add(room(roomId, "Room " + roomId));
+        }
+        store.add(comment(1, 1, 2000));
+        store.add(comment(2, 2, 3000));
+        store.add(comment(3, 3, 1000));
+
+        assertEquals(Arrays.asList(2L, 1L, 3L), roomIds(store.getChatRooms(10)));
+        assertEquals(Collections.singletonList(1L), roomIds(store.getChatRooms(1, 1)));
+        assertEquals(Arrays.asList(2L, 3L), roomIds(store.getChatRooms(Collections.singletonList(3L),
+                Collections.singletonList("room-2"))));
+    }
+
+    @Test
+    public void unreadCountsAreUpdatedAndSummed() {
+        store.add(room(ROOM_ID, "Room"));
+        store.add(room(OTHER_ROOM_ID, "Other room"));
+
+        store.updateUnreadCount(ROOM_ID, 3);
+        store.incrementUnreadCount(ROOM_ID);
+        store.incrementUnreadCount(OTHER_ROOM_ID);
+
+        assertEquals(4, store.getChatRoom(ROOM_ID).getUnreadCount());
+        assertEquals(4, store.getUnreadCount(ROOM_ID));
+        assertEquals(0, store.getUnreadCount(3));
+        assertEquals(5, store.getTotalUnreadCount());
+    }
+
+    @Test
+    public void roomMembersArePagedInTheOrderTheyWereAdded() {
+        store.add(room(ROOM_ID, "Room"));
+        List<QiscusRoomMember> members = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            members.add(member("member" + i + "@qiscus.com"));
+        }
+        store.addOrUpdateRoomMembers(ROOM_ID, members, null);
+
+        assertEquals(5, store.getRoomMemberCount(ROOM_ID));
+        assertEquals(Arrays.asList("member2@qiscus.com", "member3@qiscus.com"),
+                emails(store.getRoomMembers(ROOM_ID, 2, 2)));
+        assertTrue(store.isContainsRoomMember(ROOM_ID, "member4@qiscus.com"));
+
+        store.deleteRoomMember(ROOM_ID, "member4@qiscus.com");
+        assertFalse(store.isContainsRoomMember(ROOM_ID, "member4@qiscus.com"));
+        assertEquals(4, store.getRoomMembers(ROOM_ID).size());
+
+        store.deleteRoomMembers(ROOM_ID);
+        assertEquals(0, store.getRoomMemberCount(ROOM_ID));
+    }
+
+    @Test
+    public void commentIsFoundByUniqueIdAndBeforeId() {
+        store.add(comment(ROOM_ID, 1, 1000));
+        store.add(comment(ROOM_ID, 2, 2000));
+
+        assertTrue(store.isContains(comment(ROOM_ID, 2, 2000)));
+        assertEquals("Message 2", store.getComment("comment-2").getMessage());
+        assertEquals(2, store.getCommentByBeforeId(1).getId());
+        assertNull(store.getComment("comment-3"));
+
+        QiscusComment edited = comment(ROOM_ID, 2, 2000);
+        edited.setMessage("Edited");
+        store.addOrUpdate(edited);
+        assertEquals("Edited", store.getComment("comment-2").getMessage());
+    }
+
+    @Test
+    public void commentsOfARoomAreNewestFirst() {
+        for (int i = 1; i <= 5; i++) {
+            store.add(comment(ROOM_ID, i, i * 1000));
+        }
+        store.add(comment(OTHER_ROOM_ID, 6, 500));
+
+        assertEquals(Arrays.asList(5L, 4L, 3L, 2L, 1L), commentIds(store.getComments(ROOM_ID)));
+        assertEquals(Arrays.asList(5L, 4L), commentIds(store.getComments(ROOM_ID, 2)));
+        assertEquals(5, store.getLatestComment(ROOM_ID).getId());
+        assertEquals(5, store.getLatestComment().getId());
+        assertEquals(Arrays.asList("comment-1", "comment-3"), uniqueIds(store.getComments(
+                Arrays.asList("comment-3", "comment-1", "comment-9"))));
+    }
+
+    @Test
+    public void commentsAroundACommentAreReturnedNewestFirst() {
+        for (int i = 1; i <= 5; i++) {
+            store.add(comment(ROOM_ID, i, i * 1000));
+        }
+
+        QiscusComment anchor = comment(ROOM_ID, 3, 3000);
+        assertEquals(Arrays.asList(3L, 2L), commentIds(store.getOlderCommentsThan(anchor, ROOM_ID, 2)));
+        assertEquals(Arrays.asList(5L, 4L, 3L), commentIds(store.getCommentsAfter(anchor, ROOM_ID)));
+    }
+
+    @Test
+    public void deliveredAndReadStatesOnlyMoveForward() {
+        for (int i = 1; i <= 3; i++) {
+            store.add(comment(ROOM_ID, i, i * 1000));
+        }
+
+        store.updateLastDeliveredComment(ROOM_ID, 2);
+        assertEquals(2, store.getLatestDeliveredComment(ROOM_ID).getId());
+        assertEquals(QiscusComment.STATE_ON_QISCUS, store.getComment("comment-3").getState());
+
+        store.updateLastReadComment(ROOM_ID, 1);
+        store.updateLastDeliveredComment(ROOM_ID, 1);
+        assertEquals(1, store.getLatestReadComment(ROOM_ID).getId());
+        assertEquals(QiscusComment.STATE_READ, store.getComment("comment-1").getState());
+        assertEquals(QiscusComment.STATE_DELIVERED, store.getComment("comment-2").getState());
+    }
+
+    @Test
+    public void pendingCommentsAreOldestFirst() {
+        store.add(comment(ROOM_ID, 1, 1000));
+        QiscusComment newer = comment(ROOM_ID, -1, 3000);
+        newer.setUniqueId("pending-2");
+        newer.setState(QiscusComment.STATE_PENDING);
+        QiscusComment older = comment(ROOM_ID, -1, 2000);
+        older.setUniqueId("pending-1");
+        older.setState(QiscusComment.STATE_PENDING);
+        store.add(newer);
+        store.add(older);
+
+        assertEquals(Arrays.asList("pending-1", "pending-2"), uniqueIds(store.getPendingComments()));
+        assertEquals(2, store.getPendingCommentCount());
+
+        newer.setState(QiscusComment.STATE_ON_QISCUS);
+        store.update(newer);
+        assertEquals(1, store.getPendingCommentCount());
+    }
+
+    @Test
+    public void commentsAreDeletedOneByOneAndByRoom() {
+        for (int i = 1; i <= 4; i++) {
+            store.add(comment(ROOM_ID, i, i * 1000));
+        }
+        store.add(comment(OTHER_ROOM_ID, 5, 1000));
+
+        store.delete(comment(ROOM_ID, 4, 4000));
+        assertNull(store.getComment("comment-4"));
+
+        assertTrue(store.deleteCommentsByRoomId(ROOM_ID, 2000));
+        assertEquals(Collections.singletonList(3L), commentIds(store.getComments(ROOM_ID)));
+
+        assertTrue(store.deleteCommentsByRoomId(ROOM_ID));
+        assertFalse(store.deleteCommentsByRoomId(ROOM_ID));
+        assertEquals(1, store.getComments(OTHER_ROOM_ID).size());
+    }
+
+    @Test
+    public void softDeletedCommentsStayAndHardDeletedCommentsAreHidden() {
+        for (int i = 1; i <= 3; i++) {
+            store.add(comment(ROOM_ID, i, i * 1000));
+        }
+
+        store.markCommentsDeleted(Collections.singletonList(comment(ROOM_ID, 1, 1000)), false);
+        store.markCommentsDeleted(Collections.singletonList(comment(ROOM_ID, 2, 2000)), true);
+
+        assertTrue(store.getComment("comment-1").isDeleted());
+        assertEquals(Arrays.asList(3L, 1L), commentIds(store.getComments(ROOM_ID)));
+    }
+
+    @Test
+    public void commentsAreSearchedByMessage() {
+        store.add(comment(ROOM_ID, 1, 1000));
+        store.add(comment(ROOM_ID, 2, 2000));
+        store.add(comment(OTHER_ROOM_ID, 12, 3000));
+
+        assertEquals(Arrays.asList(12L, 2L), commentIds(store.searchComments("2", 10, 0)));
+        assertEquals(Collections.singletonList(2L), commentIds(store.searchComments("2", ROOM_ID, 10, 0)));
+        assertEquals(Collections.singletonList(1L), commentIds(store.searchComments("Message", ROOM_ID, 1, 1)));
+    }
+
+    @Test
+    public void localPathIsSavedUpdatedAndDeleted() throws Exception {
+        store.add(comment(ROOM_ID, 1, 1000));
+        File file = temporaryFolder.newFile("image.jpg");
+        File otherFile = temporaryFolder.newFile("other.jpg");
+
+        store.saveLocalPath(ROOM_ID, 1, file.getPath());
+        assertTrue(store.isContainsFileOfComment(1));
+        assertEquals(file, store.getLocalPath(1));
+
+        store.addOrUpdateLocalPath(ROOM_ID, 1, otherFile.getPath());
+        assertEquals(otherFile, store.getLocalPath(1));
+
+        store.deleteLocalPath(1);
+        assertFalse(store.isContainsFileOfComment(1));
+        assertNull(store.getLocalPath(1));
+    }
+
+    @Test
+    public void localMediaPagesSkipMissingFilesAndAgreeWithTheCount() throws Exception {
+        for (long id = 1; id <= 6; id++) {
+            QiscusComment comment = comment(ROOM_ID, id, id * 1000);
+            comment.setMessage("[file] http://localhost/file-" + id + ".dat [/file]");
+            store.add(comment);
+            File file = temporaryFolder.newFile("file-" + id + ".dat");
+            store.saveLocalPath(ROOM_ID, id, file.getPath());
+            if (id % 2 == 0) {
+                //Deleted outside of the sdk
+                assertTrue(file.delete());
+            }
+        }
+        QiscusComment anchor = comment(ROOM_ID, 7, 7000);
+
+        assertEquals(3, store.getOlderLocalMediaCount(anchor, ROOM_ID, QiscusComment.Type.FILE));
+        List<Pair<QiscusComment, File>> page = store.getOlderLocalMediaThan(anchor, ROOM_ID, QiscusComment.Type.FILE, 2);
+        assertEquals(Arrays.asList(5L, 3L), mediaIds(page));
+        page = store.getOlderLocalMediaThan(page.get(1).first, ROOM_ID, QiscusComment.Type.FILE, 2);
+        assertEquals(Collections.singletonList(1L), mediaIds(page));
+        assertEquals(Arrays.asList(1L, 3L, 5L), mediaIds(store.getNewerLocalMediaThan(null, ROOM_ID, QiscusComment.Type.FILE, 6)));
+        assertEquals(3, store.getOlderLocalMediaCount(anchor, ROOM_ID, QiscusComment.Type.FILE));
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        QiscusChatRoom room = room(ROOM_ID, "Room");
+        room.setMember(Collections.singletonList(member("a@qiscus.com")));
+        store.add(room);
+        store.add(comment(ROOM_ID, 1, 1000));
+
+        store.clear();
+
+        assertNull(store.getChatRoom(ROOM_ID));
+        assertNull(store.getComment("comment-1"));
+        assertNull(store.getMember("a@qiscus.com"));
+        assertEquals(0, store.getTotalUnreadCount());
+    }
+
+    protected static QiscusChatRoom room(long roomId, String name) {
+        QiscusChatRoom room = new QiscusChatRoom();
+        room.setId(roomId);
+        room.setUniqueId("room-" + roomId);
+        room.setDistinctId("default");
+        room.setName(name);
+        room.setGroup(true);
+        room.setAvatarUrl("http://localhost/avatar.png");
+        return room;
+    }
+
+    protected static QiscusRoomMember member(String email) {
+        QiscusRoomMember member = new QiscusRoomMember();
+        member.setEmail(email);
+        member.setUsername(email);
+        member.setAvatar("http://localhost/avatar.png");
+        return member;
+    }
+
+    protected static QiscusComment comment(long roomId, long id, long time) {
+        QiscusComment comment = new QiscusComment();
+        comment.setId(id);
+        comment.setRoomId(roomId);
+        comment.setUniqueId("comment-" + id);
+        comment.setCommentBeforeId(id - 1);
+        comment.setMessage("Message " + id);
+        comment.setSender("Other");
+        comment.setSenderEmail("other@qiscus.com");
+        comment.setSenderAvatar("http://localhost/avatar.png");
+        comment.setTime(new Date(time));
+        comment.setState(QiscusComment.STATE_ON_QISCUS);
+        comment.setRawType("text");
+        comment.setExtraPayload("{}");
+        return comment;
+    }
+
+    private static List<Long> mediaIds(List<Pair<QiscusComment, File>> media) {
+        List<Long> ids = new ArrayList<>();
+        for (Pair<QiscusComment, File> item : media) {
+            ids.add(item.first.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> roomIds(List<QiscusChatRoom> rooms) {
+        List<Long> ids = new ArrayList<>();
+        for (QiscusChatRoom room : rooms) {
+            ids.add(room.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> commentIds(List<QiscusComment> comments) {
+        List<Long> ids = new ArrayList<>();
+        for (QiscusComment comment : comments) {
+            ids.add(comment.getId());
+        }
+        return ids;
+    }
+
+    private static List<String> uniqueIds(List<QiscusComment> comments) {
+        List<String> uniqueIds = new ArrayList<>();
+        for (QiscusComment comment : comments) {
+            uniqueIds.add(comment.getUniqueId());
+        }
+        return uniqueIds;
+    }
+
+    private static List<String> emails(List<QiscusRoomMember> members) {
+        List<String> emails = new ArrayList<>();
+        for (QiscusRoomMember member : members) {
+            emails.add(member.getEmail());
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import com.google.gson.Gson;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.schinizer.rxunfurl.model.PreviewData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusLinkPreviewCacheTest {
+    private static final String URL = "https://www.qiscus.com/";
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusLinkPreviewCache cache = QiscusLinkPreviewCache.getInstance();
+    private final Gson gson = new Gson();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        cache.clear();
+        cache.resetStatistics();
+        cache.setTtl(60 * 1000L).setFailureTtl(60 * 1000L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void cachedPreviewIsReturnedUntilTtlPasses() throws Exception {
+        cache.put(URL, previewData("Qiscus"));
+
+        QiscusLinkPreviewCache.Entry entry = cache.get(URL);
+        assertNotNull(entry);
+        assertFalse(entry.isFailure());
+        assertEquals("Qiscus", entry.getPreviewData().getTitle());
+
+        cache.setTtl(10);
+        Thread.sleep(50);
+        assertNull(cache.get(URL));
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void failureExpiresWithFailureTtl() throws Exception {
+        cache.setFailureTtl(10);
+        cache.putFailure(URL);
+
+        QiscusLinkPreviewCache.Entry entry = cache.get(URL);
+        assertNotNull(entry);
+        assertTrue(entry.isFailure());
+        assertEquals(1, cache.getFailureHitCount());
+
+        Thread.sleep(50);
+        assertNull(cache.get(URL));
+
+        //The failure ttl must not shorten the life of a successful preview
+        cache.put(URL, previewData("Qiscus"));
+        Thread.sleep(50);
+        assertNotNull(cache.get(URL));
+    }
+
+    @Test
+    public void removedPreviewIsNotReadFromDisk() {
+        cache.put(URL, previewData("Qiscus"));
+        cache.remove(URL);
+
+        assertNull(cache.get(URL));
+        assertEquals(0, cache.getHitRate(), 0);
+    }
+
+    private PreviewData previewData(String title) {
+        return gson.fromJson("{\"url\":\"" + URL + "\",\"title\":\"" + title + "\"}", PreviewData.class);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.util.QiscusExecutors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusMemoryDataStoreTest extends QiscusDataStoreContractTest {
+    private QiscusDataBaseHelper backingStore;
+
+    @Override
+    protected QiscusDataStore createStore() {
+        backingStore = new QiscusDataBaseHelper();
+        return new QiscusMemoryDataStore(backingStore);
+    }
+
+    @Test
+    public void writesReachTheBackingStoreInOrder() throws Exception {
+        QiscusChatRoom room = room(ROOM_ID, "Room");
+        room.setMember(Collections.singletonList(member("a@qiscus.com")));
+        store.add(room);
+        store.add(comment(ROOM_ID, 1, 1000));
+        store.add(comment(ROOM_ID, 2, 2000));
+        store.updateLastReadComment(ROOM_ID, 2);
+        store.delete(comment(ROOM_ID, 1, 1000));
+        awaitWriteBehind();
+
+        assertEquals("Room", backingStore.getChatRoom(ROOM_ID).getName());
+        assertEquals(1, backingStore.getRoomMemberCount(ROOM_ID));
+        assertEquals(2, backingStore.getLatestReadComment(ROOM_ID).getId());
+        assertNull(backingStore.getComment("comment-1"));
+
+        store.clear();
+        awaitWriteBehind();
+        assertNull(backingStore.getChatRoom(ROOM_ID));
+    }
+
+    @Test
+    public void concurrentWritersLeaveTheBackingStoreEqualToMemory() throws Exception {
+        store.add(room(ROOM_ID, "Room"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int writer = i;
+                writers.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        store.updateUnreadCount(ROOM_ID, writer * 1000 + j);
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        awaitWriteBehind();
+
+        assertEquals(store.getUnreadCount(ROOM_ID), backingStore.getUnreadCount(ROOM_ID));
+    }
+
+    /**
+     * Writes behind run one at a time on the db write lane, a task that ran there means every write before it did
+     */
+    private void awaitWriteBehind() throws Exception {
+        QiscusExecutors.getExecutor(QiscusExecutors.Lane.DB_WRITE).submit(() -> {
+        }).get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Start up benchmark: time of {@link QiscusCore} init on the caller thread and
+ * {@link QiscusCore#getDataStoreOpenTime()}, for a new database and for a version 18 database that is
+ * migrated on open. Every case runs a few times on a new database file, the medians are printed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QiscusStartupBenchmarkTest {
+    private static final int RUNS = 5;
+    private static final int ROOMS = 200;
+    private static final int COMMENTS_PER_ROOM = 50;
+
+    private final Application application = RuntimeEnvironment.application;
+
+    @Test
+    public void coldDatabase() {
+        run("Cold database", () -> {
+        });
+    }
+
+    @Test
+    public void databaseMigratedFromVersion18() {
+        run("Version 18 database with " + ROOMS * COMMENTS_PER_ROOM + " comments", this::createVersion18Database);
+        SQLiteDatabase database = QiscusDbOpenHelper.getInstance(application).getReadableDatabase();
+        assertEquals(QiscusDb.DATABASE_VERSION, database.getVersion());
+        assertEquals(ROOMS * COMMENTS_PER_ROOM / 10, DatabaseUtils.queryNumEntries(database, QiscusDb.MediaTable.TABLE_NAME));
+    }
+
+    private void run(String name, Runnable createDatabase) {
+        long[] initTimes = new long[RUNS];
+        long[] openTimes = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            deleteDatabase();
+            createDatabase.run();
+
+            long startTime = System.nanoTime();
+            QiscusCore.initWithCustomServer(application, QiscusTestServer.APP_ID, "http://127.0.0.1/",
+                    "tcp://127.0.0.1:1883", null);
+            initTimes[i] = System.nanoTime() - startTime;
+            QiscusCore.waitForDataStore();
+            openTimes[i] = TimeUnit.MILLISECONDS.toNanos(QiscusCore.getDataStoreOpenTime());
+            assertTrue("Background tasks of init did not finish", QiscusTestBackend.awaitBackgroundTasks(10000));
+        }
+
+        System.out.println(name + ": init " + median(initTimes) + " ms on the caller thread, data store open in "
+                + median(openTimes) + " ms");
+    }
+
+    /**
+     * Close the shared helper so the next init opens, creates or migrates the new file
+     */
+    private void deleteDatabase() {
+        QiscusDbOpenHelper.getInstance(application).close();
+        application.deleteDatabase(QiscusDb.DATABASE_NAME);
+    }
+
+    /**
+     * Tables of version 18 as the migration scripts found them, filled with rooms, members and comments
+     */
+    private void createVersion18Database() {
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(application.getDatabasePath(QiscusDb.DATABASE_NAME), null);
+        try {
+            database.beginTransaction();
+            database.execSQL(QiscusDb.RoomTable.CREATE);
+            database.execSQL(QiscusDb.MemberTable.CREATE);
+            database.execSQL(QiscusDb.RoomMemberTable.CREATE);
+            database.execSQL(QiscusDb.CommentTable.CREATE);
+            database.execSQL("CREATE INDEX comments_room_id_index ON comments (room_id)");
+            database.execSQL("CREATE INDEX comments_message_index ON comments (message)");
+            database.execSQL("CREATE INDEX room_members_distinct_id_index ON room_members (distinct_id)");
+            database.execSQL("CREATE INDEX rooms_unique_id_index ON rooms (unique_id)");
+            database.execSQL("CREATE TABLE files (comment_id LONG PRIMARY KEY, room_id LONG NOT NULL, local_path TEXT NOT NULL)");
+
+            long commentId = 0;
+            for (long roomId = 1; roomId <= ROOMS; roomId++) {
+                ContentValues room = new ContentValues();
+                room.put(QiscusDb.RoomTable.COLUMN_ID, roomId);
+                room.put(QiscusDb.RoomTable.COLUMN_UNIQUE_ID, "room-" + roomId);
+                room.put(QiscusDb.RoomTable.COLUMN_NAME, "Room " + roomId);
+                room.put(QiscusDb.RoomTable.COLUMN_IS_GROUP, 1);
+                database.insert(QiscusDb.RoomTable.TABLE_NAME, null, room);
+
+                ContentValues roomMember = new ContentValues();
+                roomMember.put(QiscusDb.RoomMemberTable.COLUMN_ROOM_ID, roomId);
+                roomMember.put(QiscusDb.RoomMemberTable.COLUMN_USER_EMAIL, QiscusTestBackend.OTHER_EMAIL);
+                database.insert(QiscusDb.RoomMemberTable.TABLE_NAME, null, roomMember);
+
+                for (int i = 0; i < COMMENTS_PER_ROOM; i++) {
+                    commentId++;
+                    ContentValues comment = new ContentValues();
+                    comment.put(QiscusDb.CommentTable.COLUMN_ID, commentId);
+                    comment.put(QiscusDb.CommentTable.COLUMN_ROOM_ID, roomId);
+                    comment.put(QiscusDb.CommentTable.COLUMN_UNIQUE_ID, "comment-" + commentId);
+                    comment.put(QiscusDb.CommentTable.COLUMN_COMMENT_BEFORE_ID, commentId - 1);
+                    //Every tenth comment is an attachment, indexed by the migration
+                    comment.put(QiscusDb.CommentTable.COLUMN_MESSAGE, i % 10 == 0
+                            ? "[file] http://localhost/file-" + commentId + ".dat [/file]" : "Message " + commentId);
+                    comment.put(QiscusDb.CommentTable.COLUMN_SENDER, "Other");
+                    comment.put(QiscusDb.CommentTable.COLUMN_SENDER_EMAIL, QiscusTestBackend.OTHER_EMAIL);
+                    comment.put(QiscusDb.CommentTable.COLUMN_TIME, commentId * 1000);
+                    comment.put(QiscusDb.CommentTable.COLUMN_STATE, 2);
+                    comment.put(QiscusDb.CommentTable.COLUMN_TYPE, "text");
+                    database.insert(QiscusDb.CommentTable.TABLE_NAME, null, comment);
+                }
+            }
+            database.setVersion(18);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            database.close();
+        }
+    }
+
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length / 2]);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.qiscus.sdk.chat.core.data.local;
+
+import com.google.gson.JsonObject;
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestBroker;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusUnreadCounterTest {
+    private static final long LOCAL_ROOM_ID = 99;
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusTestBroker broker = new QiscusTestBroker();
+    private final QiscusUnreadCounter counter = QiscusUnreadCounter.getInstance();
+    private final List<Integer> notifiedTotals = Collections.synchronizedList(new ArrayList<>());
+    private QiscusTestBackend backend;
+    private QiscusDataStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+        backend = new QiscusTestBackend(server, broker);
+        server.start(broker.getUri());
+        backend.login();
+        store = QiscusCore.getDataStore();
+        store.clear();
+        counter.clear();
+        counter.setListener(notifiedTotals::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        counter.setListener(null);
+        QiscusCacheManager.getInstance().setLastChatActivity(false, 0);
+        counter.clear();
+        store.clear();
+        QiscusCore.clearUser();
+        backend.shutdown();
+        server.shutdown();
+        broker.shutdown();
+    }
+
+    @Test
+    public void commentsAreCountedOnceAndReadRoomsAreReset() {
+        store.addOrUpdate(room(1, 0));
+        QiscusComment comment = comment(1, "comment-1", QiscusTestBackend.OTHER_EMAIL);
+
+        counter.onCommentReceived(comment);
+        counter.onCommentReceived(comment);
+        counter.onCommentReceived(comment(1, "comment-2", QiscusTestBackend.USER_EMAIL));
+
+        assertEquals(1, counter.getTotalUnreadCount());
+        assertEquals(1, store.getChatRoom(1).getUnreadCount());
+
+        counter.onRoomRead(1);
+
+        assertEquals(0, counter.getTotalUnreadCount());
+        assertEquals(0, store.getChatRoom(1).getUnreadCount());
+    }
+
+    @Test
+    public void commentsAreCountedOnceWhicheverWayTheyArrive() throws Exception {
+        long roomId = backend.createRoom();
+        store.addOrUpdate(QiscusApi.getInstance().getChatRoomWithMessages(roomId).toBlocking().first().first);
+        JsonObject mqttComment = backend.addComment(roomId, "Over MQTT");
+        JsonObject fcmComment = backend.addComment(roomId, "Over FCM");
+        backend.addComment(roomId, "By sync");
+
+        backend.deliverOverMqtt(mqttComment);
+        assertTrue("Comment was not received", QiscusTestBackend.await(() -> store.getUnreadCount(roomId) == 1, 5000));
+        backend.deliverOverFcm(fcmComment);
+        backend.deliverOverFcm(mqttComment);
+        backend.deliverBySync();
+        assertTrue("Comments were not handled", QiscusTestBackend.awaitBackgroundTasks(5000));
+
+        assertEquals(3, store.getUnreadCount(roomId));
+        assertEquals(3, store.getTotalUnreadCount());
+        assertEquals(3, counter.getTotalUnreadCount());
+
+        counter.onRoomRead(roomId);
+
+        assertEquals(0, store.getUnreadCount(roomId));
+        assertEquals(0, counter.getTotalUnreadCount());
+    }
+
+    @Test
+    public void commentsOfTheOpenRoomAreNotCounted() throws Exception {
+        long roomId = backend.createRoom();
+        store.addOrUpdate(QiscusApi.getInstance().getChatRoomWithMessages(roomId).toBlocking().first().first);
+        QiscusCacheManager.getInstance().setLastChatActivity(true, roomId);
+
+        backend.sendComment(roomId, "Over MQTT");
+        backend.deliverOverFcm(backend.addComment(roomId, "Over FCM"));
+        backend.deliverBySync();
+        assertTrue("Comments were not handled", QiscusTestBackend.awaitBackgroundTasks(5000));
+
+        assertEquals(0, store.getUnreadCount(roomId));
+        assertEquals(0, counter.getTotalUnreadCount());
+    }
+
+    @Test
+    public void reconcileCorrectsTheSavedRooms() {
+        long roomId = backend.createRoom();
+        long otherRoomId = backend.createRoom();
+        backend.addComment(roomId, "Hi");
+        backend.addComment(otherRoomId, "Hello");
+        backend.setUnreadCount(roomId, 1);
+        backend.setUnreadCount(otherRoomId, 7);
+        //The saved counts missed comments of the other room and kept a room the user left
+        store.addOrUpdate(room(roomId, 2));
+        store.addOrUpdate(room(otherRoomId, 0));
+        store.addOrUpdate(room(LOCAL_ROOM_ID, 4));
+        assertEquals(6, counter.getTotalUnreadCount());
+        long conflictCount = counter.getConflictCount();
+
+        assertEquals(8, (long) QiscusApi.getInstance().getTotalUnreadCount().toBlocking().first());
+        assertEquals(conflictCount + 1, counter.getConflictCount());
+        assertEquals(2, counter.getLastDrift());
+        assertTrue("Rooms were not refreshed", QiscusTestBackend.await(() -> notifiedTotals.size() >= 2, 5000));
+
+        assertEquals(1, store.getChatRoom(roomId).getUnreadCount());
+        assertEquals(7, store.getChatRoom(otherRoomId).getUnreadCount());
+        assertEquals(0, store.getChatRoom(LOCAL_ROOM_ID).getUnreadCount());
+        assertEquals(8, (int) notifiedTotals.get(notifiedTotals.size() - 1));
+
+        //Writing a room sums the rooms again, the server total must survive it
+        store.addOrUpdate(room(LOCAL_ROOM_ID + 1, 0));
+        assertEquals(8, counter.getTotalUnreadCount());
+        assertEquals(8, (long) QiscusApi.getInstance().getTotalUnreadCount().toBlocking().first());
+        assertEquals(conflictCount + 1, counter.getConflictCount());
+    }
+
+    private static QiscusChatRoom room(long roomId, int unreadCount) {
+        QiscusChatRoom room = new QiscusChatRoom();
+        room.setId(roomId);
+        room.setUniqueId("room-" + roomId);
+        room.setDistinctId("default");
+        room.setName("Room " + roomId);
+        room.setGroup(true);
+        room.setAvatarUrl("http://localhost/avatar.png");
+        room.setUnreadCount(unreadCount);
+        return room;
+    }
+
+    private static QiscusComment comment(long roomId, String uniqueId, String senderEmail) {
+        QiscusComment comment = new QiscusComment();
+        comment.setRoomId(roomId);
+        comment.setUniqueId(uniqueId);
+        comment.setSenderEmail(senderEmail);
+        return comment;
+    }
+}
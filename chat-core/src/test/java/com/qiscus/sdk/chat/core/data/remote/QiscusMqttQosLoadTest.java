@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.QiscusTestBroker;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Delivers comments and typing events from a local broker to a subscribed client, once with QoS 2 on
+ * every topic like before and once with {@link QiscusMqttQos}, and compares the packets on the client
+ * link and the latency per delivered message. The results are printed.
+ */
+public class QiscusMqttQosLoadTest {
+    private static final String COMMENT_TOPIC = "token/c";
+    private static final String TYPING_TOPIC = "r/1/1/user@qiscus.com/t";
+    private static final int MESSAGES = 500;
+    private static final int LEGACY_QOS = 2;
+
+    private final QiscusTestBroker broker = new QiscusTestBroker();
+    private MqttClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+        client = new MqttClient(broker.getUri(), "qiscus-load-test", new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setKeepAliveInterval(60);
+        client.connect(options);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (client.isConnected()) {
+            client.disconnect();
+        }
+        client.close();
+        broker.shutdown();
+    }
+
+    @Test
+    public void commentsTakeFewerPacketsWithThePolicy() throws Exception {
+        Result legacy = deliver(COMMENT_TOPIC, LEGACY_QOS);
+        Result policy = deliver(COMMENT_TOPIC, QiscusMqttQos.forTopic(COMMENT_TOPIC));
+        print("Comments", legacy, policy);
+
+        assertEquals(QiscusMqttQos.AT_LEAST_ONCE, QiscusMqttQos.forTopic(COMMENT_TOPIC));
+        //Both are delivered once: PUBLISH, PUBREC, PUBREL, PUBCOMP against PUBLISH, PUBACK
+        assertEquals(MESSAGES, legacy.delivered);
+        assertEquals(MESSAGES, policy.delivered);
+        assertEquals(4.0, legacy.packetsPerMessage(), 0.01);
+        assertEquals(2.0, policy.packetsPerMessage(), 0.01);
+    }
+
+    @Test
+    public void typingTakesOnePacketWithThePolicy() throws Exception {
+        Result legacy = deliver(TYPING_TOPIC, LEGACY_QOS);
+        Result policy = deliver(TYPING_TOPIC, QiscusMqttQos.forTopic(TYPING_TOPIC));
+        print("Typing", legacy, policy);
+
+        assertEquals(QiscusMqttQos.AT_MOST_ONCE, QiscusMqttQos.forTopic(TYPING_TOPIC));
+        assertEquals(MESSAGES, legacy.delivered);
+        //At most once may drop a message, but not on a local link
+        assertTrue(policy.delivered > MESSAGES * 9 / 10);
+        assertEquals(1.0, policy.packetsPerMessage(), 0.01);
+    }
+
+    /**
+     * Subscribe with the given QoS and publish one message at a time from the broker at QoS 2, as the
+     * server does, waiting for each to arrive before sending the next
+     */
+    private Result deliver(String topic, int qos) throws Exception {
+        Semaphore arrived = new Semaphore(0);
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicLong totalLatency = new AtomicLong();
+        client.subscribe(topic, qos, (receivedTopic, message) -> {
+            long sentAt = Long.parseLong(new String(message.getPayload(), StandardCharsets.UTF_8));
+            totalLatency.addAndGet(System.nanoTime() - sentAt);
+            delivered.incrementAndGet();
+            arrived.release();
+        });
+
+        broker.resetPacketCounts();
+        for (int i = 0; i < MESSAGES; i++) {
+            broker.publish(topic, String.valueOf(System.nanoTime()), LEGACY_QOS);
+            arrived.tryAcquire(5, TimeUnit.SECONDS);
+        }
+        awaitQuietLink();
+        Result result = new Result(delivered.get(), broker.getPacketCount(), totalLatency.get());
+
+        client.unsubscribe(topic);
+        awaitQuietLink();
+        return result;
+    }
+
+    /**
+     * Wait for the acknowledgements of the last message to go through
+     */
+    private void awaitQuietLink() throws InterruptedException {
+        int count;
+        do {
+            count = broker.getPacketCount();
+            Thread.sleep(200);
+        } while (count != broker.getPacketCount());
+    }
+
+    private void print(String name, Result legacy, Result policy) {
+        System.out.println(name + " at QoS 2: " + legacy + ", with the policy: " + policy);
+    }
+
+    private static final class Result {
+        private final int delivered;
+        private final int packets;
+        private final long totalLatency;
+
+        private Result(int delivered, int packets, long totalLatency) {
+            this.delivered = delivered;
+            this.packets = packets;
+            this.totalLatency = totalLatency;
+        }
+
+        private double packetsPerMessage() {
+            return delivered == 0 ? 0 : (double) packets / delivered;
+        }
+
+        @Override
+        public String toString() {
+            return delivered + " delivered, " + String.format("%.2f", packetsPerMessage()) + " packets and "
+                    + (delivered == 0 ? 0 : totalLatency / delivered / 1000) + " us per message";
+        }
+    }
+}
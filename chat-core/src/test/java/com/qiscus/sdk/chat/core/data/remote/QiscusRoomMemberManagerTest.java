@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusRoomMemberManagerTest {
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusRoomMemberManager manager = QiscusRoomMemberManager.getInstance();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        QiscusCore.getDataStore().clear();
+        manager.clear();
+        QiscusCore.getDataStore().add(member("sender@qiscus.com", "Sender"));
+        QiscusCore.getDataStore().add(member("mentioned@qiscus.com", "Mentioned"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QiscusCore.getDataStore().clear();
+        server.shutdown();
+    }
+
+    @Test
+    public void sendersAndMentionsArePrefetchedOffTheMainThread() {
+        Map<String, QiscusRoomMember> members = manager.newMemberMap();
+        //Saved members are not read while binding
+        assertNull(members.get("sender@qiscus.com"));
+
+        AtomicInteger resolved = new AtomicInteger();
+        manager.prefetchMembers(members, Arrays.asList(
+                comment("sender@qiscus.com", "Hi @[mentioned@qiscus.com] and @[unknown@qiscus.com]"),
+                comment("unknown@qiscus.com", "Hello")), resolved::incrementAndGet);
+        assertTrue(QiscusTestBackend.await(() -> resolved.get() > 0, 5000));
+
+        assertEquals("Sender", members.get("sender@qiscus.com").getUsername());
+        assertEquals("Mentioned", members.get("mentioned@qiscus.com").getUsername());
+        assertNull(members.get("unknown@qiscus.com"));
+        assertTrue(members.containsKey("unknown@qiscus.com"));
+    }
+
+    @Test
+    public void resolvedMembersAreNotFetchedAgain() {
+        Map<String, QiscusRoomMember> members = manager.newMemberMap();
+        AtomicInteger resolved = new AtomicInteger();
+        manager.prefetchMembers(members, Collections.singletonList(comment("sender@qiscus.com", "Hi")),
+                resolved::incrementAndGet);
+        assertTrue(QiscusTestBackend.await(() -> resolved.get() > 0, 5000));
+
+        manager.prefetchMembers(members, Collections.singletonList(comment("sender@qiscus.com", "Again")),
+                resolved::incrementAndGet);
+        QiscusTestBackend.await(() -> resolved.get() > 1, 200);
+        assertEquals(1, resolved.get());
+    }
+
+    private static QiscusRoomMember member(String email, String username) {
+        QiscusRoomMember member = new QiscusRoomMember();
+        member.setEmail(email);
+        member.setUsername(username);
+        member.setAvatar("http://localhost/avatar.png");
+        return member;
+    }
+
+    private static QiscusComment comment(String senderEmail, String message) {
+        QiscusComment comment = new QiscusComment();
+        comment.setSenderEmail(senderEmail);
+        comment.setMessage(message);
+        return comment;
+    }
+}
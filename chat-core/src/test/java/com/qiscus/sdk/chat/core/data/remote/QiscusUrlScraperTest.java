@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.local.QiscusLinkPreviewCache;
+import com.schinizer.rxunfurl.model.PreviewData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusUrlScraperTest {
+    private static final String PAGE = "<html><head><title>Qiscus</title>"
+            + "<meta name=\"description\" content=\"Chat SDK\"></head><body></body></html>";
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusUrlScraper scraper = QiscusUrlScraper.getInstance();
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        QiscusLinkPreviewCache.getInstance().clear();
+        QiscusLinkPreviewCache.getInstance().resetStatistics();
+        QiscusLinkPreviewCache.getInstance().setFailureTtl(60 * 1000L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneScrape() throws Exception {
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.on("/page", request -> {
+            requested.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return html();
+        });
+
+        String url = server.url("/page");
+        List<Observable<PreviewData>> scrapes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            scrapes.add(scraper.generatePreviewData(url));
+        }
+        TestSubscriber<PreviewData> subscriber = new TestSubscriber<>();
+        Observable.merge(scrapes).subscribe(subscriber);
+
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+
+        subscriber.assertNoErrors();
+        subscriber.assertValueCount(5);
+        assertEquals("Qiscus", subscriber.getOnNextEvents().get(0).getTitle());
+        assertEquals(1, server.getRequestCount("/page"));
+
+        //Once cached, the page is not requested again
+        assertEquals("Qiscus", scraper.generatePreviewData(url).toBlocking().single().getTitle());
+        assertEquals(1, server.getRequestCount("/page"));
+    }
+
+    @Test
+    public void failureIsCachedUntilFailureTtlPasses() throws Exception {
+        server.on("/broken", request -> new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        String url = server.url("/broken");
+
+        scrapeAndExpectError(url);
+        int requestCount = server.getRequestCount("/broken");
+        assertTrue(requestCount > 0);
+
+        scrapeAndExpectError(url);
+        assertEquals(requestCount, server.getRequestCount("/broken"));
+        assertEquals(1, QiscusLinkPreviewCache.getInstance().getFailureHitCount());
+
+        QiscusLinkPreviewCache.getInstance().setFailureTtl(10);
+        Thread.sleep(50);
+        scrapeAndExpectError(url);
+        assertTrue(server.getRequestCount("/broken") > requestCount);
+    }
+
+    private void scrapeAndExpectError(String url) {
+        TestSubscriber<PreviewData> subscriber = new TestSubscriber<>();
+        scraper.generatePreviewData(url).subscribe(subscriber);
+        subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertEquals(1, subscriber.getOnErrorEvents().size());
+    }
+
+    private MockResponse html() {
+        return new MockResponse()
+                .setHeader("Content-Type", "text/html; charset=utf-8")
+                .setBody(PAGE);
+    }
+}
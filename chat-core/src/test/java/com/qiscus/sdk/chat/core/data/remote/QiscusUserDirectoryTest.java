@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.qiscus.sdk.chat.core.data.remote;
+
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import rx.Subscription;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusUserDirectoryTest {
+    private static final String USER_LIST = "/api/v2/mobile/get_user_list";
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusUserDirectory directory = QiscusUserDirectory.getInstance();
+    private QiscusTestBackend backend;
+    private long ttl;
+    private long debounce;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        backend = new QiscusTestBackend(server, null);
+        backend.addUser("alice@qiscus.com", "Alice");
+        backend.addUser("alfred@qiscus.com", "Alfred");
+        backend.addUser("bob@qiscus.com", "Bob");
+        ttl = directory.getTtl();
+        debounce = directory.getDebounce();
+        directory.setDebounce(50);
+        directory.clear();
+        directory.resetStatistics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        directory.setTtl(ttl);
+        directory.setDebounce(debounce);
+        directory.clear();
+        backend.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void pagesAreCachedUntilTheTtlExpires() throws Exception {
+        assertEquals(Arrays.asList("Alfred", "Alice"), usernames(directory.getUsers("al", 0, 10)));
+        assertEquals(Arrays.asList("Alfred", "Alice"), usernames(directory.getUsers("al", 0, 10)));
+        assertEquals(1, server.getRequestCount(USER_LIST));
+        assertEquals(1, directory.getCacheHitCount());
+
+        directory.setTtl(50);
+        Thread.sleep(100);
+        assertEquals(Arrays.asList("Alfred", "Alice"), usernames(directory.getUsers("al", 0, 10)));
+        assertEquals(2, server.getRequestCount(USER_LIST));
+    }
+
+    @Test
+    public void longerQueriesAreRefinedFromACompleteShorterPage() {
+        assertEquals(Arrays.asList("Alfred", "Alice"), usernames(directory.getUsers("a", 0, 10)));
+        assertEquals(Collections.singletonList("Alice"), usernames(directory.getUsers("ali", 0, 10)));
+        assertEquals(1, server.getRequestCount(USER_LIST));
+        assertEquals(1, directory.getRefinedCount());
+
+        //A page as long as the limit may miss matches, so the longer query is searched
+        assertEquals(1, directory.getUsers("e", 0, 1).toBlocking().first().size());
+        directory.getUsers("ed", 0, 1).toBlocking().first();
+        assertEquals(3, server.getRequestCount(USER_LIST));
+        assertEquals(1, directory.getRefinedCount());
+    }
+
+    @Test
+    public void staleQueriesAreCancelled() {
+        backend.setUserListDelay(500);
+        PublishSubject<String> queries = PublishSubject.create();
+        List<List<String>> results = new CopyOnWriteArrayList<>();
+        Subscription subscription = directory.search(queries, 10)
+                .subscribe(users -> results.add(usernames(users)));
+
+        queries.onNext("al");
+        assertTrue(QiscusTestBackend.await(() -> server.getRequestCount(USER_LIST) == 1, 5000));
+        queries.onNext("bob");
+        assertTrue(QiscusTestBackend.await(() -> !results.isEmpty(), 5000));
+        QiscusTestBackend.await(() -> results.size() > 1, 1000);
+        subscription.unsubscribe();
+
+        assertEquals(Collections.singletonList(Collections.singletonList("Bob")), results);
+        assertEquals(2, directory.getRequestCount());
+    }
+
+    @Test
+    public void failingQueriesAreAnsweredEmptyAndTheSearchGoesOn() {
+        backend.setUserListErrorCode(500);
+        PublishSubject<String> queries = PublishSubject.create();
+        List<List<String>> results = new CopyOnWriteArrayList<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        Subscription subscription = directory.search(queries, 10, errors::add)
+                .subscribe(users -> results.add(usernames(users)));
+
+        queries.onNext("al");
+        assertTrue(QiscusTestBackend.await(() -> results.size() == 1, 5000));
+        backend.setUserListErrorCode(0);
+        queries.onNext("bob");
+        assertTrue(QiscusTestBackend.await(() -> results.size() == 2, 5000));
+        subscription.unsubscribe();
+
+        assertEquals(Arrays.asList(Collections.<String>emptyList(), Collections.singletonList("Bob")), results);
+        assertEquals(1, errors.size());
+    }
+
+    private static List<String> usernames(rx.Observable<List<QiscusAccount>> users) {
+        return usernames(users.toBlocking().first());
+    }
+
+    private static List<String> usernames(List<QiscusAccount> users) {
+        List<String> usernames = new ArrayList<>();
+        for (QiscusAccount user : users) {
+            usernames.add(user.getUsername());
+        }
+        Collections.sort(usernames);
+        return usernames;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.event;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusRoomEventDispatcherTest {
+    private static final int ROOMS = 50;
+    private static final int EVENTS = 200000;
+
+    private final QiscusRoomEventDispatcher dispatcher = QiscusRoomEventDispatcher.getInstance();
+    private final List<Registration> registrations = new ArrayList<>();
+    private final List<Object> eventBusSubscribers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Registration registration : registrations) {
+            dispatcher.unregister(registration.roomId, registration.listener);
+        }
+        for (Object subscriber : eventBusSubscribers) {
+            EventBus.getDefault().unregister(subscriber);
+        }
+    }
+
+    @Test
+    public void eventsOnlyReachListenersOfTheirRoom() {
+        AtomicInteger room1Count = new AtomicInteger();
+        AtomicInteger room2Count = new AtomicInteger();
+        register(1, event -> room1Count.incrementAndGet());
+        register(2, event -> room2Count.incrementAndGet());
+
+        dispatcher.post(typing(1));
+        dispatcher.post(typing(1));
+        dispatcher.post(typing(3));
+
+        assertEquals(2, room1Count.get());
+        assertEquals(0, room2Count.get());
+    }
+
+    @Test
+    public void unregisteredListenersAreNotCalled() {
+        AtomicInteger count = new AtomicInteger();
+        QiscusRoomEventDispatcher.Listener listener = event -> count.incrementAndGet();
+        register(1, listener);
+
+        dispatcher.post(typing(1));
+        dispatcher.unregister(1, listener);
+        dispatcher.post(typing(1));
+
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void eventBusStillReceivesEventsWhenSubscribed() {
+        RoomSubscriber subscriber = new RoomSubscriber(1);
+        EventBus.getDefault().register(subscriber);
+        eventBusSubscribers.add(subscriber);
+
+        dispatcher.post(typing(1));
+        dispatcher.post(typing(2));
+
+        assertEquals(1, subscriber.count);
+    }
+
+    /**
+     * Posts typing events spread over {@link #ROOMS} rooms that each have a listener, once through the
+     * dispatcher and once through EventBus to subscribers that filter by room like the old handler did.
+     * Both rates are printed, only the delivery counts are asserted.
+     */
+    @Test
+    public void benchmarkEventsPerSecond() {
+        AtomicInteger delivered = new AtomicInteger();
+        for (int i = 0; i < ROOMS; i++) {
+            register(i, event -> delivered.incrementAndGet());
+        }
+        List<RoomSubscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < ROOMS; i++) {
+            RoomSubscriber subscriber = new RoomSubscriber(i);
+            subscribers.add(subscriber);
+        }
+
+        //Warm up both paths before measuring
+        postToDispatcher(EVENTS / 10);
+        delivered.set(0);
+        long dispatcherRate = rate(EVENTS, postToDispatcher(EVENTS));
+        assertEquals(EVENTS, delivered.get());
+
+        for (RoomSubscriber subscriber : subscribers) {
+            EventBus.getDefault().register(subscriber);
+            eventBusSubscribers.add(subscriber);
+        }
+        postToEventBus(EVENTS / 10);
+        for (RoomSubscriber subscriber : subscribers) {
+            subscriber.count = 0;
+        }
+        long eventBusRate = rate(EVENTS, postToEventBus(EVENTS));
+        int eventBusDelivered = 0;
+        for (RoomSubscriber subscriber : subscribers) {
+            eventBusDelivered += subscriber.count;
+        }
+        assertEquals(EVENTS, eventBusDelivered);
+
+        System.out.println("QiscusRoomEventDispatcher: " + dispatcherRate + " events/s to " + ROOMS
+                + " rooms, EventBus fan-out: " + eventBusRate + " events/s");
+    }
+
+    private long postToDispatcher(int count) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            dispatcher.post(typing(i % ROOMS));
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private long postToEventBus(int count) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            EventBus.getDefault().post(typing(i % ROOMS));
+        }
+        return System.nanoTime() - startTime;
+    }
+
+    private long rate(int count, long nanos) {
+        return count * 1000000000L / Math.max(nanos, 1);
+    }
+
+    private void register(long roomId, QiscusRoomEventDispatcher.Listener listener) {
+        dispatcher.register(roomId, listener, QiscusRoomEventDispatcher.DeliveryThread.POSTING);
+        registrations.add(new Registration(roomId, listener));
+    }
+
+    private QiscusChatRoomEvent typing(long roomId) {
+        return new QiscusChatRoomEvent()
+                .setRoomId(roomId)
+                .setUser("user" + roomId)
+                .setTyping(true)
+                .setEvent(QiscusChatRoomEvent.Event.TYPING);
+    }
+
+    private static class Registration {
+        private final long roomId;
+        private final QiscusRoomEventDispatcher.Listener listener;
+
+        private Registration(long roomId, QiscusRoomEventDispatcher.Listener listener) {
+            this.roomId = roomId;
+            this.listener = listener;
+        }
+    }
+
+    public static class RoomSubscriber {
+        private final long roomId;
+        private int count;
+
+        RoomSubscriber(long roomId) {
+            this.roomId = roomId;
+        }
+
+        @Subscribe
+        public void onChatRoomEvent(QiscusChatRoomEvent event) {
+            if (event.getRoomId() == roomId) {
+                count++;
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.qiscus.sdk.chat.core.presenter;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ordering and callbacks of {@link QiscusRoomListModel}, and a benchmark that streams comments at 100
+ * per second into a list of 5,000 rooms on the main thread. It prints how long each comment kept the main
+ * thread busy, next to a list that sorts every room again for each comment.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QiscusRoomListModelTest {
+    private static final int ROOMS = 5000;
+    private static final int MESSAGES = 500;
+    private static final int MESSAGES_PER_SECOND = 100;
+    private static final long TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    private static final Comparator<QiscusChatRoom> LAST_COMMENT_ORDER = (room1, room2) ->
+            room2.getLastComment().getTime().compareTo(room1.getLastComment().getTime());
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final RecordingListener listener = new RecordingListener();
+    private final QiscusRoomListModel model = new QiscusRoomListModel(listener);
+    private long lastCommentId;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        new QiscusTestBackend(server, null);
+        QiscusCore.setUser(QiscusTestBackend.USER_EMAIL, "password").save().toBlocking().first();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        model.detach();
+        QiscusCore.clearUser();
+        server.shutdown();
+    }
+
+    @Test
+    public void roomsAreOrderedByLastComment() {
+        model.setRooms(rooms(1, 3, 2));
+
+        assertEquals(3, model.size());
+        assertEquals(3, model.get(0).getId());
+        assertEquals(2, model.get(1).getId());
+        assertEquals(1, model.get(2).getId());
+        assertEquals(0, model.indexOf(3));
+        assertEquals(-1, model.indexOf(4));
+    }
+
+    @Test
+    public void newCommentMovesItsRoomToTheTop() {
+        model.setRooms(rooms(1, 2, 3));
+        model.attach();
+
+        EventBus.getDefault().post(new QiscusCommentReceivedEvent(comment(1, 10, QiscusTestBackend.OTHER_EMAIL)));
+
+        assertEquals(1, model.get(0).getId());
+        assertEquals(1, model.get(0).getUnreadCount());
+        assertEquals(Collections.singletonList("moved 2 to 0"), listener.moves);
+        assertEquals(Collections.singletonList("changed 0"), listener.changes);
+    }
+
+    @Test
+    public void olderCommentsAndOwnCommentsAreNotCountedAsUnread() {
+        model.setRooms(rooms(1, 2));
+        model.attach();
+
+        EventBus.getDefault().post(new QiscusCommentReceivedEvent(comment(2, 0, QiscusTestBackend.OTHER_EMAIL)));
+        EventBus.getDefault().post(new QiscusCommentReceivedEvent(comment(1, 10, QiscusTestBackend.USER_EMAIL)));
+
+        assertEquals(1, model.get(0).getId());
+        assertEquals(0, model.get(0).getUnreadCount());
+        assertEquals(0, model.get(1).getUnreadCount());
+        assertEquals(2, model.get(1).getLastComment().getTime().getTime());
+    }
+
+    @Test
+    public void markAsReadAddAndRemoveNotifyTheListener() {
+        model.setRooms(rooms(1, 2));
+        model.attach();
+        EventBus.getDefault().post(new QiscusCommentReceivedEvent(comment(1, 10, QiscusTestBackend.OTHER_EMAIL)));
+        listener.changes.clear();
+
+        model.markAsRead(1);
+        model.markAsRead(1);
+        model.addOrUpdate(rooms(5).get(0));
+        model.remove(2);
+
+        assertEquals(0, model.get(0).getUnreadCount());
+        assertEquals(Collections.singletonList("changed 0"), listener.changes);
+        assertEquals(Collections.singletonList("inserted 1"), listener.inserts);
+        assertEquals(Collections.singletonList("removed 2"), listener.removals);
+        assertEquals(2, model.size());
+    }
+
+    /**
+     * Comments for random rooms arrive on the main thread at {@link #MESSAGES_PER_SECOND}, like the pusher
+     * delivers them, once to the model and once to a list that sorts every room again for each comment
+     */
+    @Test
+    public void benchmarkFiveThousandRoomsAtHundredMessagesPerSecond() {
+        warmUp();
+        List<QiscusChatRoom> rooms = roomsUpTo(ROOMS);
+        long loadStartTime = System.nanoTime();
+        model.setRooms(rooms);
+        long loadTime = System.nanoTime() - loadStartTime;
+        List<QiscusComment> comments = comments(new Random(ROOMS));
+
+        model.attach();
+        Result modelResult = stream(comments);
+        model.detach();
+
+        assertEquals(ROOMS, model.size());
+        int unreadCount = 0;
+        for (int i = 0; i < model.size(); i++) {
+            unreadCount += model.get(i).getUnreadCount();
+            if (i > 0) {
+                assertTrue(LAST_COMMENT_ORDER.compare(model.get(i - 1), model.get(i)) <= 0);
+            }
+        }
+        assertEquals(MESSAGES, unreadCount);
+        assertEquals(comments.get(MESSAGES - 1).getRoomId(), model.get(0).getId());
+        assertTrue("Comments took longer than a frame", modelResult.average() < TimeUnit.MILLISECONDS.toNanos(16));
+
+        SortingList sortingList = new SortingList(roomsUpTo(ROOMS));
+        EventBus.getDefault().register(sortingList);
+        Result sortingResult;
+        try {
+            sortingResult = stream(comments(new Random(ROOMS)));
+        } finally {
+            EventBus.getDefault().unregister(sortingList);
+        }
+        assertEquals(comments.get(MESSAGES - 1).getRoomId(), sortingList.rooms.get(0).getId());
+
+        System.out.println(ROOMS + " rooms loaded in " + TimeUnit.NANOSECONDS.toMillis(loadTime) + " ms, "
+                + MESSAGES + " comments at " + MESSAGES_PER_SECOND + "/s with the model: " + modelResult
+                + ", sorting every room: " + sortingResult);
+    }
+
+    /**
+     * Run both lists on rooms that are thrown away, so neither is measured while it is still interpreted
+     */
+    private void warmUp() {
+        QiscusRoomListModel warmUpModel = new QiscusRoomListModel(new RecordingListener());
+        warmUpModel.setRooms(roomsUpTo(ROOMS));
+        SortingList warmUpList = new SortingList(roomsUpTo(ROOMS));
+        warmUpModel.attach();
+        EventBus.getDefault().register(warmUpList);
+        try {
+            for (QiscusComment comment : comments(new Random())) {
+                EventBus.getDefault().post(new QiscusCommentReceivedEvent(comment));
+            }
+        } finally {
+            warmUpModel.detach();
+            EventBus.getDefault().unregister(warmUpList);
+        }
+    }
+
+    /**
+     * Post the comments on the main thread at {@link #MESSAGES_PER_SECOND}, timing how long each kept it busy
+     */
+    private Result stream(List<QiscusComment> comments) {
+        List<Long> handlingTimes = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger sent = new AtomicInteger();
+        ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor();
+        long streamStartTime = System.nanoTime();
+        pusher.scheduleAtFixedRate(() -> {
+            int index = sent.getAndIncrement();
+            if (index >= comments.size()) {
+                pusher.shutdown();
+                return;
+            }
+            QiscusAndroidUtil.runOnUIThread(() -> {
+                long startTime = System.nanoTime();
+                EventBus.getDefault().post(new QiscusCommentReceivedEvent(comments.get(index)));
+                handlingTimes.add(System.nanoTime() - startTime);
+            });
+        }, 0, TimeUnit.SECONDS.toMicros(1) / MESSAGES_PER_SECOND, TimeUnit.MICROSECONDS);
+        assertTrue("Comments were not handled",
+                QiscusTestBackend.await(() -> handlingTimes.size() >= comments.size(), TIMEOUT));
+        return new Result(new ArrayList<>(handlingTimes), System.nanoTime() - streamStartTime);
+    }
+
+    private List<QiscusComment> comments(Random random) {
+        List<QiscusComment> comments = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            comments.add(comment(1 + random.nextInt(ROOMS), ROOMS + 1 + i, QiscusTestBackend.OTHER_EMAIL));
+        }
+        return comments;
+    }
+
+    private List<QiscusChatRoom> roomsUpTo(int count) {
+        List<QiscusChatRoom> rooms = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            rooms.addAll(rooms(i));
+        }
+        return rooms;
+    }
+
+    /**
+     * @param ids ids of rooms, each with a last comment at the time of its id
+     */
+    private List<QiscusChatRoom> rooms(long... ids) {
+        List<QiscusChatRoom> rooms = new ArrayList<>();
+        for (long id : ids) {
+            QiscusChatRoom room = new QiscusChatRoom();
+            room.setId(id);
+            room.setName("Room " + id);
+            room.setLastComment(comment(id, id, QiscusTestBackend.OTHER_EMAIL));
+            rooms.add(room);
+        }
+        return rooms;
+    }
+
+    private QiscusComment comment(long roomId, long time, String senderEmail) {
+        QiscusComment comment = new QiscusComment();
+        comment.setId(++lastCommentId);
+        comment.setUniqueId("comment-" + lastCommentId);
+        comment.setRoomId(roomId);
+        comment.setSenderEmail(senderEmail);
+        comment.setMessage("Comment " + lastCommentId);
+        comment.setTime(new Date(time));
+        return comment;
+    }
+
+    /**
+     * Room list without the model, it sorts a copy of every room when a comment arrives
+     */
+    public static class SortingList {
+        private final Map<Long, QiscusChatRoom> roomsById = new HashMap<>();
+        private List<QiscusChatRoom> rooms;
+
+        SortingList(List<QiscusChatRoom> rooms) {
+            this.rooms = rooms;
+            for (QiscusChatRoom room : rooms) {
+                roomsById.put(room.getId(), room);
+            }
+        }
+
+        @Subscribe
+        public void onCommentReceivedEvent(QiscusCommentReceivedEvent event) {
+            QiscusChatRoom room = roomsById.get(event.getQiscusComment().getRoomId());
+            room.setLastComment(event.getQiscusComment());
+            if (!event.getQiscusComment().isMyComment()) {
+                room.setUnreadCount(room.getUnreadCount() + 1);
+            }
+            List<QiscusChatRoom> sortedRooms = new ArrayList<>(rooms);
+            Collections.sort(sortedRooms, LAST_COMMENT_ORDER);
+            rooms = sortedRooms;
+        }
+    }
+
+    private static class Result {
+        private final List<Long> handlingTimes;
+        private final long streamTime;
+
+        private Result(List<Long> handlingTimes, long streamTime) {
+            Collections.sort(handlingTimes);
+            this.handlingTimes = handlingTimes;
+            this.streamTime = streamTime;
+        }
+
+        private long total() {
+            long total = 0;
+            for (long time : handlingTimes) {
+                total += time;
+            }
+            return total;
+        }
+
+        private long average() {
+            return total() / handlingTimes.size();
+        }
+
+        @Override
+        public String toString() {
+            return TimeUnit.NANOSECONDS.toMicros(average()) + " us on average, "
+                    + TimeUnit.NANOSECONDS.toMicros(handlingTimes.get(handlingTimes.size() * 95 / 100)) + " us at p95 and "
+                    + TimeUnit.NANOSECONDS.toMicros(handlingTimes.get(handlingTimes.size() - 1)) + " us at most per comment, "
+                    + "main thread busy " + String.format("%.2f", 100.0 * total() / streamTime) + "% of the time";
+        }
+    }
+
+    private static class RecordingListener implements QiscusRoomListModel.Listener {
+        private final List<String> inserts = new ArrayList<>();
+        private final List<String> moves = new ArrayList<>();
+        private final List<String> changes = new ArrayList<>();
+        private final List<String> removals = new ArrayList<>();
+
+        @Override
+        public void onRoomInserted(int position, QiscusChatRoom qiscusChatRoom) {
+            inserts.add("inserted " + position);
+        }
+
+        @Override
+        public void onRoomMoved(int fromPosition, int toPosition) {
+            moves.add("moved " + fromPosition + " to " + toPosition);
+        }
+
+        @Override
+        public void onRoomChanged(int position, QiscusChatRoom qiscusChatRoom) {
+            changes.add("changed " + position);
+        }
+
+        @Override
+        public void onRoomRemoved(int position) {
+            removals.add("removed " + position);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.chat.core.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QiscusExecutorsTest {
+    private static final QiscusExecutors.Lane LANE = QiscusExecutors.Lane.DB_WRITE;
+
+    @Before
+    public void setUp() throws Exception {
+        awaitIdle();
+        QiscusExecutors.resetMetrics();
+    }
+
+    @Test
+    public void tasksQueuedBehindABusyLaneAreMeasured() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        QiscusExecutors.execute(LANE, () -> {
+            started.countDown();
+            await(release);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            QiscusExecutors.execute(LANE, () -> {
+            });
+        }
+        assertEquals(3, QiscusExecutors.getQueueDepth(LANE));
+
+        Thread.sleep(100);
+        release.countDown();
+        awaitIdle();
+
+        assertEquals(0, QiscusExecutors.getQueueDepth(LANE));
+        //The three queued tasks, the blocking one and the one used to wait for the lane
+        assertEquals(5, QiscusExecutors.getCompletedCount(LANE));
+        assertTrue(QiscusExecutors.getAverageWaitTime(LANE) >= 100 * 3 / 5);
+        assertTrue(QiscusExecutors.getAverageRunTime(LANE) >= 100 / 5);
+    }
+
+    @Test
+    public void delayedTasksOnlyWaitAfterTheirDelay() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        QiscusExecutors.schedule(LANE, done::countDown, 200);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        awaitIdle();
+
+        assertEquals(2, QiscusExecutors.getCompletedCount(LANE));
+        assertTrue(QiscusExecutors.getAverageWaitTime(LANE) < 200);
+    }
+
+    @Test
+    public void resetMetricsClearsEveryLane() throws Exception {
+        QiscusExecutors.execute(LANE, () -> {
+        });
+        awaitIdle();
+        assertTrue(QiscusExecutors.getCompletedCount(LANE) > 0);
+
+        QiscusExecutors.resetMetrics();
+
+        assertEquals(0, QiscusExecutors.getCompletedCount(LANE));
+        assertEquals(0, QiscusExecutors.getAverageWaitTime(LANE));
+        assertEquals(0, QiscusExecutors.getAverageRunTime(LANE));
+    }
+
+    @Test
+    public void tasksKnowTheirLane() throws Exception {
+        AtomicBoolean onLane = new AtomicBoolean();
+        AtomicBoolean onOtherLane = new AtomicBoolean(true);
+        QiscusExecutors.execute(LANE, () -> {
+            onLane.set(QiscusExecutors.isOnLane(LANE));
+            onOtherLane.set(QiscusExecutors.isOnLane(QiscusExecutors.Lane.IO));
+        });
+        awaitIdle();
+
+        assertTrue(onLane.get());
+        assertFalse(onOtherLane.get());
+        assertFalse(QiscusExecutors.isOnLane(LANE));
+    }
+
+    /**
+     * The lane has a single thread, so a task that ran means every task queued before it ran too
+     */
+    private void awaitIdle() throws Exception {
+        QiscusExecutors.getExecutor(LANE).submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.media.ExifInterface;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Decode time and peak native heap of {@link QiscusImageTranscoder#decode(String, int, int)} for camera
+ * sized photos, upright and rotated by exif. Results are written to logcat with the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QiscusImageTranscoderBenchmark {
+    private static final String TAG = "TranscoderBenchmark";
+    private static final int MAX_WIDTH = 1440;
+    private static final int MAX_HEIGHT = 900;
+    private static final int RUNS = 5;
+
+    private File image;
+
+    @After
+    public void tearDown() {
+        if (image != null) {
+            image.delete();
+        }
+        QiscusImageTranscoder.getInstance().clearPool();
+    }
+
+    @Test
+    public void decode12Megapixels() throws Exception {
+        benchmark(4000, 3000, ExifInterface.ORIENTATION_NORMAL);
+    }
+
+    @Test
+    public void decode12MegapixelsRotated() throws Exception {
+        benchmark(4000, 3000, ExifInterface.ORIENTATION_ROTATE_90);
+    }
+
+    @Test
+    public void decode48Megapixels() throws Exception {
+        benchmark(8000, 6000, ExifInterface.ORIENTATION_NORMAL);
+    }
+
+    @Test
+    public void decode48MegapixelsRotated() throws Exception {
+        benchmark(8000, 6000, ExifInterface.ORIENTATION_ROTATE_90);
+    }
+
+    private void benchmark(int width, int height, int orientation) throws IOException {
+        //The source photo itself has to be drawn once in RGB_565 to be written
+        assumeTrue("Not enough heap to create the source photo",
+                Runtime.getRuntime().maxMemory() > 3L * width * height);
+        image = createPhoto(width, height, orientation);
+
+        QiscusImageTranscoder transcoder = QiscusImageTranscoder.getInstance();
+        long totalTime = 0;
+        long peakNative = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long nativeBefore = Debug.getNativeHeapAllocatedSize();
+            long startTime = System.nanoTime();
+            Bitmap bitmap = transcoder.decode(image.getPath(), MAX_WIDTH, MAX_HEIGHT);
+            totalTime += System.nanoTime() - startTime;
+            peakNative = Math.max(peakNative, Debug.getNativeHeapAllocatedSize() - nativeBefore);
+
+            assertNotNull(bitmap);
+            //4:3 photos fit the bounds by their height, upright or rotated
+            assertEquals(MAX_HEIGHT, bitmap.getHeight());
+            bitmap.recycle();
+        }
+
+        Log.i(TAG, width + "x" + height + (orientation == ExifInterface.ORIENTATION_NORMAL ? "" : " rotated")
+                + ": " + totalTime / RUNS / 1000000L + " ms per decode, "
+                + peakNative / 1024 + " KB native heap at most");
+    }
+
+    private File createPhoto(int width, int height, int orientation) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        int stripe = width / 16;
+        for (int x = 0; x < width; x += stripe) {
+            paint.setColor(Color.HSVToColor(new float[]{360f * x / width, 0.8f, 0.9f}));
+            canvas.drawRect(x, 0, x + stripe, height, paint);
+        }
+
+        Context context = InstrumentationRegistry.getTargetContext();
+        File file = new File(context.getCacheDir(), "benchmark-" + width + "x" + height + ".jpg");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+
+        ExifInterface exif = new ExifInterface(file.getPath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exif.saveAttributes();
+        return file;
+    }
+}
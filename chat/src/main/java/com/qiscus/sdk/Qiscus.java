@@ -32,9 +32,12 @@ import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.data.model.QiscusChatConfig;
 import com.qiscus.sdk.ui.QiscusChatActivity;
 import com.qiscus.sdk.ui.fragment.QiscusChatFragment;
+import com.qiscus.sdk.util.QiscusNotificationIconCache;
+import com.qiscus.sdk.util.QiscusImageUtil;
 import com.qiscus.sdk.util.QiscusPushNotificationUtil;
 import com.vanniktech.emoji.EmojiManager;
 import com.vanniktech.emoji.one.EmojiOneProvider;
@@ -50,7 +53,6 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 import static com.qiscus.sdk.chat.core.QiscusCore.checkAppIdSetup;
 import static com.qiscus.sdk.chat.core.QiscusCore.checkUserSetup;
@@ -182,7 +184,9 @@ public class Qiscus {
 
         QiscusCore.getChatConfig()
                 .setNotificationListener(QiscusPushNotificationUtil::handlePushNotification)
-                .setDeleteCommentListener(QiscusPushNotificationUtil::handleDeletedCommentNotification);
+                .setDeleteCommentListener(QiscusPushNotificationUtil::handleDeletedCommentNotification)
+                .getPrefetchConfig()
+                .setMediaPrefetcher(QiscusImageUtil::prefetchBlurryThumbnail);
     }
 
     /**
@@ -481,6 +485,7 @@ public class Qiscus {
      */
     public static void clearUser() {
         QiscusCore.clearUser();
+        QiscusNotificationIconCache.getInstance().clear();
     }
 
     /**
@@ -617,7 +622,7 @@ public class Qiscus {
          * @param listener Listener of building chat room process
          */
         public void build(ChatBuilderListener listener) {
-            build().subscribeOn(Schedulers.io())
+            build().subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
@@ -759,7 +764,7 @@ public class Qiscus {
          * @param listener Listener of building chat activity
          */
         public void build(Context context, ChatActivityBuilderListener listener) {
-            build(context).subscribeOn(Schedulers.io())
+            build(context).subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
@@ -904,7 +909,7 @@ public class Qiscus {
          * @param listener Listener of building chat fragment
          */
         public void build(ChatFragmentBuilderListener listener) {
-            build().subscribeOn(Schedulers.io())
+            build().subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
@@ -980,7 +985,7 @@ public class Qiscus {
          * @param listener Listener of building chat room process
          */
         public void build(ChatBuilderListener listener) {
-            build().subscribeOn(Schedulers.io())
+            build().subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
@@ -1047,7 +1052,7 @@ public class Qiscus {
          * @param listener Listener of building chat room process
          */
         public void build(ChatBuilderListener listener) {
-            build().subscribeOn(Schedulers.io())
+            build().subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(listener::onSuccess, listener::onError);
         }
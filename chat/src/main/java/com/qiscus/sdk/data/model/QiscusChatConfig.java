@@ -42,12 +42,12 @@ import com.qiscus.sdk.chat.core.data.model.ReplyNotificationHandler;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.util.QiscusDateUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 import com.qiscus.sdk.ui.QiscusChatActivity;
 import com.qiscus.sdk.ui.QiscusGroupChatActivity;
 
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : June 15, 2017
@@ -175,7 +175,7 @@ public class QiscusChatConfig {
     private NotificationClickListener notificationClickListener =
             (context, qiscusComment) -> QiscusApi.getInstance()
                     .getChatRoom(qiscusComment.getRoomId())
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .map(qiscusChatRoom -> {
                         if (qiscusChatRoom.isGroup()) {
@@ -202,7 +202,7 @@ public class QiscusChatConfig {
                         }
                         Qiscus.getDataStore().addOrUpdate(comment);
                     })
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(commentSend -> {
                         QiscusCacheManager.getInstance().clearMessageNotifItems(qiscusComment.getRoomId());
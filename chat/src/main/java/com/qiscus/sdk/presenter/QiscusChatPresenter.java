@@ -22,7 +22,9 @@ import android.webkit.MimeTypeMap;
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.local.QiscusAttachmentCache;
 import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
@@ -33,7 +35,7 @@ import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.data.remote.QiscusPusherApi;
 import com.qiscus.sdk.chat.core.data.remote.QiscusResendCommentHelper;
 import com.qiscus.sdk.chat.core.event.QiscusClearCommentsEvent;
-import com.qiscus.sdk.chat.core.event.QiscusCommentDeletedEvent;
+import com.qiscus.sdk.chat.core.event.QiscusCommentsDeletedEvent;
 import com.qiscus.sdk.chat.core.event.QiscusCommentReceivedEvent;
 import com.qiscus.sdk.chat.core.event.QiscusCommentResendEvent;
 import com.qiscus.sdk.chat.core.event.QiscusMqttStatusEvent;
@@ -41,7 +43,9 @@ import com.qiscus.sdk.chat.core.presenter.QiscusChatRoomEventHandler;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
 import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
+import com.qiscus.sdk.util.QiscusImageTranscoder;
 import com.qiscus.sdk.util.QiscusImageUtil;
 
 import org.greenrobot.eventbus.EventBus;
@@ -62,10 +66,15 @@ import rx.Observable;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.functions.Func2;
-import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subjects.Subject;
 
 public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.View> implements QiscusChatRoomEventHandler.StateListener {
 
+    private static final int DELTA_LIMIT = 50;
+    private static final long METADATA_MAX_AGE = 10 * 60 * 1000L;
+    private static final int FILE_QUEUE_CAPACITY = 16;
+
     private QiscusChatRoom room;
     private QiscusAccount qiscusAccount;
     private Func2<QiscusComment, QiscusComment, Integer> commentComparator = (lhs, rhs) -> rhs.getTime().compareTo(lhs.getTime());
@@ -73,6 +82,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
     private Map<QiscusComment, Subscription> pendingTask;
 
     private QiscusChatRoomEventHandler chatRoomEventHandler;
+    private final Subject<FileToSend, FileToSend> filesToSend = PublishSubject.<FileToSend>create().toSerialized();
 
     public QiscusChatPresenter(View view, QiscusChatRoom room) {
         super(view);
@@ -87,6 +97,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         pendingTask = new HashMap<>();
 
         chatRoomEventHandler = new QiscusChatRoomEventHandler(this.room, this);
+        listenFilesToSend();
     }
 
     private void commentSuccess(QiscusComment qiscusComment) {
@@ -148,7 +159,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                 .doOnSubscribe(() -> Qiscus.getDataStore().addOrUpdate(qiscusComment))
                 .doOnNext(this::commentSuccess)
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(commentSend -> {
@@ -205,20 +216,56 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         sendFile(file, null);
     }
 
+    /**
+     * Send a file. Images are compressed off the main thread, several at once when the memory allows,
+     * and the messages are sent in the same order as the files were given.
+     *
+     * @param file    file to send
+     * @param caption caption of the file, may be null
+     */
     public void sendFile(File file, String caption) {
-        File compressedFile = file;
-        if (QiscusImageUtil.isImage(file) && !file.getName().endsWith(".gif")) {
-            try {
-                compressedFile = QiscusImageUtil.compressImage(file);
-            } catch (NullPointerException e) {
-                view.showError(QiscusTextUtil.getString(R.string.qiscus_corrupted_file));
-                return;
-            }
-        } else {
-            compressedFile = QiscusFileUtil.saveFile(compressedFile);
+        filesToSend.onNext(new FileToSend(file, caption));
+    }
+
+    /**
+     * Send several files at once, see {@link #sendFile(File, String)}
+     *
+     * @param files    files to send
+     * @param captions caption of each file keyed by its path, may be null
+     */
+    public void sendFiles(List<File> files, Map<String, String> captions) {
+        for (File file : files) {
+            sendFile(file, captions == null ? null : captions.get(file.getAbsolutePath()));
         }
+    }
 
-        if (!file.exists()) { //File have been removed, so we can not upload it anymore
+    private void listenFilesToSend() {
+        filesToSend.onBackpressureBuffer()
+                .concatMapEager(fileToSend -> Observable.fromCallable(() -> prepareFile(fileToSend))
+                                .subscribeOn(QiscusSchedulers.cpu()),
+                        FILE_QUEUE_CAPACITY, QiscusImageTranscoder.getInstance().getMaxParallelDecodes())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
+                .subscribe(fileToSend -> sendPreparedFile(fileToSend.file, fileToSend.preparedFile, fileToSend.caption),
+                        QiscusErrorLogger::print);
+    }
+
+    private FileToSend prepareFile(FileToSend fileToSend) {
+        try {
+            fileToSend.preparedFile = isCompressibleImage(fileToSend.file)
+                    ? QiscusImageUtil.compressImage(fileToSend.file) : QiscusFileUtil.saveFile(fileToSend.file);
+        } catch (Exception e) {
+            QiscusErrorLogger.print(e);
+        }
+        return fileToSend;
+    }
+
+    private boolean isCompressibleImage(File file) {
+        return QiscusImageUtil.isImage(file) && !file.getName().endsWith(".gif");
+    }
+
+    private void sendPreparedFile(File file, File compressedFile, String caption) {
+        if (compressedFile == null || !file.exists()) { //File is corrupted or have been removed, so we can not upload it
             view.showError(QiscusTextUtil.getString(R.string.qiscus_corrupted_file));
             return;
         }
@@ -236,7 +283,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                 }).doOnSubscribe(() -> Qiscus.getDataStore().addOrUpdate(qiscusComment))
                 .doOnNext(this::commentSuccess)
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(commentSend -> {
@@ -290,7 +337,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     commentSuccess(commentSend);
                 })
                 .doOnError(throwable -> commentFail(throwable, qiscusComment))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(commentSend -> {
@@ -320,7 +367,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     qiscusComment.setDownloading(false);
                     commentFail(throwable, qiscusComment);
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(commentSend -> {
@@ -347,15 +394,6 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
 
     private Observable<Pair<QiscusChatRoom, List<QiscusComment>>> getInitRoomData() {
         return QiscusApi.getInstance().getChatRoomWithMessages(room.getId())
-                .doOnError(throwable -> {
-                    QiscusErrorLogger.print(throwable);
-                    throwable.printStackTrace();
-                    QiscusAndroidUtil.runOnUIThread(() -> {
-                        if (view != null) {
-                            view.onLoadCommentsError(throwable);
-                        }
-                    });
-                })
                 .doOnNext(roomData -> {
                     chatRoomEventHandler.setChatRoom(roomData.first);
 
@@ -367,11 +405,90 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     for (QiscusComment qiscusComment : roomData.second) {
                         Qiscus.getDataStore().addOrUpdate(qiscusComment);
                     }
+                    QiscusCacheManager.getInstance().setRoomMetadataSyncedAt(room.getId(), System.currentTimeMillis());
+                    QiscusCacheManager.getInstance().setRoomSyncedCommentId(room.getId(), getLastCommentId(roomData.second));
+                })
+                .subscribeOn(QiscusSchedulers.io());
+    }
+
+    /**
+     * Fetch only what changed since the room was last synced: the comments after the comment watermark,
+     * and the room info only if a system event says it changed or it is too old. It falls back to a full
+     * reload if the room was never synced or more comments were missed than one delta page.
+     */
+    private Observable<Pair<QiscusChatRoom, List<QiscusComment>>> getRemoteRoomData(int count) {
+        return Observable.fromCallable(this::getDeltaStartCommentId)
+                .flatMap(lastCommentId -> lastCommentId <= 0 ? getInitRoomData() :
+                        QiscusApi.getInstance().getNextMessagesById(room.getId(), DELTA_LIMIT, lastCommentId)
+                                .toList()
+                                .flatMap(comments -> comments.size() >= DELTA_LIMIT ? getInitRoomData()
+                                        : applyRoomDataDelta(comments, count)))
+                .doOnError(throwable -> {
+                    QiscusErrorLogger.print(throwable);
+                    throwable.printStackTrace();
+                    QiscusAndroidUtil.runOnUIThread(() -> {
+                        if (view != null) {
+                            view.onLoadCommentsError(throwable);
+                        }
+                    });
                 })
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .onErrorReturn(throwable -> null);
     }
 
+    private long getDeltaStartCommentId() {
+        if (room.getMember().isEmpty()) {
+            return 0;
+        }
+        return QiscusCacheManager.getInstance().getRoomSyncedCommentId(room.getId());
+    }
+
+    /**
+     * Save the delta and emit the newest local comments, which now include it. The view merges what it gets
+     * as a page of the newest comments, so emitting only the few delta comments would push out the newest
+     * comments it already shows.
+     */
+    private Observable<Pair<QiscusChatRoom, List<QiscusComment>>> applyRoomDataDelta(List<QiscusComment> comments,
+                                                                                    int count) {
+        long metadataSyncedAt = QiscusCacheManager.getInstance().getRoomMetadataSyncedAt(room.getId());
+        boolean roomChanged = System.currentTimeMillis() - metadataSyncedAt > METADATA_MAX_AGE;
+        for (QiscusComment qiscusComment : comments) {
+            qiscusComment.setRoomId(room.getId());
+            Qiscus.getDataStore().addOrUpdate(qiscusComment);
+            if (qiscusComment.getType() == QiscusComment.Type.SYSTEM_EVENT) {
+                roomChanged = true;
+            }
+        }
+        QiscusCacheManager.getInstance().setRoomSyncedCommentId(room.getId(), getLastCommentId(comments));
+
+        List<QiscusComment> newestComments = comments;
+        if (!comments.isEmpty()) {
+            newestComments = Qiscus.getDataStore().getComments(room.getId(), comments.size() + count);
+        }
+        Collections.sort(newestComments, (lhs, rhs) -> rhs.getTime().compareTo(lhs.getTime()));
+
+        if (!roomChanged) {
+            return Observable.just(Pair.create(room, newestComments));
+        }
+
+        List<QiscusComment> roomComments = newestComments;
+        return QiscusApi.getInstance().getChatRoomInfo(room.getId())
+                .doOnNext(qiscusChatRoom -> {
+                    chatRoomEventHandler.setChatRoom(qiscusChatRoom);
+                    Qiscus.getDataStore().addOrUpdate(qiscusChatRoom);
+                    QiscusCacheManager.getInstance().setRoomMetadataSyncedAt(room.getId(), System.currentTimeMillis());
+                })
+                .map(qiscusChatRoom -> Pair.create(qiscusChatRoom, roomComments));
+    }
+
+    private long getLastCommentId(List<QiscusComment> comments) {
+        long lastCommentId = 0;
+        for (QiscusComment qiscusComment : comments) {
+            lastCommentId = Math.max(lastCommentId, qiscusComment.getId());
+        }
+        return lastCommentId;
+    }
+
     private Observable<List<QiscusComment>> getCommentsFromNetwork(long lastCommentId) {
         return QiscusApi.getInstance().getPreviousMessagesById(room.getId(), 20, lastCommentId)
                 .doOnNext(qiscusComment -> {
@@ -379,7 +496,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     qiscusComment.setRoomId(room.getId());
                 })
                 .toSortedList(commentComparator)
-                .subscribeOn(Schedulers.io());
+                .subscribeOn(QiscusSchedulers.io());
     }
 
     private Observable<List<QiscusComment>> getLocalComments(int count, boolean forceFailedSendingComment) {
@@ -392,7 +509,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                     }
                     return comments;
                 })
-                .subscribeOn(Schedulers.io());
+                .subscribeOn(QiscusSchedulers.io());
     }
 
     public List<QiscusComment> loadLocalComments(int count) {
@@ -400,10 +517,10 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
     }
 
     public void loadComments(int count) {
-        Observable.merge(getInitRoomData(), getLocalComments(count, true)
+        Observable.merge(getRemoteRoomData(count), getLocalComments(count, true)
                 .map(comments -> Pair.create(room, comments)))
                 .filter(qiscusChatRoomListPair -> qiscusChatRoomListPair != null)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(roomData -> {
@@ -490,7 +607,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                             }
                             return comments1;
                         }))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(comments -> {
@@ -535,7 +652,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                 .doOnNext(qiscusComment -> qiscusComment.setRoomId(room.getId()))
                 .toSortedList(commentComparator)
                 .doOnNext(Collections::reverse)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(comments -> {
@@ -557,14 +674,14 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
     }
 
     @Subscribe
-    public void handleDeleteCommentEvent(QiscusCommentDeletedEvent event) {
-        if (event.getQiscusComment().getRoomId() == room.getId()) {
+    public void handleDeleteCommentEvent(QiscusCommentsDeletedEvent event) {
+        if (event.getRoomId() == room.getId()) {
             QiscusAndroidUtil.runOnUIThread(() -> {
                 if (view != null) {
                     if (event.isHardDelete()) {
-                        view.onCommentDeleted(event.getQiscusComment());
+                        view.onCommentsDeleted(event.getQiscusComments());
                     } else {
-                        view.refreshComment(event.getQiscusComment());
+                        view.refreshComments(event.getQiscusComments());
                     }
                 }
             });
@@ -613,12 +730,17 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
         }
 
         File file = Qiscus.getDataStore().getLocalPath(qiscusComment.getId());
+        if (file != null && !file.exists()) {
+            //Deleted outside of the sdk since it was indexed, download it again
+            QiscusAttachmentCache.getInstance().onFileOpenFailed(qiscusComment.getId());
+            file = null;
+        }
         if (file == null) {
             qiscusComment.setDownloading(true);
             QiscusApi.getInstance()
                     .downloadFile(qiscusComment.getAttachmentUri().toString(), qiscusComment.getAttachmentName(),
                             percentage -> qiscusComment.setProgress((int) percentage))
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .compose(bindToLifecycle())
                     .doOnNext(file1 -> {
@@ -686,7 +808,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                 .flatMap(comments -> isValidChainingComments(comments) ?
                         Observable.from(comments).toSortedList(commentComparator) :
                         Observable.just(new ArrayList<QiscusComment>()))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(comments -> {
@@ -731,6 +853,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
     }
 
     private void clearUnreadCount() {
+        QiscusUnreadCounter.getInstance().onRoomRead(room.getId());
         room.setUnreadCount(0);
         room.setLastComment(null);
         Qiscus.getDataStore().addOrUpdate(room);
@@ -758,7 +881,7 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
                 .map(QiscusComment::getUniqueId)
                 .toList()
                 .flatMap(uniqueIds -> QiscusApi.getInstance().deleteMessages(uniqueIds))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .subscribe(deletedComments -> {
@@ -860,8 +983,12 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
 
         void onCommentDeleted(QiscusComment qiscusComment);
 
+        void onCommentsDeleted(List<QiscusComment> qiscusComments);
+
         void refreshComment(QiscusComment qiscusComment);
 
+        void refreshComments(List<QiscusComment> qiscusComments);
+
         void notifyDataChanged();
 
         void updateLastDeliveredComment(long lastDeliveredCommentId);
@@ -882,4 +1009,15 @@ public class QiscusChatPresenter extends QiscusPresenter<QiscusChatPresenter.Vie
 
         void clearCommentsBefore(long timestamp);
     }
+
+    private static class FileToSend {
+        private final File file;
+        private final String caption;
+        private File preparedFile;
+
+        private FileToSend(File file, String caption) {
+            this.file = file;
+            this.caption = caption;
+        }
+    }
 }
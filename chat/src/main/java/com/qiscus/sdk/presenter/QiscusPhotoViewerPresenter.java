@@ -24,16 +24,16 @@ import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
 import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import rx.Observable;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : March 23, 2017
@@ -43,36 +43,67 @@ import rx.schedulers.Schedulers;
  */
 public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewerPresenter.View> {
 
+    private static final int PAGE_SIZE = 20;
+
     private Subscription downloadSubscription;
+    private long roomId;
+    private boolean loadingOlder;
+    private boolean loadingNewer;
+    private boolean reachedOldest;
+    private boolean reachedNewest;
 
     public QiscusPhotoViewerPresenter(View view) {
         super(view);
     }
 
+    /**
+     * @deprecated use {@link #loadQiscusPhotos(QiscusComment)}, it only loads the photos around the selected one
+     */
+    @Deprecated
     public void loadQiscusPhotos(long roomId) {
+        loadQiscusPhotos(roomId, null);
+    }
+
+    /**
+     * Load a window of photos around the selected photo, the rest is loaded page by page
+     * with {@link #loadOlderQiscusPhotos(QiscusComment)} and {@link #loadNewerQiscusPhotos(QiscusComment)}
+     *
+     * @param qiscusComment the selected photo
+     */
+    public void loadQiscusPhotos(QiscusComment qiscusComment) {
+        loadQiscusPhotos(qiscusComment.getRoomId(), qiscusComment);
+    }
+
+    private void loadQiscusPhotos(long roomId, QiscusComment selectedComment) {
         view.showLoading();
-        Qiscus.getDataStore()
-                .getObservableComments(roomId)
-                .map(qiscusComments -> {
-                    List<Pair<QiscusComment, File>> qiscusPhotos = new ArrayList<>();
-                    for (QiscusComment qiscusComment : qiscusComments) {
-                        if (qiscusComment.isImage()) {
-                            File localPath = Qiscus.getDataStore().getLocalPath(qiscusComment.getId());
-                            if (localPath != null) {
-                                qiscusPhotos.add(Pair.create(qiscusComment, localPath));
-                            }
-                        }
-                    }
-                    Collections.reverse(qiscusPhotos);
-                    return qiscusPhotos;
-                })
-                .subscribeOn(Schedulers.io())
+        this.roomId = roomId;
+        reachedOldest = false;
+        reachedNewest = selectedComment == null;
+        Observable.fromCallable(() -> {
+            List<Pair<QiscusComment, File>> qiscusPhotos = Qiscus.getDataStore()
+                    .getOlderLocalMediaThan(selectedComment, roomId, QiscusComment.Type.IMAGE, PAGE_SIZE);
+            Collections.reverse(qiscusPhotos);
+            if (selectedComment != null) {
+                File localPath = Qiscus.getDataStore().getLocalPath(selectedComment.getId());
+                if (localPath != null) {
+                    qiscusPhotos.add(Pair.create(selectedComment, localPath));
+                }
+                qiscusPhotos.addAll(Qiscus.getDataStore()
+                        .getNewerLocalMediaThan(selectedComment, roomId, QiscusComment.Type.IMAGE, PAGE_SIZE));
+            }
+            return qiscusPhotos;
+        })
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
                 .subscribe(qiscusPhotos -> {
                     if (view != null) {
                         view.onLoadQiscusPhotos(qiscusPhotos);
                         view.dismissLoading();
                     }
+                    if (!qiscusPhotos.isEmpty()) {
+                        loadQiscusPhotoCount(qiscusPhotos.get(0).first);
+                    }
                 }, throwable -> {
                     throwable.printStackTrace();
                     if (view != null) {
@@ -83,6 +114,85 @@ public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewe
                 });
     }
 
+    /**
+     * Load the page of photos before the oldest loaded photo, does nothing if a page is being loaded
+     * or there is no older photo
+     *
+     * @param oldestComment the oldest loaded photo
+     */
+    public void loadOlderQiscusPhotos(QiscusComment oldestComment) {
+        if (loadingOlder || reachedOldest) {
+            return;
+        }
+        loadingOlder = true;
+        Observable.fromCallable(() -> {
+            List<Pair<QiscusComment, File>> qiscusPhotos = Qiscus.getDataStore()
+                    .getOlderLocalMediaThan(oldestComment, roomId, QiscusComment.Type.IMAGE, PAGE_SIZE);
+            Collections.reverse(qiscusPhotos);
+            return qiscusPhotos;
+        })
+                .subscribeOn(QiscusSchedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
+                .subscribe(qiscusPhotos -> {
+                    loadingOlder = false;
+                    reachedOldest = qiscusPhotos.isEmpty();
+                    if (view != null && !qiscusPhotos.isEmpty()) {
+                        view.onLoadOlderQiscusPhotos(qiscusPhotos);
+                    }
+                }, throwable -> {
+                    loadingOlder = false;
+                    QiscusErrorLogger.print(throwable);
+                });
+    }
+
+    /**
+     * Load the page of photos after the newest loaded photo, does nothing if a page is being loaded
+     * or there is no newer photo
+     *
+     * @param newestComment the newest loaded photo
+     */
+    public void loadNewerQiscusPhotos(QiscusComment newestComment) {
+        if (loadingNewer || reachedNewest) {
+            return;
+        }
+        loadingNewer = true;
+        Observable.fromCallable(() -> Qiscus.getDataStore()
+                .getNewerLocalMediaThan(newestComment, roomId, QiscusComment.Type.IMAGE, PAGE_SIZE))
+                .subscribeOn(QiscusSchedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
+                .subscribe(qiscusPhotos -> {
+                    loadingNewer = false;
+                    reachedNewest = qiscusPhotos.isEmpty();
+                    if (view != null && !qiscusPhotos.isEmpty()) {
+                        view.onLoadNewerQiscusPhotos(qiscusPhotos);
+                    }
+                }, throwable -> {
+                    loadingNewer = false;
+                    QiscusErrorLogger.print(throwable);
+                });
+    }
+
+    /**
+     * Count the photos of the room, only a window of them is loaded
+     *
+     * @param oldestComment the oldest loaded photo
+     */
+    private void loadQiscusPhotoCount(QiscusComment oldestComment) {
+        Observable.fromCallable(() -> new int[]{
+                Qiscus.getDataStore().getOlderLocalMediaCount(oldestComment, roomId, QiscusComment.Type.IMAGE),
+                Qiscus.getDataStore().getOlderLocalMediaCount(null, roomId, QiscusComment.Type.IMAGE)})
+                .subscribeOn(QiscusSchedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(bindToLifecycle())
+                .subscribe(counts -> {
+                    if (view != null) {
+                        view.onLoadQiscusPhotoCount(oldestComment, counts[0], counts[1]);
+                    }
+                }, QiscusErrorLogger::print);
+    }
+
     public void downloadFile(QiscusComment qiscusComment) {
         if (qiscusComment.isDownloading()) {
             return;
@@ -91,7 +201,7 @@ public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewe
         downloadSubscription = QiscusApi.getInstance()
                 .downloadFile(qiscusComment.getAttachmentUri().toString(), qiscusComment.getAttachmentName(),
                         percentage -> qiscusComment.setProgress((int) percentage))
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .compose(bindToLifecycle())
                 .doOnNext(file1 -> {
@@ -117,6 +227,17 @@ public class QiscusPhotoViewerPresenter extends QiscusPresenter<QiscusPhotoViewe
     public interface View extends QiscusPresenter.View {
         void onLoadQiscusPhotos(List<Pair<QiscusComment, File>> qiscusPhotos);
 
+        void onLoadOlderQiscusPhotos(List<Pair<QiscusComment, File>> qiscusPhotos);
+
+        void onLoadNewerQiscusPhotos(List<Pair<QiscusComment, File>> qiscusPhotos);
+
+        /**
+         * @param qiscusComment the photo the older photos were counted from
+         * @param olderCount    number of photos older than that photo
+         * @param totalCount    number of photos of the room
+         */
+        void onLoadQiscusPhotoCount(QiscusComment qiscusComment, int olderCount, int totalCount);
+
         void onFileDownloaded(Pair<QiscusComment, File> qiscusPhoto);
 
         void closePage();
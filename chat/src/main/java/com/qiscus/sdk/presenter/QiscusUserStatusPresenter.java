@@ -47,6 +47,10 @@ public class QiscusUserStatusPresenter extends QiscusPresenter<QiscusUserStatusP
         if (!users.contains(user)) {
             users.add(user);
             QiscusPusherApi.getInstance().subscribeUserOnlinePresence(user);
+            QiscusUserStatusEvent lastStatus = QiscusPusherApi.getInstance().getLastKnownUserStatus(user);
+            if (lastStatus != null) {
+                view.onUserStatusChanged(user, lastStatus.isOnline(), lastStatus.getLastActive());
+            }
         }
     }
 
@@ -24,6 +24,7 @@ import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.data.model.QiscusDeleteCommentConfig;
 import com.qiscus.sdk.ui.fragment.QiscusBaseChatFragment;
 
@@ -34,7 +35,6 @@ import java.util.List;
 
 import androidx.appcompat.app.AlertDialog;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : April 10, 2018
@@ -78,9 +78,10 @@ public class QiscusChannelActivity extends QiscusGroupChatActivity implements Qi
 
     @Override
     protected void generateSubtitle() {
-        QiscusApi.getInstance().getParticipants(qiscusChatRoom.getUniqueId(), 1, 100,
+        //Only the total of the meta is needed, not the participants
+        QiscusApi.getInstance().getParticipants(qiscusChatRoom.getUniqueId(), 1, 1,
                 null, this)
-                .subscribeOn(Schedulers.io())
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe();
     }
@@ -25,6 +25,7 @@ import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 
 import java.io.File;
 import java.io.Serializable;
@@ -34,7 +35,6 @@ import java.util.List;
 
 import rx.Observable;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : November 24, 2016
@@ -113,7 +113,7 @@ public class QiscusGroupChatActivity extends QiscusChatActivity {
         if (typing) {
             Observable.from(qiscusChatRoom.getMember())
                     .filter(qiscusRoomMember -> qiscusRoomMember.getEmail().equals(user))
-                    .subscribeOn(Schedulers.newThread())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .compose(bindToLifecycle())
                     .subscribe(qiscusRoomMember -> tvSubtitle.setText(getString(R.string.qiscus_group_member_typing,
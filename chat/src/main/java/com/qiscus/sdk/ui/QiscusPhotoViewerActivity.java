@@ -65,6 +65,7 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
 
     private static final String EXTRA_COMMENT = "extra_comment";
     private static final String KEY_POSITION = "last_position";
+    private static final int PREFETCH_DISTANCE = 5;
 
     private Toolbar toolbar;
     private TextView tvTitle;
@@ -79,6 +80,8 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
     private QiscusComment qiscusComment;
     private int position = -1;
     private List<Pair<QiscusComment, File>> qiscusPhotos;
+    private int olderPhotoCount;
+    private int totalPhotoCount;
     private QiscusPhotoPagerAdapter adapter;
 
     private boolean mediaDeleted;
@@ -135,7 +138,7 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
 
         resolveData(savedInstanceState);
 
-        presenter.loadQiscusPhotos(qiscusComment.getRoomId());
+        presenter.loadQiscusPhotos(qiscusComment);
 
         if (!Qiscus.getChatConfig().isEnableShareMedia()) {
             shareButton.setVisibility(View.GONE);
@@ -258,6 +261,44 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
         initPhotos();
     }
 
+    @Override
+    public void onLoadOlderQiscusPhotos(List<Pair<QiscusComment, File>> qiscusPhotos) {
+        List<QiscusPhotoFragment> fragments = new ArrayList<>(qiscusPhotos.size());
+        for (Pair<QiscusComment, File> qiscusPhoto : qiscusPhotos) {
+            fragments.add(QiscusPhotoFragment.newInstance(qiscusPhoto.second));
+        }
+        this.qiscusPhotos.addAll(0, qiscusPhotos);
+        olderPhotoCount = Math.max(0, olderPhotoCount - qiscusPhotos.size());
+        adapter.getFragments().addAll(0, fragments);
+        position += qiscusPhotos.size();
+        adapter.notifyDataSetChanged();
+        viewPager.setCurrentItem(position, false);
+        bindInfo();
+    }
+
+    @Override
+    public void onLoadNewerQiscusPhotos(List<Pair<QiscusComment, File>> qiscusPhotos) {
+        for (Pair<QiscusComment, File> qiscusPhoto : qiscusPhotos) {
+            adapter.getFragments().add(QiscusPhotoFragment.newInstance(qiscusPhoto.second));
+        }
+        this.qiscusPhotos.addAll(qiscusPhotos);
+        adapter.notifyDataSetChanged();
+        bindInfo();
+    }
+
+    @Override
+    public void onLoadQiscusPhotoCount(QiscusComment qiscusComment, int olderCount, int totalCount) {
+        //Older pages may have been loaded before the count arrived
+        for (int i = 0; i < qiscusPhotos.size(); i++) {
+            if (qiscusPhotos.get(i).first.equals(qiscusComment)) {
+                olderPhotoCount = Math.max(0, olderCount - i);
+                totalPhotoCount = totalCount;
+                bindInfo();
+                return;
+            }
+        }
+    }
+
     @Override
     public void onFileDownloaded(Pair<QiscusComment, File> qiscusPhoto) {
         for (int i = 0; i < qiscusPhotos.size(); i++) {
@@ -311,7 +352,7 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
         viewPager.setAdapter(adapter);
         viewPager.setCurrentItem(position);
         bindInfo();
-
+        loadNeighbors();
     }
 
     @Override
@@ -323,13 +364,30 @@ public class QiscusPhotoViewerActivity extends RxAppCompatActivity implements Qi
     public void onPageSelected(int position) {
         this.position = position;
         bindInfo();
+        loadNeighbors();
+    }
+
+    /**
+     * Photos are loaded page by page, load the next page when the user gets close to the loaded edge
+     */
+    private void loadNeighbors() {
+        if (qiscusPhotos == null || qiscusPhotos.isEmpty()) {
+            return;
+        }
+        if (position < PREFETCH_DISTANCE) {
+            presenter.loadOlderQiscusPhotos(qiscusPhotos.get(0).first);
+        }
+        if (position >= qiscusPhotos.size() - PREFETCH_DISTANCE) {
+            presenter.loadNewerQiscusPhotos(qiscusPhotos.get(qiscusPhotos.size() - 1).first);
+        }
     }
 
     private void bindInfo() {
         Pair<QiscusComment, File> qiscusPhoto = qiscusPhotos.get(position);
         senderName.setText(qiscusPhoto.first.getSender());
         date.setText(QiscusDateUtil.toFullDateFormat(qiscusPhoto.first.getTime()));
-        tvTitle.setText(getString(R.string.qiscus_photo_viewer_title, (position + 1), qiscusPhotos.size()));
+        tvTitle.setText(getString(R.string.qiscus_photo_viewer_title, olderPhotoCount + position + 1,
+                Math.max(totalPhotoCount, olderPhotoCount + qiscusPhotos.size())));
     }
 
     @Override
@@ -28,14 +28,15 @@ import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+import com.qiscus.sdk.chat.core.data.remote.QiscusRoomMemberManager;
 import com.qiscus.sdk.chat.core.util.QiscusDateUtil;
 import com.qiscus.sdk.ui.adapter.viewholder.QiscusBaseMessageViewHolder;
 import com.qiscus.sdk.ui.view.QiscusCarouselItemView;
 import com.qiscus.sdk.ui.view.QiscusChatButtonView;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -111,7 +112,7 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
             }
         });
         qiscusAccount = Qiscus.getQiscusAccount();
-        members = new HashMap<>();
+        members = QiscusRoomMemberManager.getInstance().newMemberMap();
     }
 
     private void checkChaining(int position) {
@@ -152,11 +153,16 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
         updateMember();
     }
 
+    /**
+     * Members are resolved by email when a message needs them, copying every member of big rooms is too slow
+     */
     private void updateMember() {
-        members.clear();
-        for (QiscusRoomMember roomMember : qiscusChatRoom.getMember()) {
-            members.put(roomMember.getEmail(), roomMember);
+        members = QiscusRoomMemberManager.getInstance().newMemberMap();
+        List<E> es = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            es.add(data.get(i));
         }
+        prefetchMembers(es);
     }
 
     protected abstract Class<E> getItemClass();
@@ -297,12 +303,14 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
     public int add(E e) {
         int i = data.add(e);
         notifyItemInserted(i);
+        prefetchMembers(Collections.singletonList(e));
         return i;
     }
 
     public void add(final List<E> es) {
         data.addAll(es);
         notifyDataSetChanged();
+        prefetchMembers(es);
     }
 
     public void addOrUpdate(E e) {
@@ -313,12 +321,14 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
                 data.updateItemAt(i, e);
             }
             notifyItemChanged(i);
+            prefetchMembers(Collections.singletonList(e));
         } else {
             add(e);
         }
     }
 
     public void addOrUpdate(final List<E> es) {
+        prefetchMembers(es);
         for (E e : es) {
             int i = findPosition(e);
             if (i >= 0) {
@@ -345,12 +355,17 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
     }
 
     public void update(final List<E> es) {
-        for (E e : es) {
-            int i = findPosition(e);
-            if (i >= 0 && !e.areContentsTheSame(data.get(i))) {
-                e.setSelected(data.get(i).isSelected());
-                data.updateItemAt(i, e);
+        data.beginBatchedUpdates();
+        try {
+            for (E e : es) {
+                int i = findPosition(e);
+                if (i >= 0 && !e.areContentsTheSame(data.get(i))) {
+                    e.setSelected(data.get(i).isSelected());
+                    data.updateItemAt(i, e);
+                }
             }
+        } finally {
+            data.endBatchedUpdates();
         }
         notifyDataSetChanged();
     }
@@ -412,6 +427,14 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
         data.clear();
         data.addAll(es);
         notifyDataSetChanged();
+        prefetchMembers(es);
+    }
+
+    /**
+     * Members of the loaded comments are resolved in the background, binding never reads the database
+     */
+    private void prefetchMembers(List<E> es) {
+        QiscusRoomMemberManager.getInstance().prefetchMembers(members, es, this::notifyDataSetChanged);
     }
 
     public void remove(int position) {
@@ -426,6 +449,21 @@ public abstract class QiscusBaseChatAdapter<E extends QiscusComment, H extends Q
         remove(position);
     }
 
+    public void remove(final List<E> es) {
+        data.beginBatchedUpdates();
+        try {
+            for (E e : es) {
+                int position = findPosition(e);
+                if (position >= 0) {
+                    data.removeItemAt(position);
+                }
+            }
+        } finally {
+            data.endBatchedUpdates();
+        }
+        notifyDataSetChanged();
+    }
+
     public void clear() {
         data.clear();
     }
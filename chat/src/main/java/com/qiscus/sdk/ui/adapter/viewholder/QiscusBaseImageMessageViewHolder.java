@@ -250,7 +250,7 @@ public abstract class QiscusBaseImageMessageViewHolder extends QiscusBaseMessage
         Nirmana.getInstance().get()
                 .setDefaultRequestOptions(new RequestOptions()
                         .dontAnimate()
-                        .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
                         .placeholder(R.drawable.qiscus_image_placeholder)
                         .error(R.drawable.qiscus_image_placeholder))
                 .load(QiscusImageUtil.generateBlurryThumbnailUrl(qiscusComment.getAttachmentUri().toString()))
@@ -1223,6 +1223,12 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         }
     }
 
+    public void sendFiles(List<File> files, Map<String, String> captions) {
+        for (File file : files) {
+            sendFile(file, captions == null ? null : captions.get(file.getAbsolutePath()));
+        }
+    }
+
     public void sendFile(File file, String caption) {
         qiscusChatPresenter.sendFile(file, caption);
     }
@@ -1451,11 +1457,21 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
         chatAdapter.notifyDataSetChanged();
     }
 
+    @Override
+    public void onCommentsDeleted(List<QiscusComment> qiscusComments) {
+        chatAdapter.remove(qiscusComments);
+    }
+
     @Override
     public void refreshComment(QiscusComment qiscusComment) {
         chatAdapter.update(qiscusComment);
     }
 
+    @Override
+    public void refreshComments(List<QiscusComment> qiscusComments) {
+        chatAdapter.update(qiscusComments);
+    }
+
     @Override
     public void notifyDataChanged() {
         chatAdapter.notifyDataSetChanged();
@@ -1658,9 +1674,11 @@ public abstract class QiscusBaseChatFragment<T extends QiscusBaseChatAdapter> ex
                     data.getSerializableExtra(QiscusSendPhotoConfirmationActivity.EXTRA_CAPTIONS);
             List<QiscusPhoto> qiscusPhotos = data.getParcelableArrayListExtra(QiscusSendPhotoConfirmationActivity.EXTRA_QISCUS_PHOTOS);
             if (qiscusPhotos != null) {
+                List<File> photoFiles = new ArrayList<>(qiscusPhotos.size());
                 for (QiscusPhoto qiscusPhoto : qiscusPhotos) {
-                    sendFile(qiscusPhoto.getPhotoFile(), captions.get(qiscusPhoto.getPhotoFile().getAbsolutePath()));
+                    photoFiles.add(qiscusPhoto.getPhotoFile());
                 }
+                sendFiles(photoFiles, captions);
             } else {
                 showError(getString(R.string.qiscus_chat_error_failed_read_picture));
             }
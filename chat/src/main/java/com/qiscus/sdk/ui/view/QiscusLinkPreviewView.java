@@ -31,11 +31,11 @@ import com.qiscus.nirmana.Nirmana;
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.data.remote.QiscusUrlScraper;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.util.QiscusColorUtil;
 import com.schinizer.rxunfurl.model.PreviewData;
 
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * Created on : December 09, 2016
@@ -135,7 +135,7 @@ public class QiscusLinkPreviewView extends LinearLayout {
         if (previewData == null || !previewData.getUrl().equals(url)) {
             QiscusUrlScraper.getInstance()
                     .generatePreviewData(url)
-                    .subscribeOn(Schedulers.io())
+                    .subscribeOn(QiscusSchedulers.io())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(previewData -> {
                         this.previewData = previewData;
@@ -37,9 +37,11 @@ import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.data.model.QiscusAccount;
 import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
 import com.qiscus.sdk.data.model.QiscusMentionConfig;
 import com.qiscus.sdk.ui.adapter.QiscusMentionSuggestionBuilder;
 import com.qiscus.sdk.util.QiscusConverterUtil;
+import com.qiscus.sdk.util.QiscusMentionIndex;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,11 +55,14 @@ import java.util.List;
  */
 public class QiscusMentionSuggestionView extends FrameLayout implements QueryTokenReceiver, SuggestionsVisibilityManager {
     private static final String BUCKET = "member-memory";
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_INLINE_INDEX_SIZE = 200;
 
     private MentionsEditText editText;
     private ListView listView;
 
     private List<QiscusRoomMember> members;
+    private volatile QiscusMentionIndex mentionIndex;
     private SuggestionsAdapter adapter;
 
     private QiscusAccount qiscusAccount = Qiscus.getQiscusAccount();
@@ -83,6 +88,20 @@ public class QiscusMentionSuggestionView extends FrameLayout implements QueryTok
 
     public void setRoomMembers(List<QiscusRoomMember> members) {
         this.members = members;
+        if (members == null) {
+            mentionIndex = null;
+        } else if (members.size() <= MAX_INLINE_INDEX_SIZE) {
+            mentionIndex = new QiscusMentionIndex(members, qiscusAccount.getEmail());
+        } else {
+            //Big rooms keep the previous index until the new one is ready
+            List<QiscusRoomMember> roster = new ArrayList<>(members);
+            QiscusAndroidUtil.runOnBackgroundThread(() -> {
+                QiscusMentionIndex index = new QiscusMentionIndex(roster, qiscusAccount.getEmail());
+                if (this.members == members) {
+                    mentionIndex = index;
+                }
+            });
+        }
     }
 
     private void setupEditText() {
@@ -106,6 +125,9 @@ public class QiscusMentionSuggestionView extends FrameLayout implements QueryTok
         // Set the item click listener
         listView.setOnItemClickListener((parent, view, position, id) -> {
             Mentionable mention = (Mentionable) adapter.getItem(position);
+            if (mention instanceof QiscusRoomMember) {
+                QiscusMentionIndex.onMentioned(((QiscusRoomMember) mention).getEmail());
+            }
             if (editText != null) {
                 editText.insertMention(mention);
                 adapter.clear();
@@ -127,20 +149,11 @@ public class QiscusMentionSuggestionView extends FrameLayout implements QueryTok
     }
 
     private List<QiscusRoomMember> getSuggestions(QueryToken queryToken) {
-        ArrayList<QiscusRoomMember> suggestions = new ArrayList<>();
-        String namePrefix = queryToken.getKeywords().toLowerCase();
-        if (members != null) {
-            for (QiscusRoomMember suggestion : members) {
-                if (qiscusAccount.getEmail().equals(suggestion.getEmail())) {
-                    continue;
-                }
-
-                if (suggestion.getUsername().toLowerCase().startsWith(namePrefix)) {
-                    suggestions.add(suggestion);
-                }
-            }
+        QiscusMentionIndex index = mentionIndex;
+        if (index == null) {
+            return new ArrayList<>();
         }
-        return suggestions;
+        return index.query(queryToken.getKeywords(), MAX_SUGGESTIONS);
     }
 
     @Override
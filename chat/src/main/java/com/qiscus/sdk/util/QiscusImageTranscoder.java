@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+import androidx.core.util.Pair;
+
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.data.model.QiscusImageCompressionConfig;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import rx.Observable;
+
+/**
+ * Memory bounded image compression. An image is decoded exactly once, already sampled and scaled
+ * to the configured size, and the decoded frame is encoded straight to the output stream. Decoded
+ * frames are pooled and reused by the next decode when the platform allows it.
+ */
+public enum QiscusImageTranscoder {
+    INSTANCE;
+
+    private static final String TAG = "QiscusImageTranscoder";
+    private static final int MAX_POOL_SIZE = 2;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final List<Bitmap> bitmapPool = new ArrayList<>(MAX_POOL_SIZE);
+
+    public static QiscusImageTranscoder getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decode the image scaled down to fit the given bounds, and rotated according to its exif
+     * orientation.
+     *
+     * @param filePath  path of the image
+     * @param maxWidth  maximum width of the result
+     * @param maxHeight maximum height of the result
+     * @return decoded bitmap, or null if the file can not be decoded
+     */
+    @Nullable
+    public Bitmap decode(String filePath, int maxWidth, int maxHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int rotation = readRotation(filePath);
+        boolean swapSides = rotation == 90 || rotation == 270;
+        int uprightWidth = swapSides ? options.outHeight : options.outWidth;
+        int uprightHeight = swapSides ? options.outWidth : options.outHeight;
+
+        float scale = Math.min(1f, Math.min(maxWidth / (float) uprightWidth, maxHeight / (float) uprightHeight));
+        int targetWidth = Math.max(1, Math.round((swapSides ? uprightHeight : uprightWidth) * scale));
+        int targetHeight = Math.max(1, Math.round((swapSides ? uprightWidth : uprightHeight) * scale));
+
+        options.inSampleSize = calculatePowerOfTwoSampleSize(options.outWidth, options.outHeight,
+                targetWidth, targetHeight);
+        int sampledWidth = options.outWidth / options.inSampleSize;
+        if (sampledWidth > targetWidth) {
+            //Let the decoder scale the sampled image down to the target size in the same pass
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = targetWidth;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        Bitmap bitmap = decodeReusingPool(filePath, options, targetWidth * targetHeight * BYTES_PER_PIXEL);
+        if (bitmap == null) {
+            return null;
+        }
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+
+        if (rotation != 0) {
+            Bitmap rotated = rotate(bitmap, rotation);
+            release(bitmap);
+            bitmap = rotated;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Compress the image using the current {@link QiscusImageCompressionConfig} and write it to the stream
+     *
+     * @param imageFile the image
+     * @param out       destination stream, it is not closed by this method
+     * @return true if the image was written
+     */
+    public boolean transcode(File imageFile, OutputStream out) {
+        QiscusImageCompressionConfig config = QiscusCore.getChatConfig().getQiscusImageCompressionConfig();
+        long startTime = System.nanoTime();
+        Bitmap bitmap;
+        try {
+            bitmap = decode(imageFile.getPath(), (int) config.getMaxWidth(), (int) config.getMaxHeight());
+        } catch (OutOfMemoryError e) {
+            QiscusErrorLogger.print(TAG, "Out of memory while decoding " + imageFile.getName());
+            return false;
+        }
+
+        if (bitmap == null) {
+            return false;
+        }
+
+        try {
+            boolean written = bitmap.compress(config.getFormat(), config.getQuality(), out);
+            QiscusLogger.print(TAG, "Transcoded " + imageFile.getName() + " to " + bitmap.getWidth() + "x"
+                    + bitmap.getHeight() + " in " + (System.nanoTime() - startTime) / 1000000L + " ms");
+            return written;
+        } finally {
+            release(bitmap);
+        }
+    }
+
+    /**
+     * Compress the image into a new file in the qiscus images directory
+     *
+     * @param imageFile the image
+     * @return compressed image, or null if the image can not be decoded
+     */
+    @Nullable
+    public File compressImage(File imageFile) {
+        String extension = QiscusCore.getChatConfig().getQiscusImageCompressionConfig().getFormat()
+                == Bitmap.CompressFormat.WEBP ? ".webp" : ".jpg";
+        File compressedImage = new File(QiscusFileUtil.generateFilePath(imageFile.getName(), extension));
+
+        boolean written = false;
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(compressedImage);
+            written = transcode(imageFile, out);
+        } catch (IOException e) {
+            QiscusErrorLogger.print(e);
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } catch (IOException ignored) {
+                //Do nothing
+            }
+        }
+
+        if (!written) {
+            compressedImage.delete();
+            return null;
+        }
+
+        QiscusFileUtil.notifySystem(compressedImage);
+        return compressedImage;
+    }
+
+    /**
+     * Compress several images in parallel. The number of images decoded at the same time is limited
+     * so that their frames fit in a quarter of the heap.
+     *
+     * @param imageFiles the images
+     * @return compressed images in the same order, with null for the images that can not be decoded
+     */
+    public Observable<List<File>> compressImages(List<File> imageFiles) {
+        return Observable.range(0, imageFiles.size())
+                .flatMap(index -> Observable.fromCallable(() -> Pair.create(index, compressImage(imageFiles.get(index))))
+                        .subscribeOn(QiscusSchedulers.cpu()), getMaxParallelDecodes())
+                .toSortedList((lhs, rhs) -> lhs.first.compareTo(rhs.first))
+                .map(results -> {
+                    List<File> compressedImages = new ArrayList<>(results.size());
+                    for (Pair<Integer, File> result : results) {
+                        compressedImages.add(result.second);
+                    }
+                    return compressedImages;
+                });
+    }
+
+    public int getMaxParallelDecodes() {
+        QiscusImageCompressionConfig config = QiscusCore.getChatConfig().getQiscusImageCompressionConfig();
+        //One decoded frame plus one rotated copy per image
+        long bytesPerImage = 2L * (long) config.getMaxWidth() * (long) config.getMaxHeight() * BYTES_PER_PIXEL;
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        int parallel = (int) Math.max(1, budget / Math.max(1, bytesPerImage));
+        return Math.min(parallel, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Largest power of two sample size that still keeps the image at least as big as the target
+     */
+    public static int calculatePowerOfTwoSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Read rotation from the exif headers only, the image itself is not decoded
+     *
+     * @param filePath path of the image
+     * @return rotation in degrees
+     */
+    public static int readRotation(String filePath) {
+        try {
+            ExifInterface exif = new ExifInterface(filePath);
+            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Nullable
+    private Bitmap decodeReusingPool(String filePath, BitmapFactory.Options options, int byteCount) {
+        Bitmap pooled = acquire(byteCount);
+        options.inBitmap = pooled;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(filePath, options);
+        } catch (IllegalArgumentException e) {
+            //The pooled bitmap can not hold this image, decode into a new one
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(filePath, options);
+        }
+
+        if (pooled != null && bitmap != pooled) {
+            release(pooled);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Rotate by a multiple of 90 degrees into a pooled bitmap resized to the rotated frame, so a rotation
+     * does not allocate a new frame once the pool is warm
+     */
+    private Bitmap rotate(Bitmap bitmap, int rotation) {
+        boolean swapSides = rotation == 90 || rotation == 270;
+        int width = swapSides ? bitmap.getHeight() : bitmap.getWidth();
+        int height = swapSides ? bitmap.getWidth() : bitmap.getHeight();
+
+        Bitmap rotated = acquire(width * height * BYTES_PER_PIXEL);
+        if (rotated != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            rotated.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            rotated = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        rotated.setDensity(Bitmap.DENSITY_NONE);
+
+        Matrix matrix = new Matrix();
+        matrix.setRotate(rotation);
+        RectF bounds = new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        //Quarter turns map pixels one to one, no filtering needed
+        new Canvas(rotated).drawBitmap(bitmap, matrix, null);
+        return rotated;
+    }
+
+    @Nullable
+    private Bitmap acquire(int byteCount) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return null;
+        }
+
+        synchronized (bitmapPool) {
+            Bitmap candidate = null;
+            for (Bitmap bitmap : bitmapPool) {
+                if (bitmap.getAllocationByteCount() >= byteCount
+                        && (candidate == null || bitmap.getAllocationByteCount() < candidate.getAllocationByteCount())) {
+                    candidate = bitmap;
+                }
+            }
+            if (candidate != null) {
+                bitmapPool.remove(candidate);
+            }
+            return candidate;
+        }
+    }
+
+    private void release(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap.isMutable() && !bitmap.isRecycled()) {
+            synchronized (bitmapPool) {
+                if (bitmapPool.size() < MAX_POOL_SIZE) {
+                    bitmapPool.add(bitmap);
+                    return;
+                }
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * Drop all pooled bitmaps, e.g when the system is low on memory
+     */
+    public void clearPool() {
+        synchronized (bitmapPool) {
+            for (Bitmap bitmap : bitmapPool) {
+                bitmap.recycle();
+            }
+            bitmapPool.clear();
+        }
+    }
+}
@@ -20,25 +20,25 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.media.ExifInterface;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Environment;
 
+import com.qiscus.nirmana.Nirmana;
 import com.qiscus.sdk.chat.core.QiscusCore;
 import com.qiscus.sdk.chat.core.R;
 import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
+import com.qiscus.sdk.chat.core.data.model.QiscusComment;
+import com.qiscus.sdk.chat.core.data.model.QiscusImageCompressionConfig;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
 import com.qiscus.sdk.chat.core.util.QiscusFileUtil;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -51,134 +51,18 @@ public final class QiscusImageUtil {
 
     public static Bitmap getScaledBitmap(Uri imageUri) {
         String filePath = QiscusFileUtil.getRealPathFromURI(imageUri);
-        Bitmap scaledBitmap = null;
-
-        BitmapFactory.Options options = new BitmapFactory.Options();
-
-        //by setting this field as true, the actual bitmap pixels are not loaded in the memory. Just the bounds are loaded. If
-        //you try the use the bitmap here, you will get null.
-        options.inJustDecodeBounds = true;
-        Bitmap bmp = BitmapFactory.decodeFile(filePath, options);
-
-        int actualHeight = options.outHeight;
-        int actualWidth = options.outWidth;
-
-        if (actualWidth < 0 || actualHeight < 0) {
-            Bitmap bitmap2 = BitmapFactory.decodeFile(filePath);
-            actualWidth = bitmap2.getWidth();
-            actualHeight = bitmap2.getHeight();
-        }
-
-        //max Height and width values of the compressed image is taken as 1440x900
-        float maxHeight = QiscusCore.getChatConfig().getQiscusImageCompressionConfig().getMaxHeight();
-        float maxWidth = QiscusCore.getChatConfig().getQiscusImageCompressionConfig().getMaxWidth();
-        float imgRatio = actualWidth / actualHeight;
-        float maxRatio = maxWidth / maxHeight;
-
-        //width and height values are set maintaining the aspect ratio of the image
-        if (actualHeight > maxHeight || actualWidth > maxWidth) {
-            if (imgRatio < maxRatio) {
-                imgRatio = maxHeight / actualHeight;
-                actualWidth = (int) (imgRatio * actualWidth);
-                actualHeight = (int) maxHeight;
-            } else if (imgRatio > maxRatio) {
-                imgRatio = maxWidth / actualWidth;
-                actualHeight = (int) (imgRatio * actualHeight);
-                actualWidth = (int) maxWidth;
-            } else {
-                actualHeight = (int) maxHeight;
-                actualWidth = (int) maxWidth;
-
-            }
-        }
-
-        //setting inSampleSize value allows to load a scaled down version of the original image
-        options.inSampleSize = calculateInSampleSize(options, actualWidth, actualHeight);
-
-        //inJustDecodeBounds set to false to load the actual bitmap
-        options.inJustDecodeBounds = false;
-
-        //this options allow android to claim the bitmap memory if it runs low on memory
-        options.inPurgeable = true;
-        options.inInputShareable = true;
-        options.inTempStorage = new byte[16 * 1024];
-
-        try {
-            //load the bitmap from its path
-            bmp = BitmapFactory.decodeFile(filePath, options);
-        } catch (OutOfMemoryError exception) {
-            exception.printStackTrace();
-
-        }
-        try {
-            scaledBitmap = Bitmap.createBitmap(actualWidth, actualHeight, Bitmap.Config.ARGB_8888);
-        } catch (OutOfMemoryError exception) {
-            exception.printStackTrace();
-        }
-
-        float ratioX = actualWidth / (float) options.outWidth;
-        float ratioY = actualHeight / (float) options.outHeight;
-        float middleX = actualWidth / 2.0f;
-        float middleY = actualHeight / 2.0f;
-
-        Matrix scaleMatrix = new Matrix();
-        scaleMatrix.setScale(ratioX, ratioY, middleX, middleY);
-
-        Canvas canvas = new Canvas(scaledBitmap);
-        canvas.setMatrix(scaleMatrix);
-        canvas.drawBitmap(bmp, middleX - bmp.getWidth() / 2, middleY - bmp.getHeight() / 2, new Paint(Paint.FILTER_BITMAP_FLAG));
-
-        //check the rotation of the image and display it properly
-        ExifInterface exif;
-        try {
-            exif = new ExifInterface(filePath);
-
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
-            Matrix matrix = new Matrix();
-            if (orientation == 6) {
-                matrix.postRotate(90);
-            } else if (orientation == 3) {
-                matrix.postRotate(180);
-            } else if (orientation == 8) {
-                matrix.postRotate(270);
-            }
-            scaledBitmap = Bitmap.createBitmap(scaledBitmap, 0, 0,
-                    scaledBitmap.getWidth(), scaledBitmap.getHeight(), matrix,
-                    true);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return scaledBitmap;
+        QiscusImageCompressionConfig config = QiscusCore.getChatConfig().getQiscusImageCompressionConfig();
+        return QiscusImageTranscoder.getInstance().decode(filePath, (int) config.getMaxWidth(), (int) config.getMaxHeight());
     }
 
+    /**
+     * Compress the image using the current {@link QiscusImageCompressionConfig}
+     *
+     * @param imageFile the image
+     * @return compressed image, or null if the image can not be decoded
+     */
     public static File compressImage(File imageFile) {
-
-        FileOutputStream out = null;
-        String filename = QiscusFileUtil.generateFilePath(imageFile.getName(), ".jpg");
-        try {
-            out = new FileOutputStream(filename);
-
-            //write the compressed bitmap at the destination specified by filename.
-            QiscusImageUtil.getScaledBitmap(Uri.fromFile(imageFile)).compress(Bitmap.CompressFormat.JPEG,
-                    QiscusCore.getChatConfig().getQiscusImageCompressionConfig().getQuality(), out);
-
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (out != null) {
-                    out.close();
-                }
-            } catch (IOException ignored) {
-                //Do nothing
-            }
-        }
-
-        File compressedImage = new File(filename);
-        QiscusFileUtil.notifySystem(compressedImage);
-
-        return compressedImage;
+        return QiscusImageTranscoder.getInstance().compressImage(imageFile);
     }
 
     public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
@@ -280,6 +164,31 @@ public final class QiscusImageUtil {
         return output;
     }
 
+    /**
+     * Download the blurry thumbnail of an image comment into the image loader disk cache, must be
+     * called on a background thread
+     *
+     * @param qiscusComment image comment
+     * @return size of the downloaded thumbnail in bytes, 0 if it could not be downloaded
+     */
+    public static long prefetchBlurryThumbnail(QiscusComment qiscusComment) {
+        if (!qiscusComment.isImage() || qiscusComment.getAttachmentUri() == null) {
+            return 0;
+        }
+
+        try {
+            File thumbnail = Nirmana.getInstance().get()
+                    .downloadOnly()
+                    .load(generateBlurryThumbnailUrl(qiscusComment.getAttachmentUri().toString()))
+                    .submit()
+                    .get();
+            return thumbnail == null ? 0 : thumbnail.length();
+        } catch (Exception e) {
+            QiscusErrorLogger.print("QiscusImageUtil", e);
+            return 0;
+        }
+    }
+
     public static String generateBlurryThumbnailUrl(String imageUrl) {
         return generateBlurryThumbnailUrl(imageUrl, 320, 320, 300);
     }
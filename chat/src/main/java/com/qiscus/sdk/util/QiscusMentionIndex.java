@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import androidx.annotation.NonNull;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix index over the usernames of room members, for mention suggestions. Keys are kept in a
+ * sorted array so every keystroke is a binary search, and a query that extends the previous one only
+ * searches the range the previous one matched. Members that were mentioned recently come first.
+ * <p>
+ * An index is immutable once built, build a new one off the main thread when the members change.
+ */
+public class QiscusMentionIndex {
+    private static final int MAX_RECENT_MENTIONS = 64;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Map<String, Long> recentMentions = new ConcurrentHashMap<>();
+
+    private final String[] keys;
+    private final QiscusRoomMember[] keyMembers;
+    private final Map<String, QiscusRoomMember> members;
+
+    private String lastQuery;
+    private int lastFrom;
+    private int lastTo;
+
+    /**
+     * @param roomMembers   members of the room
+     * @param excludedEmail email that should never be suggested, usually the current user
+     */
+    public QiscusMentionIndex(List<QiscusRoomMember> roomMembers, String excludedEmail) {
+        List<Entry> entries = new ArrayList<>(roomMembers.size());
+        members = new HashMap<>();
+        for (QiscusRoomMember member : roomMembers) {
+            if (member.getEmail() == null || member.getEmail().equals(excludedEmail)) {
+                continue;
+            }
+            if (member.getUsername() != null) {
+                members.put(member.getEmail(), member);
+                entries.add(new Entry(normalize(member.getUsername()), member));
+            }
+        }
+        Collections.sort(entries, (entry1, entry2) -> entry1.key.compareTo(entry2.key));
+
+        keys = new String[entries.size()];
+        keyMembers = new QiscusRoomMember[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i).key;
+            keyMembers[i] = entries.get(i).member;
+        }
+    }
+
+    /**
+     * Remember that a member was mentioned, so it is ranked first next time
+     *
+     * @param email email of the member
+     */
+    public static void onMentioned(String email) {
+        if (email == null) {
+            return;
+        }
+
+        recentMentions.put(email, System.currentTimeMillis());
+        if (recentMentions.size() > MAX_RECENT_MENTIONS) {
+            String oldest = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : recentMentions.entrySet()) {
+                if (entry.getValue() < oldestTime) {
+                    oldest = entry.getKey();
+                    oldestTime = entry.getValue();
+                }
+            }
+            recentMentions.remove(oldest);
+        }
+    }
+
+    /**
+     * Find members whose username starts with the query, ignoring case and accents
+     *
+     * @param query the typed text after @
+     * @param limit max number of members
+     * @return matching members, recently mentioned first and then by name
+     */
+    @NonNull
+    public synchronized List<QiscusRoomMember> query(String query, int limit) {
+        String prefix = normalize(query);
+        int from = 0;
+        int to = keys.length;
+        if (lastQuery != null && prefix.startsWith(lastQuery)) {
+            from = lastFrom;
+            to = lastTo;
+        }
+        from = lowerBound(prefix, from, to);
+        to = lowerBound(prefix + Character.MAX_VALUE, from, to);
+        lastQuery = prefix;
+        lastFrom = from;
+        lastTo = to;
+
+        Set<QiscusRoomMember> suggestions = new LinkedHashSet<>();
+        for (QiscusRoomMember member : getRecentlyMentioned(prefix)) {
+            if (suggestions.size() >= limit) {
+                break;
+            }
+            suggestions.add(member);
+        }
+        for (int i = from; i < to && suggestions.size() < limit; i++) {
+            suggestions.add(keyMembers[i]);
+        }
+        return new ArrayList<>(suggestions);
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    private List<QiscusRoomMember> getRecentlyMentioned(String prefix) {
+        List<Map.Entry<String, Long>> mentions = new ArrayList<>(recentMentions.entrySet());
+        Collections.sort(mentions, (mention1, mention2) -> mention2.getValue().compareTo(mention1.getValue()));
+
+        List<QiscusRoomMember> recentMembers = new ArrayList<>();
+        for (Map.Entry<String, Long> mention : mentions) {
+            QiscusRoomMember member = members.get(mention.getKey());
+            if (member != null && normalize(member.getUsername()).startsWith(prefix)) {
+                recentMembers.add(member);
+            }
+        }
+        return recentMembers;
+    }
+
+    private int lowerBound(String key, int from, int to) {
+        int index = Arrays.binarySearch(keys, from, to, key);
+        if (index >= 0) {
+            //Equal keys may repeat, move to the first one
+            while (index > from && keys[index - 1].equals(key)) {
+                index--;
+            }
+            return index;
+        }
+        return -index - 1;
+    }
+
+    private static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.US);
+    }
+
+    private static class Entry {
+        private final String key;
+        private final QiscusRoomMember member;
+
+        private Entry(String key, QiscusRoomMember member) {
+            this.key = key;
+            this.member = member;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.transition.Transition;
+import com.qiscus.nirmana.Nirmana;
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
+import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+import com.qiscus.sdk.chat.core.util.QiscusErrorLogger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size bounded cache of notification large icons. Avatars are loaded and rounded once per url and
+ * size, and the default big icon is decoded only once, so a burst of notifications from the same
+ * room does not load the same avatar again and again.
+ */
+public enum QiscusNotificationIconCache {
+    INSTANCE;
+
+    public static final int DEFAULT_ICON_SIZE = 192;
+    private static final int MAX_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private final LruCache<String, Bitmap> icons;
+    private final Map<String, List<Callback>> pendingLoads;
+
+    QiscusNotificationIconCache() {
+        icons = new LruCache<String, Bitmap>(MAX_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        pendingLoads = new HashMap<>();
+    }
+
+    public static QiscusNotificationIconCache getInstance() {
+        return INSTANCE;
+    }
+
+    @Nullable
+    public Bitmap get(String avatarUrl, int size) {
+        return icons.get(generateKey(avatarUrl, size));
+    }
+
+    /**
+     * @return the configured notification big icon, decoded once
+     */
+    public Bitmap getDefaultIcon(Context context) {
+        int resId = Qiscus.getChatConfig().getNotificationBigIcon();
+        String key = "res:" + resId;
+        Bitmap icon = icons.get(key);
+        if (icon == null) {
+            icon = BitmapFactory.decodeResource(context.getResources(), resId);
+            if (icon != null) {
+                icons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Get the rounded avatar icon, loading it if it is not cached yet. Concurrent loads of the same
+     * avatar are merged into one request. If the avatar can not be loaded the default icon is given.
+     *
+     * @param context   context
+     * @param avatarUrl avatar url
+     * @param callback  called on a background thread with the icon
+     */
+    public void load(Context context, String avatarUrl, Callback callback) {
+        if (TextUtils.isEmpty(avatarUrl)) {
+            callback.onIconReady(getDefaultIcon(context));
+            return;
+        }
+
+        String key = generateKey(avatarUrl, DEFAULT_ICON_SIZE);
+        Bitmap icon = icons.get(key);
+        if (icon != null) {
+            callback.onIconReady(icon);
+            return;
+        }
+
+        synchronized (pendingLoads) {
+            List<Callback> callbacks = pendingLoads.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pendingLoads.put(key, callbacks);
+        }
+
+        Context appContext = context.getApplicationContext();
+        QiscusAndroidUtil.runOnUIThread(() -> Nirmana.getInstance().get()
+                .asBitmap()
+                .load(avatarUrl)
+                .into(new SimpleTarget<Bitmap>(DEFAULT_ICON_SIZE, DEFAULT_ICON_SIZE) {
+                    @Override
+                    public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+                        QiscusAndroidUtil.runOnBackgroundThread(() -> {
+                            Bitmap roundedIcon;
+                            try {
+                                roundedIcon = QiscusImageUtil.getCircularBitmap(resource);
+                                icons.put(key, roundedIcon);
+                            } catch (Exception e) {
+                                QiscusErrorLogger.print(e);
+                                roundedIcon = getDefaultIcon(appContext);
+                            }
+                            deliver(key, roundedIcon);
+                        });
+                    }
+
+                    @Override
+                    public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                        super.onLoadFailed(errorDrawable);
+                        QiscusAndroidUtil.runOnBackgroundThread(() -> deliver(key, getDefaultIcon(appContext)));
+                    }
+                }));
+    }
+
+    /**
+     * Load the avatars of the rooms ahead of time, so their first notification is rendered without waiting
+     *
+     * @param context context
+     * @param rooms   rooms to prewarm
+     */
+    public void prewarm(Context context, List<QiscusChatRoom> rooms) {
+        if (!Qiscus.getChatConfig().isEnableAvatarAsNotificationIcon()) {
+            return;
+        }
+
+        for (QiscusChatRoom room : rooms) {
+            if (!TextUtils.isEmpty(room.getAvatarUrl()) && get(room.getAvatarUrl(), DEFAULT_ICON_SIZE) == null) {
+                load(context, room.getAvatarUrl(), icon -> {
+                });
+            }
+        }
+    }
+
+    public void clear() {
+        icons.evictAll();
+    }
+
+    private void deliver(String key, Bitmap icon) {
+        List<Callback> callbacks;
+        synchronized (pendingLoads) {
+            callbacks = pendingLoads.remove(key);
+        }
+
+        if (callbacks != null) {
+            for (Callback callback : callbacks) {
+                callback.onIconReady(icon);
+            }
+        }
+    }
+
+    private String generateKey(String avatarUrl, int size) {
+        return avatarUrl + "@" + size;
+    }
+
+    public interface Callback {
+        void onIconReady(Bitmap icon);
+    }
+}
@@ -23,11 +23,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.drawable.Drawable;
 import android.media.RingtoneManager;
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.app.RemoteInput;
@@ -35,12 +31,10 @@ import androidx.core.content.ContextCompat;
 import androidx.core.util.Pair;
 import android.text.TextUtils;
 
-import com.bumptech.glide.request.target.SimpleTarget;
-import com.bumptech.glide.request.transition.Transition;
-import com.qiscus.nirmana.Nirmana;
 import com.qiscus.sdk.Qiscus;
 import com.qiscus.sdk.R;
 import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
 import com.qiscus.sdk.chat.core.data.model.QiscusChatRoom;
 import com.qiscus.sdk.chat.core.data.model.QiscusComment;
 import com.qiscus.sdk.chat.core.data.model.QiscusPushNotificationMessage;
@@ -48,8 +42,10 @@ import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
 import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
 import com.qiscus.sdk.chat.core.util.BuildVersionUtil;
 import com.qiscus.sdk.chat.core.util.QiscusAndroidUtil;
+import com.qiscus.sdk.chat.core.util.QiscusLogger;
 import com.qiscus.sdk.chat.core.util.QiscusNumberUtil;
 import com.qiscus.sdk.chat.core.util.QiscusRawDataExtractor;
+import com.qiscus.sdk.chat.core.util.QiscusSchedulers;
 import com.qiscus.sdk.chat.core.util.QiscusTextUtil;
 import com.qiscus.sdk.data.model.QiscusMentionConfig;
 import com.qiscus.sdk.service.QiscusPushNotificationClickReceiver;
@@ -59,12 +55,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 import static com.qiscus.sdk.chat.core.util.BuildVersionUtil.isNougatOrHigher;
 
@@ -76,6 +73,16 @@ import static com.qiscus.sdk.chat.core.util.BuildVersionUtil.isNougatOrHigher;
  */
 public final class QiscusPushNotificationUtil {
     public static final String KEY_NOTIFICATION_REPLY = "KEY_NOTIFICATION_REPLY";
+    private static final String TAG = "QiscusPushNotification";
+    private static final int MAX_INBOX_LINES = 5;
+    private static final long RENDER_DEBOUNCE_DELAY = 300;
+    private static final long MAX_RENDER_DELAY = 1000;
+
+    private static final Map<Long, Runnable> pendingRenders = new HashMap<>();
+    private static final Map<Long, Integer> coalescedRenders = new HashMap<>();
+    private static final Map<Long, Long> burstStartTimes = new HashMap<>();
+    private static final AtomicLong renderedCount = new AtomicLong();
+    private static final AtomicLong totalRenderTime = new AtomicLong();
 
     public static void handlePushNotification(Context context, QiscusComment qiscusComment) {
         QiscusAndroidUtil.runOnBackgroundThread(() -> handlePN(context, qiscusComment));
@@ -109,6 +116,10 @@ public final class QiscusPushNotificationUtil {
         }
     }
 
+    /**
+     * Comments of other users were already counted by {@link QiscusUnreadCounter} when they arrived, only
+     * fetch rooms that are not saved yet and reset the room when the current user wrote from another device
+     */
     private static void updateUnreadCount(QiscusComment qiscusComment) {
         QiscusChatRoom room = Qiscus.getDataStore().getChatRoom(qiscusComment.getRoomId());
         if (room == null) {
@@ -117,18 +128,19 @@ public final class QiscusPushNotificationUtil {
         }
 
         if (qiscusComment.isMyComment()) {
-            room.setUnreadCount(0);
-        } else {
-            room.setUnreadCount(room.getUnreadCount() + 1);
+            QiscusUnreadCounter.getInstance().onRoomRead(qiscusComment.getRoomId());
         }
-        Qiscus.getDataStore().addOrUpdate(room);
     }
 
     private static void fetchRoomData(long roomId) {
         QiscusApi.getInstance()
                 .getChatRoom(roomId)
-                .doOnNext(qiscusChatRoom -> Qiscus.getDataStore().addOrUpdate(qiscusChatRoom))
-                .subscribeOn(Schedulers.io())
+                .doOnNext(qiscusChatRoom -> {
+                    Qiscus.getDataStore().addOrUpdate(qiscusChatRoom);
+                    QiscusNotificationIconCache.getInstance()
+                            .prewarm(Qiscus.getApps(), Collections.singletonList(qiscusChatRoom));
+                })
+                .subscribeOn(QiscusSchedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(qiscusChatRoom -> {
                 }, throwable -> {
@@ -218,44 +230,66 @@ public final class QiscusPushNotificationUtil {
             return;
         }
 
-        if (Qiscus.getChatConfig().isEnableAvatarAsNotificationIcon()) {
-            QiscusAndroidUtil.runOnUIThread(() -> loadAvatar(context, comment, pushNotificationMessage));
-        } else {
-            pushNotification(context, comment, pushNotificationMessage,
-                    BitmapFactory.decodeResource(context.getResources(), Qiscus.getChatConfig().getNotificationBigIcon()));
-        }
+        scheduleRender(context, comment, pushNotificationMessage);
     }
 
-    private static void loadAvatar(Context context, QiscusComment comment, QiscusPushNotificationMessage pushNotificationMessage) {
-        Nirmana.getInstance().get()
-                .asBitmap()
-                .load(pushNotificationMessage.getRoomAvatar())
-                .into(new SimpleTarget<Bitmap>() {
-                    @Override
-                    public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                        QiscusAndroidUtil.runOnBackgroundThread(() -> {
-                            try {
-                                pushNotification(context, comment, pushNotificationMessage, QiscusImageUtil.getCircularBitmap(resource));
-                            } catch (Exception e) {
-                                pushNotification(context, comment, pushNotificationMessage,
-                                        BitmapFactory.decodeResource(context.getResources(),
-                                                Qiscus.getChatConfig().getNotificationBigIcon()));
-                            }
-                        });
+    /**
+     * Render the notification of the room after a short delay. When more messages of the same room
+     * arrive before that, only the latest one is rendered.
+     */
+    private static void scheduleRender(Context context, QiscusComment comment,
+                                       QiscusPushNotificationMessage pushNotificationMessage) {
+        long roomId = comment.getRoomId();
+        Runnable render = new Runnable() {
+            @Override
+            public void run() {
+                int coalescedCount;
+                synchronized (pendingRenders) {
+                    if (pendingRenders.get(roomId) != this) {
+                        return;
                     }
+                    pendingRenders.remove(roomId);
+                    burstStartTimes.remove(roomId);
+                    Integer count = coalescedRenders.remove(roomId);
+                    coalescedCount = count == null ? 1 : count;
+                }
+                renderNotification(context, comment, pushNotificationMessage, coalescedCount);
+            }
+        };
+
+        long delay = RENDER_DEBOUNCE_DELAY;
+        synchronized (pendingRenders) {
+            Integer count = coalescedRenders.get(roomId);
+            coalescedRenders.put(roomId, count == null ? 1 : count + 1);
+            pendingRenders.put(roomId, render);
+
+            //Do not keep postponing the notification of a room that never stops receiving messages
+            long now = System.currentTimeMillis();
+            Long burstStartTime = burstStartTimes.get(roomId);
+            if (burstStartTime == null) {
+                burstStartTimes.put(roomId, now);
+            } else if (now - burstStartTime >= MAX_RENDER_DELAY) {
+                delay = 0;
+            }
+        }
+        QiscusAndroidUtil.runOnBackgroundThread(render, delay);
+    }
 
-                    @Override
-                    public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                        super.onLoadFailed(errorDrawable);
-                        QiscusAndroidUtil.runOnBackgroundThread(() -> pushNotification(context, comment, pushNotificationMessage,
-                                BitmapFactory.decodeResource(context.getResources(),
-                                        Qiscus.getChatConfig().getNotificationBigIcon())));
-                    }
-                });
+    private static void renderNotification(Context context, QiscusComment comment,
+                                           QiscusPushNotificationMessage pushNotificationMessage, int coalescedCount) {
+        long startTime = System.currentTimeMillis();
+        if (Qiscus.getChatConfig().isEnableAvatarAsNotificationIcon()) {
+            QiscusNotificationIconCache.getInstance().load(context, pushNotificationMessage.getRoomAvatar(),
+                    icon -> pushNotification(context, comment, pushNotificationMessage, icon, startTime, coalescedCount));
+        } else {
+            pushNotification(context, comment, pushNotificationMessage,
+                    QiscusNotificationIconCache.getInstance().getDefaultIcon(context), startTime, coalescedCount);
+        }
     }
 
     private static void pushNotification(Context context, QiscusComment comment,
-                                         QiscusPushNotificationMessage pushNotificationMessage, Bitmap largeIcon) {
+                                         QiscusPushNotificationMessage pushNotificationMessage, Bitmap largeIcon,
+                                         long startTime, int coalescedCount) {
 
         String notificationChannelId = Qiscus.getApps().getPackageName() + ".qiscus.sdk.notification.channel";
         if (BuildVersionUtil.isOreoOrHigher()) {
@@ -309,31 +343,48 @@ public final class QiscusPushNotificationUtil {
         }
 
         NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        int notifCount = QiscusCacheManager.getInstance().getMessageNotifCount(comment.getRoomId());
         List<QiscusPushNotificationMessage> notifItems = QiscusCacheManager.getInstance()
-                .getMessageNotifItems(comment.getRoomId());
-        if (notifItems == null) {
-            notifItems = new ArrayList<>();
-        }
-        int notifSize = 5;
-        if (notifItems.size() < notifSize) {
-            notifSize = notifItems.size();
-        }
-        if (notifItems.size() > notifSize) {
+                .getLatestMessageNotifItems(comment.getRoomId(), MAX_INBOX_LINES);
+        int notifSize = notifItems.size();
+        if (notifCount > notifSize) {
             inboxStyle.addLine(".......");
         }
-        int start = notifItems.size() - notifSize;
-        for (int i = start; i < notifItems.size(); i++) {
-            inboxStyle.addLine(notifItems.get(i).getMessage());
+        for (QiscusPushNotificationMessage notifItem : notifItems) {
+            inboxStyle.addLine(notifItem.getMessage());
         }
-        inboxStyle.setSummaryText(QiscusTextUtil.getString(R.string.qiscus_notif_count, notifItems.size()));
+        inboxStyle.setSummaryText(QiscusTextUtil.getString(R.string.qiscus_notif_count, notifCount));
         notificationBuilder.setStyle(inboxStyle);
 
         if (notifSize <= 3) {
             notificationBuilder.setPriority(Notification.PRIORITY_HIGH);
         }
 
-        QiscusAndroidUtil.runOnUIThread(() -> NotificationManagerCompat.from(context)
-                .notify(QiscusNumberUtil.convertToInt(comment.getRoomId()), notificationBuilder.build()));
+        QiscusAndroidUtil.runOnUIThread(() -> {
+            NotificationManagerCompat.from(context)
+                    .notify(QiscusNumberUtil.convertToInt(comment.getRoomId()), notificationBuilder.build());
+            long renderTime = System.currentTimeMillis() - startTime;
+            renderedCount.incrementAndGet();
+            totalRenderTime.addAndGet(renderTime);
+            QiscusLogger.print(TAG, "Rendered notification of room " + comment.getRoomId() + " for "
+                    + coalescedCount + " message(s) in " + renderTime + " ms");
+        });
+    }
+
+    /**
+     * @return how many notifications have been rendered
+     */
+    public static long getRenderedNotificationCount() {
+        return renderedCount.get();
+    }
+
+    /**
+     * @return average time to render a notification in milliseconds, from the end of the debounce
+     * until it is posted
+     */
+    public static long getAverageRenderTime() {
+        long count = renderedCount.get();
+        return count == 0 ? 0 : totalRenderTime.get() / count;
     }
 
     private static void handleDeletedComment(Context context, List<QiscusComment> comments, boolean hardDelete) {
@@ -343,30 +394,27 @@ public final class QiscusPushNotificationUtil {
 
         QiscusComment qiscusComment = comments.get(comments.size() - 1);
 
-        if (hardDelete) {
-            boolean removeItem = false;
-            for (QiscusComment comment : comments) {
-                if (QiscusCacheManager.getInstance()
-                        .removeMessageNotifItem(new QiscusPushNotificationMessage(comment), comment.getRoomId())) {
-                    removeItem = true;
-                }
+        Map<Long, List<QiscusPushNotificationMessage>> messagesByRoom = new HashMap<>();
+        for (QiscusComment comment : comments) {
+            List<QiscusPushNotificationMessage> messages = messagesByRoom.get(comment.getRoomId());
+            if (messages == null) {
+                messages = new ArrayList<>();
+                messagesByRoom.put(comment.getRoomId(), messages);
             }
+            messages.add(new QiscusPushNotificationMessage(comment));
+        }
 
-            if (removeItem) {
-                updateNotification(context, qiscusComment);
-            }
-        } else {
-            boolean updateItem = false;
-            for (QiscusComment comment : comments) {
-                if (QiscusCacheManager.getInstance()
-                        .updateMessageNotifItem(new QiscusPushNotificationMessage(comment), comment.getRoomId())) {
-                    updateItem = true;
-                }
+        boolean changed = false;
+        for (Map.Entry<Long, List<QiscusPushNotificationMessage>> entry : messagesByRoom.entrySet()) {
+            if (hardDelete) {
+                changed |= QiscusCacheManager.getInstance().removeMessageNotifItems(entry.getValue(), entry.getKey());
+            } else {
+                changed |= QiscusCacheManager.getInstance().updateMessageNotifItems(entry.getValue(), entry.getKey());
             }
+        }
 
-            if (updateItem) {
-                updateNotification(context, qiscusComment);
-            }
+        if (changed) {
+            updateNotification(context, qiscusComment);
         }
     }
 
@@ -386,23 +434,22 @@ public final class QiscusPushNotificationUtil {
 
     private static void updatePushNotification(Context context, QiscusComment qiscusComment) {
         List<QiscusPushNotificationMessage> items = QiscusCacheManager.getInstance()
-                .getMessageNotifItems(qiscusComment.getRoomId());
+                .getLatestMessageNotifItems(qiscusComment.getRoomId(), 1);
 
-        if (items == null || items.isEmpty()) {
+        if (items.isEmpty()) {
             QiscusAndroidUtil.runOnUIThread(() -> clearPushNotification(context, qiscusComment.getRoomId()));
             return;
         }
 
-        QiscusPushNotificationMessage lastMessage = items.get(items.size() - 1);
-        if (Qiscus.getChatConfig().isEnableAvatarAsNotificationIcon()) {
-            QiscusAndroidUtil.runOnUIThread(() -> loadAvatar(context, qiscusComment, lastMessage));
-        } else {
-            pushNotification(context, qiscusComment, lastMessage,
-                    BitmapFactory.decodeResource(context.getResources(), Qiscus.getChatConfig().getNotificationBigIcon()));
-        }
+        scheduleRender(context, qiscusComment, items.get(items.size() - 1));
     }
 
     public static void clearPushNotification(Context context, long roomId) {
+        synchronized (pendingRenders) {
+            pendingRenders.remove(roomId);
+            burstStartTimes.remove(roomId);
+            coalescedRenders.remove(roomId);
+        }
         NotificationManagerCompat.from(context).cancel(QiscusNumberUtil.convertToInt(roomId));
         QiscusCacheManager.getInstance().clearMessageNotifItems(roomId);
     }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.qiscus.sdk.util;
+
+import com.qiscus.sdk.chat.core.data.model.QiscusRoomMember;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Matching rules of {@link QiscusMentionIndex}, and a benchmark that builds an index for 100, 5,000 and
+ * 50,000 members and types names into it one keystroke at a time. The results are printed.
+ */
+public class QiscusMentionIndexTest {
+    private static final int LIMIT = 10;
+    private static final int TYPED_NAMES = 200;
+
+    @Test
+    public void matchesUsernamePrefixIgnoringCaseAndAccents() {
+        QiscusMentionIndex index = new QiscusMentionIndex(Arrays.asList(
+                member("andi@qiscus.com", "Andi"),
+                member("andre@qiscus.com", "Andr\u00e9"),
+                member("budi@qiscus.com", "Budi")), null);
+
+        assertEquals(Arrays.asList("Andi", "Andr\u00e9"), usernames(index.query("AND", LIMIT)));
+        assertEquals(Arrays.asList("Andr\u00e9"), usernames(index.query("andr", LIMIT)));
+        assertEquals(Arrays.asList("Andr\u00e9"), usernames(index.query("andr\u00e9", LIMIT)));
+        assertEquals(Arrays.asList("Andi", "Andr\u00e9", "Budi"), usernames(index.query("", LIMIT)));
+    }
+
+    @Test
+    public void doesNotMatchEmails() {
+        QiscusMentionIndex index = new QiscusMentionIndex(Arrays.asList(
+                member("zed@qiscus.com", "Andi"),
+                member("budi@qiscus.com", "Budi")), null);
+
+        assertTrue(index.query("zed", LIMIT).isEmpty());
+        assertTrue(index.query("qiscus", LIMIT).isEmpty());
+    }
+
+    @Test
+    public void skipsExcludedMemberAndMembersWithoutUsername() {
+        QiscusMentionIndex index = new QiscusMentionIndex(Arrays.asList(
+                member("me@qiscus.com", "Andi"),
+                member("anon@qiscus.com", null),
+                member("anto@qiscus.com", "Anto")), "me@qiscus.com");
+
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList("Anto"), usernames(index.query("an", LIMIT)));
+    }
+
+    @Test
+    public void narrowedQueryMatchesFreshQuery() {
+        List<QiscusRoomMember> members = members(1000, new Random(7));
+        QiscusMentionIndex typed = new QiscusMentionIndex(members, null);
+        String name = members.get(500).getUsername();
+        for (int i = 0; i <= name.length(); i++) {
+            String prefix = name.substring(0, i);
+            assertEquals(new QiscusMentionIndex(members, null).query(prefix, LIMIT), typed.query(prefix, LIMIT));
+        }
+        //Going back to a shorter query searches the whole index again
+        assertEquals(new QiscusMentionIndex(members, null).query("a", LIMIT), typed.query("a", LIMIT));
+    }
+
+    @Test
+    public void respectsLimitAndRanksRecentMentionsFirst() {
+        List<QiscusRoomMember> members = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            members.add(member("recent" + i + "@qiscus.com", "Rina " + (char) ('a' + i)));
+        }
+        QiscusMentionIndex index = new QiscusMentionIndex(members, null);
+        QiscusMentionIndex.onMentioned("recent19@qiscus.com");
+
+        List<QiscusRoomMember> suggestions = index.query("rina", 5);
+        assertEquals(5, suggestions.size());
+        assertEquals("Rina t", suggestions.get(0).getUsername());
+        assertEquals("Rina a", suggestions.get(1).getUsername());
+        assertEquals(Arrays.asList("Rina b"), usernames(index.query("rina b", 5)));
+    }
+
+    @Test
+    public void hundredMembers() {
+        benchmark(100);
+    }
+
+    @Test
+    public void fiveThousandMembers() {
+        benchmark(5000);
+    }
+
+    @Test
+    public void fiftyThousandMembers() {
+        benchmark(50000);
+    }
+
+    /**
+     * Build an index like the mention suggestion view does when the room opens, then type the names of
+     * random members one keystroke at a time and check every suggestion matches what was typed
+     */
+    private void benchmark(int memberCount) {
+        Random random = new Random(memberCount);
+        List<QiscusRoomMember> members = members(memberCount, random);
+
+        long buildStartTime = System.nanoTime();
+        QiscusMentionIndex index = new QiscusMentionIndex(members, null);
+        long buildTime = System.nanoTime() - buildStartTime;
+        assertEquals(memberCount, index.size());
+
+        int keystrokes = 0;
+        long queryTime = 0;
+        long slowestQuery = 0;
+        for (int i = 0; i < TYPED_NAMES; i++) {
+            String name = members.get(random.nextInt(memberCount)).getUsername().toLowerCase();
+            for (int j = 1; j <= name.length(); j++) {
+                String prefix = name.substring(0, j);
+                long startTime = System.nanoTime();
+                List<QiscusRoomMember> suggestions = index.query(prefix, LIMIT);
+                long time = System.nanoTime() - startTime;
+                queryTime += time;
+                slowestQuery = Math.max(slowestQuery, time);
+                keystrokes++;
+
+                assertTrue(!suggestions.isEmpty() && suggestions.size() <= LIMIT);
+                for (QiscusRoomMember suggestion : suggestions) {
+                    assertTrue(suggestion.getUsername().toLowerCase().startsWith(prefix));
+                }
+            }
+        }
+
+        System.out.println(memberCount + " members: built in " + TimeUnit.NANOSECONDS.toMillis(buildTime)
+                + " ms, " + keystrokes + " keystrokes took " + TimeUnit.NANOSECONDS.toMicros(queryTime / keystrokes)
+                + " us on average and " + TimeUnit.NANOSECONDS.toMicros(slowestQuery) + " us at most");
+    }
+
+    private static List<QiscusRoomMember> members(int count, Random random) {
+        String[] firstNames = {"Adi", "Agus", "Ayu", "Bayu", "Budi", "Dewi", "Eka", "Fajar", "Gita", "Hadi",
+                "Indah", "Joko", "Kartika", "Lina", "Made", "Nur", "Putri", "Rizki", "Sari", "Tono"};
+        List<QiscusRoomMember> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String username = firstNames[random.nextInt(firstNames.length)] + " "
+                    + firstNames[random.nextInt(firstNames.length)] + " " + i;
+            members.add(member("user" + i + "@qiscus.com", username));
+        }
+        return members;
+    }
+
+    private static QiscusRoomMember member(String email, String username) {
+        QiscusRoomMember member = new QiscusRoomMember();
+        member.setEmail(email);
+        member.setUsername(username);
+        return member;
+    }
+
+    private static List<String> usernames(List<QiscusRoomMember> members) {
+        List<String> usernames = new ArrayList<>();
+        for (QiscusRoomMember member : members) {
+            usernames.add(member.getUsername());
+        }
+        return usernames;
+    }
+}
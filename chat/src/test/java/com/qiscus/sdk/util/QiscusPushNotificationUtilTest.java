@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016 Qiscus.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.qiscus.sdk.util;
+
+import com.google.gson.JsonObject;
+import com.qiscus.sdk.Qiscus;
+import com.qiscus.sdk.chat.core.QiscusCore;
+import com.qiscus.sdk.chat.core.QiscusTestBackend;
+import com.qiscus.sdk.chat.core.QiscusTestBroker;
+import com.qiscus.sdk.chat.core.QiscusTestServer;
+import com.qiscus.sdk.chat.core.data.local.QiscusCacheManager;
+import com.qiscus.sdk.chat.core.data.local.QiscusDataStore;
+import com.qiscus.sdk.chat.core.data.local.QiscusUnreadCounter;
+import com.qiscus.sdk.chat.core.data.remote.QiscusApi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unread counts with the push notification listener of the chat module installed, for comments that
+ * arrive over MQTT, FCM and sync. The listener saves the comments, {@link QiscusUnreadCounter} counts them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QiscusPushNotificationUtilTest {
+    private static final long TIMEOUT = 5000;
+
+    private final QiscusTestServer server = new QiscusTestServer();
+    private final QiscusTestBroker broker = new QiscusTestBroker();
+    private final QiscusUnreadCounter counter = QiscusUnreadCounter.getInstance();
+    private QiscusTestBackend backend;
+    private QiscusDataStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        broker.start();
+        backend = new QiscusTestBackend(server, broker);
+        server.start(broker.getUri());
+        //Init the chat module against the same servers, so its listener handles the comments
+        Qiscus.initWithCustomServer(RuntimeEnvironment.application, QiscusTestServer.APP_ID,
+                server.url("/"), broker.getUri());
+        QiscusApi.getInstance().reInitiateInstance();
+        Qiscus.getChatConfig().setEnablePushNotification(false);
+        backend.login();
+        store = QiscusCore.getDataStore();
+        store.clear();
+        counter.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        QiscusCacheManager.getInstance().setLastChatActivity(false, 0);
+        counter.clear();
+        store.clear();
+        QiscusCore.clearUser();
+        backend.shutdown();
+        server.shutdown();
+        broker.shutdown();
+    }
+
+    @Test
+    public void commentsAreCountedOnceWhicheverWayTheyArrive() {
+        long roomId = createSavedRoom();
+        JsonObject mqttComment = backend.addComment(roomId, "Over MQTT");
+        JsonObject fcmComment = backend.addComment(roomId, "Over FCM");
+        backend.addComment(roomId, "By sync");
+
+        backend.deliverOverMqtt(mqttComment);
+        assertTrue("Comment was not received", QiscusTestBackend.await(() -> store.getUnreadCount(roomId) == 1, TIMEOUT));
+        backend.deliverOverFcm(fcmComment);
+        backend.deliverOverFcm(mqttComment);
+        backend.deliverBySync();
+        assertTrue("Comments were not handled", QiscusTestBackend.awaitBackgroundTasks(TIMEOUT));
+
+        assertEquals(3, store.getUnreadCount(roomId));
+        assertEquals(3, store.getTotalUnreadCount());
+        assertEquals(3, counter.getTotalUnreadCount());
+        assertNotNull("Comment was not saved", store.getComment(fcmComment.get("unique_id").getAsString()));
+    }
+
+    @Test
+    public void commentOfTheCurrentUserFromAnotherDeviceResetsTheRoom() {
+        long roomId = createSavedRoom();
+        backend.deliverOverFcm(backend.addComment(roomId, "Hi"));
+        backend.deliverOverFcm(backend.addComment(roomId, "Are you there?"));
+        assertTrue("Comments were not handled", QiscusTestBackend.awaitBackgroundTasks(TIMEOUT));
+        assertEquals(2, counter.getTotalUnreadCount());
+
+        JsonObject reply = backend.addComment(roomId, "Yes");
+        reply.addProperty("email", QiscusTestBackend.USER_EMAIL);
+        backend.deliverOverFcm(reply);
+        assertTrue("Comment was not handled", QiscusTestBackend.awaitBackgroundTasks(TIMEOUT));
+
+        assertEquals(0, store.getUnreadCount(roomId));
+        assertEquals(0, store.getTotalUnreadCount());
+        assertEquals(0, counter.getTotalUnreadCount());
+    }
+
+    @Test
+    public void commentsOfTheOpenRoomAreNotCounted() {
+        long roomId = createSavedRoom();
+        QiscusCacheManager.getInstance().setLastChatActivity(true, roomId);
+
+        String mqttCommentId = backend.sendComment(roomId, "Over MQTT").get("unique_id").getAsString();
+        assertTrue("Comment was not saved", QiscusTestBackend.await(() -> store.getComment(mqttCommentId) != null, TIMEOUT));
+        backend.deliverOverFcm(backend.addComment(roomId, "Over FCM"));
+        backend.deliverBySync();
+        assertTrue("Comments were not handled", QiscusTestBackend.awaitBackgroundTasks(TIMEOUT));
+
+        assertEquals(0, store.getUnreadCount(roomId));
+        assertEquals(0, counter.getTotalUnreadCount());
+    }
+
+    private long createSavedRoom() {
+        long roomId = backend.createRoom();
+        store.addOrUpdate(QiscusApi.getInstance().getChatRoomWithMessages(roomId).toBlocking().first().first);
+        return roomId;
+    }
+}